@@ -24,6 +24,7 @@ import com.google.inject.Module;
 import com.google.inject.ProvisionException;
 import io.airlift.airline.Option;
 import org.graylog2.plugin.BaseConfiguration;
+import org.graylog2.plugin.Decompressor;
 import org.graylog2.plugin.ServerStatus;
 import org.graylog2.plugin.Tools;
 import org.graylog2.plugin.inject.Graylog2Module;
@@ -107,6 +108,7 @@ public abstract class ServerBootstrap extends CmdLineTool {
 
         // propagate default size to input plugins
         MessageInput.setDefaultRecvBufferSize(configuration.getUdpRecvBufferSizes());
+        Decompressor.setMaxDecompressedSize(configuration.getMaxDecompressedMessageSize());
 
         // Start services.
         final ServiceManagerListener serviceManagerListener = injector.getInstance(ServiceManagerListener.class);
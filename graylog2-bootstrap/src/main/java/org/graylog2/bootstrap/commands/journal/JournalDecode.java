@@ -26,9 +26,11 @@ import com.google.inject.Module;
 import com.google.inject.TypeLiteral;
 import io.airlift.airline.Arguments;
 import io.airlift.airline.Command;
+import io.airlift.airline.Option;
 import org.graylog2.bindings.providers.ServerObjectMapperProvider;
 import org.graylog2.inputs.codecs.CodecsModule;
 import org.graylog2.plugin.Message;
+import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.inputs.codecs.Codec;
 import org.graylog2.plugin.journal.RawMessage;
 import org.graylog2.shared.journal.Journal;
@@ -44,6 +46,9 @@ public class JournalDecode extends AbstractJournalCommand {
     @Arguments(required = true, description = "Range of message offsets to decode, e.g. single number 1234567, upper bound ..123456, lower bound 123456..., both 123456..123458")
     private String rangeArg;
 
+    @Option(name = {"-p", "--partition"}, description = "The journal partition to decode messages from, defaults to the first partition.")
+    private int partition = 0;
+
     public JournalDecode() {
         super("decode-journal");
     }
@@ -93,17 +98,23 @@ public class JournalDecode extends AbstractJournalCommand {
 
         final Long readOffset = range.lowerEndpoint();
         final long count = range.upperEndpoint() - range.lowerEndpoint() + 1;
-        final List<Journal.JournalReadEntry> entries = journal.read(readOffset,
-                                                                    count);
+        final List<Journal.JournalReadEntry> entries = journal.readPartition(partition, readOffset, count);
         for (final Journal.JournalReadEntry entry : entries) {
-            final RawMessage raw = RawMessage.decode(entry.getPayload(), entry.getOffset());
+            final RawMessage raw = RawMessage.decode(entry.getPayloadBuffer(), entry.getOffset());
             if (raw == null) {
                 System.err.println(MessageFormatter.format("Journal entry at offset {} failed to decode",
                                                            entry.getOffset()));
                 continue;
             }
 
-            final Codec codec = codecFactory.get(raw.getCodecName()).create(raw.getCodecConfig());
+            Configuration codecConfig = raw.getCodecConfig();
+            if (codecConfig == null) {
+                System.err.println(MessageFormatter.format(
+                        "Unknown codec configuration {} for journal entry at offset {}, using empty configuration",
+                        raw.getCodecConfigId(), entry.getOffset()));
+                codecConfig = Configuration.EMPTY_CONFIGURATION;
+            }
+            final Codec codec = codecFactory.get(raw.getCodecName()).create(codecConfig);
             final Message message = codec.decode(raw);
             if (message == null) {
                 System.err.println(MessageFormatter.format(
@@ -37,22 +37,34 @@ public class JournalShow extends AbstractJournalCommand {
 
     @Override
     protected void runCommand() {
-        long sizeInBytes = journal.size();
-        int numSegments = journal.numberOfSegments();
-        long committedReadOffset = journal.getCommittedReadOffset();
         final StringBuffer sb = new StringBuffer();
 
-        final long startOffset = journal.getLogStartOffset();
-        final long lastOffset = journal.getLogEndOffset() - 1;
-
         sb.append("Graylog2 message journal in directory: ").append(new File(kafkaJournalConfiguration.getMessageJournalDir()).getAbsolutePath()).append(
                 "\n");
-        sb.append("\t").append("Total size in bytes: ").append(sizeInBytes).append("\n");
-        sb.append("\t").append("Number of segments: ").append(numSegments).append("\n");
-        sb.append("\t").append("Log start offset: ").append(startOffset).append("\n");
-        sb.append("\t").append("Log end offset: ").append(lastOffset).append("\n");
-        sb.append("\t").append("Number of messages: ").append(lastOffset - startOffset + 1).append("\n");
-        sb.append("\t").append("Committed read offset: ");
+        sb.append("\t").append("Total size in bytes: ").append(journal.size()).append("\n");
+        sb.append("\t").append("Number of segments: ").append(journal.numberOfSegments()).append("\n");
+        sb.append("\t").append("Number of partitions: ").append(journal.numberOfPartitions()).append("\n");
+        for (int partition = 0; partition < journal.numberOfPartitions(); partition++) {
+            appendPartitionDetails(journal, partition, sb);
+        }
+        sb.append("\n");
+
+        System.out.print(sb);
+        System.out.flush();
+    }
+
+    private void appendPartitionDetails(KafkaJournal journal, int partition, StringBuffer sb) {
+        final long committedReadOffset = journal.getCommittedReadOffset(partition);
+        final long startOffset = journal.getLogStartOffset(partition);
+        final long lastOffset = journal.getLogEndOffset(partition) - 1;
+
+        sb.append("\t").append("Partition ").append(partition).append("\n");
+        sb.append("\t\t").append("Size in bytes: ").append(journal.size(partition)).append("\n");
+        sb.append("\t\t").append("Number of segments: ").append(journal.numberOfSegments(partition)).append("\n");
+        sb.append("\t\t").append("Log start offset: ").append(startOffset).append("\n");
+        sb.append("\t\t").append("Log end offset: ").append(lastOffset).append("\n");
+        sb.append("\t\t").append("Number of messages: ").append(lastOffset - startOffset + 1).append("\n");
+        sb.append("\t\t").append("Committed read offset: ");
         if (committedReadOffset == Long.MIN_VALUE) {
             sb.append("nothing committed");
         } else {
@@ -61,23 +73,19 @@ public class JournalShow extends AbstractJournalCommand {
         sb.append("\n");
 
         if (showSegmentDetails) {
-            appendSegmentDetails(journal, sb);
+            appendSegmentDetails(journal, partition, sb);
         }
-        sb.append("\n");
-
-        System.out.print(sb);
-        System.out.flush();
     }
 
-    private void appendSegmentDetails(KafkaJournal journal, StringBuffer sb) {
-        final Iterable<LogSegment> segments = journal.getSegments();
+    private void appendSegmentDetails(KafkaJournal journal, int partition, StringBuffer sb) {
+        final Iterable<LogSegment> segments = journal.getSegments(partition);
         int i = 1;
         for (LogSegment segment : segments) {
-            sb.append("\t\t").append("Segment ").append(i++).append("\n");
-            sb.append("\t\t\t").append("Base offset: ").append(segment.baseOffset()).append("\n");
-            sb.append("\t\t\t").append("Size in bytes: ").append(segment.size()).append("\n");
-            sb.append("\t\t\t").append("Created at: ").append(new DateTime(segment.created())).append("\n");
-            sb.append("\t\t\t").append("Last modified: ").append(new DateTime(segment.lastModified())).append("\n");
+            sb.append("\t\t\t").append("Segment ").append(i++).append("\n");
+            sb.append("\t\t\t\t").append("Base offset: ").append(segment.baseOffset()).append("\n");
+            sb.append("\t\t\t\t").append("Size in bytes: ").append(segment.size()).append("\n");
+            sb.append("\t\t\t\t").append("Created at: ").append(new DateTime(segment.created())).append("\n");
+            sb.append("\t\t\t\t").append("Last modified: ").append(new DateTime(segment.lastModified())).append("\n");
         }
     }
 
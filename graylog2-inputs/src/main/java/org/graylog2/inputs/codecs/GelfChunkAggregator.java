@@ -16,29 +16,49 @@
  */
 package org.graylog2.inputs.codecs;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import org.graylog2.inputs.codecs.gelf.GELFMessage;
 import org.graylog2.inputs.codecs.gelf.GELFMessageChunk;
-import org.graylog2.plugin.Tools;
-import org.graylog2.plugin.inputs.codecs.CodecAggregator;
+import org.graylog2.plugin.inputs.codecs.RemoteAddressCodecAggregator;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
+import org.joda.time.DateTimeUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.inject.Named;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class GelfChunkAggregator implements CodecAggregator {
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Reassembles chunked GELF messages.
+ * <p>
+ * Incomplete messages are kept in a number of independently locked segments, each being a small hash table keyed by
+ * the 8 byte message id as a {@code long}. Every segment also keeps its messages on a time wheel with one slot per
+ * {@link #TICK_PERIOD}, so the eviction task only has to look at the slots which have expired since its last run.
+ * </p>
+ * <p>
+ * Chunks are not copied, the aggregator keeps slices of the received buffers. The number of bytes held by incomplete
+ * messages is limited globally and per sender, chunks exceeding either budget cause the whole message to be dropped.
+ * </p>
+ */
+public class GelfChunkAggregator implements RemoteAddressCodecAggregator {
     private static final Logger log = LoggerFactory.getLogger(GelfChunkAggregator.class);
 
     public static final Result VALID_EMPTY_RESULT = new Result(null, true);
@@ -46,27 +66,89 @@ public class GelfChunkAggregator implements CodecAggregator {
     public static final int VALIDITY_PERIOD = 5000; // millis
     private static final long CHECK_PERIOD = 1000;
 
-    private final ConcurrentMap<String, ChunkEntry> chunks = Maps.newConcurrentMap();
-    private final ConcurrentSkipListSet<ChunkEntry> sortedEvictionSet = new ConcurrentSkipListSet<>();
+    // the GELF specification limits a message to 128 chunks
+    public static final int MAX_CHUNKS = 128;
+
+    private static final long TICK_PERIOD = 1000; // millis
+    // must be a power of two and should cover VALIDITY_PERIOD, otherwise slots contain entries of several ticks
+    private static final int WHEEL_SIZE = 8;
+    // must be a power of two
+    private static final int SEGMENT_COUNT = 64;
+    private static final int INITIAL_SEGMENT_CAPACITY = 16;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+    private final ConcurrentMap<Object, AtomicLong> senderBytes = Maps.newConcurrentMap();
+    private final long maxBytes;
+    private final long maxBytesPerSender;
+
+    private final AtomicLong bytesHeld = new AtomicLong(0);
+    private final AtomicInteger chunksHeld = new AtomicInteger(0);
+    private final AtomicInteger messagesHeld = new AtomicInteger(0);
+
+    private final Meter completeMessages;
+    private final Meter expiredMessages;
+    private final Meter expiredChunks;
+    private final Meter droppedMessages;
+    private final Meter duplicateChunks;
 
     @Inject
-    public GelfChunkAggregator(@Named("daemonScheduler") ScheduledExecutorService scheduler) {
+    public GelfChunkAggregator(@Named("daemonScheduler") ScheduledExecutorService scheduler,
+                               MetricRegistry metricRegistry,
+                               @Named("gelf_chunk_max_bytes") int maxBytes,
+                               @Named("gelf_chunk_max_bytes_per_sender") int maxBytesPerSender) {
+        this.maxBytes = maxBytes;
+        this.maxBytesPerSender = maxBytesPerSender;
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment();
+        }
+
+        completeMessages = metricRegistry.meter(name(GelfChunkAggregator.class, "complete-messages"));
+        expiredMessages = metricRegistry.meter(name(GelfChunkAggregator.class, "expired-messages"));
+        expiredChunks = metricRegistry.meter(name(GelfChunkAggregator.class, "expired-chunks"));
+        droppedMessages = metricRegistry.meter(name(GelfChunkAggregator.class, "dropped-messages"));
+        duplicateChunks = metricRegistry.meter(name(GelfChunkAggregator.class, "duplicate-chunks"));
+        metricRegistry.register(name(GelfChunkAggregator.class, "waiting-messages"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return messagesHeld.get();
+            }
+        });
+        metricRegistry.register(name(GelfChunkAggregator.class, "chunks-in-flight"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return chunksHeld.get();
+            }
+        });
+        metricRegistry.register(name(GelfChunkAggregator.class, "bytes-held"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return bytesHeld.get();
+            }
+        });
+
         scheduler.scheduleAtFixedRate(new ChunkEvictionTask(), VALIDITY_PERIOD, CHECK_PERIOD, TimeUnit.MILLISECONDS);
     }
 
     @Nonnull
     @Override
     public Result addChunk(ChannelBuffer buffer) {
-        final byte[] readable = new byte[buffer.readableBytes()];
-        buffer.toByteBuffer().get(readable, buffer.readerIndex(), buffer.readableBytes());
+        return addChunk(buffer, null);
+    }
 
-        final GELFMessage msg = new GELFMessage(readable);
+    @Nonnull
+    @Override
+    public Result addChunk(ChannelBuffer buffer, @Nullable SocketAddress remoteAddress) {
+        if (buffer.readableBytes() < 2) {
+            log.debug("GELF message is too short, dropping message.");
+            return INVALID_RESULT;
+        }
+        final GELFMessage msg = new GELFMessage(buffer.toByteBuffer());
 
         final ChannelBuffer aggregatedBuffer;
         switch (msg.getGELFType()) {
             case CHUNKED:
                 try {
-                    aggregatedBuffer = checkForCompletion(msg);
+                    aggregatedBuffer = checkForCompletion(buffer, remoteAddress);
                     if (aggregatedBuffer == null) {
                         return VALID_EMPTY_RESULT;
                     }
@@ -93,144 +175,320 @@ public class GelfChunkAggregator implements CodecAggregator {
      * If the message isn't complete, it adds the chunk to the internal buffer and waits for more incoming messages.
      * Outdated chunks are being purged regularly.
      *
-     * @param gelfMessage   the gelf message chunk
-     * @return null or a {@link org.graylog2.plugin.journal.RawMessage raw message} object
+     * @param buffer        the gelf message chunk, including the chunk header
+     * @param remoteAddress the sender of the chunk, or {@code null} if unknown
+     * @return null or the complete message
+     * @throws IllegalArgumentException if the chunk header is invalid
      */
-    private ChannelBuffer checkForCompletion(GELFMessage gelfMessage) {
-        if (!chunks.isEmpty() && log.isDebugEnabled()) {
-            log.debug("Dumping GELF chunk map [chunks for {} messages]:\n{}", chunks.size(), humanReadableChunkMap());
+    private ChannelBuffer checkForCompletion(ChannelBuffer buffer, @Nullable SocketAddress remoteAddress) {
+        final int offset = buffer.readerIndex();
+        final int length = buffer.readableBytes();
+        if (length < GELFMessageChunk.HEADER_TOTAL_LENGTH) {
+            throw new IllegalArgumentException("This GELF message chunk is too short. Cannot even contain the required header.");
         }
-        final GELFMessageChunk chunk = new GELFMessageChunk(gelfMessage, null); // TODO second parameter
-        final int sequenceCount = chunk.getSequenceCount();
 
-        final String messageId = chunk.getId();
+        final long messageId = buffer.getLong(offset + GELFMessageChunk.HEADER_PART_HASH_START);
+        final int sequenceNumber = buffer.getUnsignedByte(offset + GELFMessageChunk.HEADER_PART_SEQNUM_START);
+        final int sequenceCount = buffer.getUnsignedByte(offset + GELFMessageChunk.HEADER_PART_SEQCNT_START);
+        if (sequenceCount == 0 || sequenceCount > MAX_CHUNKS || sequenceNumber >= sequenceCount) {
+            throw new IllegalArgumentException("Invalid GELF chunk sequence " + sequenceNumber + "/" + sequenceCount
+                    + " for message <" + Long.toHexString(messageId) + ">");
+        }
 
-        ChunkEntry entry = new ChunkEntry(sequenceCount, chunk.getArrival(), messageId);
-        final ChunkEntry existing = chunks.putIfAbsent(messageId, entry);
-        if (existing == null) {
-            // add this chunk entry to the eviction set
-            sortedEvictionSet.add(entry);
-        } else {
-            // the entry is already in the eviction set and chunk map
-            entry = existing;
+        final ChannelBuffer data = buffer.slice(offset + GELFMessageChunk.HEADER_TOTAL_LENGTH,
+                length - GELFMessageChunk.HEADER_TOTAL_LENGTH);
+        if (sequenceCount == 1) {
+            completeMessages.mark();
+            return data;
         }
 
-        final int chunkWatermark = entry.chunkSlotsWritten.incrementAndGet();
-        entry.payloadArray.set(chunk.getSequenceNumber(), chunk);
+        // the slice keeps the whole received buffer alive, so account for all of it
+        final int cost = buffer.capacity();
+        final long now = DateTimeUtils.currentTimeMillis();
+        final AtomicLong sender = senderCounter(remoteAddress);
+        final Segment segment = segmentFor(messageId);
+
+        final ChunkEntry completed;
+        synchronized (segment) {
+            ChunkEntry entry = segment.get(messageId);
+            if (entry != null && isOutdated(entry, now)) {
+                log.debug("Not all chunks of <{}> arrived within {}ms. Dropping chunks.",
+                        Long.toHexString(messageId), VALIDITY_PERIOD);
+                segment.remove(entry);
+                release(entry);
+                expiredMessages.mark();
+                expiredChunks.mark(entry.received);
+                entry = null;
+            }
 
-        if (chunkWatermark == sequenceCount) {
-            // message is complete by chunk count, assemble and return it.
-            // it might still be corrupt etc, but we've seen enough chunks
-            // remove before operating on it, to avoid racing too much with the clean up job, some race is inevitable, though.
-            entry = getAndCleanupEntry(messageId);
+            if (entry == null) {
+                if (!reserve(cost, sender)) {
+                    log.debug("Chunk buffer limit exceeded, dropping chunk of message <{}>.", Long.toHexString(messageId));
+                    droppedMessages.mark();
+                    return null;
+                }
+                entry = new ChunkEntry(messageId, sequenceCount, now, sender);
+                segment.put(entry);
+                messagesHeld.incrementAndGet();
+            } else if (entry.chunks.length != sequenceCount) {
+                throw new IllegalArgumentException("Sequence count " + sequenceCount + " of chunk doesn't match "
+                        + entry.chunks.length + " of earlier chunks of message <" + Long.toHexString(messageId) + ">");
+            } else if (entry.chunks[sequenceNumber] != null) {
+                duplicateChunks.mark();
+                return null;
+            } else if (!reserve(cost, entry.senderBytes)) {
+                log.debug("Chunk buffer limit exceeded, dropping message <{}>.", Long.toHexString(messageId));
+                segment.remove(entry);
+                release(entry);
+                droppedMessages.mark();
+                return null;
+            }
 
-            final byte[] allChunks[] = new byte[sequenceCount][];
-            for (int i = 0; i < entry.payloadArray.length(); i++) {
-                final GELFMessageChunk messageChunk = entry.payloadArray.get(i);
-                allChunks[i] = messageChunk.getData();
+            entry.chunks[sequenceNumber] = data;
+            entry.received++;
+            entry.bytes += cost;
+            chunksHeld.incrementAndGet();
 
+            if (entry.received < sequenceCount) {
+                return null;
             }
-            return ChannelBuffers.wrappedBuffer(allChunks);
+            segment.remove(entry);
+            completed = entry;
         }
 
-        // message isn't complete yet, check if we should remove the other parts as well
-        if (isOutdated(entry)) {
-            // chunks are outdated, the oldest came in over 5 seconds ago, clean them all up
-            log.debug("Not all chunks of <{}> arrived within {}ms. Dropping chunks.", messageId, VALIDITY_PERIOD);
-            getAndCleanupEntry(messageId);
-        }
-        return null;
+        // message is complete by chunk count, assemble and return it.
+        // it might still be corrupt etc, but we've seen enough chunks
+        release(completed);
+        completeMessages.mark();
+        return ChannelBuffers.wrappedBuffer(completed.chunks);
     }
 
-    private boolean isOutdated(ChunkEntry entry) {
-        return (Tools.iso8601().getMillis() - entry.firstTimestamp) > VALIDITY_PERIOD;
+    private boolean isOutdated(ChunkEntry entry, long now) {
+        return (now - entry.firstTimestamp) > VALIDITY_PERIOD;
     }
 
-    private ChunkEntry getAndCleanupEntry(String id) {
-        final ChunkEntry entry = chunks.remove(id);
-        sortedEvictionSet.remove(entry);
-        return entry;
+    private Segment segmentFor(long messageId) {
+        return segments[spread(messageId) & (SEGMENT_COUNT - 1)];
     }
 
-    private String humanReadableChunkMap() {
-        final StringBuilder sb = new StringBuilder();
+    private static int spread(long messageId) {
+        // message ids are often sequential or timestamp based, so mix the bits before using them as hash
+        final long h = messageId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
 
-        for (final Map.Entry<String, ChunkEntry> entry : chunks.entrySet()) {
-            sb.append("Message <").append(entry.getKey()).append("> ");
-            sb.append("\tChunks:\n");
-            for (int i = 0; i < entry.getValue().payloadArray.length(); i++) {
-                final GELFMessageChunk chunk = entry.getValue().payloadArray.get(i);
-                sb.append("\t\t").append(chunk == null ? "<not arrived yet>" : chunk).append(("\n"));
+    @Nullable
+    private AtomicLong senderCounter(@Nullable SocketAddress remoteAddress) {
+        if (remoteAddress == null) {
+            return null;
+        }
+        final Object key = remoteAddress instanceof InetSocketAddress && ((InetSocketAddress) remoteAddress).getAddress() != null
+                ? ((InetSocketAddress) remoteAddress).getAddress()
+                : remoteAddress;
+        AtomicLong counter = senderBytes.get(key);
+        if (counter == null) {
+            final AtomicLong newCounter = new AtomicLong(0);
+            counter = senderBytes.putIfAbsent(key, newCounter);
+            if (counter == null) {
+                counter = newCounter;
             }
         }
+        return counter;
+    }
+
+    private boolean reserve(int bytes, @Nullable AtomicLong sender) {
+        if (bytesHeld.addAndGet(bytes) > maxBytes) {
+            bytesHeld.addAndGet(-bytes);
+            return false;
+        }
+        if (sender != null && sender.addAndGet(bytes) > maxBytesPerSender) {
+            sender.addAndGet(-bytes);
+            bytesHeld.addAndGet(-bytes);
+            return false;
+        }
+        return true;
+    }
 
-        return sb.toString();
+    private void release(ChunkEntry entry) {
+        bytesHeld.addAndGet(-entry.bytes);
+        if (entry.senderBytes != null) {
+            entry.senderBytes.addAndGet(-entry.bytes);
+        }
+        chunksHeld.addAndGet(-entry.received);
+        messagesHeld.decrementAndGet();
     }
 
-    private static class ChunkEntry implements Comparable<ChunkEntry> {
-        private final AtomicInteger chunkSlotsWritten = new AtomicInteger(0);
+    private static class ChunkEntry {
+        private final long id;
         private final long firstTimestamp;
-        private final AtomicReferenceArray<GELFMessageChunk> payloadArray;
-        private final String id;
+        private final long tick;
+        private final ChannelBuffer[] chunks;
+        private final AtomicLong senderBytes;
+        private int received = 0;
+        private int bytes = 0;
 
-        private ChunkEntry(int chunkCount, long firstTimestamp, String id) {
-            this.payloadArray = new AtomicReferenceArray<>(chunkCount);
-            this.firstTimestamp = firstTimestamp;
+        // intrusive links of the segment's hash table and time wheel
+        private ChunkEntry hashNext;
+        private ChunkEntry wheelPrev;
+        private ChunkEntry wheelNext;
+
+        private ChunkEntry(long id, int chunkCount, long firstTimestamp, @Nullable AtomicLong senderBytes) {
             this.id = id;
+            this.firstTimestamp = firstTimestamp;
+            this.tick = firstTimestamp / TICK_PERIOD;
+            this.chunks = new ChannelBuffer[chunkCount];
+            this.senderBytes = senderBytes;
         }
+    }
 
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
+    /**
+     * A hash table of incomplete messages with a time wheel of their first arrival. Not thread safe, callers
+     * synchronize on the segment.
+     */
+    private static class Segment {
+        private final ChunkEntry[] wheel = new ChunkEntry[WHEEL_SIZE];
+        private ChunkEntry[] table = new ChunkEntry[INITIAL_SEGMENT_CAPACITY];
+        private int size = 0;
 
-            final ChunkEntry that = (ChunkEntry) o;
+        @Nullable
+        private ChunkEntry get(long id) {
+            ChunkEntry entry = table[indexFor(id, table.length)];
+            while (entry != null && entry.id != id) {
+                entry = entry.hashNext;
+            }
+            return entry;
+        }
 
-            if (firstTimestamp != that.firstTimestamp) return false;
-            if (!chunkSlotsWritten.equals(that.chunkSlotsWritten)) return false;
-            //noinspection RedundantIfStatement
-            if (!payloadArray.equals(that.payloadArray)) return false;
+        private void put(ChunkEntry entry) {
+            if (size >= table.length * 3 / 4) {
+                resize();
+            }
+            final int index = indexFor(entry.id, table.length);
+            entry.hashNext = table[index];
+            table[index] = entry;
+            size++;
 
-            return true;
+            final int slot = slotFor(entry.tick);
+            entry.wheelPrev = null;
+            entry.wheelNext = wheel[slot];
+            if (wheel[slot] != null) {
+                wheel[slot].wheelPrev = entry;
+            }
+            wheel[slot] = entry;
         }
 
-        @Override
-        public int hashCode() {
-            int result = chunkSlotsWritten.hashCode();
-            result = 31 * result + (int) (firstTimestamp ^ (firstTimestamp >>> 32));
-            result = 31 * result + payloadArray.hashCode();
-            return result;
+        private void remove(ChunkEntry entry) {
+            final int index = indexFor(entry.id, table.length);
+            ChunkEntry previous = null;
+            ChunkEntry current = table[index];
+            while (current != null && current != entry) {
+                previous = current;
+                current = current.hashNext;
+            }
+            if (current == null) {
+                return;
+            }
+            if (previous == null) {
+                table[index] = entry.hashNext;
+            } else {
+                previous.hashNext = entry.hashNext;
+            }
+            entry.hashNext = null;
+            size--;
+
+            if (entry.wheelPrev == null) {
+                wheel[slotFor(entry.tick)] = entry.wheelNext;
+            } else {
+                entry.wheelPrev.wheelNext = entry.wheelNext;
+            }
+            if (entry.wheelNext != null) {
+                entry.wheelNext.wheelPrev = entry.wheelPrev;
+            }
+            entry.wheelPrev = null;
+            entry.wheelNext = null;
         }
 
-        @Override
-        public int compareTo(@Nonnull ChunkEntry o) {
-            if (equals(o)) {
-                return 0;
+        private void resize() {
+            final ChunkEntry[] newTable = new ChunkEntry[table.length * 2];
+            for (ChunkEntry head : table) {
+                ChunkEntry entry = head;
+                while (entry != null) {
+                    final ChunkEntry next = entry.hashNext;
+                    final int index = indexFor(entry.id, newTable.length);
+                    entry.hashNext = newTable[index];
+                    newTable[index] = entry;
+                    entry = next;
+                }
             }
-            return firstTimestamp < o.firstTimestamp ? -1 : 1;
+            table = newTable;
+        }
+
+        private static int indexFor(long id, int length) {
+            // the lower bits select the segment, use the upper ones within it
+            return (spread(id) >>> 6) & (length - 1);
+        }
+
+        private static int slotFor(long tick) {
+            return (int) (tick & (WHEEL_SIZE - 1));
         }
     }
 
     @VisibleForTesting
     class ChunkEvictionTask implements Runnable {
+        private long lastEvictedTick = -1;
+
         @Override
         public void run() {
+            // make sure to never throw an exception out of this runnable, it's being run in an executor
             try {
-                // loop until we've either evicted all outdated chunk entries, or the set is completely empty.
-                // this task will run every second by default (see constant in constructor)
-                while (true) {
-                    final ChunkEntry oldestChunkEntry = sortedEvictionSet.first();
-                    if (isOutdated(oldestChunkEntry)) {
-                        getAndCleanupEntry(oldestChunkEntry.id);
-                    } else {
-                        log.debug("No more outdated chunk entries found to evict, leaving cleanup loop.");
-                        break;
+                final long now = DateTimeUtils.currentTimeMillis();
+                // entries of older ticks are all outdated, those of expiredTick have to be checked one by one
+                final long expiredTick = (now - VALIDITY_PERIOD) / TICK_PERIOD;
+                final long firstTick = Math.max(lastEvictedTick + 1, expiredTick - WHEEL_SIZE + 1);
+
+                int evicted = 0;
+                for (final Segment segment : segments) {
+                    synchronized (segment) {
+                        for (long tick = firstTick; tick <= expiredTick; tick++) {
+                            evicted += evictSlot(segment, Segment.slotFor(tick), now);
+                        }
                     }
                 }
-            } catch (Exception ignored) {
-                // set empty, nothing more to do. make sure to never throw an exception out of this runnable, it's
-                // being run in an executor
-                log.debug("Eviction set empty, nothing more to do.");
+                lastEvictedTick = expiredTick - 1;
+                removeIdleSenders();
+
+                log.debug("Evicted {} outdated chunk entries.", evicted);
+            } catch (Exception e) {
+                log.warn("Error while evicting outdated GELF chunks.", e);
+            }
+        }
+
+        private int evictSlot(Segment segment, int slot, long now) {
+            int evicted = 0;
+            ChunkEntry entry = segment.wheel[slot];
+            while (entry != null) {
+                final ChunkEntry next = entry.wheelNext;
+                if (isOutdated(entry, now)) {
+                    log.debug("Not all chunks of <{}> arrived within {}ms. Dropping chunks.",
+                            Long.toHexString(entry.id), VALIDITY_PERIOD);
+                    segment.remove(entry);
+                    release(entry);
+                    expiredMessages.mark();
+                    expiredChunks.mark(entry.received);
+                    evicted++;
+                }
+                entry = next;
+            }
+            return evicted;
+        }
+
+        private void removeIdleSenders() {
+            final Iterator<Map.Entry<Object, AtomicLong>> iterator = senderBytes.entrySet().iterator();
+            while (iterator.hasNext()) {
+                // a sender that races with this removal keeps using its old counter until its message is done
+                if (iterator.next().getValue().get() == 0) {
+                    iterator.remove();
+                }
             }
         }
     }
@@ -17,8 +17,10 @@
 package org.graylog2.inputs.codecs;
 
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import org.graylog2.inputs.codecs.gelf.GELFMessage;
@@ -40,7 +42,8 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.Iterator;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
 
 @Codec(name = "gelf", displayName = "GELF")
@@ -58,114 +61,67 @@ public class GelfCodec extends AbstractCodec {
         objectMapper.configure(JsonParser.Feature.ALLOW_UNQUOTED_CONTROL_CHARS, true);
     }
 
-    private static String stringValue(final JsonNode json, final String fieldName) {
-        if (json != null) {
-            final JsonNode value = json.get(fieldName);
-
-            if (value != null) {
-                return value.asText();
-            }
-        }
-        return null;
-    }
-
-    private static long longValue(final JsonNode json, final String fieldName) {
-        if (json != null) {
-            final JsonNode value = json.get(fieldName);
-
-            if (value != null) {
-                return value.asLong(-1L);
-            }
-        }
-        return -1L;
-    }
-
-    private static int intValue(final JsonNode json, final String fieldName) {
-        if (json != null) {
-            final JsonNode value = json.get(fieldName);
-
-            if (value != null) {
-                return value.asInt(-1);
-            }
-        }
-        return -1;
-    }
-
-    private static double doubleValue(final JsonNode json, final String fieldName) {
-        if (json != null) {
-            final JsonNode value = json.get(fieldName);
-
-            if (value != null) {
-                return value.asDouble(-1.0);
-            }
-        }
-        return -1.0;
-    }
-
     @Nullable
     @Override
     public Message decode(@Nonnull final RawMessage rawMessage) {
-        final GELFMessage gelfMessage = new GELFMessage(rawMessage.getPayload());
-        final String json = gelfMessage.getJSON();
-
-        final JsonNode node;
-
-        try {
-            node = objectMapper.readTree(json);
+        final GELFMessage gelfMessage = new GELFMessage(rawMessage.getPayloadBuffer());
+
+        // parse straight from the (decompressed) payload bytes in a single pass, without an intermediate String or tree
+        final GelfFields gelf = new GelfFields();
+        try (final InputStream json = gelfMessage.getJSONStream();
+             final JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalStateException("GELF message is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String key = parser.getCurrentName();
+                parser.nextToken();
+                gelf.read(key, parser);
+            }
         } catch (final Exception e) {
             log.error("Could not parse JSON!", e);
             throw new IllegalStateException("JSON is null/could not be parsed (invalid JSON)", e);
         }
 
         // Timestamp.
-        final double messageTimestamp = doubleValue(node, "timestamp");
         final DateTime timestamp;
-        if (messageTimestamp <= 0) {
+        if (gelf.timestamp <= 0) {
             timestamp = rawMessage.getTimestamp();
         } else {
             // we treat this as a unix timestamp
-            timestamp = Tools.dateTimeFromDouble(messageTimestamp);
+            timestamp = Tools.dateTimeFromDouble(gelf.timestamp);
         }
 
         final Message message = new Message(
-                stringValue(node, "short_message"),
-                stringValue(node, "host"),
+                gelf.shortMessage,
+                gelf.host,
                 timestamp
         );
 
-        message.addField("full_message", stringValue(node, "full_message"));
+        message.addField("full_message", gelf.fullMessage);
 
-        final String file = stringValue(node, "file");
-
-        if (file != null && !file.isEmpty()) {
-            message.addField("file", file);
+        if (gelf.file != null && !gelf.file.isEmpty()) {
+            message.addField("file", gelf.file);
         }
 
-        final long line = longValue(node, "line");
-        if (line > -1) {
-            message.addField("line", line);
+        if (gelf.line > -1) {
+            message.addField("line", gelf.line);
         }
 
         // Level is set by server if not specified by client.
-        final int level = intValue(node, "level");
-        if (level > -1) {
-            message.addField("level", level);
+        if (gelf.level > -1) {
+            message.addField("level", gelf.level);
         }
 
         // Facility is set by server if not specified by client.
-        final String facility = stringValue(node, ("facility"));
-        if (facility != null && !facility.isEmpty()) {
-            message.addField("facility", facility);
+        if (gelf.facility != null && !gelf.facility.isEmpty()) {
+            message.addField("facility", gelf.facility);
         }
 
         // Add additional data if there is some.
-        final Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
-
-        while (fields.hasNext()) {
-            final Map.Entry<String, JsonNode> entry = fields.next();
-
+        for (final Map.Entry<String, Object> entry : gelf.fields.entrySet()) {
             String key = entry.getKey();
-            final JsonNode value = entry.getValue();
+            final Object fieldValue = entry.getValue();
 
             // Don't include GELF syntax underscore in message field key.
             if (key.startsWith("_") && key.length() > 1) {
@@ -182,21 +138,8 @@ public class GelfCodec extends AbstractCodec {
                 continue;
             }
 
-            // Convert JSON containers to Strings, and pick a suitable number representation.
-            final Object fieldValue;
-            if (value.isContainerNode()) {
-                fieldValue = value.toString();
-            } else if (value.isFloatingPointNumber()) {
-                fieldValue = value.asDouble();
-            } else if (value.isIntegralNumber()) {
-                fieldValue = value.asLong();
-            } else if (value.isNull()) {
-                log.debug("Field [{}] is NULL. Skipping.", key);
-                continue;
-            } else if (value.isTextual()) {
-                fieldValue = value.asText();
-            } else {
-                log.debug("Field [{}] has unknown value type. Skipping.", key);
+            if (fieldValue == null) {
+                log.debug("Field [{}] is NULL or has unknown value type. Skipping.", key);
                 continue;
             }
 
@@ -206,6 +149,108 @@ public class GelfCodec extends AbstractCodec {
         return message;
     }
 
+    /**
+     * Collects the well-known GELF fields and the converted values of all fields while streaming over the JSON object.
+     * The conversions match those of Jackson's {@link JsonNode} {@code asText()}, {@code asLong()} etc. methods.
+     */
+    private class GelfFields {
+        private double timestamp = -1.0;
+        private String shortMessage;
+        private String host;
+        private String fullMessage;
+        private String file;
+        private long line = -1L;
+        private int level = -1;
+        private String facility;
+        // keeps the order of the JSON object, duplicate keys keep their first position but the last value
+        private final Map<String, Object> fields = Maps.newLinkedHashMap();
+
+        private void read(String key, JsonParser parser) throws IOException {
+            final JsonToken token = parser.getCurrentToken();
+            if (token.isStructStart()) {
+                // containers are rare, only build a tree for this value to convert it to a String
+                final JsonNode node = objectMapper.readTree(parser);
+                readWellKnown(key, node.asText(), node.asDouble(-1.0), node.asLong(-1L), node.asInt(-1));
+                fields.put(key, node.toString());
+                return;
+            }
+
+            switch (key) {
+                case "timestamp":
+                    timestamp = parser.getValueAsDouble(-1.0);
+                    break;
+                case "line":
+                    line = parser.getValueAsLong(-1L);
+                    break;
+                case "level":
+                    level = parser.getValueAsInt(-1);
+                    break;
+                case "short_message":
+                case "host":
+                case "full_message":
+                case "file":
+                case "facility":
+                    readWellKnown(key, asText(parser), -1.0, -1L, -1);
+                    break;
+            }
+
+            // Pick a suitable number representation, null and boolean values are skipped.
+            switch (token) {
+                case VALUE_NUMBER_FLOAT:
+                    fields.put(key, parser.getDoubleValue());
+                    break;
+                case VALUE_NUMBER_INT:
+                    fields.put(key, parser.getValueAsLong());
+                    break;
+                case VALUE_STRING:
+                    fields.put(key, parser.getText());
+                    break;
+                default:
+                    fields.put(key, null);
+            }
+        }
+
+        private void readWellKnown(String key, String text, double doubleValue, long longValue, int intValue) {
+            switch (key) {
+                case "timestamp":
+                    timestamp = doubleValue;
+                    break;
+                case "short_message":
+                    shortMessage = text;
+                    break;
+                case "host":
+                    host = text;
+                    break;
+                case "full_message":
+                    fullMessage = text;
+                    break;
+                case "file":
+                    file = text;
+                    break;
+                case "line":
+                    line = longValue;
+                    break;
+                case "level":
+                    level = intValue;
+                    break;
+                case "facility":
+                    facility = text;
+                    break;
+            }
+        }
+
+        private String asText(JsonParser parser) throws IOException {
+            switch (parser.getCurrentToken()) {
+                case VALUE_NULL:
+                    return "null";
+                case VALUE_NUMBER_FLOAT:
+                    return String.valueOf(parser.getDoubleValue());
+                default:
+                    return parser.getText();
+            }
+        }
+    }
+
     @Nullable
     @Override
     public CodecAggregator getAggregator() {
@@ -35,7 +35,6 @@ import org.graylog2.plugin.journal.RawMessage;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 
@@ -65,7 +64,7 @@ public class JsonPathCodec extends AbstractCodec {
         if (jsonPath == null) {
             return null;
         }
-        final String json = new String(rawMessage.getPayload(), StandardCharsets.UTF_8);
+        final String json = rawMessage.getPayloadAsString();
         final Map<String, Object> fields = read(json);
 
         final Message message = new Message(buildShortMessage(fields),
@@ -54,7 +54,7 @@ public class RadioMessageCodec extends AbstractCodec {
     @Override
     public Message decode(@Nonnull RawMessage rawMessage) {
         try {
-            final RadioMessage msg = messagePack.read(rawMessage.getPayload(), RadioMessage.class);
+            final RadioMessage msg = messagePack.read(rawMessage.getPayloadInputStream(), RadioMessage.class);
 
             if (!msg.strings.containsKey("message") || !msg.strings.containsKey("source") || msg.timestamp <= 0) {
                 log.error("Incomplete AMQP message. Skipping.");
@@ -33,7 +33,6 @@
  */
 package org.graylog2.inputs.codecs;
 
-import com.google.common.base.Charsets;
 import com.google.common.net.InetAddresses;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
@@ -66,7 +65,7 @@ public class RawCodec extends AbstractCodec {
     public Message decode(@Nonnull RawMessage raw) {
         final ResolvableInetSocketAddress rawRemoteAddress = raw.getRemoteAddress();
         final InetAddress remoteAddress = rawRemoteAddress == null ? null : rawRemoteAddress.getAddress();
-        return new Message(new String(raw.getPayload(), Charsets.UTF_8),
+        return new Message(raw.getPayloadAsString(),
                            remoteAddress == null ? "unknown" : InetAddresses.toAddrString(remoteAddress), // do not resolve early
                            raw.getTimestamp());
     }
@@ -19,8 +19,11 @@ package org.graylog2.inputs.codecs;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
+import org.graylog2.inputs.codecs.syslog.SyslogParser;
+import org.graylog2.plugin.HostnameResolver;
 import org.graylog2.plugin.ResolvableInetSocketAddress;
 import org.graylog2.plugin.inputs.annotations.Codec;
 import org.graylog2.plugin.inputs.annotations.ConfigClass;
@@ -30,6 +33,8 @@ import org.graylog2.plugin.Tools;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.configuration.ConfigurationRequest;
 import org.graylog2.plugin.configuration.fields.BooleanField;
+import org.graylog2.plugin.configuration.fields.ConfigurationField;
+import org.graylog2.plugin.configuration.fields.DropdownField;
 import org.graylog2.plugin.inputs.codecs.AbstractCodec;
 import org.graylog2.plugin.inputs.codecs.CodecAggregator;
 import org.graylog2.plugin.inputs.transports.NettyTransport;
@@ -45,7 +50,6 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashMap;
@@ -66,21 +70,26 @@ public class SyslogCodec extends AbstractCodec {
     public static final String CK_ALLOW_OVERRIDE_DATE = "allow_override_date";
     public static final String CK_EXPAND_STRUCTURED_DATA = "expand_structured_data";
     public static final String CK_STORE_FULL_MESSAGE = "store_full_message";
+    public static final String CK_PARSER = "syslog_parser";
 
-    private final Timer resolveTime;
+    public static final String PARSER_SYSLOG4J = "syslog4j";
+    public static final String PARSER_NATIVE = "native";
+
+    private final HostnameResolver hostnameResolver;
     private final Timer decodeTime;
+    private final boolean useNativeParser;
 
     @AssistedInject
-    public SyslogCodec(@Assisted Configuration configuration, MetricRegistry metricRegistry) {
+    public SyslogCodec(@Assisted Configuration configuration, MetricRegistry metricRegistry, HostnameResolver hostnameResolver) {
         super(configuration);
-        this.resolveTime = metricRegistry.timer(name(SyslogCodec.class, "resolveTime"));
+        this.hostnameResolver = hostnameResolver;
         this.decodeTime = metricRegistry.timer(name(SyslogCodec.class, "decodeTime"));
+        this.useNativeParser = PARSER_NATIVE.equals(configuration.getString(CK_PARSER));
     }
 
     @Nullable
     @Override
     public Message decode(@Nonnull RawMessage rawMessage) {
-        final String msg = new String(rawMessage.getPayload(), StandardCharsets.UTF_8);
         try (Timer.Context ignored = this.decodeTime.time()) {
             final ResolvableInetSocketAddress address = rawMessage.getRemoteAddress();
             final InetSocketAddress remoteAddress;
@@ -89,13 +98,44 @@ public class SyslogCodec extends AbstractCodec {
             } else {
                 remoteAddress = address.getInetSocketAddress();
             }
-            return parse(msg, remoteAddress == null ? null: remoteAddress.getAddress(), rawMessage.getTimestamp());
+            final InetAddress inetAddress = remoteAddress == null ? null : remoteAddress.getAddress();
+
+            if (useNativeParser) {
+                final SyslogParser.SyslogEvent event = SyslogParser.parse(rawMessage.getPayloadBuffer());
+                if (event != null) {
+                    return parse(event, rawMessage, inetAddress);
+                }
+                LOG.debug("Message could not be handled by the native syslog parser, falling back to syslog4j.");
+            }
+
+            return parse(rawMessage.getPayloadAsString(), inetAddress, rawMessage.getTimestamp());
         } catch (ClassCastException e) {
             propagate(e);
         }
         return null;
     }
 
+    private Message parse(SyslogParser.SyslogEvent e, RawMessage rawMessage, InetAddress remoteAddress) {
+        // only copy the payload to log it if the date is missing
+        final DateTime date = e.getDate() != null ? e.getDate() : parseDate(null, rawMessage.getPayload(), rawMessage.getTimestamp());
+        final Message m = new Message(e.getMessage(), parseHost(e.getHost(), remoteAddress), date);
+        m.addField("facility", Tools.syslogFacilityToReadable(e.getFacility()));
+        m.addField("level", e.getLevel());
+
+        // Store full message if configured.
+        if (configuration.getBoolean(CK_STORE_FULL_MESSAGE)) {
+            m.addField("full_message", rawMessage.getPayloadAsString());
+        }
+
+        if (e.isStructured()) {
+            final boolean expandStructuredData = configuration.getBoolean(CK_EXPAND_STRUCTURED_DATA);
+            m.addFields(structuredFields(extractFields(e.getStructuredData(), expandStructuredData),
+                    e.getApplicationName(), e.getProcessId()));
+        }
+
+        return m;
+    }
+
     private Message parse(String msg, InetAddress remoteAddress, DateTime receivedTimestamp) {
         /*
          * ZOMG funny 80s neckbeard protocols. We are now deciding if to parse
@@ -128,7 +168,8 @@ public class SyslogCodec extends AbstractCodec {
 
         }
 
-        final Message m = new Message(e.getMessage(), parseHost(e, remoteAddress), parseDate(e, receivedTimestamp));
+        final Message m = new Message(e.getMessage(), parseHost(e.getHost(), remoteAddress),
+                parseDate(e.getDate() == null ? null : new DateTime(e.getDate()), e.getRaw(), receivedTimestamp));
         m.addField("facility", Tools.syslogFacilityToReadable(e.getFacility()));
         m.addField("level", e.getLevel());
 
@@ -149,49 +190,53 @@ public class SyslogCodec extends AbstractCodec {
         // Structured syslog has more data we can parse.
         if (msg instanceof StructuredSyslogServerEvent) {
             final StructuredSyslogServerEvent sMsg = (StructuredSyslogServerEvent) msg;
-            final Map<String, Object> structuredData = new HashMap<>(extractFields(sMsg, expand));
+            return structuredFields(extractFields(sMsg, expand), sMsg.getApplicationName(), sMsg.getProcessId());
+        } else {
+            return Collections.emptyMap();
+        }
+    }
 
-            if (!isNullOrEmpty(sMsg.getApplicationName())) {
-                structuredData.put("application_name", sMsg.getApplicationName());
-            }
+    private Map<String, Object> structuredFields(Map<String, Object> fields, String applicationName, String processId) {
+        final Map<String, Object> structuredData = new HashMap<>(fields);
 
-            if (!isNullOrEmpty(sMsg.getProcessId())) {
-                structuredData.put("process_id", sMsg.getProcessId());
-            }
+        if (!isNullOrEmpty(applicationName)) {
+            structuredData.put("application_name", applicationName);
+        }
 
-            return structuredData;
-        } else {
-            return Collections.emptyMap();
+        if (!isNullOrEmpty(processId)) {
+            structuredData.put("process_id", processId);
         }
+
+        return structuredData;
     }
 
-    private String parseHost(SyslogServerEventIF msg, InetAddress remoteAddress) {
+    private String parseHost(String host, InetAddress remoteAddress) {
         if (remoteAddress != null && configuration.getBoolean(CK_FORCE_RDNS)) {
-            try (Timer.Context ignored = this.resolveTime.time()) {
-                return Tools.rdnsLookup(remoteAddress);
-            } catch (UnknownHostException e) {
-                LOG.warn("Reverse DNS lookup failed. Falling back to parsed hostname.", e);
+            // never blocks, addresses which have not been resolved yet keep their parsed hostname for now
+            final String hostName = hostnameResolver.lookup(remoteAddress);
+            if (hostName != null) {
+                return hostName;
             }
         }
 
-        return msg.getHost();
+        return host;
     }
 
-    private DateTime parseDate(SyslogServerEventIF msg, DateTime receivedTimestamp) throws IllegalStateException {
+    private DateTime parseDate(DateTime date, byte[] raw, DateTime receivedTimestamp) throws IllegalStateException {
         // Check if date could be parsed.
-        if (msg.getDate() == null) {
+        if (date == null) {
             if (configuration.getBoolean(CK_ALLOW_OVERRIDE_DATE)) {
                 LOG.debug("Date could not be parsed. Was set to NOW because {} is true.", CK_ALLOW_OVERRIDE_DATE);
                 return receivedTimestamp;
             } else {
                 LOG.warn("Syslog message is missing date or date could not be parsed. (Possibly set {} to true) "
                                 + "Not further handling. Message was: {}",
-                        CK_ALLOW_OVERRIDE_DATE, new String(msg.getRaw(), StandardCharsets.UTF_8));
+                        CK_ALLOW_OVERRIDE_DATE, new String(raw, StandardCharsets.UTF_8));
                 throw new IllegalStateException("Syslog message is missing date or date could not be parsed.");
             }
         }
 
-        return new DateTime(msg.getDate());
+        return date;
     }
 
     @Nullable
@@ -220,7 +265,8 @@ public class SyslogCodec extends AbstractCodec {
                             CK_FORCE_RDNS,
                             "Force rDNS?",
                             false,
-                            "Force rDNS resolution of hostname? Use if hostname cannot be parsed."
+                            "Force rDNS resolution of hostname? Use if hostname cannot be parsed. Lookups happen in the background, "
+                                    + "messages keep their parsed hostname until the address has been resolved."
                     )
             );
 
@@ -251,6 +297,19 @@ public class SyslogCodec extends AbstractCodec {
                     )
             );
 
+            r.addField(
+                    new DropdownField(
+                            CK_PARSER,
+                            "Syslog parser",
+                            PARSER_SYSLOG4J,
+                            ImmutableMap.of(
+                                    PARSER_SYSLOG4J, "syslog4j",
+                                    PARSER_NATIVE, "Native (faster, falls back to syslog4j)"),
+                            "The native parser handles RFC 3164 and RFC 5424 messages without syslog4j and produces the same fields.",
+                            ConfigurationField.Optional.OPTIONAL
+                    )
+            );
+
             return r;
         }
 
@@ -266,25 +325,28 @@ public class SyslogCodec extends AbstractCodec {
     @VisibleForTesting
     Map<String, Object> extractFields(final StructuredSyslogServerEvent msg, final boolean expand) {
         try {
-            final Map<String, Map<String, String>> raw = msg.getStructuredMessage().getStructuredData();
-
-            if (raw != null && !raw.isEmpty()) {
-                final Map<String, Object> fields = new HashMap<>();
-                for (Map.Entry<String, Map<String, String>> entry : raw.entrySet()) {
-                    if (expand) {
-                        fields.putAll(prefixElements(entry.getKey(), entry.getValue()));
-                    } else {
-                        fields.putAll(entry.getValue());
-                    }
-                }
-                return fields;
-            }
+            return extractFields(msg.getStructuredMessage().getStructuredData(), expand);
         } catch (Exception e) {
             LOG.debug("Could not extract structured syslog", e);
         }
         return Collections.emptyMap();
     }
 
+    private Map<String, Object> extractFields(final Map<String, Map<String, String>> raw, final boolean expand) {
+        if (raw != null && !raw.isEmpty()) {
+            final Map<String, Object> fields = new HashMap<>();
+            for (Map.Entry<String, Map<String, String>> entry : raw.entrySet()) {
+                if (expand) {
+                    fields.putAll(prefixElements(entry.getKey(), entry.getValue()));
+                } else {
+                    fields.putAll(entry.getValue());
+                }
+            }
+            return fields;
+        }
+        return Collections.emptyMap();
+    }
+
     private Map<String, String> prefixElements(final String prefix, final Map<String, String> elements) {
         if (elements == null || elements.isEmpty()) {
             return Collections.emptyMap();
@@ -16,9 +16,13 @@
  */
 package org.graylog2.inputs.codecs.gelf;
 
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import org.graylog2.plugin.Decompressor;
 import org.graylog2.plugin.Tools;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 /**
@@ -26,7 +30,7 @@ import java.nio.charset.Charset;
  */
 public class GELFMessage {
 
-    private final byte[] payload;
+    private final ByteBuffer payload;
 
     public static final String ADDITIONAL_FIELD_PREFIX = "_";
 
@@ -116,25 +120,62 @@ public class GELFMessage {
      * @see GELFMessage.Type
      */
     public GELFMessage(final byte[] payload) {
+        this(ByteBuffer.wrap(payload));
+    }
+
+    /**
+     * @param payload Compressed or uncompressed, the payload is read from its current position without copying it
+     * @see GELFMessage.Type
+     */
+    public GELFMessage(final ByteBuffer payload) {
         this.payload = payload;
     }
 
     public Type getGELFType() {
-        if (payload.length < Type.HEADER_SIZE) {
+        if (payload.remaining() < Type.HEADER_SIZE) {
             throw new IllegalStateException("GELF message is too short. Not even the type header would fit.");
         }
-        return Type.determineType(payload[0], payload[1]);
+        return Type.determineType(payload.get(payload.position()), payload.get(payload.position() + 1));
+    }
+
+    /**
+     * Returns a stream of the uncompressed JSON bytes, which avoids copying the payload into an intermediate
+     * {@link String} like {@link #getJSON()} does. The stream has to be closed by the caller.
+     * <p>
+     * Compressed payloads are inflated by the calling thread's {@link Decompressor}, so the stream must be consumed
+     * before this thread decompresses another message.
+     * </p>
+     *
+     * @return the (uncompressed) JSON bytes of this message
+     */
+    public InputStream getJSONStream() {
+        try {
+            switch (getGELFType()) {
+                case ZLIB:
+                    return new ByteBufferBackedInputStream(Decompressor.get().inflateZlib(payload));
+                case GZIP:
+                    return new ByteBufferBackedInputStream(Decompressor.get().inflateGzip(payload));
+                case UNCOMPRESSED:
+                    return new ByteBufferBackedInputStream(payload.duplicate());
+                case CHUNKED:
+                case UNSUPPORTED:
+                    throw new IllegalStateException("Unknown GELF type. Not supported.");
+            }
+        } catch (final IOException e) {
+            throw new IllegalStateException("Failed to decompress the GELF message payload", e);
+        }
+        return null;
     }
 
     public String getJSON(){
         try {
             switch(getGELFType()) {
                 case ZLIB:
-                    return Tools.decompressZlib(payload);
+                    return Tools.decompressZlib(getPayload());
                 case GZIP:
-                    return Tools.decompressGzip(payload);
+                    return Tools.decompressGzip(getPayload());
                 case UNCOMPRESSED:
-                    return new String(payload, UTF8_CHARSET);
+                    return new String(getPayload(), UTF8_CHARSET);
                 case CHUNKED:
                 case UNSUPPORTED:
                     throw new IllegalStateException("Unknown GELF type. Not supported.");
@@ -149,6 +190,13 @@ public class GELFMessage {
     }
 
     public byte[] getPayload() {
-        return payload;
+        if (payload.hasArray() && payload.arrayOffset() == 0 && payload.position() == 0
+                && payload.remaining() == payload.array().length) {
+            return payload.array();
+        }
+
+        final byte[] bytes = new byte[payload.remaining()];
+        payload.duplicate().get(bytes);
+        return bytes;
     }
 }
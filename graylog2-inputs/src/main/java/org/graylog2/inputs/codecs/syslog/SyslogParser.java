@@ -0,0 +1,488 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.inputs.codecs.syslog;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parses RFC 3164 and RFC 5424 syslog messages in a single pass over the raw bytes.
+ * <p>
+ * The parser yields the same results as the syslog4j events used by {@link org.graylog2.inputs.codecs.SyslogCodec}
+ * for the message layouts it understands, including syslog4j's leniencies (e. g. the MSGID and structured data stay
+ * part of the message of RFC 5424 messages). For everything else, like a missing PRI, dates syslog4j would only parse
+ * leniently or dates it would replace with the current time, {@link #parse(ByteBuffer)} returns {@code null} and the caller
+ * is expected to fall back to syslog4j.
+ * </p>
+ * <p>
+ * All delimiters are ASCII characters, which never occur within multi-byte UTF-8 sequences, so the parser works on the
+ * undecoded bytes, without copying them, and only decodes the fields it extracts.
+ * </p>
+ */
+public final class SyslogParser {
+    private static final DateTimeFormatter ISO_DATE_PARSER = ISODateTimeFormat.dateTimeParser();
+    private static final DateTimeFormatter ISO_DATE_PARSER_OFFSET = ISO_DATE_PARSER.withOffsetParsed();
+
+    private static final String[] MONTHS = {"jan", "feb", "mar", "apr", "may", "jun", "jul", "aug", "sep", "oct", "nov", "dec"};
+    private static final String NIL_VALUE = "-";
+    private static final String DEFAULT_APPLICATION_NAME = "unknown";
+    private static final byte[] EMPTY_STRUCTURED_DATA_PREFIX = {'-', ' ', '-', ' '};
+    private static final byte[] EMPTY_STRUCTURED_DATA = {'[', '0', '@', '0', ']'};
+
+    // syslog4j only looks for a date if the message after the PRI is longer than this
+    private static final int MIN_RFC3164_DATE_MESSAGE_LENGTH = 17;
+
+    private SyslogParser() {
+    }
+
+    /**
+     * @param payload the raw syslog message
+     * @return the parsed message or {@code null} if the message has to be parsed by syslog4j
+     */
+    @Nullable
+    public static SyslogEvent parse(final byte[] payload) {
+        return parse(ByteBuffer.wrap(payload));
+    }
+
+    /**
+     * @param buffer the raw syslog message, between the buffer's position and limit. The buffer is not modified.
+     * @return the parsed message or {@code null} if the message has to be parsed by syslog4j
+     */
+    @Nullable
+    public static SyslogEvent parse(final ByteBuffer buffer) {
+        // all offsets below are relative to the start of the message
+        final ByteBuffer payload = buffer.slice();
+        final int length = payload.limit();
+        if (length < 3 || payload.get(0) != '<') {
+            return null;
+        }
+
+        // PRI, the closing bracket has to be within the first five characters
+        int pos = 1;
+        int priority = 0;
+        while (pos < length && pos < 4 && isDigit(payload.get(pos))) {
+            priority = priority * 10 + (payload.get(pos) - '0');
+            pos++;
+        }
+        if (pos == 1 || pos >= length || payload.get(pos) != '>') {
+            return null;
+        }
+        pos++;
+
+        final SyslogEvent event = new SyslogEvent();
+        event.facility = priority >> 3;
+        event.level = priority - (event.facility << 3);
+
+        // a VERSION after the PRI marks RFC 5424 messages
+        final boolean parsed;
+        if (pos < length && isDigit(payload.get(pos))) {
+            parsed = parseStructured(payload, pos, event);
+        } else {
+            parsed = parseUnstructured(payload, pos, event);
+        }
+
+        return parsed ? event : null;
+    }
+
+    private static boolean parseUnstructured(final ByteBuffer payload, final int offset, final SyslogEvent event) {
+        final int length = payload.limit();
+        int pos = offset;
+
+        if (length - offset >= MIN_RFC3164_DATE_MESSAGE_LENGTH) {
+            // the character based checks below need the beginning of the message to be ASCII
+            for (int i = offset; i < offset + MIN_RFC3164_DATE_MESSAGE_LENGTH; i++) {
+                if (payload.get(i) < 0) {
+                    return false;
+                }
+            }
+
+            if (isDigit(payload.get(offset))) {
+                // ISO 8601 date
+                final int dateEnd = indexOf(payload, (byte) ' ', offset, length);
+                if (dateEnd == -1) {
+                    return false;
+                }
+                try {
+                    event.timestamp = ISO_DATE_PARSER_OFFSET.parseMillis(decode(payload, offset, dateEnd));
+                } catch (RuntimeException e) {
+                    return false;
+                }
+                pos = dateEnd + 1;
+            } else {
+                // "MMM dd HH:mm:ss" or "MMM d HH:mm:ss", the character following the date is skipped
+                final boolean singleDigitDay = payload.get(offset + 5) == ' ';
+                final int timeOffset = offset + (singleDigitDay ? 6 : 7);
+                final int month = parseMonth(payload, offset);
+                final int day = singleDigitDay ? parseDigits(payload, offset + 4, 1) : parseDay(payload, offset + 4);
+                final int hour = parseDigits(payload, timeOffset, 2);
+                final int minute = parseDigits(payload, timeOffset + 3, 2);
+                final int second = parseDigits(payload, timeOffset + 6, 2);
+                if (month == -1 || day < 1 || day > 31 || hour == -1 || hour > 23 || minute == -1 || minute > 59
+                        || second == -1 || second > 59 || payload.get(offset + 3) != ' '
+                        || payload.get(timeOffset - 1) != ' ' || payload.get(timeOffset + 2) != ':' || payload.get(timeOffset + 5) != ':') {
+                    return false;
+                }
+                try {
+                    final DateTime now = new DateTime();
+                    event.timestamp = new DateTime(now.getYear(), month, day, hour, minute, second, 0).getMillis();
+                } catch (IllegalArgumentException e) {
+                    // invalid day of month or local time within a DST gap, syslog4j parses those leniently
+                    return false;
+                }
+                pos = timeOffset + 9;
+            }
+        }
+
+        // the host name stays part of the message
+        final int hostEnd = indexOf(payload, (byte) ' ', pos, length);
+        if (hostEnd != -1) {
+            event.host = decodeTrimmed(payload, pos, hostEnd);
+        }
+        event.message = decode(payload, pos, length);
+        return true;
+    }
+
+    private static boolean parseStructured(final ByteBuffer payload, final int offset, final SyslogEvent event) {
+        final int length = payload.limit();
+
+        final int versionEnd = indexOf(payload, (byte) ' ', offset, length);
+        if (versionEnd == -1) {
+            return false;
+        }
+        final int dateStart = versionEnd + 1;
+        final int dateEnd = indexOf(payload, (byte) ' ', dateStart, length);
+        if (dateEnd == -1 || dateEnd == dateStart) {
+            return false;
+        }
+        for (int i = dateStart; i < dateEnd; i++) {
+            if (payload.get(i) <= ' ') {
+                return false;
+            }
+        }
+        try {
+            event.timestamp = ISO_DATE_PARSER.parseMillis(decode(payload, dateStart, dateEnd));
+        } catch (RuntimeException e) {
+            // syslog4j retries these as RFC 3164 dates
+            return false;
+        }
+
+        int pos = dateEnd + 1;
+        String applicationName = DEFAULT_APPLICATION_NAME;
+        final int hostEnd = indexOf(payload, (byte) ' ', pos, length);
+        if (hostEnd != -1) {
+            event.host = decodeTrimmed(payload, pos, hostEnd);
+            pos = hostEnd + 1;
+
+            final int applicationNameEnd = indexOf(payload, (byte) ' ', pos, length);
+            if (applicationNameEnd != -1) {
+                applicationName = decodeTrimmed(payload, pos, applicationNameEnd);
+                pos = applicationNameEnd + 1;
+
+                final int processIdEnd = indexOf(payload, (byte) ' ', pos, length);
+                if (processIdEnd != -1) {
+                    event.processId = nilToNull(decodeTrimmed(payload, pos, processIdEnd));
+                    pos = processIdEnd + 1;
+                }
+            }
+        }
+        event.applicationName = nilToNull(applicationName);
+        event.structured = true;
+        event.message = decode(payload, pos, length);
+
+        final int messageIdEnd = indexOf(payload, (byte) ' ', pos, length);
+        if (messageIdEnd != -1) {
+            event.messageId = nilToNull(decode(payload, pos, messageIdEnd));
+        }
+        event.structuredData = parseStructuredData(payload, pos);
+
+        return true;
+    }
+
+    /**
+     * Parses the structured data the way syslog4j's {@code StructuredSyslogMessage} does, returning {@code null} for
+     * everything syslog4j rejects.
+     */
+    @Nullable
+    private static Map<String, Map<String, String>> parseStructuredData(final ByteBuffer payload, final int offset) {
+        final int length = payload.limit();
+        if (startsWith(payload, offset, EMPTY_STRUCTURED_DATA_PREFIX)) {
+            return null;
+        }
+
+        int start = indexOf(payload, (byte) '[', offset, length);
+        if (start <= offset) {
+            return null;
+        }
+
+        // the MSGID has to be the only token in front of the structured data
+        int headerEnd = start;
+        while (headerEnd > offset && payload.get(headerEnd - 1) == ' ') {
+            headerEnd--;
+        }
+        if (headerEnd == offset || indexOf(payload, (byte) ' ', offset, headerEnd) != -1) {
+            return null;
+        }
+
+        if (indexOf(payload, EMPTY_STRUCTURED_DATA, offset, length) != -1) {
+            return null;
+        }
+
+        final Map<String, Map<String, String>> structuredData = new HashMap<>();
+        while (start < length && payload.get(start) == '[') {
+            final int end = matchChar(payload, start, ']', ']');
+            if (end == -1) {
+                return null;
+            }
+
+            String id = null;
+            final Map<String, String> params = new HashMap<>();
+            while (start < end) {
+                if (id == null) {
+                    // the SD-ID is either followed by parameters or the end of the element
+                    final int idEnd = matchChar(payload, ++start, ']', ' ');
+                    if (idEnd == -1) {
+                        return null;
+                    }
+                    id = decode(payload, start, idEnd);
+                    start = idEnd;
+                } else {
+                    if (payload.get(start) != ' ') {
+                        return null;
+                    }
+                    start++;
+                    final int equalsIndex = indexOf(payload, (byte) '=', start, length);
+                    if (equalsIndex == -1 || equalsIndex + 1 >= length || payload.get(equalsIndex + 1) != '"') {
+                        return null;
+                    }
+                    final int valueEnd = matchChar(payload, equalsIndex + 2, '"', '"');
+                    if (valueEnd == -1) {
+                        return null;
+                    }
+                    params.put(decode(payload, start, equalsIndex), unescape(payload, equalsIndex + 2, valueEnd));
+                    start = valueEnd + 1;
+                }
+            }
+            start++;
+            structuredData.put(id, params);
+        }
+
+        return structuredData.isEmpty() ? null : structuredData;
+    }
+
+    private static int parseMonth(final ByteBuffer payload, final int offset) {
+        for (int i = 0; i < MONTHS.length; i++) {
+            final String month = MONTHS[i];
+            if (Character.toLowerCase(payload.get(offset)) == month.charAt(0)
+                    && Character.toLowerCase(payload.get(offset + 1)) == month.charAt(1)
+                    && Character.toLowerCase(payload.get(offset + 2)) == month.charAt(2)) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int parseDay(final ByteBuffer payload, final int offset) {
+        // space padded days are accepted as well
+        if (payload.get(offset) == ' ') {
+            return parseDigits(payload, offset + 1, 1);
+        }
+        return parseDigits(payload, offset, 2);
+    }
+
+    private static int parseDigits(final ByteBuffer payload, final int offset, final int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            if (!isDigit(payload.get(i))) {
+                return -1;
+            }
+            value = value * 10 + (payload.get(i) - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Finds the first of the given characters, skipping backslash escaped characters.
+     */
+    private static int matchChar(final ByteBuffer payload, final int offset, final char first, final char second) {
+        int pos = offset;
+        while (pos < payload.limit()) {
+            final byte b = payload.get(pos);
+            if (b == '\\') {
+                pos += 2;
+            } else if (b == first || b == second) {
+                return pos;
+            } else {
+                pos++;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(final ByteBuffer payload, final byte b, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (payload.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(final ByteBuffer payload, final byte[] needle, final int from, final int to) {
+        for (int i = from; i <= to - needle.length; i++) {
+            if (startsWith(payload, i, needle)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(final ByteBuffer payload, final int offset, final byte[] prefix) {
+        if (payload.limit() - offset < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (payload.get(offset + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(final byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static String decode(final ByteBuffer payload, final int from, final int to) {
+        final ByteBuffer field = payload.duplicate();
+        field.limit(to);
+        field.position(from);
+        return StandardCharsets.UTF_8.decode(field).toString();
+    }
+
+    private static String decodeTrimmed(final ByteBuffer payload, final int from, final int to) {
+        int start = from;
+        int end = to;
+        while (start < end && (payload.get(start) & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (payload.get(end - 1) & 0xff) <= ' ') {
+            end--;
+        }
+        return decode(payload, start, end);
+    }
+
+    private static String unescape(final ByteBuffer payload, final int from, final int to) {
+        if (indexOf(payload, (byte) '\\', from, to) == -1) {
+            return decode(payload, from, to);
+        }
+        // like syslog4j, drop every backslash
+        final byte[] unescaped = new byte[to - from];
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            if (payload.get(i) != '\\') {
+                unescaped[length++] = payload.get(i);
+            }
+        }
+        return new String(unescaped, 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Nullable
+    private static String nilToNull(final String value) {
+        return NIL_VALUE.equals(value) ? null : value;
+    }
+
+    /**
+     * A parsed syslog message.
+     */
+    public static final class SyslogEvent {
+        private int facility;
+        private int level;
+        private Long timestamp;
+        private String host;
+        private String message;
+        private boolean structured = false;
+        private String applicationName;
+        private String processId;
+        private String messageId;
+        private Map<String, Map<String, String>> structuredData;
+
+        private SyslogEvent() {
+        }
+
+        public int getFacility() {
+            return facility;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        /**
+         * @return the parsed date or {@code null} if the message didn't contain one
+         */
+        @Nullable
+        public DateTime getDate() {
+            return timestamp == null ? null : new DateTime(timestamp.longValue());
+        }
+
+        @Nullable
+        public String getHost() {
+            return host;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * @return {@code true} for RFC 5424 messages
+         */
+        public boolean isStructured() {
+            return structured;
+        }
+
+        @Nullable
+        public String getApplicationName() {
+            return applicationName;
+        }
+
+        @Nullable
+        public String getProcessId() {
+            return processId;
+        }
+
+        @Nullable
+        public String getMessageId() {
+            return messageId;
+        }
+
+        /**
+         * @return the structured data elements by SD-ID, or an empty map if there is none
+         */
+        public Map<String, Map<String, String>> getStructuredData() {
+            return structuredData == null ? Collections.<String, Map<String, String>>emptyMap() : structuredData;
+        }
+    }
+}
@@ -21,7 +21,7 @@ import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
 import org.graylog2.inputs.codecs.RawCodec;
-import org.graylog2.inputs.transports.FileSlurpTransport;
+import org.graylog2.inputs.transports.FileTailTransport;
 import org.graylog2.plugin.LocalMetricRegistry;
 import org.graylog2.plugin.ServerStatus;
 import org.graylog2.plugin.configuration.Configuration;
@@ -33,7 +33,7 @@ public class RawFileInput extends MessageInput {
 
     @AssistedInject
     public RawFileInput(@Assisted final Configuration configuration,
-                        final FileSlurpTransport.Factory tcpTransportFactory,
+                        final FileTailTransport.Factory transportFactory,
                         final RawCodec.Factory rawCodecFactory,
                         final MetricRegistry metricRegistry,
                         LocalMetricRegistry localRegistry,
@@ -42,7 +42,7 @@ public class RawFileInput extends MessageInput {
                         ServerStatus serverStatus) {
         super(metricRegistry,
               configuration,
-              tcpTransportFactory.create(configuration),
+              transportFactory.create(configuration),
               localRegistry, rawCodecFactory.create(configuration),
               config, descriptor, serverStatus);
     }
@@ -67,7 +67,7 @@ public class RawFileInput extends MessageInput {
 
     public static class Config extends MessageInput.Config {
         @Inject
-        public Config(FileSlurpTransport.Factory transport, RawCodec.Factory codec) {
+        public Config(FileTailTransport.Factory transport, RawCodec.Factory codec) {
             super(transport.getConfig(), codec.getConfig());
         }
     }
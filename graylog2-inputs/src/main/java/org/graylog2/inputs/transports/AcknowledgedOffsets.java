@@ -0,0 +1,81 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.inputs.transports;
+
+import org.graylog2.plugin.journal.RawMessage;
+
+import java.util.TreeSet;
+
+/**
+ * Tracks which of the messages consumed from a single broker sequence, like a Kafka partition or the deliveries of an
+ * AMQP channel, have been acknowledged.
+ * <p/>
+ * The sequence may only advance up to its oldest unacknowledged message, or past the last consumed message if everything
+ * has been acknowledged. Messages can be acknowledged in any order and the offsets do not have to be consecutive.
+ */
+class AcknowledgedOffsets {
+    private final TreeSet<Long> unacknowledged = new TreeSet<>();
+    private long nextOffset = -1;
+    private long advancedOffset = -1;
+
+    /**
+     * Records a consumed message.
+     *
+     * @return the acknowledger to attach to the message
+     */
+    public RawMessage.Acknowledger track(long offset) {
+        return track(offset, offset + 1);
+    }
+
+    /**
+     * Records a consumed message which is followed by the given offset, for sequences where the offsets are positions
+     * rather than message numbers.
+     *
+     * @return the acknowledger to attach to the message
+     */
+    public synchronized RawMessage.Acknowledger track(final long offset, long nextOffset) {
+        unacknowledged.add(offset);
+        this.nextOffset = Math.max(this.nextOffset, nextOffset);
+
+        return new RawMessage.Acknowledger() {
+            @Override
+            public void acknowledge() {
+                acknowledged(offset);
+            }
+        };
+    }
+
+    public synchronized void acknowledged(long offset) {
+        unacknowledged.remove(offset);
+    }
+
+    /**
+     * @return the offset following the acknowledged messages or {@code -1} if it did not change since the last call
+     */
+    public synchronized long advance() {
+        final long committable = unacknowledged.isEmpty() ? nextOffset : unacknowledged.first();
+        if (committable == advancedOffset) {
+            return -1;
+        }
+        advancedOffset = committable;
+        return committable;
+    }
+
+    public synchronized int unacknowledgedCount() {
+        return unacknowledged.size();
+    }
+}
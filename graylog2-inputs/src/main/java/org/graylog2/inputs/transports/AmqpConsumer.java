@@ -16,6 +16,7 @@
  */
 package org.graylog2.inputs.transports;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.Uninterruptibles;
 import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
@@ -31,7 +32,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -40,6 +45,10 @@ import static com.google.common.base.Strings.isNullOrEmpty;
 public class AmqpConsumer {
     private static final Logger LOG = LoggerFactory.getLogger(AmqpConsumer.class);
 
+    // deliveries are handed to the input in batches of at most this size, smaller batches are flushed periodically
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final long BATCH_FLUSH_INTERVAL_MS = 20;
+
     // Not threadsafe!
 
     private final String hostname;
@@ -54,19 +63,25 @@ public class AmqpConsumer {
     private final String routingKey;
 
     private Connection connection;
-    private Channel channel;
+    private volatile List<DeliveryChannel> channels = Collections.emptyList();
 
     private final MessageInput sourceInput;
     private final int parallelQueues;
+    private final int numberOfChannels;
     private AmqpTransport amqpTransport;
 
     private AtomicLong totalBytesRead = new AtomicLong(0);
     private AtomicLong lastSecBytesRead = new AtomicLong(0);
     private AtomicLong lastSecBytesReadTmp = new AtomicLong(0);
 
+    private final ScheduledExecutorService scheduler;
+    private final int batchSize;
+    private ScheduledFuture<?> batchFlusher;
+
     public AmqpConsumer(String hostname, int port, String virtualHost, String username, String password,
                         int prefetchCount, String queue, String exchange, String routingKey, int parallelQueues,
-                        MessageInput sourceInput, ScheduledExecutorService scheduler, AmqpTransport amqpTransport) {
+                        int numberOfChannels, MessageInput sourceInput, ScheduledExecutorService scheduler,
+                        AmqpTransport amqpTransport) {
         this.hostname = hostname;
         this.port = port;
         this.virtualHost = virtualHost;
@@ -80,8 +95,13 @@ public class AmqpConsumer {
 
         this.sourceInput = sourceInput;
         this.parallelQueues = parallelQueues;
+        this.numberOfChannels = Math.max(1, numberOfChannels);
         this.amqpTransport = amqpTransport;
 
+        this.scheduler = scheduler;
+        // never wait for more deliveries than the broker sends without acknowledgement
+        this.batchSize = prefetchCount > 0 ? Math.min(prefetchCount, MAX_BATCH_SIZE) : MAX_BATCH_SIZE;
+
         scheduler.scheduleAtFixedRate(new Runnable() {
             @Override
             public void run() {
@@ -95,59 +115,64 @@ public class AmqpConsumer {
             connect();
         }
 
-        for (int i = 0; i < parallelQueues; i++) {
-            final String queueName = String.format(queue, i);
-            channel.queueDeclare(queueName, true, false, false, null);
-            channel.basicConsume(queueName, false, new DefaultConsumer(channel) {
-                @Override
-                public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) throws IOException {
-                    long deliveryTag = envelope.getDeliveryTag();
-                    try {
+        for (final DeliveryChannel deliveryChannel : channels) {
+            final Channel channel = deliveryChannel.channel;
+            for (int i = 0; i < parallelQueues; i++) {
+                final String queueName = String.format(queue, i);
+                channel.queueDeclare(queueName, true, false, false, null);
+                channel.basicConsume(queueName, false, new DefaultConsumer(channel) {
+                    @Override
+                    public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) throws IOException {
                         totalBytesRead.addAndGet(body.length);
                         lastSecBytesReadTmp.addAndGet(body.length);
 
-                        final RawMessage rawMessage = new RawMessage(body);
-
                         // TODO figure out if we want to unsubscribe after a certain time, or if simply blocking is enough here
                         if (amqpTransport.isThrottled()) {
                             amqpTransport.blockUntilUnthrottled();
                         }
 
-                        sourceInput.processRawMessage(rawMessage);
-                        channel.basicAck(deliveryTag, false);
-                    } catch (Exception e) {
-                        LOG.error("Error while trying to process AMQP message, requeuing message", e);
-                        if (channel.isOpen()) {
-                            channel.basicNack(deliveryTag, false, true);
+                        deliveryChannel.add(envelope.getDeliveryTag(), new RawMessage(body));
+                    }
+                });
+            }
+        }
+
+        if (batchFlusher == null) {
+            batchFlusher = scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    for (DeliveryChannel deliveryChannel : channels) {
+                        try {
+                            deliveryChannel.flushBatch();
+                            deliveryChannel.acknowledgeJournalled();
+                        } catch (Exception e) {
+                            LOG.error("Unable to flush AMQP message batch", e);
                         }
                     }
                 }
-            });
+            }, BATCH_FLUSH_INTERVAL_MS, BATCH_FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
         }
     }
 
     public void connect() throws IOException {
-        final ConnectionFactory factory = new ConnectionFactory();
-        factory.setHost(hostname);
-        factory.setPort(port);
-        factory.setVirtualHost(virtualHost);
+        connection = newConnection();
 
-        // Authenticate?
-        if(!isNullOrEmpty(username) && !isNullOrEmpty(password)) {
-            factory.setUsername(username);
-            factory.setPassword(password);
-        }
-
-        connection = factory.newConnection();
-        channel = connection.createChannel();
+        final List<DeliveryChannel> newChannels = new ArrayList<>(numberOfChannels);
+        for (int i = 0; i < numberOfChannels; i++) {
+            final Channel channel = connection.createChannel();
+            if (null == channel) {
+                throw new IOException("No channel descriptor available!");
+            }
 
-        if(null == channel) {
-            LOG.error("No channel descriptor available!");
+            if (prefetchCount > 0) {
+                channel.basicQos(prefetchCount);
+            }
+            newChannels.add(new DeliveryChannel(channel));
         }
+        // deliveries of previous, lost channels are requeued by the broker
+        channels = newChannels;
 
-        if (null != channel && prefetchCount > 0) {
-            channel.basicQos(prefetchCount);
-
+        if (prefetchCount > 0) {
             LOG.info("AMQP prefetch count overriden to <{}>.", prefetchCount);
         }
 
@@ -180,10 +205,36 @@ public class AmqpConsumer {
         });
     }
 
+    @VisibleForTesting
+    Connection newConnection() throws IOException {
+        final ConnectionFactory factory = new ConnectionFactory();
+        factory.setHost(hostname);
+        factory.setPort(port);
+        factory.setVirtualHost(virtualHost);
+
+        // Authenticate?
+        if(!isNullOrEmpty(username) && !isNullOrEmpty(password)) {
+            factory.setUsername(username);
+            factory.setPassword(password);
+        }
+
+        return factory.newConnection();
+    }
 
     public void stop() throws IOException {
-        if (channel != null && channel.isOpen()) {
-            channel.close();
+        if (batchFlusher != null) {
+            batchFlusher.cancel(false);
+            batchFlusher = null;
+        }
+        for (DeliveryChannel deliveryChannel : channels) {
+            // hand over what has been received before closing the channel, afterwards the deliveries could not be
+            // acknowledged. deliveries which are not journalled yet are requeued by the broker and consumed again.
+            deliveryChannel.flushBatch();
+            deliveryChannel.acknowledgeJournalled();
+
+            if (deliveryChannel.channel.isOpen()) {
+                deliveryChannel.channel.close();
+            }
         }
 
         if (connection != null && connection.isOpen()) {
@@ -192,10 +243,15 @@ public class AmqpConsumer {
     }
 
     public boolean isConnected() {
-        return connection != null
-                && connection.isOpen()
-                && channel != null
-                && channel.isOpen();
+        if (connection == null || !connection.isOpen() || channels.isEmpty()) {
+            return false;
+        }
+        for (DeliveryChannel deliveryChannel : channels) {
+            if (!deliveryChannel.channel.isOpen()) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public AtomicLong getLastSecBytesRead() {
@@ -205,4 +261,74 @@ public class AmqpConsumer {
     public AtomicLong getTotalBytesRead() {
         return totalBytesRead;
     }
+
+    /**
+     * @return the number of received deliveries which have not been acknowledged to the broker yet
+     */
+    public long getUnacknowledgedDeliveries() {
+        long count = 0;
+        for (DeliveryChannel deliveryChannel : channels) {
+            count += deliveryChannel.deliveries.unacknowledgedCount();
+        }
+        return count;
+    }
+
+    /**
+     * Batches the deliveries of a channel and acknowledges them once they have been journalled.
+     */
+    private class DeliveryChannel {
+        private final Channel channel;
+        private final AcknowledgedOffsets deliveries = new AcknowledgedOffsets();
+        private final List<RawMessage> batch = new ArrayList<>();
+        // delivery tags are consecutive on a channel, so the batch contains the deliveries from the first to the last tag
+        private long firstDeliveryTag;
+        private long lastDeliveryTag;
+
+        private DeliveryChannel(Channel channel) {
+            this.channel = channel;
+        }
+
+        public synchronized void add(long deliveryTag, RawMessage rawMessage) throws IOException {
+            rawMessage.setAcknowledger(deliveries.track(deliveryTag));
+            if (batch.isEmpty()) {
+                firstDeliveryTag = deliveryTag;
+            }
+            batch.add(rawMessage);
+            lastDeliveryTag = deliveryTag;
+
+            if (batch.size() >= batchSize) {
+                flushBatch();
+            }
+        }
+
+        public synchronized void flushBatch() throws IOException {
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            try {
+                sourceInput.processRawMessages(batch);
+            } catch (Exception e) {
+                LOG.error("Error while trying to process AMQP messages, requeuing messages", e);
+                if (channel.isOpen()) {
+                    // single nacks, older deliveries of the channel might still be on their way into the journal
+                    for (long deliveryTag = firstDeliveryTag; deliveryTag <= lastDeliveryTag; deliveryTag++) {
+                        channel.basicNack(deliveryTag, false, true);
+                        deliveries.acknowledged(deliveryTag);
+                    }
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+
+        public synchronized void acknowledgeJournalled() throws IOException {
+            final long nextDeliveryTag = deliveries.advance();
+            // delivery tags start at 1, acknowledging tag 0 with "multiple" set would acknowledge all deliveries
+            if (nextDeliveryTag > 1 && channel.isOpen()) {
+                // acknowledges all deliveries up to and including the last journalled one
+                channel.basicAck(nextDeliveryTag - 1, true);
+            }
+        }
+    }
 }
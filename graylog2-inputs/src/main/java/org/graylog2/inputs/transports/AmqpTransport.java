@@ -54,6 +54,7 @@ public class AmqpTransport extends ThrottleableTransport {
     public static final String CK_QUEUE = "queue";
     public static final String CK_ROUTING_KEY = "routing_key";
     public static final String CK_PARALLEL_QUEUES = "parallel_queues";
+    public static final String CK_CHANNELS = "channels";
 
     private static final Logger LOG = LoggerFactory.getLogger(AmqpTransport.class);
 
@@ -95,6 +96,12 @@ public class AmqpTransport extends ThrottleableTransport {
                                     public Long getValue() { return 0L;
                                     }
                                 });
+        localRegistry.register("unacked_deliveries", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return consumer == null ? 0L : consumer.getUnacknowledgedDeliveries();
+            }
+        });
     }
 
     @Subscribe
@@ -148,6 +155,7 @@ public class AmqpTransport extends ThrottleableTransport {
                 configuration.getString(CK_EXCHANGE),
                 configuration.getString(CK_ROUTING_KEY),
                 configuration.getInt(CK_PARALLEL_QUEUES),
+                configuration.intIsSet(CK_CHANNELS) ? configuration.getInt(CK_CHANNELS) : 1,
                 input,
                 scheduler,
                 this
@@ -249,7 +257,7 @@ public class AmqpTransport extends ThrottleableTransport {
                             CK_PREFETCH,
                             "Prefetch count",
                             100,
-                            "For advanced usage: AMQP prefetch count. Default is 100.",
+                            "For advanced usage: AMQP prefetch count. Deliveries count against it until they have been journalled. Default is 100.",
                             ConfigurationField.Optional.NOT_OPTIONAL
                     )
             );
@@ -294,6 +302,17 @@ public class AmqpTransport extends ThrottleableTransport {
                     )
             );
 
+            cr.addField(
+                    new NumberField(
+                            CK_CHANNELS,
+                            "Number of channels",
+                            1,
+                            "Number of AMQP channels consuming the queues in parallel, each with its own prefetch count.",
+                            ConfigurationField.Optional.OPTIONAL,
+                            NumberField.Attribute.ONLY_POSITIVE
+                    )
+            );
+
             return cr;
         }
 
@@ -0,0 +1,450 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.inputs.transports;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricSet;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Maps;
+import com.google.common.eventbus.EventBus;
+import com.google.common.util.concurrent.AbstractExecutionThreadService;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.inject.assistedinject.Assisted;
+import com.google.inject.assistedinject.AssistedInject;
+import org.graylog2.plugin.LocalMetricRegistry;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.configuration.ConfigurationRequest;
+import org.graylog2.plugin.configuration.fields.BooleanField;
+import org.graylog2.plugin.configuration.fields.ConfigurationField;
+import org.graylog2.plugin.configuration.fields.NumberField;
+import org.graylog2.plugin.configuration.fields.TextField;
+import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.inputs.MisfireException;
+import org.graylog2.plugin.inputs.annotations.ConfigClass;
+import org.graylog2.plugin.inputs.annotations.FactoryClass;
+import org.graylog2.plugin.inputs.codecs.CodecAggregator;
+import org.graylog2.plugin.inputs.transports.ThrottleableTransport;
+import org.graylog2.plugin.inputs.transports.Transport;
+import org.graylog2.plugin.journal.RawMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Follows a set of local files like {@code tail -F}, picking up rotated and truncated files and resuming from the
+ * persisted positions after restarts.
+ */
+public class FileTailTransport extends ThrottleableTransport {
+    private static final Logger LOG = LoggerFactory.getLogger(FileTailTransport.class);
+
+    public static final String CK_FILE_PATH = "file_path";
+    public static final String CK_OFFSETS_DIR = "offsets_dir";
+    public static final String CK_READ_FROM_START = "read_from_start";
+    public static final String CK_MAX_LINE_LENGTH = "max_line_length";
+    public static final String CK_POLL_INTERVAL = "poll_interval";
+
+    // lines are handed to the input in batches of at most this size
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final long CHECKPOINT_INTERVAL_MS = 1000;
+
+    private final Configuration configuration;
+    private final LocalMetricRegistry localRegistry;
+    private final List<String> patterns;
+    private final long pollIntervalMs;
+    private final boolean readFromStart;
+    private final ByteBuffer buffer;
+    private final List<RawMessage> batch = new ArrayList<>(MAX_BATCH_SIZE);
+    // keyed by the file keys, so a rotated file is still recognized under its new name
+    private final Map<Object, FileTailer> tailers = Maps.newConcurrentMap();
+    private final AtomicLong totalBytesRead = new AtomicLong(0);
+
+    private MessageInput input;
+    private Path offsetsFile;
+    private Properties checkpoints = new Properties();
+    private boolean initialScan;
+    private long lastCheckpoint = 0;
+    private AbstractExecutionThreadService tailService;
+
+    @AssistedInject
+    public FileTailTransport(@Assisted Configuration configuration,
+                             EventBus eventBus,
+                             LocalMetricRegistry localRegistry) {
+        super(eventBus, configuration);
+        this.configuration = configuration;
+        this.localRegistry = localRegistry;
+        this.patterns = Splitter.on(',').omitEmptyStrings().trimResults().splitToList(
+                configuration.getString(CK_FILE_PATH));
+        this.pollIntervalMs = configuration.intIsSet(CK_POLL_INTERVAL) ? configuration.getInt(CK_POLL_INTERVAL) : 250;
+        this.readFromStart = configuration.getBoolean(CK_READ_FROM_START);
+        this.buffer = ByteBuffer.allocate(configuration.intIsSet(CK_MAX_LINE_LENGTH)
+                ? configuration.getInt(CK_MAX_LINE_LENGTH) : Config.DEFAULT_MAX_LINE_LENGTH);
+
+        localRegistry.register("read_bytes_total", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return totalBytesRead.get();
+            }
+        });
+        localRegistry.register("open_files", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return tailers.size();
+            }
+        });
+    }
+
+    @Override
+    public void setMessageAggregator(CodecAggregator aggregator) {
+    }
+
+    @Override
+    public void doLaunch(MessageInput input) throws MisfireException {
+        if (patterns.isEmpty()) {
+            throw new MisfireException("No files to read configured.");
+        }
+
+        try {
+            initialize(input);
+        } catch (IOException e) {
+            throw new MisfireException("Unable to read file offsets.", e);
+        }
+
+        tailService = new AbstractExecutionThreadService() {
+            @Override
+            protected void run() throws Exception {
+                while (isRunning()) {
+                    final boolean dataRead;
+                    try {
+                        dataRead = poll();
+                    } catch (IOException e) {
+                        LOG.error("Unable to read files " + patterns, e);
+                        Uninterruptibles.sleepUninterruptibly(1, TimeUnit.SECONDS);
+                        continue;
+                    }
+                    if (!dataRead) {
+                        Uninterruptibles.sleepUninterruptibly(pollIntervalMs, TimeUnit.MILLISECONDS);
+                    }
+                }
+            }
+
+            @Override
+            protected void shutDown() throws Exception {
+                close();
+            }
+
+            @Override
+            protected String serviceName() {
+                return "file-tail-" + FileTailTransport.this.input.getId();
+            }
+        };
+        tailService.startAsync().awaitRunning();
+    }
+
+    @Override
+    public void doStop() {
+        if (tailService != null) {
+            tailService.stopAsync().awaitTerminated();
+            tailService = null;
+        }
+    }
+
+    void initialize(MessageInput input) throws IOException {
+        this.input = input;
+        final Path offsetsDir = Paths.get(configuration.getString(CK_OFFSETS_DIR));
+        Files.createDirectories(offsetsDir);
+        offsetsFile = offsetsDir.resolve(input.getId() + ".offsets");
+        checkpoints = loadCheckpoints(offsetsFile);
+
+        // files which exist at launch are read from their checkpoint or, without one, according to the configuration
+        initialScan = true;
+        for (Path path : expandPatterns().values()) {
+            startTailing(path);
+        }
+        initialScan = false;
+    }
+
+    /**
+     * Reads everything which has been appended to the files since the last call.
+     *
+     * @return whether any data has been read
+     */
+    boolean poll() throws IOException {
+        final Map<Object, Path> files = expandPatterns();
+
+        long bytesRead = 0;
+        final Iterator<FileTailer> iterator = tailers.values().iterator();
+        while (iterator.hasNext()) {
+            final FileTailer tailer = iterator.next();
+            final Object key = key(tailer.getPath(), tailer.getFileKey());
+            // files which have been renamed to a name matching the patterns are followed under their new name
+            final boolean matched = files.remove(key) != null;
+            final boolean rotated = !matched || !key.equals(key(tailer.getPath(), FileTailer.fileKey(tailer.getPath())));
+
+            if (!rotated && tailer.isTruncated()) {
+                LOG.info("File {} has been truncated, reading it from the start.", tailer.getPath());
+                tailer.restart();
+            }
+
+            bytesRead += readFile(tailer, rotated);
+
+            if (!matched && tailer.isFullyRead()) {
+                LOG.debug("File {} has been rotated, closing it.", tailer.getPath());
+                tailer.close();
+                iterator.remove();
+            }
+        }
+
+        // new files are read after their rotated predecessors have been finished
+        for (Path path : files.values()) {
+            final FileTailer tailer = startTailing(path);
+            if (tailer != null) {
+                bytesRead += readFile(tailer, false);
+            }
+        }
+        processBatch();
+        totalBytesRead.addAndGet(bytesRead);
+
+        final long now = System.currentTimeMillis();
+        if (now - lastCheckpoint >= CHECKPOINT_INTERVAL_MS) {
+            lastCheckpoint = now;
+            writeCheckpoints();
+        }
+
+        return bytesRead > 0;
+    }
+
+    private long readFile(FileTailer tailer, boolean endOfFile) throws IOException {
+        long bytesRead = 0;
+        int consumed;
+        do {
+            if (batch.size() >= MAX_BATCH_SIZE) {
+                processBatch();
+            }
+            consumed = tailer.read(buffer, batch, MAX_BATCH_SIZE - batch.size(), endOfFile);
+            bytesRead += consumed;
+        } while (consumed > 0 && (tailService == null || tailService.isRunning()));
+        return bytesRead;
+    }
+
+    private void processBatch() {
+        if (!batch.isEmpty()) {
+            input.processRawMessages(batch);
+        }
+        // the throttle rate is counted in messages, account for the whole batch at once, this also waits while paused
+        blockUntilUnthrottled(batch.size());
+        batch.clear();
+    }
+
+    /**
+     * @return the files matching the patterns by their keys, a file which is reachable under several names is only
+     * listed once
+     */
+    private Map<Object, Path> expandPatterns() throws IOException {
+        final Set<Path> paths = new TreeSet<>();
+        for (String pattern : patterns) {
+            final Path patternPath = Paths.get(pattern).toAbsolutePath();
+            final Path directory = patternPath.getParent();
+            if (directory == null || !Files.isDirectory(directory)) {
+                continue;
+            }
+
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, patternPath.getFileName().toString())) {
+                for (Path file : files) {
+                    paths.add(file);
+                }
+            } catch (NoSuchFileException e) {
+                LOG.debug("Directory {} has been removed.", directory);
+            }
+        }
+
+        final Map<Object, Path> files = Maps.newLinkedHashMap();
+        for (Path path : paths) {
+            final BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                continue;
+            }
+            final Object key = key(path, attributes.fileKey());
+            if (attributes.isRegularFile() && !files.containsKey(key)) {
+                files.put(key, path);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * File systems without file keys cannot tell a renamed file apart from its successor, files are identified by their
+     * paths there.
+     */
+    private static Object key(Path path, @Nullable Object fileKey) {
+        return fileKey == null ? path : fileKey;
+    }
+
+    @Nullable
+    private FileTailer startTailing(Path path) throws IOException {
+        final Object key = key(path, FileTailer.fileKey(path));
+        final long position;
+        final String checkpoint = checkpoints.getProperty(String.valueOf(key));
+        if (checkpoint != null) {
+            position = Long.parseLong(checkpoint.substring(0, checkpoint.indexOf(' ')));
+        } else if (initialScan && !readFromStart) {
+            position = Long.MAX_VALUE;
+        } else {
+            // files which show up while we are running have been created after we started, read them completely
+            position = 0;
+        }
+
+        try {
+            final FileTailer tailer = FileTailer.open(path, position);
+            tailers.put(key(path, tailer.getFileKey()), tailer);
+            LOG.debug("Reading file {} from position {}.", path, tailer.getPosition());
+            return tailer;
+        } catch (NoSuchFileException e) {
+            LOG.debug("File {} has been removed before it could be opened.", path);
+            return null;
+        }
+    }
+
+    private void writeCheckpoints() throws IOException {
+        final Properties newCheckpoints = new Properties();
+        for (FileTailer tailer : tailers.values()) {
+            // the path is only kept for reference, the file may be found under another name after a restart
+            newCheckpoints.setProperty(String.valueOf(key(tailer.getPath(), tailer.getFileKey())),
+                    tailer.getCheckpoint() + " " + tailer.getPath());
+        }
+        if (newCheckpoints.equals(checkpoints)) {
+            return;
+        }
+
+        // replace the file atomically, so a crash cannot leave a partially written file behind
+        final Path tmpFile = offsetsFile.resolveSibling(offsetsFile.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmpFile)) {
+            newCheckpoints.store(out, "Positions up to which the files have been journalled");
+        }
+        Files.move(tmpFile, offsetsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        checkpoints = newCheckpoints;
+    }
+
+    private static Properties loadCheckpoints(Path file) throws IOException {
+        final Properties properties = new Properties();
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                properties.load(in);
+            }
+        }
+        return properties;
+    }
+
+    void close() {
+        try {
+            writeCheckpoints();
+        } catch (IOException e) {
+            LOG.error("Unable to write file offsets.", e);
+        }
+        for (FileTailer tailer : tailers.values()) {
+            try {
+                tailer.close();
+            } catch (IOException e) {
+                LOG.debug("Unable to close file " + tailer.getPath(), e);
+            }
+        }
+        tailers.clear();
+    }
+
+    @Override
+    public MetricSet getMetricSet() {
+        return localRegistry;
+    }
+
+    @FactoryClass
+    public interface Factory extends Transport.Factory<FileTailTransport> {
+        @Override
+        FileTailTransport create(Configuration configuration);
+
+        @Override
+        Config getConfig();
+    }
+
+    @ConfigClass
+    public static class Config extends ThrottleableTransport.Config {
+        public static final int DEFAULT_MAX_LINE_LENGTH = 1024 * 1024;
+
+        @Override
+        public ConfigurationRequest getRequestedConfiguration() {
+            final ConfigurationRequest c = super.getRequestedConfiguration();
+            c.addField(new TextField(
+                    CK_FILE_PATH,
+                    "Files to read",
+                    "/var/log/app/*.log",
+                    "Comma separated list of files to read line-by-line as raw messages. File names may contain wildcards.",
+                    ConfigurationField.Optional.NOT_OPTIONAL
+            ));
+            c.addField(new TextField(
+                    CK_OFFSETS_DIR,
+                    "Offsets directory",
+                    "data/file-offsets",
+                    "Directory to store the positions up to which the files have been read in.",
+                    ConfigurationField.Optional.NOT_OPTIONAL
+            ));
+            c.addField(new BooleanField(
+                    CK_READ_FROM_START,
+                    "Read existing content",
+                    false,
+                    "Read files which exist when the input starts from the beginning instead of only new lines."
+            ));
+            c.addField(new NumberField(
+                    CK_MAX_LINE_LENGTH,
+                    "Maximum line length",
+                    DEFAULT_MAX_LINE_LENGTH,
+                    "Longer lines are split up into several messages.",
+                    ConfigurationField.Optional.OPTIONAL,
+                    NumberField.Attribute.ONLY_POSITIVE
+            ));
+            c.addField(new NumberField(
+                    CK_POLL_INTERVAL,
+                    "Poll interval (ms)",
+                    250,
+                    "How often to check the files for new data when there was nothing to read.",
+                    ConfigurationField.Optional.OPTIONAL,
+                    NumberField.Attribute.ONLY_POSITIVE
+            ));
+            return c;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.inputs.transports;
+
+import org.graylog2.plugin.journal.RawMessage;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+/**
+ * Reads the lines appended to a single file, keeping track of the position up to which they have been journalled.
+ * <p/>
+ * The file is identified by its file key (the inode on Unix systems), so a file which has been rotated away can be told
+ * apart from the new file which took over its path.
+ */
+class FileTailer implements Closeable {
+    private final Path path;
+    @Nullable
+    private final Object fileKey;
+    private final FileChannel channel;
+
+    private AcknowledgedOffsets acknowledgedOffsets = new AcknowledgedOffsets();
+    // the start of the first line which has not been handed over yet
+    private long position;
+    // the start of the first line which has not been journalled yet
+    private long checkpoint;
+
+    private FileTailer(Path path, @Nullable Object fileKey, FileChannel channel, long position) {
+        this.path = path;
+        this.fileKey = fileKey;
+        this.channel = channel;
+        this.position = position;
+        this.checkpoint = position;
+    }
+
+    public static FileTailer open(Path path, long position) throws IOException {
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new FileTailer(path, fileKey(path), channel, Math.min(position, channel.size()));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the file key of the file currently found at the given path or {@code null} if there is no such file or
+     * the file system does not provide file keys
+     */
+    @Nullable
+    public static Object fileKey(Path path) throws IOException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the next complete lines into the given batch.
+     *
+     * @param buffer        the read buffer, lines longer than its capacity are split up
+     * @param batch         the batch to add the messages to
+     * @param maxMessages   the maximum number of messages to add
+     * @param endOfFile     whether the file will not grow anymore, so an unterminated last line is complete as well
+     * @return the number of bytes consumed
+     */
+    public int read(ByteBuffer buffer, List<RawMessage> batch, int maxMessages, boolean endOfFile) throws IOException {
+        buffer.clear();
+        final int bytesRead = channel.read(buffer, position);
+        if (bytesRead <= 0) {
+            return 0;
+        }
+
+        int added = 0;
+        int lineStart = 0;
+        for (int i = 0; i < bytesRead && added < maxMessages; i++) {
+            if (buffer.get(i) == '\n') {
+                added += addLine(buffer, lineStart, i, i + 1, batch);
+                lineStart = i + 1;
+            }
+        }
+
+        if (added < maxMessages && lineStart < bytesRead) {
+            final boolean lineTooLong = lineStart == 0 && bytesRead == buffer.capacity();
+            if (lineTooLong || (endOfFile && position + bytesRead >= channel.size())) {
+                addLine(buffer, lineStart, bytesRead, bytesRead, batch);
+                lineStart = bytesRead;
+            }
+        }
+
+        position += lineStart;
+        return lineStart;
+    }
+
+    private int addLine(ByteBuffer buffer, int start, int end, int next, List<RawMessage> batch) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        if (end <= start) {
+            // empty lines cannot be turned into messages
+            return 0;
+        }
+
+        final byte[] line = new byte[end - start];
+        final ByteBuffer view = buffer.duplicate();
+        view.limit(end).position(start);
+        view.get(line);
+
+        final RawMessage rawMessage = new RawMessage(line);
+        rawMessage.setAcknowledger(acknowledgedOffsets.track(position + start, position + next));
+        batch.add(rawMessage);
+        return 1;
+    }
+
+    /**
+     * @return whether the file has become smaller than the position which has been read up to
+     */
+    public boolean isTruncated() throws IOException {
+        return channel.size() < position;
+    }
+
+    /**
+     * Starts reading the file from its beginning again. Lines of the previous content which are not journalled yet will
+     * not be reflected in the checkpoint anymore.
+     */
+    public void restart() {
+        acknowledgedOffsets = new AcknowledgedOffsets();
+        position = 0;
+        checkpoint = 0;
+    }
+
+    /**
+     * @return whether everything up to the current end of the file has been read
+     */
+    public boolean isFullyRead() throws IOException {
+        return position >= channel.size();
+    }
+
+    /**
+     * @return the position up to which all lines have been journalled
+     */
+    public long getCheckpoint() {
+        final long offset = acknowledgedOffsets.advance();
+        if (offset >= 0) {
+            checkpoint = offset;
+        }
+        return checkpoint;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Nullable
+    public Object getFileKey() {
+        return fileKey;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
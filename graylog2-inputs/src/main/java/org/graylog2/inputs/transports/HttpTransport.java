@@ -34,6 +34,7 @@ import org.graylog2.plugin.inputs.transports.Transport;
 import org.graylog2.plugin.inputs.util.ConnectionCounter;
 import org.graylog2.plugin.inputs.util.ThroughputCounter;
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.*;
 import org.jboss.netty.handler.codec.http.*;
 import org.slf4j.Logger;
@@ -41,6 +42,8 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Named;
 import javax.inject.Provider;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.util.LinkedHashMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
@@ -147,9 +150,14 @@ public class HttpTransport extends AbstractTcpTransport {
         }
     }
     public static class Handler extends SimpleChannelHandler {
+        // longer lines of a bulk request are rejected
+        private static final int MAX_BULK_LINE_LENGTH = 2 * 1024 * 1024;
 
         private final boolean enableCors;
 
+        // state of the bulk request which is currently streaming in on this connection
+        private BulkRequest bulkRequest;
+
         public Handler(boolean enableCors) {
             this.enableCors = enableCors;
         }
@@ -157,6 +165,17 @@ public class HttpTransport extends AbstractTcpTransport {
         @Override
         public void messageReceived(final ChannelHandlerContext ctx, final MessageEvent e) throws Exception {
             final Channel channel = e.getChannel();
+            if (e.getMessage() instanceof HttpChunk) {
+                final HttpChunk chunk = (HttpChunk) e.getMessage();
+                if (bulkRequest != null) {
+                    bulkRequest.feed(ctx, chunk.getContent(), e.getRemoteAddress());
+                    if (chunk.isLast()) {
+                        finishBulkRequest(ctx, channel, e.getRemoteAddress());
+                    }
+                }
+                return;
+            }
+
             final HttpRequest request = (HttpRequest) e.getMessage();
             final boolean keepAlive = isKeepAlive(request);
             final HttpVersion httpRequestVersion = request.getProtocolVersion();
@@ -174,20 +193,50 @@ public class HttpTransport extends AbstractTcpTransport {
                 // send on to raw message handler
                 writeResponse(channel, keepAlive, httpRequestVersion, ACCEPTED, origin);
                 fireMessageReceived(ctx, buffer);
+            } else if ("/gelf/bulk".equals(request.getUri())) {
+                // newline delimited GELF messages, which are handed on while the body is streaming in
+                bulkRequest = new BulkRequest(keepAlive, httpRequestVersion, origin);
+                bulkRequest.feed(ctx, buffer, e.getRemoteAddress());
+                if (!request.isChunked()) {
+                    finishBulkRequest(ctx, channel, e.getRemoteAddress());
+                }
             } else {
                 writeResponse(channel, keepAlive, httpRequestVersion, NOT_FOUND, origin);
             }
         }
 
+        private void finishBulkRequest(ChannelHandlerContext ctx, Channel channel, SocketAddress remoteAddress) {
+            final BulkRequest finished = bulkRequest;
+            bulkRequest = null;
+            finished.finish(ctx, remoteAddress);
+
+            final String result = "{\"accepted\":" + finished.accepted + ",\"rejected\":" + finished.rejected + "}";
+            writeResponse(channel, finished.keepAlive, finished.httpRequestVersion, ACCEPTED, finished.origin,
+                    ChannelBuffers.copiedBuffer(result, StandardCharsets.UTF_8));
+        }
+
         private void writeResponse(Channel channel,
                                    boolean keepAlive,
                                    HttpVersion httpRequestVersion,
                                    HttpResponseStatus status,
                                    String origin) {
+            writeResponse(channel, keepAlive, httpRequestVersion, status, origin, ChannelBuffers.EMPTY_BUFFER);
+        }
+
+        private void writeResponse(Channel channel,
+                                   boolean keepAlive,
+                                   HttpVersion httpRequestVersion,
+                                   HttpResponseStatus status,
+                                   String origin,
+                                   ChannelBuffer content) {
             final HttpResponse response =
                     new DefaultHttpResponse(httpRequestVersion, status);
 
-            response.headers().set(Names.CONTENT_LENGTH, 0);
+            response.headers().set(Names.CONTENT_LENGTH, content.readableBytes());
+            if (content.readable()) {
+                response.headers().set(Names.CONTENT_TYPE, "application/json");
+                response.setContent(content);
+            }
             response.headers().set(Names.CONNECTION,
                                    keepAlive ? Values.KEEP_ALIVE : Values.CLOSE);
 
@@ -204,6 +253,93 @@ public class HttpTransport extends AbstractTcpTransport {
                 channelFuture.addListener(ChannelFutureListener.CLOSE);
             }
         }
+
+        private static class BulkRequest {
+            private final boolean keepAlive;
+            private final HttpVersion httpRequestVersion;
+            private final String origin;
+            // the beginning of a line which continues in the next chunk
+            private final ChannelBuffer pending = ChannelBuffers.dynamicBuffer();
+            private boolean pendingTooLong = false;
+            private int accepted = 0;
+            private int rejected = 0;
+
+            private BulkRequest(boolean keepAlive, HttpVersion httpRequestVersion, String origin) {
+                this.keepAlive = keepAlive;
+                this.httpRequestVersion = httpRequestVersion;
+                this.origin = origin;
+            }
+
+            public void feed(ChannelHandlerContext ctx, ChannelBuffer content, SocketAddress remoteAddress) {
+                while (content.readable()) {
+                    final int endOfLine = content.indexOf(content.readerIndex(), content.writerIndex(), (byte) '\n');
+                    if (endOfLine < 0) {
+                        appendPending(content.readSlice(content.readableBytes()));
+                        return;
+                    }
+
+                    final ChannelBuffer part = content.readSlice(endOfLine - content.readerIndex());
+                    content.skipBytes(1);
+                    if (pending.readable() || pendingTooLong) {
+                        appendPending(part);
+                        handleLine(ctx, pending, remoteAddress);
+                    } else {
+                        handleLine(ctx, part, remoteAddress);
+                    }
+                }
+            }
+
+            public void finish(ChannelHandlerContext ctx, SocketAddress remoteAddress) {
+                // the last line does not need to be terminated
+                if (pending.readable() || pendingTooLong) {
+                    handleLine(ctx, pending, remoteAddress);
+                }
+            }
+
+            private void appendPending(ChannelBuffer part) {
+                if (pendingTooLong || pending.readableBytes() + part.readableBytes() > MAX_BULK_LINE_LENGTH) {
+                    // drop what we have so far instead of buffering an arbitrary amount of data
+                    pendingTooLong = true;
+                    pending.clear();
+                } else {
+                    pending.writeBytes(part);
+                }
+            }
+
+            private void handleLine(ChannelHandlerContext ctx, ChannelBuffer line, SocketAddress remoteAddress) {
+                try {
+                    if (pendingTooLong || line.readableBytes() > MAX_BULK_LINE_LENGTH) {
+                        rejected++;
+                        return;
+                    }
+
+                    int start = line.readerIndex();
+                    int end = line.writerIndex();
+                    while (start < end && Character.isWhitespace(line.getByte(start))) {
+                        start++;
+                    }
+                    while (end > start && Character.isWhitespace(line.getByte(end - 1))) {
+                        end--;
+                    }
+                    if (start == end) {
+                        // blank lines, e.g. a trailing newline, are not messages
+                        return;
+                    }
+
+                    // only the codec parses the JSON, but anything that is not an object cannot be a GELF message
+                    if (line.getByte(start) != '{' || line.getByte(end - 1) != '}') {
+                        rejected++;
+                        return;
+                    }
+
+                    accepted++;
+                    fireMessageReceived(ctx, line.slice(start, end - start), remoteAddress);
+                } finally {
+                    pending.clear();
+                    pendingTooLong = false;
+                }
+            }
+        }
     }
 
 }
@@ -0,0 +1,77 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.inputs.transports;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.Maps;
+import kafka.common.TopicAndPartition;
+import org.graylog2.plugin.journal.RawMessage;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tracks which consumed Kafka messages have been acknowledged, per topic partition.
+ *
+ * @see AcknowledgedOffsets
+ */
+class KafkaOffsetTracker {
+    private final ConcurrentMap<TopicAndPartition, AcknowledgedOffsets> partitions = Maps.newConcurrentMap();
+
+    /**
+     * Records a consumed message.
+     *
+     * @return the acknowledger to attach to the message
+     */
+    public RawMessage.Acknowledger track(String topic, int partition, long offset) {
+        final TopicAndPartition key = new TopicAndPartition(topic, partition);
+        AcknowledgedOffsets offsets = partitions.get(key);
+        if (offsets == null) {
+            final AcknowledgedOffsets newOffsets = new AcknowledgedOffsets();
+            offsets = partitions.putIfAbsent(key, newOffsets);
+            if (offsets == null) {
+                offsets = newOffsets;
+            }
+        }
+
+        return offsets.track(offset);
+    }
+
+    /**
+     * Returns the offsets which have become safe to commit since the last call, i.e. the next offset to consume for
+     * every owned partition whose acknowledged messages advanced.
+     * <p/>
+     * Partitions which have been assigned to another consumer by a rebalance are forgotten instead, late
+     * acknowledgements of their messages must not overwrite the offsets committed by the new owner.
+     *
+     * @param owned whether a partition is still owned by this consumer
+     */
+    public Map<TopicAndPartition, Long> committableOffsets(Predicate<TopicAndPartition> owned) {
+        final Map<TopicAndPartition, Long> result = Maps.newHashMap();
+        for (Map.Entry<TopicAndPartition, AcknowledgedOffsets> entry : partitions.entrySet()) {
+            if (!owned.apply(entry.getKey())) {
+                partitions.remove(entry.getKey(), entry.getValue());
+                continue;
+            }
+            final long offset = entry.getValue().advance();
+            if (offset >= 0) {
+                result.put(entry.getKey(), offset);
+            }
+        }
+        return result;
+    }
+}
@@ -20,24 +20,32 @@ import com.codahale.metrics.Gauge;
 import com.codahale.metrics.InstrumentedExecutorService;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.MetricSet;
+import com.google.common.base.Predicate;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
+import kafka.common.TopicAndPartition;
 import kafka.consumer.Consumer;
 import kafka.consumer.ConsumerConfig;
 import kafka.consumer.ConsumerIterator;
+import kafka.consumer.ConsumerTimeoutException;
 import kafka.consumer.KafkaStream;
 import kafka.consumer.TopicFilter;
 import kafka.consumer.Whitelist;
 import kafka.javaapi.consumer.ConsumerConnector;
 import kafka.message.MessageAndMetadata;
+import kafka.utils.ZKGroupTopicDirs;
+import kafka.utils.ZKStringSerializer$;
+import kafka.utils.ZkUtils;
+import org.I0Itec.zkclient.ZkClient;
 import org.graylog2.plugin.LocalMetricRegistry;
 import org.graylog2.plugin.ServerStatus;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.configuration.ConfigurationRequest;
+import org.graylog2.plugin.configuration.fields.BooleanField;
 import org.graylog2.plugin.configuration.fields.ConfigurationField;
 import org.graylog2.plugin.configuration.fields.NumberField;
 import org.graylog2.plugin.configuration.fields.TextField;
@@ -53,14 +61,19 @@ import org.graylog2.plugin.lifecycles.Lifecycle;
 import org.graylog2.plugin.system.NodeId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import scala.Option;
 
 import javax.inject.Named;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
@@ -74,9 +87,16 @@ public class KafkaTransport extends ThrottleableTransport {
     public static final String CK_ZOOKEEPER = "zookeeper";
     public static final String CK_TOPIC_FILTER = "topic_filter";
     public static final String CK_THREADS = "threads";
+    public static final String CK_COMMIT_AFTER_JOURNAL = "commit_after_journal";
 
     private static final Logger LOG = LoggerFactory.getLogger(KafkaTransport.class);
 
+    // messages are handed to the input in batches of at most this size
+    private static final int MAX_BATCH_SIZE = 1000;
+    // the consumer iterator gives up waiting after this time when the fetched data is used up, which flushes the batch
+    private static final int BATCH_FLUSH_TIMEOUT_MS = 20;
+    private static final long OFFSET_COMMIT_INTERVAL_MS = 1000;
+
     private final Configuration configuration;
     private final MetricRegistry localRegistry;
     private final NodeId nodeId;
@@ -95,6 +115,12 @@ public class KafkaTransport extends ThrottleableTransport {
     private CountDownLatch stopLatch;
     private ConsumerConnector cc;
 
+    // only used if offsets are committed after the messages have been journalled
+    private KafkaOffsetTracker offsetTracker;
+    private String consumerId;
+    private ZkClient zkClient;
+    private ScheduledFuture<?> offsetCommitter;
+
     @AssistedInject
     public KafkaTransport(@Assisted Configuration configuration,
                           LocalMetricRegistry localRegistry,
@@ -170,22 +196,48 @@ public class KafkaTransport extends ThrottleableTransport {
         // listen for lifecycle changes
         serverEventBus.register(this);
 
+        consumerId = "gl2-" + nodeId + "-" + input.getId() + "-" + UUID.randomUUID();
+
         final Properties props = new Properties();
 
         props.put("group.id", GROUP_ID);
         props.put("client.id", "gl2-" + nodeId + "-" + input.getId());
+        // a consumer id of our own lets us recognize the partitions owned by this consumer in ZooKeeper
+        props.put("consumer.id", consumerId);
 
         props.put("fetch.min.bytes", String.valueOf(configuration.getInt(CK_FETCH_MIN_BYTES)));
         props.put("fetch.wait.max.ms", String.valueOf(configuration.getInt(CK_FETCH_WAIT_MAX)));
         props.put("zookeeper.connect", configuration.getString(CK_ZOOKEEPER));
-        // Default auto commit interval is 60 seconds. Reduce to 1 second to minimize message duplication
-        // if something breaks.
-        props.put("auto.commit.interval.ms", "1000");
+        props.put("consumer.timeout.ms", String.valueOf(BATCH_FLUSH_TIMEOUT_MS));
+
+        final boolean commitAfterJournal = configuration.getBoolean(CK_COMMIT_AFTER_JOURNAL);
+        if (commitAfterJournal) {
+            // the consumer would commit the offsets of messages which have not been journalled yet, we write them ourselves
+            props.put("auto.commit.enable", "false");
+        } else {
+            // Default auto commit interval is 60 seconds. Reduce to 1 second to minimize message duplication
+            // if something breaks.
+            props.put("auto.commit.interval.ms", String.valueOf(OFFSET_COMMIT_INTERVAL_MS));
+        }
 
         final int numThreads = configuration.getInt(CK_THREADS);
         final ConsumerConfig consumerConfig = new ConsumerConfig(props);
         cc = Consumer.createJavaConsumerConnector(consumerConfig);
 
+        if (commitAfterJournal) {
+            offsetTracker = new KafkaOffsetTracker();
+            zkClient = new ZkClient(consumerConfig.zkConnect(),
+                    consumerConfig.zkSessionTimeoutMs(),
+                    consumerConfig.zkConnectionTimeoutMs(),
+                    ZKStringSerializer$.MODULE$);
+            offsetCommitter = scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    commitJournalledOffsets();
+                }
+            }, OFFSET_COMMIT_INTERVAL_MS, OFFSET_COMMIT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+
         final TopicFilter filter = new Whitelist(configuration.getString(CK_TOPIC_FILTER));
 
         final List<KafkaStream<byte[], byte[]>> streams = cc.createMessageStreamsByFilter(filter, numThreads);
@@ -200,11 +252,25 @@ public class KafkaTransport extends ThrottleableTransport {
             executor.submit(new Runnable() {
                 public void run() {
                     final ConsumerIterator<byte[], byte[]> consumerIterator = stream.iterator();
+                    final List<RawMessage> batch = new ArrayList<>(MAX_BATCH_SIZE);
+
+                    while (true) {
+                        // we have to use hasNext() here instead foreach, because next() marks the message as processed immediately
+                        try {
+                            if (!consumerIterator.hasNext()) {
+                                break;
+                            }
+                        } catch (ConsumerTimeoutException e) {
+                            // everything fetched so far has been consumed, hand it over before waiting for more
+                            processBatch(input, batch);
+                            if (stopped) {
+                                break;
+                            }
+                            continue;
+                        }
 
-                    // we have to use hasNext() here instead foreach, because next() marks the message as processed immediately
-                    //noinspection WhileLoopReplaceableByForEach
-                    while (consumerIterator.hasNext()) {
                         if (paused) {
+                            processBatch(input, batch);
                             // we try not to spin here, so we wait until the lifecycle goes back to running.
                             LOG.debug(
                                     "Message processing is paused, blocking until message processing is turned back on.");
@@ -214,8 +280,9 @@ public class KafkaTransport extends ThrottleableTransport {
                         if (stopped) {
                             break;
                         }
-                        if (isThrottled()) {
-                            blockUntilUnthrottled();
+                        if (getThrottleRate() == 0.0) {
+                            // reading is paused, hand over what we have and wait until we may continue
+                            processBatch(input, batch);
                         }
 
                         // process the message, this will immediately mark the message as having been processed. this gets tricky
@@ -227,13 +294,23 @@ public class KafkaTransport extends ThrottleableTransport {
                         lastSecBytesReadTmp.addAndGet(bytes.length);
 
                         final RawMessage rawMessage = new RawMessage(bytes);
+                        if (offsetTracker != null) {
+                            rawMessage.setAcknowledger(
+                                    offsetTracker.track(message.topic(), message.partition(), message.offset()));
+                        }
+                        batch.add(rawMessage);
+                        if (batch.size() >= MAX_BATCH_SIZE) {
+                            processBatch(input, batch);
+                        }
+                    }
+                    // the messages of the last batch have already been marked as processed
+                    processBatch(input, batch);
 
-                        // TODO implement throttling
-                        input.processRawMessage(rawMessage);
+                    if (offsetTracker == null) {
+                        // explicitly commit our offsets when stopping.
+                        // this might trigger a couple of times, but it won't hurt
+                        cc.commitOffsets();
                     }
-                    // explicitly commit our offsets when stopping.
-                    // this might trigger a couple of times, but it won't hurt
-                    cc.commitOffsets();
                     stopLatch.countDown();
                 }
             });
@@ -246,6 +323,45 @@ public class KafkaTransport extends ThrottleableTransport {
         }, 1, 1, TimeUnit.SECONDS);
     }
 
+    private void processBatch(MessageInput input, List<RawMessage> batch) {
+        if (!batch.isEmpty()) {
+            input.processRawMessages(batch);
+        }
+        // the throttle rate is counted in messages, account for the whole batch at once
+        blockUntilUnthrottled(batch.size());
+        batch.clear();
+    }
+
+    private void commitJournalledOffsets() {
+        try {
+            final Predicate<TopicAndPartition> owned = new Predicate<TopicAndPartition>() {
+                @Override
+                public boolean apply(TopicAndPartition topicAndPartition) {
+                    return isOwned(topicAndPartition);
+                }
+            };
+            for (Map.Entry<TopicAndPartition, Long> entry : offsetTracker.committableOffsets(owned).entrySet()) {
+                final TopicAndPartition topicAndPartition = entry.getKey();
+                final ZKGroupTopicDirs topicDirs = new ZKGroupTopicDirs(GROUP_ID, topicAndPartition.topic());
+                ZkUtils.updatePersistentPath(zkClient,
+                        topicDirs.consumerOffsetDir() + "/" + topicAndPartition.partition(),
+                        String.valueOf(entry.getValue()));
+                LOG.trace("Committed offset {} of {}", entry.getValue(), topicAndPartition);
+            }
+        } catch (Exception e) {
+            LOG.error("Unable to commit journalled Kafka offsets", e);
+        }
+    }
+
+    private boolean isOwned(TopicAndPartition topicAndPartition) {
+        final String ownerPath = ZkUtils.getConsumerPartitionOwnerPath(GROUP_ID,
+                topicAndPartition.topic(), topicAndPartition.partition());
+        final Option<String> owner = ZkUtils.readDataMaybeNull(zkClient, ownerPath)._1();
+
+        // the owner is one of the consumer threads, "<group>_<consumer id>-<thread>"
+        return owner.isDefined() && owner.get().startsWith(GROUP_ID + "_" + consumerId + "-");
+    }
+
     private ExecutorService executorService(int numThreads) {
         final ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("kafka-transport-%d").build();
         return new InstrumentedExecutorService(
@@ -278,6 +394,17 @@ public class KafkaTransport extends ThrottleableTransport {
                 LOG.debug("Interrupted while waiting to stop input.");
             }
         }
+        if (offsetCommitter != null) {
+            offsetCommitter.cancel(false);
+            offsetCommitter = null;
+            // messages which are still on their way into the journal will be consumed again after the next start
+            commitJournalledOffsets();
+            offsetTracker = null;
+        }
+        if (zkClient != null) {
+            zkClient.close();
+            zkClient = null;
+        }
         if (cc != null) {
             cc.shutdown();
             cc = null;
@@ -339,6 +466,13 @@ public class KafkaTransport extends ThrottleableTransport {
                     "Number of processor threads to spawn. Use one thread per Kafka topic partition.",
                     ConfigurationField.Optional.NOT_OPTIONAL));
 
+            cr.addField(new BooleanField(
+                    CK_COMMIT_AFTER_JOURNAL,
+                    "Commit offsets after journalling",
+                    false,
+                    "Only commit the offsets of messages which have been written to the message journal. " +
+                            "Messages are never lost on crashes, but might be consumed twice."));
+
             return cr;
         }
     }
@@ -0,0 +1,109 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.inputs.transports;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelException;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.socket.DatagramChannel;
+import org.jboss.netty.channel.socket.nio.NioDatagramChannelFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.NetworkChannel;
+import java.util.concurrent.Executor;
+
+/**
+ * Creates NIO datagram channels with SO_REUSEPORT enabled, so several of them can be bound to the same port and the
+ * kernel distributes the incoming datagrams among them.
+ * <p/>
+ * Neither Java 7 nor Netty 3 know about SO_REUSEPORT, so the socket option is looked up at runtime (it exists since
+ * Java 9) and set on the underlying socket of the Netty channel before the channel is bound.
+ */
+class ReusePortDatagramChannelFactory extends NioDatagramChannelFactory {
+    private static final Logger LOG = LoggerFactory.getLogger(ReusePortDatagramChannelFactory.class);
+
+    private static final SocketOption<Boolean> SO_REUSEPORT = findReusePortOption();
+    private static final Field JAVA_CHANNEL_FIELD = findJavaChannelField();
+
+    ReusePortDatagramChannelFactory(Executor workerExecutor, int workerCount) {
+        super(workerExecutor, workerCount);
+    }
+
+    /**
+     * @return {@code true} if the running JVM can enable SO_REUSEPORT on datagram sockets
+     */
+    static boolean isSupported() {
+        return SO_REUSEPORT != null && JAVA_CHANNEL_FIELD != null;
+    }
+
+    @Override
+    public DatagramChannel newChannel(ChannelPipeline pipeline) {
+        final DatagramChannel channel = super.newChannel(pipeline);
+        try {
+            final NetworkChannel javaChannel = (NetworkChannel) JAVA_CHANNEL_FIELD.get(channel);
+            javaChannel.setOption(SO_REUSEPORT, true);
+        } catch (IllegalAccessException | IOException | RuntimeException e) {
+            channel.close();
+            throw new ChannelException("Unable to enable SO_REUSEPORT on datagram channel", e);
+        }
+        return channel;
+    }
+
+    /**
+     * @return the socket of the given Netty datagram channel or {@code null} if it cannot be accessed
+     */
+    @Nullable
+    static java.nio.channels.DatagramChannel javaChannel(Channel channel) {
+        if (JAVA_CHANNEL_FIELD == null) {
+            return null;
+        }
+        try {
+            final Object javaChannel = JAVA_CHANNEL_FIELD.get(channel);
+            return javaChannel instanceof java.nio.channels.DatagramChannel ? (java.nio.channels.DatagramChannel) javaChannel : null;
+        } catch (IllegalAccessException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> findReusePortOption() {
+        try {
+            return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            LOG.debug("SO_REUSEPORT is not supported by this JVM.", e);
+            return null;
+        }
+    }
+
+    private static Field findJavaChannelField() {
+        try {
+            // NioDatagramChannel keeps its java.nio.channels.DatagramChannel in its package private super class
+            final Field field = Class.forName("org.jboss.netty.channel.socket.nio.AbstractNioChannel").getDeclaredField("channel");
+            field.setAccessible(true);
+            return field;
+        } catch (ClassNotFoundException | NoSuchFieldException | RuntimeException e) {
+            LOG.debug("Unable to access the socket of Netty datagram channels.", e);
+            return null;
+        }
+    }
+}
@@ -40,7 +40,7 @@ public class TransportsModule extends Graylog2Module {
         installTransport(mapBinder, "httppoll", HttpPollTransport.class);
         installTransport(mapBinder, "localmetrics", LocalMetricsTransport.class);
         installTransport(mapBinder, "syslog-tcp", SyslogTcpTransport.class);
-        installTransport(mapBinder, "localfile", FileSlurpTransport.class);
+        installTransport(mapBinder, "localfile", FileTailTransport.class);
 
         // TODO Add instrumentation to ExecutorService and ThreadFactory
         bind(Executor.class)
@@ -0,0 +1,216 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.inputs.transports;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the number of datagrams the Linux kernel dropped for the UDP sockets of an input, e. g. because their receive
+ * buffer was full. The counters are taken from the "drops" column of {@code /proc/net/udp} and {@code /proc/net/udp6}.
+ * <p/>
+ * Sockets are identified by their inodes if those are known. Otherwise every socket bound to the same address and
+ * port is counted, which includes sockets of other processes sharing the port with SO_REUSEPORT. The files are parsed
+ * at most once per second, so all gauges read in one metrics poll share a single parse.
+ */
+class UdpSocketDrops {
+    private static final Logger LOG = LoggerFactory.getLogger(UdpSocketDrops.class);
+
+    private static final List<File> PROC_NET_UDP = ImmutableList.of(new File("/proc/net/udp"), new File("/proc/net/udp6"));
+    private static final Splitter WHITESPACE = Splitter.on(' ').omitEmptyStrings().trimResults();
+    private static final Pattern SOCKET_LINK = Pattern.compile("socket:\\[(\\d+)\\]");
+    private static final Method GET_FD_VAL = findGetFdValMethod();
+
+    private static final int LOCAL_ADDRESS_COLUMN = 1;
+    private static final int INODE_COLUMN = 9;
+    private static final int DROPS_COLUMN = 12;
+
+    private final InetSocketAddress bindAddress;
+    private final List<Long> inodes;
+    private final List<File> files;
+    private final Supplier<Map<Long, Long>> dropsBySocket;
+
+    /**
+     * @param bindAddress the address the sockets are bound to
+     * @param inodes      the inodes of the sockets, or an empty list if they are unknown
+     */
+    UdpSocketDrops(InetSocketAddress bindAddress, List<Long> inodes) {
+        this(bindAddress, inodes, PROC_NET_UDP);
+    }
+
+    UdpSocketDrops(InetSocketAddress bindAddress, List<Long> inodes, List<File> files) {
+        this.bindAddress = bindAddress;
+        this.inodes = inodes;
+        this.files = files;
+        this.dropsBySocket = Suppliers.memoizeWithExpiration(new Supplier<Map<Long, Long>>() {
+            @Override
+            public Map<Long, Long> get() {
+                return readDrops();
+            }
+        }, 1, TimeUnit.SECONDS);
+    }
+
+    boolean isAvailable() {
+        for (File file : files) {
+            if (file.canRead()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of dropped datagrams of every matching socket, by the sockets' inodes
+     */
+    Map<Long, Long> dropsBySocket() {
+        return dropsBySocket.get();
+    }
+
+    long totalDrops() {
+        long total = 0;
+        for (long drops : dropsBySocket().values()) {
+            total += drops;
+        }
+        return total;
+    }
+
+    /**
+     * @return the number of dropped datagrams of the socket with the given inode
+     */
+    long drops(long inode) {
+        final Long drops = dropsBySocket().get(inode);
+        return drops == null ? 0L : drops;
+    }
+
+    private Map<Long, Long> readDrops() {
+        final Map<Long, Long> drops = Maps.newHashMap();
+        for (File file : files) {
+            if (!file.canRead()) {
+                continue;
+            }
+            try {
+                final Iterator<String> lines = Files.readLines(file, StandardCharsets.US_ASCII).iterator();
+                if (lines.hasNext()) {
+                    lines.next(); // header
+                }
+                while (lines.hasNext()) {
+                    parseLine(lines.next(), drops);
+                }
+            } catch (IOException e) {
+                LOG.debug("Unable to read " + file, e);
+            }
+        }
+        return drops;
+    }
+
+    private void parseLine(String line, Map<Long, Long> drops) {
+        final List<String> columns = WHITESPACE.splitToList(line);
+        if (columns.size() <= DROPS_COLUMN) {
+            return;
+        }
+
+        try {
+            final long inode = Long.parseLong(columns.get(INODE_COLUMN));
+            if (inodes.isEmpty() ? !isBoundToAddress(columns.get(LOCAL_ADDRESS_COLUMN)) : !inodes.contains(inode)) {
+                return;
+            }
+            drops.put(inode, Long.parseLong(columns.get(DROPS_COLUMN)));
+        } catch (NumberFormatException | UnknownHostException e) {
+            LOG.debug("Unable to parse socket statistics: {}", line);
+        }
+    }
+
+    private boolean isBoundToAddress(String localAddress) throws UnknownHostException {
+        // local address is <hex address>:<hex port>
+        final int separator = localAddress.lastIndexOf(':');
+        if (separator < 0 || Integer.parseInt(localAddress.substring(separator + 1), 16) != bindAddress.getPort()) {
+            return false;
+        }
+        final InetAddress address = parseAddress(localAddress.substring(0, separator));
+        final InetAddress boundAddress = bindAddress.getAddress();
+        // Java binds IPv4 addresses with IPv6 sockets, those show up as IPv4 mapped or unspecified IPv6 addresses
+        return address.equals(boundAddress) || (address.isAnyLocalAddress() && boundAddress.isAnyLocalAddress());
+    }
+
+    /**
+     * Parses an address as printed by the kernel, every 32 bit word of the address is printed in host byte order.
+     * IPv4 mapped IPv6 addresses are returned as IPv4 addresses.
+     */
+    private static InetAddress parseAddress(String hex) throws UnknownHostException {
+        final byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            final int word = i / 4;
+            final int index = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? word * 4 + 3 - i % 4 : i;
+            bytes[index] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return InetAddress.getByAddress(bytes);
+    }
+
+    /**
+     * Looks up the inode of the socket of the given channel in {@code /proc/self/fd}.
+     *
+     * @return the inode or {@code -1} if it is unknown, e. g. because the JVM denies access to the file descriptor
+     */
+    static long inodeOf(DatagramChannel channel) {
+        if (GET_FD_VAL == null) {
+            return -1L;
+        }
+        try {
+            final int fd = (Integer) GET_FD_VAL.invoke(channel);
+            final String link = java.nio.file.Files.readSymbolicLink(Paths.get("/proc/self/fd", String.valueOf(fd))).toString();
+            final Matcher matcher = SOCKET_LINK.matcher(link);
+            return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1L;
+        } catch (Exception e) {
+            LOG.debug("Unable to find the inode of " + channel, e);
+            return -1L;
+        }
+    }
+
+    private static Method findGetFdValMethod() {
+        try {
+            final Method method = Class.forName("sun.nio.ch.SelChImpl").getMethod("getFDVal");
+            method.setAccessible(true);
+            return method;
+        } catch (Exception e) {
+            LOG.debug("Unable to access the file descriptors of datagram channels.", e);
+            return null;
+        }
+    }
+}
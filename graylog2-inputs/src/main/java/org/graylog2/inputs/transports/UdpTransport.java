@@ -33,10 +33,19 @@
  */
 package org.graylog2.inputs.transports;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.InstrumentedExecutorService;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
+import org.graylog2.plugin.configuration.ConfigurationRequest;
+import org.graylog2.plugin.configuration.fields.ConfigurationField;
+import org.graylog2.plugin.configuration.fields.NumberField;
+import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.inputs.MisfireException;
 import org.graylog2.plugin.inputs.annotations.ConfigClass;
 import org.graylog2.plugin.inputs.annotations.FactoryClass;
 import org.graylog2.plugin.LocalMetricRegistry;
@@ -46,9 +55,15 @@ import org.graylog2.plugin.inputs.transports.Transport;
 import org.graylog2.plugin.inputs.util.ThroughputCounter;
 import org.jboss.netty.bootstrap.Bootstrap;
 import org.jboss.netty.bootstrap.ConnectionlessBootstrap;
+import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.FixedReceiveBufferSizePredictorFactory;
 import org.jboss.netty.channel.socket.nio.NioDatagramChannelFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -56,8 +71,20 @@ import java.util.concurrent.ThreadFactory;
 import static com.codahale.metrics.MetricRegistry.name;
 
 public class UdpTransport extends NettyTransport {
+    private static final Logger LOG = LoggerFactory.getLogger(UdpTransport.class);
+
+    public static final String CK_RECEIVE_SOCKETS = "receive_sockets";
+    public static final String CK_MAX_DATAGRAM_SIZE = "max_datagram_size";
+
+    public static final int DEFAULT_MAX_DATAGRAM_SIZE = 8192;
+    // the largest datagram the length field of a UDP header can describe
+    public static final int MAX_DATAGRAM_SIZE = 65535;
+
+    private static final String PACKETS_DROPPED = "packetsDropped";
 
     private final Executor workerExecutor;
+    private final int receiveSockets;
+    private final int maxDatagramSize;
 
     @AssistedInject
     public UdpTransport(@Assisted Configuration configuration,
@@ -65,6 +92,34 @@ public class UdpTransport extends NettyTransport {
                         LocalMetricRegistry localRegistry) {
         super(configuration, throughputCounter, localRegistry);
         this.workerExecutor = executorService("worker", "udp-transport-worker-%d", localRegistry);
+        this.maxDatagramSize = maxDatagramSize(configuration);
+
+        final int requestedSockets = configuration.intIsSet(CK_RECEIVE_SOCKETS) ? configuration.getInt(CK_RECEIVE_SOCKETS) : 1;
+        if (requestedSockets > 1 && !ReusePortDatagramChannelFactory.isSupported()) {
+            LOG.warn("Cannot open {} receive sockets on the same port without SO_REUSEPORT support, using a single socket.",
+                    requestedSockets);
+            this.receiveSockets = 1;
+        } else {
+            this.receiveSockets = Math.max(1, requestedSockets);
+        }
+    }
+
+    private static int maxDatagramSize(Configuration configuration) {
+        if (!configuration.intIsSet(CK_MAX_DATAGRAM_SIZE)) {
+            return DEFAULT_MAX_DATAGRAM_SIZE;
+        }
+
+        final int maxDatagramSize = configuration.getInt(CK_MAX_DATAGRAM_SIZE);
+        if (maxDatagramSize <= 0) {
+            LOG.warn("Invalid maximum datagram size {}, using {} bytes.", maxDatagramSize, DEFAULT_MAX_DATAGRAM_SIZE);
+            return DEFAULT_MAX_DATAGRAM_SIZE;
+        }
+        if (maxDatagramSize > MAX_DATAGRAM_SIZE) {
+            LOG.warn("Maximum datagram size {} exceeds the size of the largest possible datagram, using {} bytes.",
+                    maxDatagramSize, MAX_DATAGRAM_SIZE);
+            return MAX_DATAGRAM_SIZE;
+        }
+        return maxDatagramSize;
     }
 
     private static Executor executorService(final String executorName, final String threadNameFormat, final LocalMetricRegistry localRegistry) {
@@ -75,17 +130,84 @@ public class UdpTransport extends NettyTransport {
                 name(UdpTransport.class, executorName, "executor-service"));
     }
 
+    @Override
+    public void launch(MessageInput input) throws MisfireException {
+        super.launch(input);
+        registerDropGauges();
+    }
+
+    @Override
+    public void stop() {
+        localRegistry.removeMatching(new MetricFilter() {
+            @Override
+            public boolean matches(String name, Metric metric) {
+                return name.endsWith(PACKETS_DROPPED);
+            }
+        });
+        super.stop();
+    }
+
+    private void registerDropGauges() {
+        final List<Long> inodes = Lists.newArrayList();
+        InetSocketAddress bindAddress = null;
+        for (final Channel channel : getAcceptChannels()) {
+            bindAddress = (InetSocketAddress) channel.getLocalAddress();
+            final java.nio.channels.DatagramChannel javaChannel = ReusePortDatagramChannelFactory.javaChannel(channel);
+            final long inode = javaChannel == null ? -1L : UdpSocketDrops.inodeOf(javaChannel);
+            if (inode < 0) {
+                inodes.clear();
+                break;
+            }
+            inodes.add(inode);
+        }
+        if (bindAddress == null) {
+            return;
+        }
+
+        final UdpSocketDrops socketDrops = new UdpSocketDrops(bindAddress, inodes);
+        if (!socketDrops.isAvailable()) {
+            return;
+        }
+
+        localRegistry.register(PACKETS_DROPPED, new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return socketDrops.totalDrops();
+            }
+        });
+
+        // the drops of single sockets can only be told apart if the inodes of all of our sockets are known
+        Collections.sort(inodes);
+        for (int i = 0; i < inodes.size(); i++) {
+            final long inode = inodes.get(i);
+            localRegistry.register(name("socket-" + i, PACKETS_DROPPED), new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return socketDrops.drops(inode);
+                }
+            });
+        }
+    }
+
     @Override
     public Bootstrap getBootstrap() {
-        final ConnectionlessBootstrap bootstrap =
-                new ConnectionlessBootstrap(new NioDatagramChannelFactory(workerExecutor));
+        // every socket is drained by its own worker thread
+        final NioDatagramChannelFactory channelFactory = receiveSockets > 1
+                ? new ReusePortDatagramChannelFactory(workerExecutor, receiveSockets)
+                : new NioDatagramChannelFactory(workerExecutor);
+        final ConnectionlessBootstrap bootstrap = new ConnectionlessBootstrap(channelFactory);
 
-        bootstrap.setOption("receiveBufferSizePredictorFactory", new FixedReceiveBufferSizePredictorFactory(8192));
+        bootstrap.setOption("receiveBufferSizePredictorFactory", new FixedReceiveBufferSizePredictorFactory(maxDatagramSize));
         bootstrap.setOption("receiveBufferSize", getRecvBufferSize());
 
         return bootstrap;
     }
 
+    @Override
+    protected int getNumberOfChannels() {
+        return receiveSockets;
+    }
+
     @FactoryClass
     public interface Factory extends Transport.Factory<UdpTransport> {
         @Override
@@ -95,8 +217,35 @@ public class UdpTransport extends NettyTransport {
         Config getConfig();
     }
 
-    // only here for consistency
     @ConfigClass
     public static class Config extends NettyTransport.Config {
+        @Override
+        public ConfigurationRequest getRequestedConfiguration() {
+            final ConfigurationRequest r = super.getRequestedConfiguration();
+
+            r.addField(
+                    new NumberField(
+                            CK_RECEIVE_SOCKETS,
+                            "Receive sockets",
+                            1,
+                            "Number of sockets bound to the port, each one is read by its own thread. More than one "
+                                    + "socket requires SO_REUSEPORT support by the operating system and the JVM.",
+                            ConfigurationField.Optional.OPTIONAL,
+                            NumberField.Attribute.ONLY_POSITIVE
+                    )
+            );
+            r.addField(
+                    new NumberField(
+                            CK_MAX_DATAGRAM_SIZE,
+                            "Maximum datagram size",
+                            DEFAULT_MAX_DATAGRAM_SIZE,
+                            "The maximum size of a received datagram in bytes, larger datagrams are truncated.",
+                            ConfigurationField.Optional.OPTIONAL,
+                            NumberField.Attribute.ONLY_POSITIVE
+                    )
+            );
+
+            return r;
+        }
     }
 }
@@ -16,11 +16,13 @@
  */
 package org.graylog2.inputs.codecs;
 
+import com.codahale.metrics.MetricRegistry;
 import org.graylog2.plugin.InstantMillisProvider;
 import org.graylog2.plugin.inputs.MessageInput;
 import org.graylog2.plugin.inputs.codecs.CodecAggregator;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.util.CharsetUtil;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeUtils;
 import org.joda.time.DateTimeZone;
@@ -30,6 +32,7 @@ import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Test;
 
 import java.net.InetSocketAddress;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 import static org.mockito.Mockito.mock;
@@ -42,13 +45,15 @@ public class GelfChunkAggregatorTest {
     private ScheduledThreadPoolExecutor poolExecutor;
     private GelfChunkAggregator aggregator;
     private InetSocketAddress remoteAddress;
+    private MetricRegistry metricRegistry;
 
     @BeforeTest
     public void before() {
         input = mock(MessageInput.class);
         when(input.getUniqueReadableId()).thenReturn("input-id");
         poolExecutor = new ScheduledThreadPoolExecutor(1);
-        aggregator = new GelfChunkAggregator(poolExecutor);
+        metricRegistry = new MetricRegistry();
+        aggregator = new GelfChunkAggregator(poolExecutor, metricRegistry, Integer.MAX_VALUE, Integer.MAX_VALUE);
         remoteAddress = InetSocketAddress.createUnresolved("127.0.0.1", 4444);
     }
 
@@ -93,7 +98,8 @@ public class GelfChunkAggregatorTest {
 
         // we don't want the clean up task to run automatically
         poolExecutor = mock(ScheduledThreadPoolExecutor.class);
-        aggregator = new GelfChunkAggregator(poolExecutor);
+        metricRegistry = new MetricRegistry();
+        aggregator = new GelfChunkAggregator(poolExecutor, metricRegistry, Integer.MAX_VALUE, Integer.MAX_VALUE);
         final GelfChunkAggregator.ChunkEvictionTask evictionTask = aggregator.new ChunkEvictionTask();
 
         final ChannelBuffer[] chunks = createChunkedMessage(4096 + 512, 1024); // creates 5 chunks
@@ -114,6 +120,11 @@ public class GelfChunkAggregatorTest {
 
         evictionTask.run();
 
+        assertEquals(metricRegistry.meter(MetricRegistry.name(GelfChunkAggregator.class, "expired-messages")).getCount(), 1);
+        assertEquals(metricRegistry.meter(MetricRegistry.name(GelfChunkAggregator.class, "expired-chunks")).getCount(), 4);
+        assertEquals(gaugeValue("chunks-in-flight"), 0);
+        assertEquals(gaugeValue("bytes-held"), 0L);
+
         final CodecAggregator.Result result = aggregator.addChunk(chunks[0]);
 
         assertNull(result.getMessage(), "message should not be complete because chunks were evicted already");
@@ -156,6 +167,96 @@ public class GelfChunkAggregatorTest {
         assertNull(result2.getMessage(), "message 2 should not be complete");
     }
 
+    @Test
+    public void invalidSequenceNumber() {
+        final ChannelBuffer chunk = createChunkedMessage(4096 + 512, 1024)[0];
+        // sequence number 7 of 5
+        chunk.setByte(10, 7);
+
+        final CodecAggregator.Result result = aggregator.addChunk(chunk);
+
+        assertFalse(result.isValid());
+        assertNull(result.getMessage());
+    }
+
+    @Test
+    public void tooManyChunks() {
+        final ChannelBuffer chunk = createChunkedMessage(4096 + 512, 1024)[0];
+        chunk.setByte(11, 129);
+
+        assertFalse(aggregator.addChunk(chunk).isValid());
+    }
+
+    @Test
+    public void duplicateChunksDoNotCompleteMessage() {
+        final ChannelBuffer[] chunks = createChunkedMessage(2048, 1024, generateMessageId(3));
+
+        assertNull(aggregator.addChunk(chunks[0].duplicate()).getMessage());
+        assertNull(aggregator.addChunk(chunks[0].duplicate()).getMessage(), "duplicate must not complete the message");
+        assertNotNull(aggregator.addChunk(chunks[1]).getMessage());
+    }
+
+    @Test
+    public void assembledMessageContainsPayloadsInOrder() {
+        final byte[] messageId = generateMessageId(4);
+        final ChannelBuffer first = ChannelBuffers.copiedBuffer(CHUNK_MAGIC_BYTES, messageId, new byte[]{0, 2}, "foo".getBytes());
+        final ChannelBuffer second = ChannelBuffers.copiedBuffer(CHUNK_MAGIC_BYTES, messageId, new byte[]{1, 2}, "bar".getBytes());
+
+        assertNull(aggregator.addChunk(second).getMessage());
+        final ChannelBuffer message = aggregator.addChunk(first).getMessage();
+
+        assertNotNull(message);
+        assertEquals(message.toString(CharsetUtil.UTF_8), "foobar");
+    }
+
+    @Test
+    public void globalByteLimitDropsMessage() {
+        final MetricRegistry registry = new MetricRegistry();
+        final GelfChunkAggregator limitedAggregator =
+                new GelfChunkAggregator(mock(ScheduledExecutorService.class), registry, 3000, Integer.MAX_VALUE);
+        final ChannelBuffer[] chunks = createChunkedMessage(4096 + 512, 1024, generateMessageId(5)); // creates 5 chunks
+
+        assertTrue(limitedAggregator.addChunk(chunks[0]).isValid());
+        assertTrue(limitedAggregator.addChunk(chunks[1]).isValid());
+        // the third chunk exceeds the limit and drops the whole message
+        assertNull(limitedAggregator.addChunk(chunks[2]).getMessage());
+        assertEquals(registry.meter(MetricRegistry.name(GelfChunkAggregator.class, "dropped-messages")).getCount(), 1);
+        assertEquals(registry.getGauges().get(MetricRegistry.name(GelfChunkAggregator.class, "bytes-held")).getValue(), 0L);
+
+        // the remaining chunks start a new message which can't be completed anymore
+        assertNull(limitedAggregator.addChunk(chunks[3]).getMessage());
+        assertNull(limitedAggregator.addChunk(chunks[4]).getMessage());
+    }
+
+    @Test
+    public void perSenderByteLimit() {
+        final MetricRegistry registry = new MetricRegistry();
+        final GelfChunkAggregator limitedAggregator =
+                new GelfChunkAggregator(mock(ScheduledExecutorService.class), registry, Integer.MAX_VALUE, 3000);
+        final InetSocketAddress sender1 = new InetSocketAddress("127.0.0.1", 4444);
+        final InetSocketAddress sender2 = new InetSocketAddress("127.0.0.2", 4444);
+        final ChannelBuffer[] msg1 = createChunkedMessage(2048 + 512, 1024, generateMessageId(6)); // 3 chunks
+        final ChannelBuffer[] msg2 = createChunkedMessage(2048 + 512, 1024, generateMessageId(7)); // 3 chunks
+        final ChannelBuffer[] msg3 = createChunkedMessage(2048 + 512, 1024, generateMessageId(8)); // 3 chunks
+
+        limitedAggregator.addChunk(msg1[0], sender1);
+        limitedAggregator.addChunk(msg1[1], sender1);
+        limitedAggregator.addChunk(msg2[0], sender1);
+        assertEquals(registry.meter(MetricRegistry.name(GelfChunkAggregator.class, "dropped-messages")).getCount(), 1);
+
+        // another sender isn't affected by the first one's budget
+        limitedAggregator.addChunk(msg3[0], sender2);
+        limitedAggregator.addChunk(msg3[1], sender2);
+        assertNotNull(limitedAggregator.addChunk(msg3[2], sender2).getMessage());
+
+        // messages from the same sender complete once the budget allows it
+        assertNotNull(limitedAggregator.addChunk(msg1[2], sender1).getMessage());
+    }
+
+    private Object gaugeValue(String name) {
+        return metricRegistry.getGauges().get(MetricRegistry.name(GelfChunkAggregator.class, name)).getValue();
+    }
+
     private ChannelBuffer[] createChunkedMessage(int messageSize, int maxChunkSize) {
         return createChunkedMessage(messageSize, maxChunkSize, generateMessageId());
     }
@@ -0,0 +1,117 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.inputs.codecs;
+
+import com.google.common.base.Charsets;
+import org.graylog2.inputs.TestHelper;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.journal.RawMessage;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+public class GelfCodecTest {
+    private static final String GELF_JSON = "{\"version\":\"1.1\",\"host\":\"example.org\",\"short_message\":\"A short message\"," +
+            "\"full_message\":\"Backtrace here\\n\\nmore stuff\",\"timestamp\":1385053862.3072,\"level\":1," +
+            "\"facility\":\"test\",\"file\":\"/tmp/foo.rb\",\"line\":42,\"_user_id\":9001,\"_some_info\":\"foo\"," +
+            "\"_some_env_var\":\"bar\",\"_float\":1.5,\"_nested\":{\"a\":[1,2]},\"_null\":null,\"_bool\":true," +
+            "\"_id\":\"reserved\"}";
+
+    private GelfCodec codec;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        codec = new GelfCodec(Configuration.EMPTY_CONFIGURATION, mock(GelfChunkAggregator.class));
+    }
+
+    private Message decode(byte[] payload) {
+        final Message message = codec.decode(new RawMessage(payload));
+        assertNotNull(message);
+        return message;
+    }
+
+    private void assertGelfMessage(Message message) {
+        assertEquals(message.getMessage(), "A short message");
+        assertEquals(message.getSource(), "example.org");
+        assertEquals(message.getField("timestamp"), Tools.dateTimeFromDouble(1385053862.3072));
+        assertEquals(message.getField("full_message"), "Backtrace here\n\nmore stuff");
+        assertEquals(message.getField("level"), 1);
+        assertEquals(message.getField("facility"), "test");
+        assertEquals(message.getField("file"), "/tmp/foo.rb");
+        assertEquals(message.getField("line"), 42L);
+        assertEquals(message.getField("user_id"), 9001L);
+        assertEquals(message.getField("some_info"), "foo");
+        assertEquals(message.getField("some_env_var"), "bar");
+        assertEquals(message.getField("float"), 1.5d);
+        assertEquals(message.getField("nested"), "{\"a\":[1,2]}");
+        assertEquals(message.getField("version"), "1.1");
+        assertFalse(message.hasField("null"));
+        assertFalse(message.hasField("bool"));
+        assertFalse(message.hasField("short_message"));
+        assertFalse(message.hasField("host"));
+        assertFalse("reserved".equals(message.getId()));
+    }
+
+    @Test
+    public void decodeUncompressed() throws Exception {
+        assertGelfMessage(decode(GELF_JSON.getBytes(Charsets.UTF_8)));
+    }
+
+    @Test
+    public void decodeZlib() throws Exception {
+        assertGelfMessage(decode(TestHelper.zlibCompress(GELF_JSON)));
+    }
+
+    @Test
+    public void decodeGzip() throws Exception {
+        assertGelfMessage(decode(TestHelper.gzipCompress(GELF_JSON)));
+    }
+
+    @Test
+    public void decodeConvertsWellKnownFieldsLikeJsonNodes() throws Exception {
+        final String json = "{\"host\":\"example.org\",\"short_message\":42,\"level\":\"3\",\"line\":\"abc\"," +
+                "\"_level\":7,\"file\":\"\"}";
+        final Message message = decode(json.getBytes(Charsets.UTF_8));
+
+        assertEquals(message.getMessage(), "42");
+        assertEquals(message.getField("level"), 3);
+        // an unparseable line number is kept as additional field
+        assertEquals(message.getField("line"), "abc");
+        assertNull(message.getField("file"));
+    }
+
+    @Test
+    public void decodeWithoutTimestampUsesReceiveTime() throws Exception {
+        final RawMessage rawMessage = new RawMessage("{\"host\":\"example.org\",\"short_message\":\"test\"}".getBytes(Charsets.UTF_8));
+        final Message message = codec.decode(rawMessage);
+
+        assertNotNull(message);
+        assertEquals(message.getField("timestamp"), rawMessage.getTimestamp());
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void decodeInvalidJson() throws Exception {
+        codec.decode(new RawMessage("{\"host\":".getBytes(Charsets.UTF_8)));
+    }
+}
@@ -18,6 +18,9 @@ package org.graylog2.inputs.codecs;
 
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import com.google.common.collect.Maps;
+import org.graylog2.plugin.HostnameResolver;
+import org.graylog2.inputs.codecs.syslog.SyslogParser;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.Tools;
 import org.graylog2.plugin.configuration.Configuration;
@@ -28,12 +31,18 @@ import org.joda.time.DateTimeZone;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
@@ -47,6 +56,7 @@ public class SyslogCodecTest {
     @Mock private Configuration configuration;
     @Mock private MetricRegistry metricRegistry;
     @Mock private Timer mockedTimer;
+    @Mock private HostnameResolver hostnameResolver;
 
     private Codec codec;
 
@@ -57,7 +67,7 @@ public class SyslogCodecTest {
         when(metricRegistry.timer(any(String.class))).thenReturn(mockedTimer);
         when(mockedTimer.time()).thenReturn(mock(Timer.Context.class));
 
-        codec = new SyslogCodec(configuration, metricRegistry);
+        codec = new SyslogCodec(configuration, metricRegistry, hostnameResolver);
     }
 
     @Test
@@ -123,7 +133,128 @@ public class SyslogCodecTest {
         assertEquals(message.getField("full_message"), UNSTRUCTURED);
     }
 
+    @Test
+    public void testDecodeStructuredWithNativeParser() throws Exception {
+        when(configuration.getString(SyslogCodec.CK_PARSER)).thenReturn(SyslogCodec.PARSER_NATIVE);
+        final Codec nativeCodec = new SyslogCodec(configuration, metricRegistry, hostnameResolver);
+
+        final Message message = nativeCodec.decode(buildRawMessage(STRUCTURED));
+
+        assertNotNull(message);
+        assertEquals(message.getMessage(), "ID47 [exampleSDID@32473 iut=\"3\" eventSource=\"Application\" eventID=\"1011\"] BOMAn application event log entry");
+        assertEquals(((DateTime) message.getField("timestamp")).withZone(DateTimeZone.UTC), new DateTime("2012-12-25T22:14:15.003Z", DateTimeZone.UTC));
+        assertEquals(message.getField("source"), "mymachine.example.com");
+        assertEquals(message.getField("level"), 5);
+        assertEquals(message.getField("facility"), "local4");
+        assertEquals(message.getField("eventSource"), "Application");
+        assertEquals(message.getField("eventID"), "1011");
+        assertEquals(message.getField("iut"), "3");
+        assertEquals(message.getField("application_name"), "evntslog");
+    }
+
+    @Test
+    public void testDecodeUnstructuredWithNativeParser() throws Exception {
+        when(configuration.getString(SyslogCodec.CK_PARSER)).thenReturn(SyslogCodec.PARSER_NATIVE);
+        final Codec nativeCodec = new SyslogCodec(configuration, metricRegistry, hostnameResolver);
+
+        final Message message = nativeCodec.decode(buildRawMessage(UNSTRUCTURED));
+
+        assertNotNull(message);
+        assertEquals(message.getMessage(), "c4dc57ba1ebb syslog-ng[7208]: syslog-ng starting up; version='3.5.3'");
+        assertEquals(message.getField("timestamp"), new DateTime(YEAR + "-10-21T12:09:37"));
+        assertEquals(message.getField("source"), "c4dc57ba1ebb");
+        assertEquals(message.getField("level"), 5);
+        assertEquals(message.getField("facility"), "syslogd");
+        assertNull(message.getField("full_message"));
+    }
+
+    @Test
+    public void testNativeParserReadsFromBufferPosition() throws Exception {
+        final ByteBuffer buffer = ByteBuffer.wrap(("garbage" + UNSTRUCTURED).getBytes(StandardCharsets.UTF_8));
+        buffer.position("garbage".length());
+
+        final SyslogParser.SyslogEvent event = SyslogParser.parse(buffer.asReadOnlyBuffer());
+
+        assertNotNull(event);
+        assertEquals(event.getMessage(), "c4dc57ba1ebb syslog-ng[7208]: syslog-ng starting up; version='3.5.3'");
+        assertEquals(event.getHost(), "c4dc57ba1ebb");
+        assertEquals(buffer.position(), "garbage".length());
+    }
+
+    @DataProvider(name = "compatibilityCorpus")
+    public Object[][] compatibilityCorpus() {
+        return new Object[][]{
+                {STRUCTURED},
+                {UNSTRUCTURED},
+                {"<165>1 2012-12-25T22:14:15.003Z mymachine.example.com evntslog - ID47 [exampleSDID@32473 iut=\"3\" eventSource=\"Application\" eventID=\"1011\"][meta sequenceId=\"1\"] BOMAn application event log entry"},
+                {"<165>1 2012-12-25T22:14:15.003Z mymachine.example.com evntslog - ID47 [exampleSDID@32473 iut=\"3\" eventID=\"1011\"][meta iut=\"10\"] BOMAn application event log entry"},
+                {"<165>1 2012-12-25T22:14:15.003Z mymachine.example.com evntslog - ID47 - BOMAn application event log entry"},
+                {"<165>1 2003-08-24T05:14:15.000003-07:00 192.0.2.1 myproc 8710 - - %% It's time to make the do-nuts."},
+                {"<14>1 2014-05-01T08:26:51+00:00 host01 app 123 msgid [id a=\"x\\\"y\" b=\"c\\]d\"] text"},
+                {"<14>1 2014-05-01T08:26:51+00:00 host01 app 123 msgid [0@0] text"},
+                {"<14>1 2014-05-01T08:26:51+00:00 host01 app"},
+                {"<86>Dec 24 17:05:01 nb-lkoopmann CRON[10049]: pam_unix(cron:session): session closed for user root"},
+                {"<34>Oct 11 22:14:15 mymachine su: 'su root' failed for lonvick on /dev/pts/8"},
+                {"<13>Feb  5 17:32:18 10.0.0.99 Use the BFG!"},
+                {"<13>Feb 5 17:32:18 10.0.0.99 Use the BFG!"},
+                {"<14>Jan 31 23:59:59 host\u00e9 \u00fcml\u00e4ut"},
+                // handled by the syslog4j fallback of the native parser
+                {"<12>Oct 32 12:09:37 host day out of range"},
+        };
+    }
+
+    @Test(dataProvider = "compatibilityCorpus")
+    public void testNativeParserCompatibility(String syslogMessage) throws Exception {
+        when(configuration.getBoolean(SyslogCodec.CK_STORE_FULL_MESSAGE)).thenReturn(true);
+        when(configuration.getBoolean(SyslogCodec.CK_ALLOW_OVERRIDE_DATE)).thenReturn(true);
+        when(configuration.getString(SyslogCodec.CK_PARSER)).thenReturn(SyslogCodec.PARSER_SYSLOG4J);
+        final Codec syslog4jCodec = new SyslogCodec(configuration, metricRegistry, hostnameResolver);
+        when(configuration.getString(SyslogCodec.CK_PARSER)).thenReturn(SyslogCodec.PARSER_NATIVE);
+        final Codec nativeCodec = new SyslogCodec(configuration, metricRegistry, hostnameResolver);
+
+        for (boolean expand : new boolean[]{false, true}) {
+            when(configuration.getBoolean(SyslogCodec.CK_EXPAND_STRUCTURED_DATA)).thenReturn(expand);
+            final RawMessage rawMessage = buildRawMessage(syslogMessage);
+
+            final Message expected = syslog4jCodec.decode(rawMessage);
+            final Message actual = nativeCodec.decode(rawMessage);
+
+            assertNotNull(expected);
+            assertNotNull(actual);
+            assertEquals(withoutId(actual.getFields()), withoutId(expected.getFields()), syslogMessage);
+        }
+    }
+
+    private Map<String, Object> withoutId(Map<String, Object> fields) {
+        final Map<String, Object> result = Maps.newHashMap(fields);
+        result.remove("_id");
+        return result;
+    }
+
+    @Test
+    public void testForceRdnsUsesResolvedHostname() throws Exception {
+        when(configuration.getBoolean(SyslogCodec.CK_FORCE_RDNS)).thenReturn(true);
+        when(hostnameResolver.lookup(any(InetAddress.class))).thenReturn("resolved.example.com");
+
+        final Message message = codec.decode(buildRawMessage(UNSTRUCTURED));
+
+        assertNotNull(message);
+        assertEquals(message.getField("source"), "resolved.example.com");
+    }
+
+    @Test
+    public void testForceRdnsKeepsParsedHostnameUntilResolved() throws Exception {
+        when(configuration.getBoolean(SyslogCodec.CK_FORCE_RDNS)).thenReturn(true);
+        when(hostnameResolver.lookup(any(InetAddress.class))).thenReturn(null);
+
+        final Message message = codec.decode(buildRawMessage(STRUCTURED));
+
+        assertNotNull(message);
+        assertEquals(message.getField("source"), "mymachine.example.com");
+        verify(hostnameResolver).lookup(any(InetAddress.class));
+    }
+
     private RawMessage buildRawMessage(String message) {
-        return new RawMessage(message.getBytes(), new InetSocketAddress(5140));
+        return new RawMessage(message.getBytes(StandardCharsets.UTF_8), new InetSocketAddress(5140));
     }
 }
\ No newline at end of file
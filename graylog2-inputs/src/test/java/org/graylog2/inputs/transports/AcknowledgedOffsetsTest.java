@@ -0,0 +1,53 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.inputs.transports;
+
+import org.graylog2.plugin.journal.RawMessage;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+public class AcknowledgedOffsetsTest {
+    @Test
+    public void testNothingTracked() throws Exception {
+        final AcknowledgedOffsets offsets = new AcknowledgedOffsets();
+
+        assertEquals(offsets.advance(), -1L);
+        assertEquals(offsets.unacknowledgedCount(), 0);
+    }
+
+    @Test
+    public void testAdvancesOverAcknowledgedDeliveryTags() throws Exception {
+        final AcknowledgedOffsets offsets = new AcknowledgedOffsets();
+        final RawMessage.Acknowledger first = offsets.track(1);
+        final RawMessage.Acknowledger second = offsets.track(2);
+        offsets.track(3);
+        assertEquals(offsets.unacknowledgedCount(), 3);
+        assertEquals(offsets.advance(), 1L);
+
+        second.acknowledge();
+        assertEquals(offsets.advance(), -1L);
+
+        first.acknowledge();
+        assertEquals(offsets.advance(), 3L);
+        assertEquals(offsets.unacknowledgedCount(), 1);
+
+        offsets.acknowledged(3);
+        assertEquals(offsets.advance(), 4L);
+        assertEquals(offsets.unacknowledgedCount(), 0);
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.inputs.transports;
+
+import com.google.common.collect.Lists;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Envelope;
+import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.journal.RawMessage;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AmqpConsumerTest {
+    private Channel channel;
+    private Consumer consumer;
+    private Runnable batchFlusher;
+    private List<RawMessage> processed;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        channel = mock(Channel.class);
+        when(channel.isOpen()).thenReturn(true);
+        final Connection connection = mock(Connection.class);
+        when(connection.isOpen()).thenReturn(true);
+        when(connection.createChannel()).thenReturn(channel);
+
+        processed = Lists.newArrayList();
+        final MessageInput input = mock(MessageInput.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                processed.addAll((List<RawMessage>) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(input).processRawMessages(any(List.class));
+
+        final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        final AmqpConsumer amqpConsumer = new AmqpConsumer("localhost", 5672, "/", null, null, 100, "queue",
+                "exchange", "routing", 1, 1, input, scheduler, mock(AmqpTransport.class)) {
+            @Override
+            Connection newConnection() {
+                return connection;
+            }
+        };
+        amqpConsumer.run();
+
+        final ArgumentCaptor<Consumer> consumerCaptor = ArgumentCaptor.forClass(Consumer.class);
+        verify(channel).basicConsume(eq("queue"), eq(false), consumerCaptor.capture());
+        consumer = consumerCaptor.getValue();
+
+        final ArgumentCaptor<Runnable> flusherCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).scheduleWithFixedDelay(flusherCaptor.capture(), anyLong(), anyLong(), any(TimeUnit.class));
+        batchFlusher = flusherCaptor.getValue();
+    }
+
+    @Test
+    public void testDoesNotAcknowledgeBeforeFirstDeliveryIsJournalled() throws Exception {
+        deliver(1);
+        deliver(2);
+        batchFlusher.run();
+
+        // the second delivery has been journalled, the first one is still pending
+        processed.get(1).acknowledge();
+        batchFlusher.run();
+
+        verify(channel, never()).basicAck(eq(0L), anyBoolean());
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test
+    public void testAcknowledgesJournalledDeliveries() throws Exception {
+        deliver(1);
+        deliver(2);
+        deliver(3);
+        batchFlusher.run();
+
+        processed.get(0).acknowledge();
+        processed.get(1).acknowledge();
+        batchFlusher.run();
+
+        verify(channel).basicAck(2L, true);
+    }
+
+    private void deliver(long deliveryTag) throws Exception {
+        consumer.handleDelivery("consumer", new Envelope(deliveryTag, false, "exchange", "routing"), null, new byte[]{1});
+    }
+}
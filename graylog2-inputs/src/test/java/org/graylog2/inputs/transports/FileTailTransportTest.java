@@ -0,0 +1,233 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.inputs.transports;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.eventbus.EventBus;
+import org.graylog2.plugin.LocalMetricRegistry;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.journal.RawMessage;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class FileTailTransportTest {
+    private final List<RawMessage> messages = Lists.newArrayList();
+    private Path directory;
+    private Path logFile;
+    private MessageInput input;
+    private FileTailTransport transport;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("file-tail");
+        logFile = directory.resolve("app.log");
+        messages.clear();
+
+        input = mock(MessageInput.class);
+        when(input.getId()).thenReturn("input-id");
+        doAnswer(new Answer<Void>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                // the transport reuses its batch
+                messages.addAll((List<RawMessage>) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(input).processRawMessages(anyListOf(RawMessage.class));
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        if (transport != null) {
+            transport.close();
+        }
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test
+    public void testReadsAppendedLines() throws Exception {
+        append(logFile, "existing\n");
+        start(ImmutableMap.<String, Object>of());
+
+        assertFalse(transport.poll());
+        assertTrue(messages.isEmpty());
+
+        append(logFile, "first\r\n\nsecond\nunterminated");
+        assertTrue(transport.poll());
+        assertEquals(payloads(), Lists.newArrayList("first", "second"));
+
+        append(logFile, " line\n");
+        transport.poll();
+        assertEquals(payloads(), Lists.newArrayList("first", "second", "unterminated line"));
+    }
+
+    @Test
+    public void testReadsExistingContentIfConfigured() throws Exception {
+        append(logFile, "existing\n");
+        start(ImmutableMap.<String, Object>of(FileTailTransport.CK_READ_FROM_START, true));
+
+        transport.poll();
+
+        assertEquals(payloads(), Lists.newArrayList("existing"));
+    }
+
+    @Test
+    public void testFollowsRotatedFiles() throws Exception {
+        append(logFile, "");
+        start(ImmutableMap.<String, Object>of());
+
+        append(logFile, "before rotation\nlast line");
+        Files.move(logFile, directory.resolve("app.log.1"));
+        append(logFile, "after rotation\n");
+        transport.poll();
+        transport.poll();
+
+        assertEquals(payloads(), Lists.newArrayList("before rotation", "last line", "after rotation"));
+    }
+
+    @Test
+    public void testFollowsRotatedFilesMatchingThePattern() throws Exception {
+        append(logFile, "");
+        start(ImmutableMap.<String, Object>of(FileTailTransport.CK_FILE_PATH, directory.resolve("*.log*").toString()));
+
+        append(logFile, "before rotation\nlast line");
+        Files.move(logFile, directory.resolve("app.log.1"));
+        append(logFile, "after rotation\n");
+        transport.poll();
+        transport.poll();
+
+        assertEquals(payloads(), Lists.newArrayList("before rotation", "last line", "after rotation"));
+    }
+
+    @Test
+    public void testResumesRotatedFilesFromJournalledPosition() throws Exception {
+        append(logFile, "");
+        start(ImmutableMap.<String, Object>of(FileTailTransport.CK_FILE_PATH, directory.resolve("*.log*").toString()));
+
+        append(logFile, "journalled\nnot journalled\n");
+        transport.poll();
+        messages.get(0).acknowledge();
+        transport.close();
+
+        Files.move(logFile, directory.resolve("app.log.1"));
+        append(logFile, "after rotation\n");
+        messages.clear();
+        start(ImmutableMap.<String, Object>of(FileTailTransport.CK_FILE_PATH, directory.resolve("*.log*").toString()));
+        transport.poll();
+
+        assertEquals(payloads(), Lists.newArrayList("not journalled"));
+    }
+
+    @Test
+    public void testRestartsTruncatedFiles() throws Exception {
+        append(logFile, "");
+        start(ImmutableMap.<String, Object>of());
+
+        append(logFile, "a rather long line\n");
+        transport.poll();
+        Files.write(logFile, "short\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+        transport.poll();
+
+        assertEquals(payloads(), Lists.newArrayList("a rather long line", "short"));
+    }
+
+    @Test
+    public void testSplitsLongLines() throws Exception {
+        append(logFile, "");
+        start(ImmutableMap.<String, Object>of(FileTailTransport.CK_MAX_LINE_LENGTH, 4));
+
+        append(logFile, "123456\n");
+        transport.poll();
+
+        assertEquals(payloads(), Lists.newArrayList("1234", "56"));
+    }
+
+    @Test
+    public void testResumesFromJournalledPosition() throws Exception {
+        append(logFile, "");
+        start(ImmutableMap.<String, Object>of());
+
+        append(logFile, "journalled\nnot journalled\n");
+        transport.poll();
+        messages.get(0).acknowledge();
+        transport.close();
+
+        messages.clear();
+        start(ImmutableMap.<String, Object>of());
+        transport.poll();
+
+        assertEquals(payloads(), Lists.newArrayList("not journalled"));
+    }
+
+    private void start(Map<String, Object> config) throws Exception {
+        final Map<String, Object> source = Maps.newHashMap();
+        source.put(FileTailTransport.CK_FILE_PATH, directory.resolve("*.log").toString());
+        source.put(FileTailTransport.CK_OFFSETS_DIR, directory.resolve("offsets").toString());
+        source.putAll(config);
+        transport = new FileTailTransport(new Configuration(source), new EventBus(), new LocalMetricRegistry());
+        transport.initialize(input);
+    }
+
+    private static void append(Path file, String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private List<String> payloads() {
+        final List<String> payloads = Lists.newArrayList();
+        for (RawMessage message : messages) {
+            payloads.add(new String(message.getPayload(), StandardCharsets.UTF_8));
+        }
+        return payloads;
+    }
+}
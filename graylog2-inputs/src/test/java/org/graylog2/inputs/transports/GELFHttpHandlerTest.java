@@ -30,6 +30,10 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
@@ -214,4 +218,64 @@ public class GELFHttpHandlerTest {
         assertNull(response.headers().get(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_CREDENTIALS));
         assertNull(response.headers().get(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_HEADERS));
     }
+
+    @Test
+    public void testBulkRequestIsSplitIntoMessages() throws Exception {
+        final HttpTransport.Handler handler = new HttpTransport.Handler(true);
+        when(request.getUri()).thenReturn("/gelf/bulk");
+        when(request.getContent()).thenReturn(ChannelBuffers.copiedBuffer(
+                "{\"short_message\":\"one\"}\n\n  {\"short_message\":\"two\"}\r\nnot json\n{\"short_message\":\"three\"}",
+                StandardCharsets.UTF_8));
+
+        handler.messageReceived(ctx, evt);
+
+        assertEquals(forwardedMessages(3), Arrays.asList(
+                "{\"short_message\":\"one\"}", "{\"short_message\":\"two\"}", "{\"short_message\":\"three\"}"));
+        final HttpResponse response = writtenResponse();
+        assertEquals(response.getStatus(), HttpResponseStatus.ACCEPTED);
+        assertEquals(response.getContent().toString(StandardCharsets.UTF_8), "{\"accepted\":3,\"rejected\":1}");
+    }
+
+    @Test
+    public void testChunkedBulkRequest() throws Exception {
+        final HttpTransport.Handler handler = new HttpTransport.Handler(true);
+        when(request.getUri()).thenReturn("/gelf/bulk");
+        when(request.isChunked()).thenReturn(true);
+        when(request.getContent()).thenReturn(ChannelBuffers.EMPTY_BUFFER);
+
+        handler.messageReceived(ctx, evt);
+        verify(channel, never()).write(any());
+
+        receiveChunk(handler, new DefaultHttpChunk(ChannelBuffers.copiedBuffer("{\"a\":1}\n{\"b\"", StandardCharsets.UTF_8)));
+        receiveChunk(handler, new DefaultHttpChunk(ChannelBuffers.copiedBuffer(":2}\n", StandardCharsets.UTF_8)));
+        verify(channel, never()).write(any());
+        receiveChunk(handler, HttpChunk.LAST_CHUNK);
+
+        assertEquals(forwardedMessages(2), Arrays.asList("{\"a\":1}", "{\"b\":2}"));
+        assertEquals(writtenResponse().getContent().toString(StandardCharsets.UTF_8), "{\"accepted\":2,\"rejected\":0}");
+    }
+
+    private void receiveChunk(HttpTransport.Handler handler, HttpChunk chunk) throws Exception {
+        final MessageEvent chunkEvent = mock(MessageEvent.class);
+        when(chunkEvent.getMessage()).thenReturn(chunk);
+        when(chunkEvent.getChannel()).thenReturn(channel);
+        handler.messageReceived(ctx, chunkEvent);
+    }
+
+    private List<String> forwardedMessages(int count) {
+        final ArgumentCaptor<ChannelEvent> events = ArgumentCaptor.forClass(ChannelEvent.class);
+        verify(ctx, times(count)).sendUpstream(events.capture());
+
+        final List<String> messages = new ArrayList<>();
+        for (ChannelEvent event : events.getAllValues()) {
+            messages.add(((ChannelBuffer) ((MessageEvent) event).getMessage()).toString(StandardCharsets.UTF_8));
+        }
+        return messages;
+    }
+
+    private HttpResponse writtenResponse() {
+        final ArgumentCaptor<HttpResponse> argument = ArgumentCaptor.forClass(HttpResponse.class);
+        verify(channel).write(argument.capture());
+        return argument.getValue();
+    }
 }
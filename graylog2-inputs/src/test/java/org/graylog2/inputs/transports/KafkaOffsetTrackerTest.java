@@ -0,0 +1,92 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.inputs.transports;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableMap;
+import kafka.common.TopicAndPartition;
+import org.graylog2.plugin.journal.RawMessage;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class KafkaOffsetTrackerTest {
+    private static final TopicAndPartition PARTITION_0 = new TopicAndPartition("logs", 0);
+    private static final TopicAndPartition PARTITION_1 = new TopicAndPartition("logs", 1);
+    private static final Predicate<TopicAndPartition> OWNED = Predicates.alwaysTrue();
+
+    @Test
+    public void testNothingCommittableBeforeAcknowledgement() throws Exception {
+        final KafkaOffsetTracker tracker = new KafkaOffsetTracker();
+        tracker.track("logs", 0, 10);
+
+        assertEquals(tracker.committableOffsets(OWNED), ImmutableMap.of(PARTITION_0, 10L));
+        assertTrue(tracker.committableOffsets(OWNED).isEmpty());
+    }
+
+    @Test
+    public void testCommitsOnlyContiguousAcknowledgements() throws Exception {
+        final KafkaOffsetTracker tracker = new KafkaOffsetTracker();
+        final RawMessage.Acknowledger first = tracker.track("logs", 0, 10);
+        final RawMessage.Acknowledger second = tracker.track("logs", 0, 11);
+        // offsets of compacted topics are not necessarily consecutive
+        final RawMessage.Acknowledger third = tracker.track("logs", 0, 15);
+        tracker.committableOffsets(OWNED);
+
+        third.acknowledge();
+        assertTrue(tracker.committableOffsets(OWNED).isEmpty());
+
+        first.acknowledge();
+        assertEquals(tracker.committableOffsets(OWNED), ImmutableMap.of(PARTITION_0, 11L));
+
+        second.acknowledge();
+        assertEquals(tracker.committableOffsets(OWNED), ImmutableMap.of(PARTITION_0, 16L));
+    }
+
+    @Test
+    public void testPartitionsAreIndependent() throws Exception {
+        final KafkaOffsetTracker tracker = new KafkaOffsetTracker();
+        tracker.track("logs", 0, 100);
+        final RawMessage.Acknowledger other = tracker.track("logs", 1, 7);
+        tracker.committableOffsets(OWNED);
+
+        other.acknowledge();
+
+        assertEquals(tracker.committableOffsets(OWNED), ImmutableMap.of(PARTITION_1, 8L));
+    }
+
+    @Test
+    public void testForgetsPartitionsLostInRebalance() throws Exception {
+        final KafkaOffsetTracker tracker = new KafkaOffsetTracker();
+        final RawMessage.Acknowledger lost = tracker.track("logs", 0, 100);
+        final RawMessage.Acknowledger kept = tracker.track("logs", 1, 7);
+        tracker.committableOffsets(OWNED);
+
+        // partition 0 has been assigned to another consumer, its late acknowledgement must not be committed
+        lost.acknowledge();
+        kept.acknowledge();
+        assertEquals(tracker.committableOffsets(Predicates.equalTo(PARTITION_1)), ImmutableMap.of(PARTITION_1, 8L));
+
+        // when the partition is assigned to us again, we start over at the offset committed by the other consumer
+        final RawMessage.Acknowledger reassigned = tracker.track("logs", 0, 150);
+        assertEquals(tracker.committableOffsets(OWNED), ImmutableMap.of(PARTITION_0, 150L));
+        reassigned.acknowledge();
+        assertEquals(tracker.committableOffsets(OWNED), ImmutableMap.of(PARTITION_0, 151L));
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.inputs.transports;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class UdpSocketDropsTest {
+    private static final String PROC_NET_UDP =
+            "  sl  local_address rem_address   st tx_queue rx_queue tr tm->when retrnsmt   uid  timeout inode ref pointer drops\n" +
+            "  123: 00000000:3039 00000000:0000 07 00000000:00000000 00:00000000 00000000  1000        0 20002 2 0000000000000000 17\n" +
+            "  124: 0100007F:0035 00000000:0000 07 00000000:00000000 00:00000000 00000000     0        0 10000 2 0000000000000000 99\n" +
+            "  125: 00000000:3039 00000000:0000 07 00000000:00000000 00:00000000 00000000  1000        0 20001 2 0000000000000000 3\n" +
+            "  126: 0100007F:3039 00000000:0000 07 00000000:00000000 00:00000000 00000000  1000        0 20004 2 0000000000000000 7\n";
+    private static final String PROC_NET_UDP6 =
+            "  sl  local_address                         remote_address                        st tx_queue rx_queue tr tm->when retrnsmt   uid  timeout inode ref pointer drops\n" +
+            "  200: 00000000000000000000000000000000:3039 00000000000000000000000000000000:0000 07 00000000:00000000 00:00000000 00000000  1000        0 20003 2 0000000000000000 5\n" +
+            "  201: 0000000000000000FFFF00000100007F:3039 00000000000000000000000000000000:0000 07 00000000:00000000 00:00000000 00000000  1000        0 20005 2 0000000000000000 11\n";
+
+    @Test
+    public void testDropsOfSocketsBoundToWildcardAddress() throws Exception {
+        final UdpSocketDrops socketDrops = new UdpSocketDrops(new InetSocketAddress("0.0.0.0", 12345),
+                Collections.<Long>emptyList(), ImmutableList.of(write(PROC_NET_UDP), write(PROC_NET_UDP6)));
+
+        assertTrue(socketDrops.isAvailable());
+        assertEquals(socketDrops.dropsBySocket(), ImmutableMap.of(20001L, 3L, 20002L, 17L, 20003L, 5L));
+        assertEquals(socketDrops.totalDrops(), 25L);
+    }
+
+    @Test
+    public void testDropsOfSocketsBoundToLoopbackAddress() throws Exception {
+        final UdpSocketDrops socketDrops = new UdpSocketDrops(new InetSocketAddress("127.0.0.1", 12345),
+                Collections.<Long>emptyList(), ImmutableList.of(write(PROC_NET_UDP), write(PROC_NET_UDP6)));
+
+        // IPv4 mapped addresses of IPv6 sockets count as well
+        assertEquals(socketDrops.dropsBySocket(), ImmutableMap.of(20004L, 7L, 20005L, 11L));
+        assertEquals(socketDrops.totalDrops(), 18L);
+    }
+
+    @Test
+    public void testDropsOfOwnSockets() throws Exception {
+        final UdpSocketDrops socketDrops = new UdpSocketDrops(new InetSocketAddress("0.0.0.0", 12345),
+                ImmutableList.of(20002L, 20003L), ImmutableList.of(write(PROC_NET_UDP), write(PROC_NET_UDP6)));
+
+        assertEquals(socketDrops.totalDrops(), 22L);
+        assertEquals(socketDrops.drops(20002L), 17L);
+        assertEquals(socketDrops.drops(20003L), 5L);
+        assertEquals(socketDrops.drops(20001L), 0L);
+    }
+
+    @Test
+    public void testParsesStatisticsOncePerPoll() throws Exception {
+        final File file = write(PROC_NET_UDP);
+        final UdpSocketDrops socketDrops = new UdpSocketDrops(new InetSocketAddress("0.0.0.0", 12345),
+                Collections.<Long>emptyList(), ImmutableList.of(file));
+        assertEquals(socketDrops.totalDrops(), 20L);
+
+        Files.write(PROC_NET_UDP.replace(" 17\n", " 18\n"), file, Charsets.US_ASCII);
+
+        assertEquals(socketDrops.totalDrops(), 20L);
+    }
+
+    @Test
+    public void testMissingStatistics() throws Exception {
+        final UdpSocketDrops socketDrops = new UdpSocketDrops(new InetSocketAddress("0.0.0.0", 12345),
+                Collections.<Long>emptyList(), ImmutableList.of(new File("/does/not/exist")));
+
+        assertFalse(socketDrops.isAvailable());
+        assertTrue(socketDrops.dropsBySocket().isEmpty());
+        assertEquals(socketDrops.totalDrops(), 0L);
+    }
+
+    private File write(String content) throws Exception {
+        final File file = File.createTempFile("proc-net-udp", ".txt");
+        file.deleteOnExit();
+        Files.write(content, file, Charsets.US_ASCII);
+        return file;
+    }
+}
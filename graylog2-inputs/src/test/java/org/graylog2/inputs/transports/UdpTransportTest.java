@@ -0,0 +1,165 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.inputs.transports;
+
+import com.google.common.collect.ImmutableMap;
+import org.graylog2.plugin.LocalMetricRegistry;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.inputs.transports.NettyTransport;
+import org.graylog2.plugin.inputs.util.ThroughputCounter;
+import org.graylog2.plugin.journal.RawMessage;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+
+public class UdpTransportTest {
+    private static final String BIND_ADDRESS = "127.0.0.1";
+
+    private HashedWheelTimer timer;
+    private MessageInput input;
+    private BlockingQueue<RawMessage> received;
+    private UdpTransport transport;
+    private int port;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        timer = new HashedWheelTimer();
+        input = mock(MessageInput.class);
+        received = new LinkedBlockingQueue<>();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                received.add((RawMessage) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(input).processRawMessage(any(RawMessage.class));
+        try (DatagramSocket socket = new DatagramSocket(0, InetAddress.getByName(BIND_ADDRESS))) {
+            port = socket.getLocalPort();
+        }
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        if (transport != null) {
+            transport.stop();
+        }
+        timer.stop();
+    }
+
+    @Test
+    public void testReceivesDatagrams() throws Exception {
+        launch(ImmutableMap.<String, Object>of());
+
+        send(new byte[100], 10);
+
+        awaitMessages(10);
+    }
+
+    @Test
+    public void testMultipleReceiveSocketsShareThePort() throws Exception {
+        if (!ReusePortDatagramChannelFactory.isSupported()) {
+            throw new SkipException("SO_REUSEPORT is not supported by this JVM");
+        }
+        launch(ImmutableMap.<String, Object>of(UdpTransport.CK_RECEIVE_SOCKETS, 4));
+
+        send(new byte[100], 100);
+
+        awaitMessages(100);
+    }
+
+    @Test
+    public void testDatagramsAreTruncatedToDefaultSize() throws Exception {
+        launch(ImmutableMap.<String, Object>of());
+
+        send(new byte[10000], 1);
+
+        assertEquals(awaitMessages(1).getPayloadSize(), UdpTransport.DEFAULT_MAX_DATAGRAM_SIZE);
+    }
+
+    @Test
+    public void testMaxDatagramSizeIsConfigurable() throws Exception {
+        launch(ImmutableMap.<String, Object>of(UdpTransport.CK_MAX_DATAGRAM_SIZE, 16384));
+
+        send(new byte[10000], 1);
+
+        assertEquals(awaitMessages(1).getPayloadSize(), 10000);
+    }
+
+    @Test
+    public void testInvalidMaxDatagramSizeFallsBackToDefault() throws Exception {
+        launch(ImmutableMap.<String, Object>of(UdpTransport.CK_MAX_DATAGRAM_SIZE, 0));
+
+        send(new byte[10000], 1);
+
+        assertEquals(awaitMessages(1).getPayloadSize(), UdpTransport.DEFAULT_MAX_DATAGRAM_SIZE);
+    }
+
+    @Test
+    public void testMaxDatagramSizeIsClampedToLargestDatagram() throws Exception {
+        launch(ImmutableMap.<String, Object>of(UdpTransport.CK_MAX_DATAGRAM_SIZE, 1000000));
+
+        send(new byte[10000], 1);
+
+        assertEquals(awaitMessages(1).getPayloadSize(), 10000);
+    }
+
+    private void launch(Map<String, Object> config) throws Exception {
+        final Map<String, Object> source = ImmutableMap.<String, Object>builder()
+                .put(NettyTransport.CK_BIND_ADDRESS, BIND_ADDRESS)
+                .put(NettyTransport.CK_PORT, port)
+                .putAll(config)
+                .build();
+        transport = new UdpTransport(new Configuration(source), new ThroughputCounter(timer), new LocalMetricRegistry());
+        transport.launch(input);
+    }
+
+    private void send(byte[] payload, int count) throws Exception {
+        try (DatagramSocket socket = new DatagramSocket()) {
+            for (int i = 0; i < count; i++) {
+                socket.send(new DatagramPacket(payload, payload.length, InetAddress.getByName(BIND_ADDRESS), port));
+            }
+        }
+    }
+
+    private RawMessage awaitMessages(int count) throws InterruptedException {
+        RawMessage message = null;
+        for (int i = 0; i < count; i++) {
+            message = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(message, "Received only " + i + " of " + count + " messages");
+        }
+        return message;
+    }
+}
@@ -24,6 +24,7 @@ package org.graylog2.plugin;
 
 import com.github.joschi.jadconfig.Parameter;
 import com.github.joschi.jadconfig.validators.InetPortValidator;
+import com.github.joschi.jadconfig.util.Duration;
 import com.github.joschi.jadconfig.validators.PositiveIntegerValidator;
 import com.lmax.disruptor.BlockingWaitStrategy;
 import com.lmax.disruptor.BusySpinWaitStrategy;
@@ -51,6 +52,9 @@ public abstract class BaseConfiguration {
     @Parameter(value = "processbuffer_processors", required = true, validator = PositiveIntegerValidator.class)
     private int processBufferProcessors = 5;
 
+    @Parameter(value = "processbuffer_decoders", required = true, validator = PositiveIntegerValidator.class)
+    private int processBufferDecoders = 1;
+
     @Parameter(value = "processor_wait_strategy", required = true)
     private String processorWaitStrategy = "blocking";
 
@@ -111,6 +115,30 @@ public abstract class BaseConfiguration {
     @Parameter(value = "udp_recvbuffer_sizes", required = true, validator = PositiveIntegerValidator.class)
     private int udpRecvBufferSizes = 1048576;
 
+    @Parameter(value = "max_decompressed_message_size", validator = PositiveIntegerValidator.class)
+    private int maxDecompressedMessageSize = 10 * 1024 * 1024;
+
+    @Parameter(value = "gelf_chunk_max_bytes", validator = PositiveIntegerValidator.class)
+    private int gelfChunkMaxBytes = 64 * 1024 * 1024;
+
+    @Parameter(value = "gelf_chunk_max_bytes_per_sender", validator = PositiveIntegerValidator.class)
+    private int gelfChunkMaxBytesPerSender = 8 * 1024 * 1024;
+
+    @Parameter(value = "rdns_cache_size", validator = PositiveIntegerValidator.class)
+    private int rdnsCacheSize = 10000;
+
+    @Parameter(value = "rdns_cache_ttl")
+    private Duration rdnsCacheTtl = Duration.minutes(5);
+
+    @Parameter(value = "rdns_negative_cache_ttl")
+    private Duration rdnsNegativeCacheTtl = Duration.minutes(1);
+
+    @Parameter(value = "rdns_lookup_threads", validator = PositiveIntegerValidator.class)
+    private int rdnsLookupThreads = 2;
+
+    @Parameter(value = "rdns_resolve_remote_address")
+    private boolean rdnsResolveRemoteAddress = false;
+
     @Parameter("message_journal_enabled")
     private boolean messageJournalEnabled = false;
 
@@ -162,6 +190,10 @@ public abstract class BaseConfiguration {
         return processBufferProcessors;
     }
 
+    public int getProcessBufferDecoders() {
+        return processBufferDecoders;
+    }
+
     private WaitStrategy getWaitStrategy(String waitStrategyName, String configOptionName) {
         switch (waitStrategyName) {
             case "sleeping":
@@ -275,6 +307,38 @@ public abstract class BaseConfiguration {
         return udpRecvBufferSizes;
     }
 
+    public int getMaxDecompressedMessageSize() {
+        return maxDecompressedMessageSize;
+    }
+
+    public int getGelfChunkMaxBytes() {
+        return gelfChunkMaxBytes;
+    }
+
+    public int getGelfChunkMaxBytesPerSender() {
+        return gelfChunkMaxBytesPerSender;
+    }
+
+    public int getRdnsCacheSize() {
+        return rdnsCacheSize;
+    }
+
+    public Duration getRdnsCacheTtl() {
+        return rdnsCacheTtl;
+    }
+
+    public Duration getRdnsNegativeCacheTtl() {
+        return rdnsNegativeCacheTtl;
+    }
+
+    public int getRdnsLookupThreads() {
+        return rdnsLookupThreads;
+    }
+
+    public boolean isRdnsResolveRemoteAddress() {
+        return rdnsResolveRemoteAddress;
+    }
+
     public boolean isMessageRecordingsEnabled() {
         return messageRecordingsEnable;
     }
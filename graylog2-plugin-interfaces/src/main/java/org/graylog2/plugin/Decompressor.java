@@ -0,0 +1,257 @@
+/**
+ * The MIT License
+ * Copyright (c) 2012 TORCH GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.graylog2.plugin;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reusable ZLIB (RFC 1950) and GZIP (RFC 1952) decompressor.
+ * <p>
+ * Creating an {@link Inflater} for every compressed message allocates native zlib memory which is only released by
+ * finalization, so every thread gets its own decompressor via {@link #get()}, keeping its inflaters and a pre-sized
+ * output buffer around for the next message.
+ * </p>
+ * <p>
+ * The decompressed data is returned as a view on the output buffer of the calling thread's decompressor and is only valid
+ * until that thread decompresses the next payload. The decompressed size is limited by
+ * {@link #setMaxDecompressedSize(int)} to protect against decompression bombs.
+ * </p>
+ */
+public class Decompressor {
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    // buffers which have grown larger than this are released after use to not pin memory in every thread
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int GZIP_HEADER_SIZE = 10;
+    private static final int GZIP_TRAILER_SIZE = 8;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    @SuppressWarnings("StaticNonFinalField")
+    private static volatile int maxDecompressedSize = 10 * 1024 * 1024;
+
+    private static final ThreadLocal<Decompressor> DECOMPRESSORS = new ThreadLocal<Decompressor>() {
+        @Override
+        protected Decompressor initialValue() {
+            return new Decompressor();
+        }
+    };
+
+    private final Inflater zlibInflater = new Inflater();
+    private final Inflater gzipInflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+    private final byte[] overflowProbe = new byte[1];
+    private byte[] input = new byte[INITIAL_BUFFER_SIZE];
+    private byte[] output = new byte[INITIAL_BUFFER_SIZE];
+
+    /**
+     * @return the decompressor of the calling thread
+     */
+    public static Decompressor get() {
+        return DECOMPRESSORS.get();
+    }
+
+    public static int getMaxDecompressedSize() {
+        return maxDecompressedSize;
+    }
+
+    public static void setMaxDecompressedSize(int size) {
+        maxDecompressedSize = size;
+    }
+
+    /**
+     * Decompress ZLIB (RFC 1950) compressed data.
+     *
+     * @param compressed the compressed bytes between position and limit, the buffer itself is not modified
+     * @return a view on the decompressed data, valid until the next call on this thread
+     * @throws IOException if the data is malformed or exceeds the maximum decompressed size
+     */
+    public ByteBuffer inflateZlib(ByteBuffer compressed) throws IOException {
+        releaseLargeBuffers();
+        final int length = copyInput(compressed);
+
+        zlibInflater.reset();
+        zlibInflater.setInput(input, 0, length);
+        final int size = inflate(zlibInflater, 0);
+
+        return ByteBuffer.wrap(output, 0, size);
+    }
+
+    /**
+     * Decompress GZIP (RFC 1952) compressed data, including concatenated GZIP members.
+     *
+     * @param compressed the compressed bytes between position and limit, the buffer itself is not modified
+     * @return a view on the decompressed data, valid until the next call on this thread
+     * @throws IOException if the data is malformed or exceeds the maximum decompressed size
+     */
+    public ByteBuffer inflateGzip(ByteBuffer compressed) throws IOException {
+        releaseLargeBuffers();
+        final int length = copyInput(compressed);
+
+        int offset = 0;
+        int size = 0;
+        do {
+            offset = skipGzipHeader(offset, length);
+
+            gzipInflater.reset();
+            gzipInflater.setInput(input, offset, length - offset);
+            final int memberStart = size;
+            size = inflate(gzipInflater, size);
+            offset = length - gzipInflater.getRemaining();
+
+            if (length - offset < GZIP_TRAILER_SIZE) {
+                throw new EOFException("Unexpected end of GZIP input");
+            }
+            crc.reset();
+            crc.update(output, memberStart, size - memberStart);
+            if (readInt(offset) != (int) crc.getValue()) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+            if (readInt(offset + 4) != size - memberStart) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+            offset += GZIP_TRAILER_SIZE;
+        } while (length - offset >= GZIP_HEADER_SIZE && readShort(offset) == GZIP_MAGIC);
+
+        return ByteBuffer.wrap(output, 0, size);
+    }
+
+    private int inflate(Inflater inflater, int offset) throws IOException {
+        final int max = maxDecompressedSize;
+        int size = offset;
+        try {
+            while (!inflater.finished()) {
+                final int n;
+                if (size < max) {
+                    if (size == output.length) {
+                        growOutput(max);
+                    }
+                    n = inflater.inflate(output, size, Math.min(output.length, max) - size);
+                } else if (inflater.inflate(overflowProbe) > 0) {
+                    throw new IOException("Decompressed message exceeds the maximum size of " + max + " bytes");
+                } else {
+                    // the output is full, but the stream might only be missing its end marker
+                    n = 0;
+                }
+                if (n == 0 && !inflater.finished()) {
+                    if (inflater.needsDictionary()) {
+                        throw new ZipException("Preset dictionaries are not supported");
+                    }
+                    if (inflater.needsInput()) {
+                        throw new EOFException("Unexpected end of compressed input");
+                    }
+                }
+                size += n;
+            }
+        } catch (DataFormatException e) {
+            final String msg = e.getMessage();
+            throw new ZipException(msg != null ? msg : "Invalid compressed data format");
+        }
+        return size;
+    }
+
+    private void growOutput(int max) {
+        final byte[] grown = new byte[(int) Math.min((long) output.length * 2, max)];
+        System.arraycopy(output, 0, grown, 0, output.length);
+        output = grown;
+    }
+
+    private int copyInput(ByteBuffer compressed) {
+        final int length = compressed.remaining();
+        if (input.length < length) {
+            input = new byte[length];
+        }
+        compressed.duplicate().get(input, 0, length);
+        return length;
+    }
+
+    private void releaseLargeBuffers() {
+        if (input.length > MAX_RETAINED_BUFFER_SIZE) {
+            input = new byte[INITIAL_BUFFER_SIZE];
+        }
+        if (output.length > MAX_RETAINED_BUFFER_SIZE) {
+            output = new byte[INITIAL_BUFFER_SIZE];
+        }
+    }
+
+    private int skipGzipHeader(int offset, int length) throws IOException {
+        if (length - offset < GZIP_HEADER_SIZE) {
+            throw new EOFException("Unexpected end of GZIP header");
+        }
+        if (readShort(offset) != GZIP_MAGIC) {
+            throw new ZipException("Not in GZIP format");
+        }
+        if ((input[offset + 2] & 0xff) != 8) {
+            throw new ZipException("Unsupported compression method");
+        }
+        final int flags = input[offset + 3] & 0xff;
+        // skip magic, method, flags, modification time, extra flags and operating system
+        int position = offset + GZIP_HEADER_SIZE;
+        if ((flags & FEXTRA) == FEXTRA) {
+            checkAvailable(position + 2, length);
+            position += 2 + readShort(position);
+        }
+        if ((flags & FNAME) == FNAME) {
+            position = skipZeroTerminated(position, length);
+        }
+        if ((flags & FCOMMENT) == FCOMMENT) {
+            position = skipZeroTerminated(position, length);
+        }
+        if ((flags & FHCRC) == FHCRC) {
+            position += 2;
+        }
+        checkAvailable(position, length);
+        return position;
+    }
+
+    private int skipZeroTerminated(int position, int length) throws IOException {
+        while (position < length && input[position] != 0) {
+            position++;
+        }
+        checkAvailable(position + 1, length);
+        return position + 1;
+    }
+
+    private void checkAvailable(int position, int length) throws EOFException {
+        if (position > length) {
+            throw new EOFException("Unexpected end of GZIP header");
+        }
+    }
+
+    private int readShort(int position) {
+        return (input[position] & 0xff) | ((input[position + 1] & 0xff) << 8);
+    }
+
+    private int readInt(int position) {
+        return readShort(position) | (readShort(position + 2) << 16);
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ * The MIT License
+ * Copyright (c) 2012 TORCH GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.graylog2.plugin;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Sets;
+import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Caches reverse DNS lookups of remote addresses without ever blocking the caller.
+ * <p/>
+ * A lookup for an address which is not cached yet returns {@code null} and resolves the address in the background,
+ * later lookups then see the result. Failed lookups are cached as well, using a shorter TTL. Entries older than their
+ * TTL are still returned while they are being refreshed in the background, until they expire after twice the TTL.
+ */
+@Singleton
+public class HostnameResolver {
+    private static final Logger LOG = LoggerFactory.getLogger(HostnameResolver.class);
+
+    private static final int MAX_PENDING_LOOKUPS = 1024;
+
+    private final Cache<InetAddress, Entry> cache;
+    private final Set<InetAddress> pending = Sets.newConcurrentHashSet();
+    private final Executor executor;
+    private final Ticker ticker;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+
+    private final Meter hits;
+    private final Meter misses;
+    private final Meter failures;
+    private final Meter rejected;
+    private final Timer resolveTime;
+
+    @Inject
+    public HostnameResolver(MetricRegistry metricRegistry,
+                            @Named("rdns_cache_size") int cacheSize,
+                            @Named("rdns_cache_ttl") Duration ttl,
+                            @Named("rdns_negative_cache_ttl") Duration negativeTtl,
+                            @Named("rdns_lookup_threads") int lookupThreads) {
+        this(metricRegistry, cacheSize, ttl.toNanoseconds(), negativeTtl.toNanoseconds(),
+                newLookupExecutor(lookupThreads), Ticker.systemTicker());
+    }
+
+    HostnameResolver(MetricRegistry metricRegistry,
+                     int cacheSize,
+                     long ttlNanos,
+                     long negativeTtlNanos,
+                     Executor executor,
+                     Ticker ticker) {
+        this.executor = executor;
+        this.ticker = ticker;
+        this.ttlNanos = ttlNanos;
+        this.negativeTtlNanos = negativeTtlNanos;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(2 * Math.max(ttlNanos, negativeTtlNanos), TimeUnit.NANOSECONDS)
+                .ticker(ticker)
+                .build();
+
+        this.hits = metricRegistry.meter(name(HostnameResolver.class, "hits"));
+        this.misses = metricRegistry.meter(name(HostnameResolver.class, "misses"));
+        this.failures = metricRegistry.meter(name(HostnameResolver.class, "failures"));
+        this.rejected = metricRegistry.meter(name(HostnameResolver.class, "rejected"));
+        this.resolveTime = metricRegistry.timer(name(HostnameResolver.class, "resolveTime"));
+        metricRegistry.register(name(HostnameResolver.class, "size"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return cache.size();
+            }
+        });
+    }
+
+    private static Executor newLookupExecutor(int threads) {
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_PENDING_LOOKUPS),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("rdns-lookup-%d").build());
+    }
+
+    /**
+     * Returns the cached host name of the given address.
+     *
+     * @return the host name or {@code null} if the address has not been resolved yet or could not be resolved
+     */
+    @Nullable
+    public String lookup(InetAddress address) {
+        final Entry entry = cache.getIfPresent(address);
+        if (entry == null) {
+            misses.mark();
+            scheduleLookup(address);
+            return null;
+        }
+
+        hits.mark();
+        if (ticker.read() - entry.resolvedAt > (entry.hostName == null ? negativeTtlNanos : ttlNanos)) {
+            scheduleLookup(address);
+        }
+        return entry.hostName;
+    }
+
+    private void scheduleLookup(final InetAddress address) {
+        // only one lookup per address at a time, concurrent callers simply keep using the cached entry
+        if (!pending.add(address)) {
+            return;
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        cache.put(address, new Entry(resolve(address), ticker.read()));
+                    } finally {
+                        pending.remove(address);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the resolver cannot keep up, the next message from this address will try again
+            pending.remove(address);
+            rejected.mark();
+        }
+    }
+
+    @Nullable
+    private String resolve(InetAddress address) {
+        final String hostName;
+        try (Timer.Context ignored = resolveTime.time()) {
+            hostName = lookupHostName(address);
+        } catch (UnknownHostException | RuntimeException e) {
+            LOG.debug("Reverse DNS lookup of " + address + " failed.", e);
+            failures.mark();
+            return null;
+        }
+
+        // the JDK returns the textual representation of the address if it cannot be resolved
+        if (hostName == null || hostName.equals(address.getHostAddress()) || hostName.equals(InetAddresses.toAddrString(address))) {
+            failures.mark();
+            return null;
+        }
+        return hostName;
+    }
+
+    protected String lookupHostName(InetAddress address) throws UnknownHostException {
+        return Tools.rdnsLookup(address);
+    }
+
+    private static class Entry {
+        @Nullable
+        private final String hostName;
+        private final long resolvedAt;
+
+        private Entry(@Nullable String hostName, long resolvedAt) {
+            this.hostName = hostName;
+            this.resolvedAt = resolvedAt;
+        }
+    }
+}
@@ -23,9 +23,20 @@
 package org.graylog2.plugin;
 
 import com.github.joschi.jadconfig.Parameter;
+import com.github.joschi.jadconfig.ValidationException;
+import com.github.joschi.jadconfig.ValidatorMethod;
+import com.github.joschi.jadconfig.validators.PositiveIntegerValidator;
+import com.github.joschi.jadconfig.validators.PositiveLongValidator;
+import com.google.common.collect.ImmutableSet;
 import org.joda.time.Duration;
 
+import java.util.Set;
+
 public class KafkaJournalConfiguration {
+    private static final Set<String> COMPRESSION_CODECS = ImmutableSet.of("none", "gzip", "snappy");
+    private static final Set<String> PARTITIONERS = ImmutableSet.of("round_robin", "input");
+    private static final Set<String> SHEDDING_POLICIES = ImmutableSet.of("throttle", "drop_oldest");
+    private static final int MAX_PARTITIONS = 127;
 
     @Parameter("message_journal_dir")
     private String messageJournalDir = "journal";
@@ -39,6 +50,42 @@ public class KafkaJournalConfiguration {
     @Parameter("message_journal_max_age")
     private Duration messageJournalMaxAge = Duration.standardHours(12);
 
+    // the flush settings default to leaving durability to the operating system's page cache
+    @Parameter(value = "message_journal_flush_interval", validator = PositiveLongValidator.class)
+    private long messageJournalFlushInterval = Long.MAX_VALUE; // messages
+
+    @Parameter(value = "message_journal_flush_bytes", validator = PositiveLongValidator.class)
+    private long messageJournalFlushBytes = Long.MAX_VALUE;
+
+    @Parameter("message_journal_flush_age")
+    private Duration messageJournalFlushAge = new Duration(Long.MAX_VALUE);
+
+    @Parameter("message_journal_group_commit")
+    private boolean messageJournalGroupCommit = false;
+
+    @Parameter("message_journal_compression")
+    private String messageJournalCompression = "none";
+
+    @Parameter(value = "message_journal_max_read_size", validator = PositiveIntegerValidator.class)
+    private int messageJournalMaxReadSize = 1024 * 1024 * 5; // 5 MB
+
+    @Parameter(value = "message_journal_partitions", validator = PositiveIntegerValidator.class)
+    private int messageJournalPartitions = 1;
+
+    @Parameter("message_journal_partitioner")
+    private String messageJournalPartitioner = "round_robin";
+
+    // below the minimum free space the journal is cleaned up early and inputs are throttled, below the shedding
+    // threshold the shedding policy applies
+    @Parameter(value = "message_journal_min_free_space", validator = PositiveLongValidator.class)
+    private long messageJournalMinFreeSpace = 1024 * 1024 * 1024l; // 1 GB
+
+    @Parameter(value = "message_journal_shedding_free_space", validator = PositiveLongValidator.class)
+    private long messageJournalSheddingFreeSpace = 1024 * 1024 * 256l; // 256 MB
+
+    @Parameter("message_journal_shedding")
+    private String messageJournalShedding = "throttle";
+
     public String getMessageJournalDir() {
         return messageJournalDir;
     }
@@ -55,4 +102,67 @@ public class KafkaJournalConfiguration {
         return messageJournalMaxSize;
     }
 
+    public long getMessageJournalFlushInterval() {
+        return messageJournalFlushInterval;
+    }
+
+    public long getMessageJournalFlushBytes() {
+        return messageJournalFlushBytes;
+    }
+
+    public Duration getMessageJournalFlushAge() {
+        return messageJournalFlushAge;
+    }
+
+    public boolean isMessageJournalGroupCommit() {
+        return messageJournalGroupCommit;
+    }
+
+    public String getMessageJournalCompression() {
+        return messageJournalCompression;
+    }
+
+    public int getMessageJournalMaxReadSize() {
+        return messageJournalMaxReadSize;
+    }
+
+    public int getMessageJournalPartitions() {
+        return messageJournalPartitions;
+    }
+
+    public String getMessageJournalPartitioner() {
+        return messageJournalPartitioner;
+    }
+
+    public long getMessageJournalMinFreeSpace() {
+        return messageJournalMinFreeSpace;
+    }
+
+    public long getMessageJournalSheddingFreeSpace() {
+        return messageJournalSheddingFreeSpace;
+    }
+
+    public String getMessageJournalShedding() {
+        return messageJournalShedding;
+    }
+
+    @ValidatorMethod
+    public void validate() throws ValidationException {
+        if (!COMPRESSION_CODECS.contains(messageJournalCompression)) {
+            throw new ValidationException("message_journal_compression has to be one of " + COMPRESSION_CODECS);
+        }
+        if (messageJournalPartitions > MAX_PARTITIONS) {
+            throw new ValidationException("message_journal_partitions must not be larger than " + MAX_PARTITIONS);
+        }
+        if (!PARTITIONERS.contains(messageJournalPartitioner)) {
+            throw new ValidationException("message_journal_partitioner has to be one of " + PARTITIONERS);
+        }
+        if (messageJournalSheddingFreeSpace >= messageJournalMinFreeSpace) {
+            throw new ValidationException("message_journal_shedding_free_space must be smaller than message_journal_min_free_space");
+        }
+        if (!SHEDDING_POLICIES.contains(messageJournalShedding)) {
+            throw new ValidationException("message_journal_shedding has to be one of " + SHEDDING_POLICIES);
+        }
+    }
+
 }
@@ -22,6 +22,7 @@
  */
 package org.graylog2.plugin;
 
+import javax.annotation.Nullable;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 
@@ -33,6 +34,7 @@ import java.net.InetSocketAddress;
 public class ResolvableInetSocketAddress {
     private final InetSocketAddress inetSocketAddress;
     private boolean reverseLookedUp = false;
+    private String hostName;
 
     public ResolvableInetSocketAddress(InetSocketAddress inetSocketAddress) {
         this.inetSocketAddress = inetSocketAddress;
@@ -43,12 +45,43 @@ public class ResolvableInetSocketAddress {
         return new ResolvableInetSocketAddress(socketAddress);
     }
 
+    /**
+     * Wraps an address whose host name has already been resolved earlier, e. g. before it was written to the journal.
+     */
+    public static ResolvableInetSocketAddress wrap(InetSocketAddress socketAddress, @Nullable String resolvedHostName) {
+        final ResolvableInetSocketAddress address = wrap(socketAddress);
+        if (address != null && resolvedHostName != null && !resolvedHostName.isEmpty()) {
+            address.setHostName(resolvedHostName);
+        }
+        return address;
+    }
+
     public String reverseLookup() {
-        final String hostName = inetSocketAddress.getHostName();
-        reverseLookedUp = true;
+        setHostName(inetSocketAddress.getHostName());
         return hostName;
     }
 
+    /**
+     * Looks up the host name in the given resolver's cache instead of asking the name service directly.
+     *
+     * @return the host name or {@code null} if it is not known (yet), in which case the address stays unresolved
+     */
+    @Nullable
+    public String reverseLookup(HostnameResolver resolver) {
+        if (!reverseLookedUp) {
+            final String resolved = resolver.lookup(getAddress());
+            if (resolved != null) {
+                setHostName(resolved);
+            }
+        }
+        return getHostName();
+    }
+
+    private void setHostName(String hostName) {
+        this.hostName = hostName;
+        this.reverseLookedUp = true;
+    }
+
     public boolean isReverseLookedUp() {
         return reverseLookedUp;
     }
@@ -71,7 +104,7 @@ public class ResolvableInetSocketAddress {
 
     public String getHostName() {
         if (isReverseLookedUp()) {
-            return inetSocketAddress.getHostName();
+            return hostName;
         }
         return null;
     }
@@ -33,8 +33,6 @@ import org.joda.time.format.DateTimeParser;
 import org.joda.time.format.ISODateTimeFormat;
 import org.slf4j.Logger;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.net.Inet4Address;
@@ -44,6 +42,7 @@ import java.net.SocketException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -52,8 +51,6 @@ import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.InflaterInputStream;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
 
@@ -187,30 +184,22 @@ public final class Tools {
      * Decompress ZLIB (RFC 1950) compressed data
      *
      * @return A string containing the decompressed data
+     * @see Decompressor
      */
     public static String decompressZlib(byte[] compressedData) throws IOException {
-        byte[] buffer = new byte[compressedData.length];
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(compressedData));
-        for (int bytesRead = 0; bytesRead != -1; bytesRead = in.read(buffer)) {
-            out.write(buffer, 0, bytesRead);
-        }
-        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        final ByteBuffer decompressed = Decompressor.get().inflateZlib(ByteBuffer.wrap(compressedData));
+        return new String(decompressed.array(), decompressed.arrayOffset(), decompressed.remaining(), StandardCharsets.UTF_8);
     }
 
     /**
      * Decompress GZIP (RFC 1952) compressed data
      *
      * @return A string containing the decompressed data
+     * @see Decompressor
      */
     public static String decompressGzip(byte[] compressedData) throws IOException {
-        byte[] buffer = new byte[compressedData.length];
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressedData));
-        for (int bytesRead = 0; bytesRead != -1; bytesRead = in.read(buffer)) {
-            out.write(buffer, 0, bytesRead);
-        }
-        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        final ByteBuffer decompressed = Decompressor.get().inflateGzip(ByteBuffer.wrap(compressedData));
+        return new String(decompressed.array(), decompressed.arrayOffset(), decompressed.remaining(), StandardCharsets.UTF_8);
     }
 
     /**
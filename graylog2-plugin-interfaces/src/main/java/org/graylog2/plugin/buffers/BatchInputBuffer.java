@@ -0,0 +1,40 @@
+/**
+ * The MIT License
+ * Copyright (c) 2012 TORCH GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.graylog2.plugin.buffers;
+
+import org.graylog2.plugin.journal.RawMessage;
+
+import java.util.List;
+
+/**
+ * An {@link InputBuffer} which can insert a batch of messages at once. Message inputs hand batches to buffers
+ * implementing this interface and insert the messages one by one into all other buffers.
+ */
+public interface BatchInputBuffer extends InputBuffer {
+
+    /**
+     * Inserts all messages at once, claiming buffer slots for the whole batch instead of one slot per message.
+     * The buffer does not keep a reference to the list.
+     */
+    public abstract void insert(List<RawMessage> messages);
+}
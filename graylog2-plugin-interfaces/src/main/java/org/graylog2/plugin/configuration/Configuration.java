@@ -29,8 +29,10 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.base.Charsets;
 import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,6 +62,8 @@ public class Configuration {
     private final Map<String, Boolean> bools;
     @JsonIgnore
     private String serializedSource = null;
+    @JsonIgnore
+    private long fingerprint = 0L;
 
     @JsonCreator
     public Configuration(@JsonProperty("source") Map<String, Object> m) {
@@ -68,6 +72,7 @@ public class Configuration {
         if (m != null && !m.isEmpty()) {
             try {
                 this.serializedSource = objectMapper.writeValueAsString(this);
+                this.fingerprint = fingerprint(serializedSource);
             } catch (JsonProcessingException e) {
                 LOG.error("Serializing configuration failed.", e);
             }
@@ -144,6 +149,29 @@ public class Configuration {
         return serializedSource;
     }
 
+    /**
+     * A stable hash of the {@link #serializeToJson() serialized configuration}, the same configuration always has the
+     * same fingerprint. Empty configurations have the fingerprint {@code 0}.
+     *
+     * @return the 64 bit fingerprint of this configuration
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Computes the {@link #getFingerprint() fingerprint} of a serialized configuration without deserializing it.
+     *
+     * @param json the JSON as returned by {@link #serializeToJson()}
+     * @return the 64 bit fingerprint of the configuration
+     */
+    public static long fingerprint(String json) {
+        if (Strings.isNullOrEmpty(json)) {
+            return 0L;
+        }
+        return Hashing.murmur3_128().hashString(json, Charsets.UTF_8).asLong();
+    }
+
     public static Configuration deserializeFromJson(String json) {
         if (Strings.isNullOrEmpty(json)) {
             return EMPTY_CONFIGURATION;
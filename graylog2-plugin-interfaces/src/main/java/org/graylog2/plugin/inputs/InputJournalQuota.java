@@ -0,0 +1,162 @@
+/**
+ * The MIT License
+ * Copyright (c) 2012 TORCH GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.graylog2.plugin.inputs;
+
+import com.google.common.collect.ImmutableMap;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.configuration.ConfigurationRequest;
+import org.graylog2.plugin.configuration.fields.ConfigurationField;
+import org.graylog2.plugin.configuration.fields.DropdownField;
+import org.graylog2.plugin.configuration.fields.NumberField;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+
+/**
+ * The share of the message journal an input may use: the number of messages and bytes per second it may write, and
+ * its priority when the journal fills up.
+ * <p/>
+ * Messages exceeding the quotas are dropped when they are written to the journal. Once the journal utilization
+ * reaches the shedding threshold of an input's priority, its messages are dropped as well, so the journal keeps room
+ * for the inputs with a higher priority.
+ * <p/>
+ * Inputs which are allowed to be throttled are pushed back instead: their transports read no faster than the message
+ * quota, and low priority inputs are slowed down earlier. Only the byte quota drops their messages.
+ * <p/>
+ * Dropped messages are acknowledged to their source like the ones exceeding the rate limits of the input, they are
+ * lost on purpose. Sources which keep unacknowledged messages, like Kafka, AMQP or files, advance past them.
+ */
+public class InputJournalQuota {
+    private static final Logger LOG = LoggerFactory.getLogger(InputJournalQuota.class);
+
+    public static final String CK_PRIORITY = "journal_priority";
+    public static final String CK_MESSAGE_QUOTA = "journal_quota_messages";
+    public static final String CK_BYTE_QUOTA = "journal_quota_bytes";
+
+    public static final InputJournalQuota UNLIMITED = new InputJournalQuota(Priority.NORMAL, 0, 0);
+
+    public enum Priority {
+        HIGH(Double.POSITIVE_INFINITY, 1.0),
+        NORMAL(0.95, 1.0),
+        LOW(0.8, 0.5);
+
+        private final double sheddingUtilization;
+        private final double throttlingFactor;
+
+        Priority(double sheddingUtilization, double throttlingFactor) {
+            this.sheddingUtilization = sheddingUtilization;
+            this.throttlingFactor = throttlingFactor;
+        }
+
+        /**
+         * @return the journal utilization from which on messages of this priority are dropped
+         */
+        public double getSheddingUtilization() {
+            return sheddingUtilization;
+        }
+
+        /**
+         * @return the factor the throttling targets of transports with this priority are scaled by
+         */
+        public double getThrottlingFactor() {
+            return throttlingFactor;
+        }
+
+        public static Priority fromConfiguration(Configuration configuration) {
+            if (!configuration.stringIsSet(CK_PRIORITY)) {
+                return NORMAL;
+            }
+
+            final String priority = configuration.getString(CK_PRIORITY);
+            try {
+                return valueOf(priority.toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Unknown journal priority \"{}\", using {} instead.", priority, NORMAL);
+                return NORMAL;
+            }
+        }
+    }
+
+    private final Priority priority;
+    private final int messagesPerSecond;
+    private final int bytesPerSecond;
+
+    public InputJournalQuota(Priority priority, int messagesPerSecond, int bytesPerSecond) {
+        this.priority = priority;
+        this.messagesPerSecond = messagesPerSecond;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public static InputJournalQuota fromConfiguration(Configuration configuration) {
+        final int messagesPerSecond = configuration.intIsSet(CK_MESSAGE_QUOTA) ? configuration.getInt(CK_MESSAGE_QUOTA) : 0;
+        final int bytesPerSecond = configuration.intIsSet(CK_BYTE_QUOTA) ? configuration.getInt(CK_BYTE_QUOTA) : 0;
+        return new InputJournalQuota(Priority.fromConfiguration(configuration), messagesPerSecond, bytesPerSecond);
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return the number of messages per second the input may write to the journal, 0 means unlimited
+     */
+    public int getMessagesPerSecond() {
+        return messagesPerSecond;
+    }
+
+    /**
+     * @return the number of bytes per second the input may write to the journal, 0 means unlimited
+     */
+    public int getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public static void addConfigurationFields(ConfigurationRequest request) {
+        request.addField(new DropdownField(
+                CK_PRIORITY,
+                "Journal priority",
+                Priority.NORMAL.toString(),
+                ImmutableMap.of(
+                        Priority.HIGH.toString(), "High",
+                        Priority.NORMAL.toString(), "Normal",
+                        Priority.LOW.toString(), "Low"),
+                "When the message journal fills up, messages of low priority inputs are dropped first, messages of high priority inputs are never dropped.",
+                ConfigurationField.Optional.OPTIONAL
+        ));
+        request.addField(new NumberField(
+                CK_MESSAGE_QUOTA,
+                "Journal message quota",
+                0,
+                "Maximum number of messages per second this input may write to the message journal, the rest is dropped. Inputs which are allowed to be throttled read slower instead. 0 means unlimited.",
+                ConfigurationField.Optional.OPTIONAL
+        ));
+        request.addField(new NumberField(
+                CK_BYTE_QUOTA,
+                "Journal byte quota",
+                0,
+                "Maximum number of bytes per second this input may write to the message journal, the rest is dropped. 0 means unlimited.",
+                ConfigurationField.Optional.OPTIONAL
+        ));
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ * The MIT License
+ * Copyright (c) 2012 TORCH GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.graylog2.plugin.inputs;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.RateLimiter;
+import org.graylog2.plugin.ResolvableInetSocketAddress;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.configuration.ConfigurationRequest;
+import org.graylog2.plugin.configuration.fields.ConfigurationField;
+import org.graylog2.plugin.configuration.fields.DropdownField;
+import org.graylog2.plugin.configuration.fields.NumberField;
+import org.graylog2.plugin.journal.RawMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.net.InetAddress;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the rate at which an input hands messages to the input buffer, in total and per remote address.
+ * <p/>
+ * Both limits are token buckets which can take up a burst of one second worth of messages. Messages exceeding a limit
+ * are either dropped or delay the caller until the bucket has been refilled, which pushes back on the transport.
+ * Delaying is only done for transports which read at their own pace, blocking the shared I/O threads of a Netty
+ * transport would stall all of its connections instead of only the offending one.
+ */
+public class InputRateLimiter {
+    private static final Logger LOG = LoggerFactory.getLogger(InputRateLimiter.class);
+
+    public static final String CK_RATE_LIMIT = "rate_limit";
+    public static final String CK_SOURCE_RATE_LIMIT = "rate_limit_per_source";
+    public static final String CK_RATE_LIMIT_POLICY = "rate_limit_policy";
+
+    // the buckets of remote addresses which have not been seen for a while are forgotten
+    private static final int MAX_SOURCES = 10000;
+    private static final long SOURCE_EXPIRY_MINUTES = 10;
+
+    public enum Policy {
+        DROP, THROTTLE
+    }
+
+    private final Policy policy;
+    @Nullable
+    private final RateLimiter inputLimiter;
+    @Nullable
+    private final LoadingCache<InetAddress, RateLimiter> sourceLimiters;
+
+    private final Meter inputDropped;
+    private final Meter inputDelayed;
+    private final Meter sourceDropped;
+    private final Meter sourceDelayed;
+
+    public InputRateLimiter(double messagesPerSecond,
+                            final double messagesPerSecondPerSource,
+                            Policy policy,
+                            MetricRegistry localRegistry) {
+        this.policy = policy;
+        this.inputLimiter = messagesPerSecond > 0 ? RateLimiter.create(messagesPerSecond) : null;
+        if (messagesPerSecondPerSource > 0) {
+            this.sourceLimiters = CacheBuilder.newBuilder()
+                    .maximumSize(MAX_SOURCES)
+                    .expireAfterAccess(SOURCE_EXPIRY_MINUTES, TimeUnit.MINUTES)
+                    .build(new CacheLoader<InetAddress, RateLimiter>() {
+                        @Override
+                        public RateLimiter load(InetAddress key) {
+                            return RateLimiter.create(messagesPerSecondPerSource);
+                        }
+                    });
+            localRegistry.register("rateLimit.source.buckets", new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return sourceLimiters.size();
+                }
+            });
+        } else {
+            this.sourceLimiters = null;
+        }
+
+        this.inputDropped = localRegistry.meter("rateLimit.input.dropped");
+        this.inputDelayed = localRegistry.meter("rateLimit.input.delayed");
+        this.sourceDropped = localRegistry.meter("rateLimit.source.dropped");
+        this.sourceDelayed = localRegistry.meter("rateLimit.source.delayed");
+    }
+
+    /**
+     * @param throttlingSupported whether the transport can be blocked while waiting for tokens, messages are dropped
+     *                            instead otherwise
+     * @return the rate limiter configured for the input or {@code null} if the input is not limited
+     */
+    @Nullable
+    public static InputRateLimiter fromConfiguration(Configuration configuration,
+                                                     MetricRegistry localRegistry,
+                                                     boolean throttlingSupported) {
+        final int rateLimit = configuration.intIsSet(CK_RATE_LIMIT) ? configuration.getInt(CK_RATE_LIMIT) : 0;
+        final int sourceRateLimit = configuration.intIsSet(CK_SOURCE_RATE_LIMIT) ? configuration.getInt(CK_SOURCE_RATE_LIMIT) : 0;
+        if (rateLimit <= 0 && sourceRateLimit <= 0) {
+            return null;
+        }
+
+        Policy rateLimitPolicy = policyFromConfiguration(configuration);
+        if (rateLimitPolicy == Policy.THROTTLE && !throttlingSupported) {
+            LOG.warn("The transport of this input cannot be slowed down, dropping messages exceeding the rate limits instead.");
+            rateLimitPolicy = Policy.DROP;
+        }
+        return new InputRateLimiter(rateLimit, sourceRateLimit, rateLimitPolicy, localRegistry);
+    }
+
+    private static Policy policyFromConfiguration(Configuration configuration) {
+        if (!configuration.stringIsSet(CK_RATE_LIMIT_POLICY)) {
+            return Policy.DROP;
+        }
+
+        final String policy = configuration.getString(CK_RATE_LIMIT_POLICY);
+        try {
+            return Policy.valueOf(policy.toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Unknown rate limit policy \"{}\", using {} instead.", policy, Policy.DROP);
+            return Policy.DROP;
+        }
+    }
+
+    /**
+     * Takes a token for the message from the buckets of the input and its remote address, waiting for them if the
+     * policy is to throttle.
+     *
+     * @return {@code false} if the message has to be dropped
+     */
+    public boolean admit(RawMessage rawMessage) {
+        if (sourceLimiters != null) {
+            final ResolvableInetSocketAddress remoteAddress = rawMessage.getRemoteAddress();
+            if (remoteAddress != null
+                    && !acquire(sourceLimiters.getUnchecked(remoteAddress.getAddress()), sourceDropped, sourceDelayed)) {
+                return false;
+            }
+        }
+
+        return inputLimiter == null || acquire(inputLimiter, inputDropped, inputDelayed);
+    }
+
+    private boolean acquire(RateLimiter limiter, Meter dropped, Meter delayed) {
+        if (limiter.tryAcquire()) {
+            return true;
+        }
+
+        if (policy == Policy.DROP) {
+            dropped.mark();
+            return false;
+        }
+
+        limiter.acquire();
+        delayed.mark();
+        return true;
+    }
+
+    public static void addConfigurationFields(ConfigurationRequest request) {
+        request.addField(new NumberField(
+                CK_RATE_LIMIT,
+                "Rate limit",
+                0,
+                "Maximum number of messages per second this input accepts. 0 means unlimited.",
+                ConfigurationField.Optional.OPTIONAL
+        ));
+        request.addField(new NumberField(
+                CK_SOURCE_RATE_LIMIT,
+                "Rate limit per remote address",
+                0,
+                "Maximum number of messages per second this input accepts from a single remote address. 0 means unlimited.",
+                ConfigurationField.Optional.OPTIONAL
+        ));
+        request.addField(new DropdownField(
+                CK_RATE_LIMIT_POLICY,
+                "Rate limit policy",
+                Policy.DROP.toString(),
+                ImmutableMap.of(
+                        Policy.DROP.toString(), "Drop messages",
+                        Policy.THROTTLE.toString(), "Slow down the sender"),
+                "What to do with messages exceeding the rate limits. Only inputs reading at their own pace, e.g. from message brokers or files, can be slowed down. TCP, UDP and HTTP inputs always drop the messages, since waiting would stall all of their connections.",
+                ConfigurationField.Optional.OPTIONAL
+        ));
+    }
+}
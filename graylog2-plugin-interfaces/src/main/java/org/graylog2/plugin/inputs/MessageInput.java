@@ -22,6 +22,7 @@
  */
 package org.graylog2.plugin.inputs;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.MetricSet;
@@ -29,6 +30,7 @@ import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.annotation.JsonValue;
 import com.google.common.collect.Maps;
 import org.graylog2.plugin.*;
+import org.graylog2.plugin.buffers.BatchInputBuffer;
 import org.graylog2.plugin.buffers.InputBuffer;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.configuration.ConfigurationException;
@@ -36,12 +38,17 @@ import org.graylog2.plugin.configuration.ConfigurationRequest;
 import org.graylog2.plugin.configuration.fields.ConfigurationField;
 import org.graylog2.plugin.configuration.fields.TextField;
 import org.graylog2.plugin.inputs.codecs.Codec;
+import org.graylog2.plugin.inputs.transports.NettyTransport;
+import org.graylog2.plugin.inputs.transports.ThrottleController;
+import org.graylog2.plugin.inputs.transports.ThrottleableTransport;
 import org.graylog2.plugin.inputs.transports.Transport;
+import org.graylog2.plugin.journal.CodecConfigDictionary;
 import org.graylog2.plugin.journal.RawMessage;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -91,6 +98,7 @@ public abstract class MessageInput implements Stoppable {
      * avoid serialising those parts of the configuration in order to save bytes on disk/network.
      */
     private final Configuration codecConfig;
+    private final InputRateLimiter rateLimiter;
 
     protected String title;
     protected String creatorUserId;
@@ -122,12 +130,27 @@ public abstract class MessageInput implements Stoppable {
         this.serverStatus = serverStatus;
         this.requestedConfiguration = config.combinedRequestedConfiguration();
         this.codecConfig = config.codecConfig.getRequestedConfiguration().filter(codec.getConfiguration());
+        // journal entries only reference the codec configuration, make sure it can be resolved when reading them
+        CodecConfigDictionary.register(codecConfig);
         parseTime = localRegistry.timer("parseTime");
         processedMessages = localRegistry.meter("processedMessages");
         failures = localRegistry.meter("failures");
         incompleteMessages = localRegistry.meter("incompleteMessages");
         rawSize = localRegistry.meter("rawSize");
         incomingMessages = localRegistry.meter("incomingMessages");
+        // netty transports hand messages over on their I/O threads, which must not be blocked
+        rateLimiter = InputRateLimiter.fromConfiguration(configuration, localRegistry, !(transport instanceof NettyTransport));
+        if (transport instanceof ThrottleableTransport && ((ThrottleableTransport) transport).isThrottlingAllowed()) {
+            final ThrottleableTransport throttleableTransport = (ThrottleableTransport) transport;
+            // -1 means the transport currently isn't throttled
+            localRegistry.register("throttleRate", new Gauge<Double>() {
+                @Override
+                public Double getValue() {
+                    final double rate = throttleableTransport.getThrottleRate();
+                    return rate == ThrottleController.UNLIMITED ? -1.0 : rate;
+                }
+            });
+        }
     }
 
     public static long getDefaultRecvBufferSize() {
@@ -342,20 +365,85 @@ public abstract class MessageInput implements Stoppable {
         }
     }
 
+    public Transport getTransport() {
+        return transport;
+    }
+
     public Codec getCodec() {
         return codec;
     }
 
+    public Configuration getCodecConfig() {
+        return codecConfig;
+    }
+
     public void processRawMessage(RawMessage rawMessage) {
-        // add the common message metadata for this input/codec
-        rawMessage.setCodecName(codec.getName());
-        rawMessage.setCodecConfig(codecConfig);
-        rawMessage.addSourceNode(getId(), serverStatus.getNodeId(), serverStatus.hasCapability(ServerStatus.Capability.SERVER));
+        if (rateLimiter != null && !rateLimiter.admit(rawMessage)) {
+            // the sender does not need to keep a message we decided to drop
+            rawMessage.acknowledge();
+            return;
+        }
+        addMetadata(rawMessage);
 
         inputBuffer.insert(rawMessage);
 
         incomingMessages.mark();
-        rawSize.mark(rawMessage.getPayload().length);
+        rawSize.mark(rawMessage.getPayloadSize());
+    }
+
+    /**
+     * Hands a batch of messages, e. g. everything a broker returned for one fetch, to the input buffer at once.
+     */
+    public void processRawMessages(List<RawMessage> rawMessages) {
+        if (rateLimiter != null) {
+            rawMessages = admitted(rawMessages);
+            if (rawMessages.isEmpty()) {
+                return;
+            }
+        }
+
+        long size = 0;
+        for (RawMessage rawMessage : rawMessages) {
+            addMetadata(rawMessage);
+            size += rawMessage.getPayloadSize();
+        }
+
+        if (inputBuffer instanceof BatchInputBuffer) {
+            ((BatchInputBuffer) inputBuffer).insert(rawMessages);
+        } else {
+            for (RawMessage rawMessage : rawMessages) {
+                inputBuffer.insert(rawMessage);
+            }
+        }
+
+        incomingMessages.mark(rawMessages.size());
+        rawSize.mark(size);
+    }
+
+    private List<RawMessage> admitted(List<RawMessage> rawMessages) {
+        List<RawMessage> admitted = null;
+        for (int i = 0; i < rawMessages.size(); i++) {
+            final RawMessage rawMessage = rawMessages.get(i);
+            if (rateLimiter.admit(rawMessage)) {
+                if (admitted != null) {
+                    admitted.add(rawMessage);
+                }
+            } else {
+                rawMessage.acknowledge();
+                if (admitted == null) {
+                    // only copy the batch once something has been dropped
+                    admitted = new ArrayList<>(rawMessages.subList(0, i));
+                }
+            }
+        }
+        return admitted == null ? rawMessages : admitted;
+    }
+
+    private void addMetadata(RawMessage rawMessage) {
+        // add the common message metadata for this input/codec
+        rawMessage.setCodecName(codec.getName());
+        rawMessage.setCodecConfig(codecConfig);
+        rawMessage.addSourceNode(getId(), serverStatus.getNodeId(), serverStatus.hasCapability(ServerStatus.Capability.SERVER));
     }
 
     public String getType() {
@@ -409,6 +497,9 @@ public abstract class MessageInput implements Stoppable {
                     ConfigurationField.Optional.OPTIONAL
             ));
 
+            InputRateLimiter.addConfigurationFields(r);
+            InputJournalQuota.addConfigurationFields(r);
+
             // give the codec the opportunity to override default values for certain configuration fields,
             // this is commonly being used to default to some well known port for protocols such as GELF or syslog
             codecConfig.overrideDefaultValues(r);
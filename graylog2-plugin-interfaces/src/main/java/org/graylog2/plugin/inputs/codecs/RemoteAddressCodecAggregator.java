@@ -0,0 +1,44 @@
+/**
+ * The MIT License
+ * Copyright (c) 2012 TORCH GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.graylog2.plugin.inputs.codecs;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.net.SocketAddress;
+
+/**
+ * A {@link CodecAggregator} which takes the sender of a chunk into account, e.g. to keep the chunks of different
+ * senders apart. Transports pass the remote address to aggregators implementing this interface.
+ */
+public interface RemoteAddressCodecAggregator extends CodecAggregator {
+
+    /**
+     * @param buf           the received chunk
+     * @param remoteAddress the sender of the chunk, or {@code null} if unknown
+     * @return the aggregation result
+     */
+    @Nonnull
+    public Result addChunk(ChannelBuffer buf, @Nullable SocketAddress remoteAddress);
+}
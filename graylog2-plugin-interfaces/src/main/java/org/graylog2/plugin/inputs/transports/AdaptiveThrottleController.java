@@ -0,0 +1,83 @@
+/**
+ * The MIT License
+ * Copyright (c) 2012 TORCH GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.graylog2.plugin.inputs.transports;
+
+import org.graylog2.plugin.ThrottleState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adjusts the read rate of a transport like TCP congestion control (additive increase, multiplicative decrease) to keep
+ * the journal utilization and the processing lag below their targets.
+ * <p/>
+ * While a target is exceeded the rate is halved every update, starting from the rate at which the journal is currently
+ * read. Once both are met again, the rate grows by a tenth of the journal read rate per update, and the limit is lifted
+ * when both are below half their targets. Reading stops completely only if the journal is full or processing stalled.
+ * The processing lag is the time it takes to process the uncommitted journal entries at the current read rate.
+ */
+public class AdaptiveThrottleController implements ThrottleController {
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveThrottleController.class);
+
+    private static final double MIN_RATE = 1.0;
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final double INCREASE_FRACTION = 0.1;
+
+    private final double targetUtilization;
+    private final double targetLagSeconds;
+
+    private double rate = UNLIMITED;
+
+    /**
+     * @param targetUtilization the fraction of the journal size limit which should not be exceeded
+     * @param targetLagSeconds  the processing lag in seconds which should not be exceeded
+     */
+    public AdaptiveThrottleController(double targetUtilization, double targetLagSeconds) {
+        this.targetUtilization = targetUtilization;
+        this.targetLagSeconds = targetLagSeconds;
+    }
+
+    @Override
+    public synchronized double update(ThrottleState state) {
+        final double utilization = state.journalSizeLimit > 0 ? state.journalSize / (double) state.journalSizeLimit : 0.0;
+        // without reads there is either nothing to catch up with or processing has been paused on purpose
+        final double lagSeconds = state.readEventsPerSec > 0
+                ? state.uncommittedJournalEntries / (double) state.readEventsPerSec : 0.0;
+
+        if (utilization >= 1.0 || (state.processBufferCapacity == 0 && state.readEventsPerSec == 0)) {
+            // anything we read now would be thrown away or pile up in the journal
+            rate = 0.0;
+        } else if (utilization > targetUtilization || lagSeconds > targetLagSeconds || state.processBufferCapacity == 0) {
+            final double currentRate = rate == UNLIMITED || rate == 0.0 ? state.readEventsPerSec : rate;
+            rate = Math.max(MIN_RATE, currentRate * DECREASE_FACTOR);
+        } else if (rate != UNLIMITED) {
+            if (utilization < targetUtilization / 2 && lagSeconds < targetLagSeconds / 2) {
+                rate = UNLIMITED;
+            } else {
+                rate = Math.max(rate, MIN_RATE) + Math.max(MIN_RATE, state.readEventsPerSec * INCREASE_FRACTION);
+            }
+        }
+
+        LOG.debug("Journal utilization {}, processing lag {}s, new rate {}/s", utilization, lagSeconds, rate);
+        return rate;
+    }
+}
@@ -35,6 +35,7 @@ import org.graylog2.plugin.configuration.ConfigurationRequest;
 import org.graylog2.plugin.inputs.MessageInput;
 import org.graylog2.plugin.inputs.MisfireException;
 import org.graylog2.plugin.inputs.codecs.CodecAggregator;
+import org.graylog2.plugin.inputs.codecs.RemoteAddressCodecAggregator;
 import org.graylog2.plugin.inputs.util.PacketInformationDumper;
 import org.graylog2.plugin.inputs.util.ThroughputCounter;
 import org.graylog2.plugin.journal.RawMessage;
@@ -51,6 +52,8 @@ import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.ExceptionEvent;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
 import org.jboss.netty.channel.socket.DatagramChannel;
 import org.jboss.netty.channel.socket.ServerSocketChannelConfig;
 import org.slf4j.Logger;
@@ -81,7 +84,7 @@ public abstract class NettyTransport implements Transport {
     private CodecAggregator aggregator;
 
     private Bootstrap bootstrap;
-    private Channel acceptChannel;
+    private final ChannelGroup acceptChannels = new DefaultChannelGroup();
 
     public NettyTransport(Configuration configuration,
                           ThroughputCounter throughputCounter,
@@ -136,9 +139,12 @@ public abstract class NettyTransport implements Transport {
 
             // sigh, bindable bootstraps do not share a common interface
             if (bootstrap instanceof ConnectionlessBootstrap) {
-                acceptChannel = ((ConnectionlessBootstrap) bootstrap).bind(socketAddress);
+                for (int i = 0; i < getNumberOfChannels(); i++) {
+                    acceptChannels.add(((ConnectionlessBootstrap) bootstrap).bind(socketAddress));
+                }
             } else if (bootstrap instanceof ServerBootstrap) {
-                acceptChannel = ((ServerBootstrap) bootstrap).bind(socketAddress);
+                final Channel acceptChannel = ((ServerBootstrap) bootstrap).bind(socketAddress);
+                acceptChannels.add(acceptChannel);
 
 
                 final ServerSocketChannelConfig channelConfig = (ServerSocketChannelConfig) acceptChannel.getConfig();
@@ -150,20 +156,28 @@ public abstract class NettyTransport implements Transport {
                 throw new IllegalStateException("Unknown netty bootstrap class returned: " + bootstrap + ". Cannot safely bind.");
             }
         } catch (Exception e) {
+            // do not leave the channels which could be bound behind
+            acceptChannels.close();
             throw new MisfireException(e);
         }
     }
 
     @Override
     public void stop() {
-        if (acceptChannel != null && acceptChannel.isOpen()) {
-            acceptChannel.close();
-        }
+        acceptChannels.close();
         if (bootstrap != null) {
             bootstrap.shutdown();
         }
     }
 
+    /**
+     * @return the channels bound by {@link #launch(org.graylog2.plugin.inputs.MessageInput)}, empty before the
+     * transport has been launched
+     */
+    protected ChannelGroup getAcceptChannels() {
+        return acceptChannels;
+    }
+
     /**
      * Construct a {@link org.jboss.netty.bootstrap.ServerBootstrap} to use with this transport.
      * <p/>
@@ -174,6 +188,16 @@ public abstract class NettyTransport implements Transport {
      */
     protected abstract Bootstrap getBootstrap();
 
+    /**
+     * Connectionless transports can bind several channels to the same address if their sockets allow it, e. g. with
+     * SO_REUSEPORT. The operating system then spreads the incoming datagrams across the channels and their workers.
+     *
+     * @return the number of channels to bind, connection oriented transports always bind a single channel
+     */
+    protected int getNumberOfChannels() {
+        return 1;
+    }
+
     /**
      * Subclasses can override this to add additional ChannelHandlers to the pipeline to support additional features.
      * <p/>
@@ -259,7 +283,11 @@ public abstract class NettyTransport implements Transport {
                 final ChannelBuffer buf = (ChannelBuffer) message;
                 final CodecAggregator.Result result;
                 try (Timer.Context ignored = aggregationTimer.time()) {
-                    result = aggregator.addChunk(buf);
+                    if (aggregator instanceof RemoteAddressCodecAggregator) {
+                        result = ((RemoteAddressCodecAggregator) aggregator).addChunk(buf, e.getRemoteAddress());
+                    } else {
+                        result = aggregator.addChunk(buf);
+                    }
                 }
                 final ChannelBuffer completeMessage = result.getMessage();
                 if (completeMessage != null) {
@@ -0,0 +1,45 @@
+/**
+ * The MIT License
+ * Copyright (c) 2012 TORCH GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.graylog2.plugin.inputs.transports;
+
+import org.graylog2.plugin.ThrottleState;
+
+/**
+ * Decides how fast a {@link ThrottleableTransport} may read, based on the state of the processing system which is
+ * published every second.
+ * <p/>
+ * Every transport has its own controller instance, so implementations may keep state between updates.
+ */
+public interface ThrottleController {
+    /**
+     * The rate returned if the transport is not limited at all.
+     */
+    double UNLIMITED = Double.POSITIVE_INFINITY;
+
+    /**
+     * @param state the current state of the processing system
+     * @return the number of messages per second the transport may read, {@link #UNLIMITED} or {@code 0} to stop
+     * reading completely
+     */
+    double update(ThrottleState state);
+}
@@ -24,31 +24,49 @@ package org.graylog2.plugin.inputs.transports;
 
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.RateLimiter;
 import org.graylog2.plugin.ThrottleState;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.configuration.ConfigurationRequest;
 import org.graylog2.plugin.configuration.fields.BooleanField;
+import org.graylog2.plugin.configuration.fields.ConfigurationField;
+import org.graylog2.plugin.configuration.fields.NumberField;
+import org.graylog2.plugin.inputs.InputJournalQuota;
 import org.graylog2.plugin.inputs.MessageInput;
 import org.graylog2.plugin.inputs.MisfireException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Placeholder class for implementing logic to throttle certain transports which support back pressure.
- * The built in transports that support this by reading less are the Kafka and AMQP transports.
- * <br/>
- * Empty for now, since the process buffer provides natural throttling for now, but once that is async we need
- * to supply back pressure in some other way.
+ * Base class for transports which support back pressure by reading less, like the Kafka and AMQP transports.
+ * <p/>
+ * If throttling is allowed for an input, every {@link ThrottleState} update is passed to a {@link ThrottleController}
+ * which decides how many messages per second the transport may read. Transports reading single messages call
+ * {@link #isThrottled()} before every read and {@link #blockUntilUnthrottled()} if it returns {@code true}, transports
+ * reading batches call {@link #blockUntilUnthrottled(int)} for every batch instead. By default the rate is adapted
+ * to the journal utilization and processing lag targets configured for the input, which are lowered for inputs with a low
+ * {@link InputJournalQuota.Priority journal priority}, see {@link AdaptiveThrottleController}, and never exceeds the
+ * journal message quota of the input.
+ * Override {@link #createThrottleController(Configuration)} to customize the decision. Transports which still override
+ * the deprecated {@link #determineIfThrottled(ThrottleState)} are paused whenever it returns {@code true}.
  */
 public abstract class ThrottleableTransport implements Transport {
     private static final Logger log = LoggerFactory.getLogger(ThrottleableTransport.class);
     public static final String CK_THROTTLING_ALLOWED = "throttling_allowed";
+    public static final String CK_THROTTLING_TARGET_UTILIZATION = "throttling_target_journal_utilization";
+    public static final String CK_THROTTLING_TARGET_LAG = "throttling_target_lag";
+
+    private static final int DEFAULT_TARGET_UTILIZATION = 80;
+    private static final int DEFAULT_TARGET_LAG = 30;
+
     private final boolean throttlingAllowed;
-    private final AtomicBoolean currentlyThrottled = new AtomicBoolean(false);
     private final EventBus eventBus;
+    private final ThrottleController throttleController;
+    private final double journalQuotaRate;
+    private final RateLimiter rateLimiter = RateLimiter.create(Double.MAX_VALUE);
+    private volatile double throttleRate = ThrottleController.UNLIMITED;
     private volatile CountDownLatch blockLatch = null;
     private long lastUncommitted;
 
@@ -66,6 +84,22 @@ public abstract class ThrottleableTransport implements Transport {
                             "If you regularly poll an external system, e.g. via HTTP, you normally want to leave this disabled."
 
             ));
+            request.addField(new NumberField(
+                    CK_THROTTLING_TARGET_UTILIZATION,
+                    "Throttling target journal utilization",
+                    DEFAULT_TARGET_UTILIZATION,
+                    "Percentage of the journal size limit above which a throttled input reads less.",
+                    ConfigurationField.Optional.OPTIONAL,
+                    NumberField.Attribute.ONLY_POSITIVE
+            ));
+            request.addField(new NumberField(
+                    CK_THROTTLING_TARGET_LAG,
+                    "Throttling target processing lag",
+                    DEFAULT_TARGET_LAG,
+                    "Number of seconds it may take to process the messages waiting in the journal before a throttled input reads less.",
+                    ConfigurationField.Optional.OPTIONAL,
+                    NumberField.Attribute.ONLY_POSITIVE
+            ));
             return request;
         }
     }
@@ -73,83 +107,66 @@ public abstract class ThrottleableTransport implements Transport {
     public ThrottleableTransport(EventBus eventBus, Configuration configuration) {
         this.eventBus = eventBus;
         this.throttlingAllowed = configuration.getBoolean(CK_THROTTLING_ALLOWED);
-    }
-
-    @Override
-    public void launch(MessageInput input) throws MisfireException {
-        // only listen for updates if we are allowed to be throttled at all
-        if (throttlingAllowed) {
-            eventBus.register(this);
-        }
-        doLaunch(input);
+        this.throttleController = createThrottleController(configuration);
+        final int journalQuota = InputJournalQuota.fromConfiguration(configuration).getMessagesPerSecond();
+        this.journalQuotaRate = journalQuota > 0 ? journalQuota : ThrottleController.UNLIMITED;
     }
 
     /**
-     * Performs the same purpose as {@link #launch(org.graylog2.plugin.inputs.MessageInput)} but guarantees that the superclass'
-     * actions are performed.
-     * @param input
-     * @throws MisfireException
+     * Creates the controller which determines the read rate of this transport from the state of the processing system.
+     * <p>
+     * Override this method in your subclass if you need to customize the decision. It is called from the constructor,
+     * so it must not depend on any state of the subclass.
+     * </p>
+     * @param configuration the configuration of this transport
+     * @return the throttle controller to use
      */
-    protected abstract void doLaunch(MessageInput input) throws MisfireException;
+    protected ThrottleController createThrottleController(Configuration configuration) {
+        final int targetUtilization = configuration.intIsSet(CK_THROTTLING_TARGET_UTILIZATION)
+                ? configuration.getInt(CK_THROTTLING_TARGET_UTILIZATION) : DEFAULT_TARGET_UTILIZATION;
+        final int targetLag = configuration.intIsSet(CK_THROTTLING_TARGET_LAG)
+                ? configuration.getInt(CK_THROTTLING_TARGET_LAG) : DEFAULT_TARGET_LAG;
 
-    @Override
-    public void stop() {
-        if (throttlingAllowed) {
-            eventBus.unregister(this);
-        }
-        // always unblock the transport when shutting down to avoid deadlock
-        if (currentlyThrottled.get()) {
-            blockLatch.countDown();
+        // low priority inputs are slowed down before the others
+        final double factor = InputJournalQuota.Priority.fromConfiguration(configuration).getThrottlingFactor();
+
+        if (overridesDetermineIfThrottled()) {
+            return new ThrottleController() {
+                @Override
+                public double update(ThrottleState state) {
+                    return determineIfThrottled(state) ? 0.0 : UNLIMITED;
+                }
+            };
         }
-        doStop();
-    }
 
-    /**
-     * Performs the same purpose as {@link #stop()} but guarantees that the superclass'  actions are performed.
-     */
-    protected abstract void doStop();
+        return new AdaptiveThrottleController(factor * targetUtilization / 100.0, factor * targetLag);
+    }
 
-    /**
-     * Only called if this input is allowed to be throttled at all
-     * @param throttleState current processing system state
-     */
-    @Subscribe
-    public void updateThrottleState(ThrottleState throttleState) {
-        // check if we are throttled
-        final boolean throttled = determineIfThrottled(throttleState);
-        if (currentlyThrottled.get()) {
-            // no need to unblock
-            if (throttled) {
-                return;
+    private boolean overridesDetermineIfThrottled() {
+        for (Class<?> c = getClass(); c != ThrottleableTransport.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod("determineIfThrottled", ThrottleState.class);
+                return true;
+            } catch (NoSuchMethodException ignored) {
+                // look at the superclass
             }
-            // sanity check
-            if (blockLatch == null) {
-                log.error("Expected to see a transport throttle latch, but it is missing. This is a bug, continuing anyway.");
-                return;
-            }
-            currentlyThrottled.set(false);
-            blockLatch.countDown();
-        } else if (throttled) {
-            currentlyThrottled.set(true);
-            blockLatch = new CountDownLatch(1);
         }
-    }
-
-    public boolean isThrottled() {
-        return throttlingAllowed && currentlyThrottled.get();
+        return false;
     }
 
     /**
-     * This method implements the default algorithm for determining whether a transport will be throttled or not.
+     * This method implements the previous algorithm for determining whether a transport will be throttled or not.
      * <p>
-     * Override this method in your subclass if you need to customize the decision.
+     * Subclasses overriding it are paused while it returns {@code true} and read at full speed otherwise.
      * </p>
      * <p>
      * If the transport was started without the <code>throttling_allowed</code> flag enabled, this method will <b>not</b> be called!
      * </p>
      * @param state the current state of the processing system
      * @return true if transport should be throttled, false if not.
+     * @deprecated override {@link #createThrottleController(Configuration)} instead
      */
+    @Deprecated
     protected boolean determineIfThrottled(ThrottleState state) {
         final long prevUncommitted = lastUncommitted;
         lastUncommitted = state.uncommittedJournalEntries;
@@ -192,17 +209,127 @@ public abstract class ThrottleableTransport implements Transport {
         log.debug("[{}] [unthrottled] fall through", transportName);
         return false;
     }
-    
+
+    @Override
+    public void launch(MessageInput input) throws MisfireException {
+        // only listen for updates if we are allowed to be throttled at all
+        if (throttlingAllowed) {
+            eventBus.register(this);
+        }
+        doLaunch(input);
+    }
+
+    /**
+     * Performs the same purpose as {@link #launch(org.graylog2.plugin.inputs.MessageInput)} but guarantees that the superclass'
+     * actions are performed.
+     * @param input
+     * @throws MisfireException
+     */
+    protected abstract void doLaunch(MessageInput input) throws MisfireException;
+
+    @Override
+    public void stop() {
+        if (throttlingAllowed) {
+            eventBus.unregister(this);
+        }
+        // always unblock the transport when shutting down to avoid deadlock
+        throttleRate = ThrottleController.UNLIMITED;
+        unblock();
+        doStop();
+    }
+
+    /**
+     * Performs the same purpose as {@link #stop()} but guarantees that the superclass'  actions are performed.
+     */
+    protected abstract void doStop();
+
+    /**
+     * Only called if this input is allowed to be throttled at all
+     * @param throttleState current processing system state
+     */
+    @Subscribe
+    public void updateThrottleState(ThrottleState throttleState) {
+        // the journal quota is enforced by reading slower, instead of dropping messages the source has to redeliver
+        final double rate = Math.min(throttleController.update(throttleState), journalQuotaRate);
+        log.debug("[{}] New throttle rate {}/s for {}", getClass().getSimpleName(), rate, throttleState);
+
+        if (rate <= 0.0) {
+            if (blockLatch == null) {
+                blockLatch = new CountDownLatch(1);
+            }
+            throttleRate = 0.0;
+        } else {
+            if (rate != ThrottleController.UNLIMITED) {
+                rateLimiter.setRate(rate);
+            }
+            throttleRate = rate;
+            unblock();
+        }
+    }
+
+    private void unblock() {
+        final CountDownLatch latch = blockLatch;
+        if (latch != null) {
+            blockLatch = null;
+            latch.countDown();
+        }
+    }
+
+    /**
+     * Checks whether the transport may read one more message now, i.e. it is neither paused nor above its current rate.
+     * Every call which returns {@code false} counts as one message.
+     */
+    public boolean isThrottled() {
+        if (!throttlingAllowed) {
+            return false;
+        }
+        if (blockLatch != null) {
+            return true;
+        }
+        return throttleRate != ThrottleController.UNLIMITED && !rateLimiter.tryAcquire();
+    }
+
+    /**
+     * Returns the number of messages per second the transport may currently read.
+     *
+     * @return the rate, {@link ThrottleController#UNLIMITED} if the transport isn't throttled or {@code 0} if reading is paused
+     */
+    public double getThrottleRate() {
+        return throttlingAllowed ? throttleRate : ThrottleController.UNLIMITED;
+    }
+
+    public boolean isThrottlingAllowed() {
+        return throttlingAllowed;
+    }
+
+    public ThrottleController getThrottleController() {
+        return throttleController;
+    }
+
     public void blockUntilUnthrottled() {
-        // sanity: if there's no latch, don't try to access it
-        if (blockLatch == null) {
-            return;
-        }
-        // purposely allow interrupts as a means to let the caller check if it should exit its run loop
-        try {
-            blockLatch.await();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        blockUntilUnthrottled(1);
+    }
+
+    /**
+     * Waits while reading is paused and until the current rate allows for the given number of messages. Transports
+     * which read in batches call this for every batch instead of checking {@link #isThrottled()} for every message.
+     *
+     * @param messages the number of messages which have been or are about to be read, may be {@code 0} to only wait
+     *                 while reading is paused
+     */
+    public void blockUntilUnthrottled(int messages) {
+        final CountDownLatch latch = blockLatch;
+        if (latch != null) {
+            // purposely allow interrupts as a means to let the caller check if it should exit its run loop
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                log.debug("Interrupted while waiting to be unthrottled.");
+                return;
+            }
+        }
+        if (messages > 0 && throttleRate != ThrottleController.UNLIMITED) {
+            rateLimiter.acquire(messages);
         }
     }
 }
@@ -0,0 +1,98 @@
+/**
+ * The MIT License
+ * Copyright (c) 2012 TORCH GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.graylog2.plugin.journal;
+
+import com.google.common.collect.Maps;
+import org.graylog2.plugin.configuration.Configuration;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the codec configurations referenced by journal entries in memory.
+ * <p>
+ * From message format version 2 on, a {@link RawMessage} only stores the {@link Configuration#getFingerprint() fingerprint}
+ * of its codec configuration in the journal instead of the full JSON description. Configurations are registered when a
+ * message input is created and when a raw message is encoded, so reading them back from the journal only needs a lookup.
+ * </p>
+ * <p>
+ * The journal persists the configurations its entries reference and registers them again when it is opened. It
+ * unregisters them once the entries referencing them have been deleted.
+ * </p>
+ */
+public final class CodecConfigDictionary {
+    private static final ConcurrentMap<Long, Configuration> CONFIGURATIONS = Maps.newConcurrentMap();
+
+    private CodecConfigDictionary() {
+    }
+
+    /**
+     * Registers the given configuration under its fingerprint.
+     *
+     * @param configuration the codec configuration
+     * @return the fingerprint the configuration can be looked up with
+     */
+    public static long register(Configuration configuration) {
+        final long fingerprint = configuration.getFingerprint();
+        register(fingerprint, configuration);
+        return fingerprint;
+    }
+
+    /**
+     * Registers the given configuration under a fingerprint which has been stored before, e.g. when reading back
+     * persisted configurations.
+     *
+     * @param fingerprint   the fingerprint journal entries reference the configuration with
+     * @param configuration the codec configuration
+     */
+    public static void register(long fingerprint, Configuration configuration) {
+        if (fingerprint != 0L && !CONFIGURATIONS.containsKey(fingerprint)) {
+            CONFIGURATIONS.putIfAbsent(fingerprint, configuration);
+        }
+    }
+
+    /**
+     * Forgets a configuration which is no longer referenced by the journal. Inputs still using it register it again
+     * with their next message.
+     *
+     * @param fingerprint the configuration fingerprint
+     */
+    public static void unregister(long fingerprint) {
+        CONFIGURATIONS.remove(fingerprint);
+    }
+
+    /**
+     * Looks up a previously registered configuration.
+     *
+     * @param fingerprint the configuration fingerprint as stored in the journal
+     * @return the configuration or {@code null} if it is unknown to this node, e.g. because the input has been reconfigured
+     * since the journal entry was written
+     */
+    @Nullable
+    public static Configuration lookup(long fingerprint) {
+        if (fingerprint == 0L) {
+            return Configuration.EMPTY_CONFIGURATION;
+        }
+        return CONFIGURATIONS.get(fingerprint);
+    }
+}
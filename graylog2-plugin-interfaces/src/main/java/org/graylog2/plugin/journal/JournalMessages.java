@@ -2450,6 +2450,23 @@ public final class JournalMessages {
      */
     com.google.protobuf.ByteString
         getConfigBytes();
+
+    /**
+     * <code>optional fixed64 config_id = 3;</code>
+     *
+     * <pre>
+     * fingerprint of the configuration, used instead of the JSON description from message format version 2 on
+     * </pre>
+     */
+    boolean hasConfigId();
+    /**
+     * <code>optional fixed64 config_id = 3;</code>
+     *
+     * <pre>
+     * fingerprint of the configuration, used instead of the JSON description from message format version 2 on
+     * </pre>
+     */
+    long getConfigId();
   }
   /**
    * Protobuf type {@code org.graylog2.plugin.journal.CodecInfo}
@@ -2515,6 +2532,11 @@ public final class JournalMessages {
               config_ = bs;
               break;
             }
+            case 25: {
+              bitField0_ |= 0x00000004;
+              configId_ = input.readFixed64();
+              break;
+            }
           }
         }
       } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -2654,9 +2676,33 @@ public final class JournalMessages {
       }
     }
 
+    public static final int CONFIG_ID_FIELD_NUMBER = 3;
+    private long configId_;
+    /**
+     * <code>optional fixed64 config_id = 3;</code>
+     *
+     * <pre>
+     * fingerprint of the configuration, used instead of the JSON description from message format version 2 on
+     * </pre>
+     */
+    public boolean hasConfigId() {
+      return ((bitField0_ & 0x00000004) == 0x00000004);
+    }
+    /**
+     * <code>optional fixed64 config_id = 3;</code>
+     *
+     * <pre>
+     * fingerprint of the configuration, used instead of the JSON description from message format version 2 on
+     * </pre>
+     */
+    public long getConfigId() {
+      return configId_;
+    }
+
     private void initFields() {
       name_ = "";
       config_ = "";
+      configId_ = 0L;
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -2677,6 +2723,9 @@ public final class JournalMessages {
       if (((bitField0_ & 0x00000002) == 0x00000002)) {
         output.writeBytes(2, getConfigBytes());
       }
+      if (((bitField0_ & 0x00000004) == 0x00000004)) {
+        output.writeFixed64(3, configId_);
+      }
       getUnknownFields().writeTo(output);
     }
 
@@ -2694,6 +2743,10 @@ public final class JournalMessages {
         size += com.google.protobuf.CodedOutputStream
           .computeBytesSize(2, getConfigBytes());
       }
+      if (((bitField0_ & 0x00000004) == 0x00000004)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeFixed64Size(3, configId_);
+      }
       size += getUnknownFields().getSerializedSize();
       memoizedSerializedSize = size;
       return size;
@@ -2815,6 +2868,8 @@ public final class JournalMessages {
         bitField0_ = (bitField0_ & ~0x00000001);
         config_ = "";
         bitField0_ = (bitField0_ & ~0x00000002);
+        configId_ = 0L;
+        bitField0_ = (bitField0_ & ~0x00000004);
         return this;
       }
 
@@ -2851,6 +2906,10 @@ public final class JournalMessages {
           to_bitField0_ |= 0x00000002;
         }
         result.config_ = config_;
+        if (((from_bitField0_ & 0x00000004) == 0x00000004)) {
+          to_bitField0_ |= 0x00000004;
+        }
+        result.configId_ = configId_;
         result.bitField0_ = to_bitField0_;
         onBuilt();
         return result;
@@ -2877,6 +2936,9 @@ public final class JournalMessages {
           config_ = other.config_;
           onChanged();
         }
+        if (other.hasConfigId()) {
+          setConfigId(other.getConfigId());
+        }
         this.mergeUnknownFields(other.getUnknownFields());
         return this;
       }
@@ -3086,6 +3148,54 @@ public final class JournalMessages {
         return this;
       }
 
+      private long configId_ ;
+      /**
+       * <code>optional fixed64 config_id = 3;</code>
+       *
+       * <pre>
+       * fingerprint of the configuration, used instead of the JSON description from message format version 2 on
+       * </pre>
+       */
+      public boolean hasConfigId() {
+        return ((bitField0_ & 0x00000004) == 0x00000004);
+      }
+      /**
+       * <code>optional fixed64 config_id = 3;</code>
+       *
+       * <pre>
+       * fingerprint of the configuration, used instead of the JSON description from message format version 2 on
+       * </pre>
+       */
+      public long getConfigId() {
+        return configId_;
+      }
+      /**
+       * <code>optional fixed64 config_id = 3;</code>
+       *
+       * <pre>
+       * fingerprint of the configuration, used instead of the JSON description from message format version 2 on
+       * </pre>
+       */
+      public Builder setConfigId(long value) {
+        bitField0_ |= 0x00000004;
+        configId_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional fixed64 config_id = 3;</code>
+       *
+       * <pre>
+       * fingerprint of the configuration, used instead of the JSON description from message format version 2 on
+       * </pre>
+       */
+      public Builder clearConfigId() {
+        bitField0_ = (bitField0_ & ~0x00000004);
+        configId_ = 0L;
+        onChanged();
+        return this;
+      }
+
       // @@protoc_insertion_point(builder_scope:org.graylog2.plugin.journal.CodecInfo)
     }
 
@@ -3938,8 +4048,8 @@ public final class JournalMessages {
       "*.org.graylog2.plugin.journal.RemoteAddr" +
       "ess\022\017\n\007payload\030\010 \001(\014\"@\n\rRemoteAddress\022\017\n" +
       "\007address\030\001 \001(\014\022\014\n\004port\030\002 \001(\r\022\020\n\010resolved",
-      "\030\003 \001(\t\")\n\tCodecInfo\022\014\n\004name\030\001 \001(\t\022\016\n\006con" +
-      "fig\030\002 \001(\t\"\215\001\n\nSourceNode\022\n\n\002id\030\001 \001(\t\022B\n\004" +
+      "\030\003 \001(\t\"<\n\tCodecInfo\022\014\n\004name\030\001 \001(\t\022\016\n\006con" +
+      "fig\030\002 \001(\t\022\021\n\tconfig_id\030\003 \001(\006\"\215\001\n\nSourceNode\022\n\n\002id\030\001 \001(\t\022B\n\004" +
       "type\030\002 \001(\0162,.org.graylog2.plugin.journal" +
       ".SourceNode.Type:\006SERVER\022\020\n\010input_id\030\003 \001" +
       "(\t\"\035\n\004Type\022\n\n\006SERVER\020\000\022\t\n\005RADIO\020\001B.\n\033org" +
@@ -3975,7 +4085,7 @@ public final class JournalMessages {
     internal_static_org_graylog2_plugin_journal_CodecInfo_fieldAccessorTable = new
       com.google.protobuf.GeneratedMessage.FieldAccessorTable(
         internal_static_org_graylog2_plugin_journal_CodecInfo_descriptor,
-        new java.lang.String[] { "Name", "Config", });
+        new java.lang.String[] { "Name", "Config", "ConfigId", });
     internal_static_org_graylog2_plugin_journal_SourceNode_descriptor =
       getDescriptor().getMessageTypes().get(3);
     internal_static_org_graylog2_plugin_journal_SourceNode_fieldAccessorTable = new
@@ -25,6 +25,7 @@ package org.graylog2.plugin.journal;
 import com.eaio.uuid.UUID;
 import com.google.common.collect.Lists;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.UninitializedMessageException;
 import org.graylog2.plugin.ResolvableInetSocketAddress;
 import org.graylog2.plugin.Tools;
@@ -36,12 +37,14 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -61,9 +64,13 @@ import static org.graylog2.plugin.journal.JournalMessages.JournalMessage;
  * as well as an opaque meta data structure.<br>
  * The format of the meta data is not stable yet, but will likely be a JSON string.
  * </p>
+ * <p>
+ * Version 1 of the journal format contains the JSON description of the codec configuration in every entry, from version 2
+ * on only its fingerprint is written and resolved via the {@link CodecConfigDictionary}.
+ * </p>
  */
 public class RawMessage implements Serializable {
-    public static final byte CURRENT_VERSION = 1;
+    public static final byte CURRENT_VERSION = 2;
 
     private static final Logger log = LoggerFactory.getLogger(RawMessage.class);
 
@@ -71,6 +78,15 @@ public class RawMessage implements Serializable {
     private final UUID id;
     private final long journalOffset;
     private Configuration codecConfig;
+    private long codecConfigId;
+
+    // lazily created views on the journal message, to avoid allocating them again for every call
+    private DateTime timestamp;
+    private byte[] idBytes;
+    private List<SourceNode> sourceNodes;
+
+    // not part of the journal entry, only lives as long as the message is on its way into the journal
+    private Acknowledger acknowledger;
 
     public RawMessage(byte[] payload) {
         this(payload, (ResolvableInetSocketAddress)null);
@@ -111,6 +127,7 @@ public class RawMessage implements Serializable {
     }
 
     public void addSourceNode(String sourceInputId, NodeId nodeId, boolean isServer) {
+        sourceNodes = null;
         msgBuilder.addSourceNodesBuilder()
                   .setInputId(sourceInputId)
                   .setId(nodeId.toString())
@@ -122,13 +139,30 @@ public class RawMessage implements Serializable {
         this.journalOffset = journalOffset;
         id = new UUID(journalMessage.getUuidTime(), journalMessage.getUuidClockseq());
         msgBuilder = JournalMessage.newBuilder(journalMessage);
-        codecConfig = Configuration.deserializeFromJson(journalMessage.getCodec().getConfig());
+
+        final JournalMessages.CodecInfo codec = journalMessage.getCodec();
+        if (codec.hasConfig()) {
+            // version 1 entries contain the complete codec configuration
+            codecConfig = Configuration.deserializeFromJson(codec.getConfig());
+            codecConfigId = CodecConfigDictionary.register(codecConfig);
+        } else {
+            // might be null if this node doesn't know the configuration (anymore), see getCodecConfigId()
+            codecConfigId = codec.getConfigId();
+            codecConfig = CodecConfigDictionary.lookup(codecConfigId);
+        }
     }
 
     @Nullable
     public static RawMessage decode(final byte[] buffer, final long journalOffset) {
+        return decode(ByteBuffer.wrap(buffer), journalOffset);
+    }
+
+    /**
+     * Decodes a journal entry directly from the given buffer, without copying it first if it is backed by an array.
+     */
+    public static RawMessage decode(final ByteBuffer buffer, final long journalOffset) {
         try {
-            final JournalMessage journalMessage = JournalMessage.parseFrom(buffer);
+            final JournalMessage journalMessage = JournalMessage.parseFrom(CodedInputStream.newInstance(buffer));
 
             // TODO validate message based on field contents and version number
 
@@ -142,13 +176,19 @@ public class RawMessage implements Serializable {
     public byte[] encode() {
         try {
             final JournalMessages.CodecInfo codec = msgBuilder.getCodec();
-            final JournalMessages.CodecInfo.Builder builder = JournalMessages.CodecInfo.newBuilder(codec);
+            final JournalMessages.CodecInfo.Builder builder = JournalMessages.CodecInfo.newBuilder(codec).clearConfig();
 
-            final String codecConfigJson = codecConfig.serializeToJson();
-            if (codecConfigJson != null) {
-                builder.setConfig(codecConfigJson);
+            // only reference the codec configuration, it is resolved from the dictionary when reading the journal
+            if (codecConfig != null) {
+                codecConfigId = CodecConfigDictionary.register(codecConfig);
+            }
+            if (codecConfigId != 0L) {
+                builder.setConfigId(codecConfigId);
+            } else {
+                builder.clearConfigId();
             }
             msgBuilder.setCodec(builder.build());
+            msgBuilder.setVersion(CURRENT_VERSION);
 
             final JournalMessage journalMessage = msgBuilder.build();
             return journalMessage.toByteArray();
@@ -165,25 +205,64 @@ public class RawMessage implements Serializable {
     }
 
     public DateTime getTimestamp() {
-        return new DateTime(msgBuilder.getTimestamp()); // TODO PERFORMANCE object creation
+        if (timestamp == null) {
+            timestamp = new DateTime(msgBuilder.getTimestamp());
+        }
+        return timestamp;
     }
 
+    /**
+     * Returns a copy of the payload. Use {@link #getPayloadBuffer()}, {@link #getPayloadInputStream()} or
+     * {@link #getPayloadAsString()} to access the payload without copying it.
+     *
+     * @return a copy of the payload bytes
+     */
     public byte[] getPayload() {
-        return msgBuilder.getPayload().toByteArray(); // TODO PERFORMANCE array copy
+        return msgBuilder.getPayload().toByteArray();
+    }
+
+    /**
+     * @return a read-only view on the payload bytes, positioned at the start of the payload
+     */
+    public ByteBuffer getPayloadBuffer() {
+        return msgBuilder.getPayload().asReadOnlyByteBuffer();
+    }
+
+    /**
+     * @return a stream reading the payload bytes without copying them
+     */
+    public InputStream getPayloadInputStream() {
+        return msgBuilder.getPayload().newInput();
+    }
+
+    /**
+     * @return the payload decoded as UTF-8 string
+     */
+    public String getPayloadAsString() {
+        return msgBuilder.getPayload().toStringUtf8();
+    }
+
+    public int getPayloadSize() {
+        return msgBuilder.getPayload().size();
     }
 
     public UUID getId() {
         return id;
     }
 
+    /**
+     * The returned array is shared between calls and must not be modified.
+     *
+     * @return the 16 bytes of the message id
+     */
     public byte[] getIdBytes() {
-        final long time = id.getTime();
-        final long clockSeqAndNode = id.getClockSeqAndNode();
-
-        return ByteBuffer.allocate(16)
-                .putLong(time)
-                .putLong(clockSeqAndNode)
-                .array(); // TODO PERFORMANCE object creation
+        if (idBytes == null) {
+            idBytes = ByteBuffer.allocate(16)
+                    .putLong(id.getTime())
+                    .putLong(id.getClockSeqAndNode())
+                    .array();
+        }
+        return idBytes;
     }
 
     @Nullable
@@ -201,7 +280,8 @@ public class RawMessage implements Serializable {
 
             final int port = address.hasPort() ? address.getPort() : 0;
             // TODO PERFORMANCE object creation
-            return ResolvableInetSocketAddress.wrap(new InetSocketAddress(inetAddr, port));
+            return ResolvableInetSocketAddress.wrap(new InetSocketAddress(inetAddr, port),
+                                                    address.hasResolved() ? address.getResolved() : null);
         }
         return null;
     }
@@ -226,28 +306,72 @@ public class RawMessage implements Serializable {
         msgBuilder.getCodecBuilder().setName(name);
     }
 
+    /**
+     * @return the codec configuration or {@code null} if the journal entry references a configuration this node doesn't know
+     */
+    @Nullable
     public Configuration getCodecConfig() {
         return codecConfig;
     }
 
     public void setCodecConfig(Configuration codecConfig) {
         this.codecConfig = codecConfig;
+        this.codecConfigId = codecConfig.getFingerprint();
+    }
+
+    /**
+     * @return the fingerprint of the codec configuration, available even if the configuration itself could not be resolved
+     */
+    public long getCodecConfigId() {
+        return codecConfigId;
     }
 
     public List<SourceNode> getSourceNodes() {
-        final ArrayList<SourceNode> list = Lists.newArrayList();
+        if (sourceNodes == null) {
+            final ArrayList<SourceNode> list = Lists.newArrayListWithCapacity(msgBuilder.getSourceNodesCount());
 
-        for (final JournalMessages.SourceNode node : msgBuilder.getSourceNodesList()) {
-            list.add(new SourceNode(node));
-        }
+            for (final JournalMessages.SourceNode node : msgBuilder.getSourceNodesList()) {
+                list.add(new SourceNode(node));
+            }
 
-        return list;
+            sourceNodes = Collections.unmodifiableList(list);
+        }
+        return sourceNodes;
     }
 
     public long getJournalOffset() {
         return journalOffset;
     }
 
+    /**
+     * Registers the callback which is notified once this message has been accepted by the node.
+     *
+     * @see #acknowledge()
+     */
+    public void setAcknowledger(@Nullable Acknowledger acknowledger) {
+        this.acknowledger = acknowledger;
+    }
+
+    /**
+     * Notifies the source of this message that it does not have to keep the message any longer, because it has been
+     * written to the message journal or, with the journal disabled, handed to the process buffer.
+     * Only the first call has an effect.
+     */
+    public void acknowledge() {
+        final Acknowledger acknowledger = this.acknowledger;
+        if (acknowledger != null) {
+            this.acknowledger = null;
+            acknowledger.acknowledge();
+        }
+    }
+
+    /**
+     * Lets transports like Kafka or AMQP confirm messages to their broker only after they cannot be lost anymore.
+     */
+    public interface Acknowledger {
+        void acknowledge();
+    }
+
     public static class SourceNode {
         public String nodeId;
         public String inputId;
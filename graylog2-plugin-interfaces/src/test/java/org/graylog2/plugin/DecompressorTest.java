@@ -0,0 +1,157 @@
+/**
+ * The MIT License
+ * Copyright (c) 2012 TORCH GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.graylog2.plugin;
+
+import com.google.common.base.Charsets;
+import com.google.common.primitives.Bytes;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class DecompressorTest {
+    private final int defaultMaxSize = Decompressor.getMaxDecompressedSize();
+
+    @AfterMethod
+    public void resetMaxSize() {
+        Decompressor.setMaxDecompressedSize(defaultMaxSize);
+    }
+
+    @Test
+    public void testInflateZlib() throws Exception {
+        final byte[] data = "Hello, World!".getBytes(Charsets.UTF_8);
+
+        assertEquals(toBytes(Decompressor.get().inflateZlib(ByteBuffer.wrap(zlib(data)))), data);
+    }
+
+    @Test
+    public void testInflateGzip() throws Exception {
+        final byte[] data = "Hello, World!".getBytes(Charsets.UTF_8);
+
+        assertEquals(toBytes(Decompressor.get().inflateGzip(ByteBuffer.wrap(gzip(data)))), data);
+    }
+
+    @Test
+    public void testInflateGrowsOutputBuffer() throws Exception {
+        final byte[] data = new byte[2 * 1024 * 1024];
+        new Random(42L).nextBytes(data);
+
+        assertEquals(toBytes(Decompressor.get().inflateZlib(ByteBuffer.wrap(zlib(data)))), data);
+        assertEquals(toBytes(Decompressor.get().inflateGzip(ByteBuffer.wrap(gzip(data)))), data);
+    }
+
+    @Test
+    public void testInflateDoesNotModifyInput() throws Exception {
+        final ByteBuffer compressed = ByteBuffer.wrap(zlib("foo".getBytes(Charsets.UTF_8)));
+        final int position = compressed.position();
+        final int limit = compressed.limit();
+
+        Decompressor.get().inflateZlib(compressed);
+
+        assertEquals(compressed.position(), position);
+        assertEquals(compressed.limit(), limit);
+    }
+
+    @Test
+    public void testInflateReusesDecompressor() throws Exception {
+        final Decompressor decompressor = Decompressor.get();
+
+        assertEquals(toBytes(decompressor.inflateZlib(ByteBuffer.wrap(zlib("foo".getBytes(Charsets.UTF_8))))),
+                "foo".getBytes(Charsets.UTF_8));
+        assertEquals(toBytes(decompressor.inflateGzip(ByteBuffer.wrap(gzip("bar".getBytes(Charsets.UTF_8))))),
+                "bar".getBytes(Charsets.UTF_8));
+        assertEquals(toBytes(decompressor.inflateZlib(ByteBuffer.wrap(zlib("baz".getBytes(Charsets.UTF_8))))),
+                "baz".getBytes(Charsets.UTF_8));
+        assertTrue(decompressor == Decompressor.get());
+    }
+
+    @Test
+    public void testInflateConcatenatedGzipMembers() throws Exception {
+        final byte[] compressed = Bytes.concat(gzip("foo".getBytes(Charsets.UTF_8)), gzip("bar".getBytes(Charsets.UTF_8)));
+
+        assertEquals(toBytes(Decompressor.get().inflateGzip(ByteBuffer.wrap(compressed))), "foobar".getBytes(Charsets.UTF_8));
+    }
+
+    @Test(expectedExceptions = EOFException.class)
+    public void testInflateEmptyGzip() throws Exception {
+        Decompressor.get().inflateGzip(ByteBuffer.allocate(0));
+    }
+
+    @Test(expectedExceptions = ZipException.class)
+    public void testInflateGzipWithInvalidMagic() throws Exception {
+        final byte[] compressed = gzip("foo".getBytes(Charsets.UTF_8));
+        compressed[0] = 0;
+
+        Decompressor.get().inflateGzip(ByteBuffer.wrap(compressed));
+    }
+
+    @Test
+    public void testInflateExceedingMaxSize() throws Exception {
+        Decompressor.setMaxDecompressedSize(1024);
+        final byte[] data = new byte[1025];
+
+        try {
+            Decompressor.get().inflateZlib(ByteBuffer.wrap(zlib(data)));
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("1024"));
+        }
+
+        // the decompressor must still be usable after a rejected message
+        final ByteBuffer result = Decompressor.get().inflateZlib(ByteBuffer.wrap(zlib(new byte[1024])));
+        assertEquals(result.remaining(), 1024);
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] zlib(byte[] data) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+            deflater.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+}
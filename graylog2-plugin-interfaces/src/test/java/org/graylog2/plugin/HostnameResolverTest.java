@@ -0,0 +1,207 @@
+/**
+ * The MIT License
+ * Copyright (c) 2012 TORCH GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.graylog2.plugin;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Ticker;
+import com.google.common.net.InetAddresses;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class HostnameResolverTest {
+    private static final InetAddress ADDRESS = InetAddresses.forString("192.0.2.1");
+    private static final long TTL = TimeUnit.MINUTES.toNanos(5);
+    private static final long NEGATIVE_TTL = TimeUnit.MINUTES.toNanos(1);
+
+    private MetricRegistry metricRegistry;
+    private QueuedExecutor executor;
+    private FakeTicker ticker;
+    private StubResolver resolver;
+
+    @BeforeMethod
+    public void setUp() {
+        metricRegistry = new MetricRegistry();
+        executor = new QueuedExecutor();
+        ticker = new FakeTicker();
+        resolver = new StubResolver(metricRegistry, executor, ticker);
+    }
+
+    @Test
+    public void testMissDoesNotBlockAndResolvesInBackground() {
+        resolver.hostNames.put(ADDRESS, "host.example.com");
+
+        assertNull(resolver.lookup(ADDRESS));
+        assertEquals(resolver.lookups.get(), 0);
+
+        executor.runAll();
+
+        assertEquals(resolver.lookup(ADDRESS), "host.example.com");
+        assertEquals(resolver.lookups.get(), 1);
+        assertEquals(metricRegistry.meter("org.graylog2.plugin.HostnameResolver.misses").getCount(), 1);
+        assertEquals(metricRegistry.meter("org.graylog2.plugin.HostnameResolver.hits").getCount(), 1);
+    }
+
+    @Test
+    public void testOnlyOneLookupPerAddressIsPending() {
+        resolver.lookup(ADDRESS);
+        resolver.lookup(ADDRESS);
+        resolver.lookup(ADDRESS);
+
+        assertEquals(executor.tasks.size(), 1);
+    }
+
+    @Test
+    public void testFailedLookupsAreCachedWithNegativeTtl() {
+        resolver.lookup(ADDRESS);
+        executor.runAll();
+
+        assertNull(resolver.lookup(ADDRESS));
+        assertEquals(executor.tasks.size(), 0);
+        assertEquals(metricRegistry.meter("org.graylog2.plugin.HostnameResolver.failures").getCount(), 1);
+
+        ticker.advance(NEGATIVE_TTL + 1);
+        resolver.hostNames.put(ADDRESS, "host.example.com");
+
+        assertNull(resolver.lookup(ADDRESS));
+        executor.runAll();
+        assertEquals(resolver.lookup(ADDRESS), "host.example.com");
+    }
+
+    @Test
+    public void testAddressLiteralIsTreatedAsFailedLookup() {
+        resolver.hostNames.put(ADDRESS, "192.0.2.1");
+
+        resolver.lookup(ADDRESS);
+        executor.runAll();
+
+        assertNull(resolver.lookup(ADDRESS));
+        assertEquals(metricRegistry.meter("org.graylog2.plugin.HostnameResolver.failures").getCount(), 1);
+    }
+
+    @Test
+    public void testStaleEntryIsReturnedWhileRefreshing() {
+        resolver.hostNames.put(ADDRESS, "old.example.com");
+        resolver.lookup(ADDRESS);
+        executor.runAll();
+
+        ticker.advance(TTL + 1);
+        resolver.hostNames.put(ADDRESS, "new.example.com");
+
+        assertEquals(resolver.lookup(ADDRESS), "old.example.com");
+        assertEquals(executor.tasks.size(), 1);
+
+        executor.runAll();
+        assertEquals(resolver.lookup(ADDRESS), "new.example.com");
+    }
+
+    @Test
+    public void testEntriesExpireAfterTwiceTheTtl() {
+        resolver.hostNames.put(ADDRESS, "host.example.com");
+        resolver.lookup(ADDRESS);
+        executor.runAll();
+
+        ticker.advance(2 * TTL + 1);
+
+        assertNull(resolver.lookup(ADDRESS));
+    }
+
+    @Test
+    public void testRejectedLookupIsRetried() {
+        resolver.hostNames.put(ADDRESS, "host.example.com");
+        executor.reject = true;
+
+        assertNull(resolver.lookup(ADDRESS));
+        assertEquals(metricRegistry.meter("org.graylog2.plugin.HostnameResolver.rejected").getCount(), 1);
+
+        executor.reject = false;
+        assertNull(resolver.lookup(ADDRESS));
+        executor.runAll();
+        assertEquals(resolver.lookup(ADDRESS), "host.example.com");
+    }
+
+    private static class StubResolver extends HostnameResolver {
+        private final Map<InetAddress, String> hostNames = new ConcurrentHashMap<>();
+        private final AtomicInteger lookups = new AtomicInteger();
+
+        private StubResolver(MetricRegistry metricRegistry, Executor executor, Ticker ticker) {
+            super(metricRegistry, 100, TTL, NEGATIVE_TTL, executor, ticker);
+        }
+
+        @Override
+        protected String lookupHostName(InetAddress address) throws UnknownHostException {
+            lookups.incrementAndGet();
+            final String hostName = hostNames.get(address);
+            if (hostName == null) {
+                throw new UnknownHostException(address.toString());
+            }
+            return hostName;
+        }
+    }
+
+    private static class QueuedExecutor implements Executor {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+        private boolean reject = false;
+
+        @Override
+        public void execute(Runnable command) {
+            if (reject) {
+                throw new RejectedExecutionException();
+            }
+            tasks.add(command);
+        }
+
+        private void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    private static class FakeTicker extends Ticker {
+        private long nanos = 0;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        private void advance(long delta) {
+            nanos += delta;
+        }
+    }
+}
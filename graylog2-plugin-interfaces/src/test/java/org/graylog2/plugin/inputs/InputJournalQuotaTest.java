@@ -0,0 +1,62 @@
+/**
+ * The MIT License
+ * Copyright (c) 2012 TORCH GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.graylog2.plugin.inputs;
+
+import com.google.common.collect.ImmutableMap;
+import org.graylog2.plugin.configuration.Configuration;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+
+import static org.testng.Assert.assertEquals;
+
+public class InputJournalQuotaTest {
+    @Test
+    public void testDefaultsToUnlimitedNormalPriority() throws Exception {
+        final InputJournalQuota quota = InputJournalQuota.fromConfiguration(new Configuration(Collections.<String, Object>emptyMap()));
+
+        assertEquals(quota.getPriority(), InputJournalQuota.Priority.NORMAL);
+        assertEquals(quota.getMessagesPerSecond(), 0);
+        assertEquals(quota.getBytesPerSecond(), 0);
+    }
+
+    @Test
+    public void testReadsQuotasFromConfiguration() throws Exception {
+        final InputJournalQuota quota = InputJournalQuota.fromConfiguration(new Configuration(ImmutableMap.<String, Object>of(
+                InputJournalQuota.CK_PRIORITY, "low",
+                InputJournalQuota.CK_MESSAGE_QUOTA, 100,
+                InputJournalQuota.CK_BYTE_QUOTA, 4096)));
+
+        assertEquals(quota.getPriority(), InputJournalQuota.Priority.LOW);
+        assertEquals(quota.getMessagesPerSecond(), 100);
+        assertEquals(quota.getBytesPerSecond(), 4096);
+    }
+
+    @Test
+    public void testFallsBackToNormalPriority() throws Exception {
+        final InputJournalQuota quota = InputJournalQuota.fromConfiguration(new Configuration(ImmutableMap.<String, Object>of(
+                InputJournalQuota.CK_PRIORITY, "urgent")));
+
+        assertEquals(quota.getPriority(), InputJournalQuota.Priority.NORMAL);
+    }
+}
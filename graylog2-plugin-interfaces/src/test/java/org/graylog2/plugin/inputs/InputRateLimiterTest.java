@@ -0,0 +1,118 @@
+/**
+ * The MIT License
+ * Copyright (c) 2012 TORCH GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.graylog2.plugin.inputs;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.journal.RawMessage;
+import org.testng.annotations.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class InputRateLimiterTest {
+    @Test
+    public void testNoLimitsConfigured() throws Exception {
+        final Configuration configuration = new Configuration(ImmutableMap.<String, Object>of(
+                InputRateLimiter.CK_RATE_LIMIT, 0));
+
+        assertNull(InputRateLimiter.fromConfiguration(configuration, new MetricRegistry(), true));
+    }
+
+    @Test
+    public void testDropsMessagesExceedingInputLimit() throws Exception {
+        final MetricRegistry registry = new MetricRegistry();
+        final InputRateLimiter rateLimiter = InputRateLimiter.fromConfiguration(new Configuration(
+                ImmutableMap.<String, Object>of(InputRateLimiter.CK_RATE_LIMIT, 1)), registry, true);
+
+        assertTrue(rateLimiter.admit(message("10.0.0.1")));
+        assertFalse(rateLimiter.admit(message("10.0.0.2")));
+        assertEquals(registry.meter("rateLimit.input.dropped").getCount(), 1L);
+    }
+
+    @Test
+    public void testSourcesHaveSeparateBuckets() throws Exception {
+        final MetricRegistry registry = new MetricRegistry();
+        final InputRateLimiter rateLimiter = new InputRateLimiter(0, 1, InputRateLimiter.Policy.DROP, registry);
+
+        assertTrue(rateLimiter.admit(message("10.0.0.1")));
+        assertTrue(rateLimiter.admit(message("10.0.0.2")));
+        assertFalse(rateLimiter.admit(message("10.0.0.1")));
+        // messages without a remote address are only subject to the input limit
+        assertTrue(rateLimiter.admit(new RawMessage("test".getBytes(StandardCharsets.UTF_8))));
+
+        assertEquals(registry.meter("rateLimit.source.dropped").getCount(), 1L);
+        assertEquals(registry.getGauges().get("rateLimit.source.buckets").getValue(), 2L);
+    }
+
+    @Test
+    public void testThrottlingDelaysMessages() throws Exception {
+        final MetricRegistry registry = new MetricRegistry();
+        final InputRateLimiter rateLimiter = new InputRateLimiter(20, 0, InputRateLimiter.Policy.THROTTLE, registry);
+
+        final long start = System.nanoTime();
+        assertTrue(rateLimiter.admit(message("10.0.0.1")));
+        assertTrue(rateLimiter.admit(message("10.0.0.1")));
+
+        assertTrue(System.nanoTime() - start >= 40_000_000L);
+        assertEquals(registry.meter("rateLimit.input.delayed").getCount(), 1L);
+        assertEquals(registry.meter("rateLimit.input.dropped").getCount(), 0L);
+    }
+
+    @Test
+    public void testDropsInsteadOfThrottlingIfNotSupported() throws Exception {
+        final MetricRegistry registry = new MetricRegistry();
+        final InputRateLimiter rateLimiter = InputRateLimiter.fromConfiguration(new Configuration(
+                ImmutableMap.<String, Object>of(
+                        InputRateLimiter.CK_RATE_LIMIT, 1,
+                        InputRateLimiter.CK_RATE_LIMIT_POLICY, "throttle")), registry, false);
+
+        assertTrue(rateLimiter.admit(message("10.0.0.1")));
+        assertFalse(rateLimiter.admit(message("10.0.0.1")));
+        assertEquals(registry.meter("rateLimit.input.dropped").getCount(), 1L);
+        assertEquals(registry.meter("rateLimit.input.delayed").getCount(), 0L);
+    }
+
+    @Test
+    public void testUnknownPolicyFallsBackToDrop() throws Exception {
+        final MetricRegistry registry = new MetricRegistry();
+        final InputRateLimiter rateLimiter = InputRateLimiter.fromConfiguration(new Configuration(
+                ImmutableMap.<String, Object>of(
+                        InputRateLimiter.CK_RATE_LIMIT, 1,
+                        InputRateLimiter.CK_RATE_LIMIT_POLICY, "unknown")), registry, true);
+
+        assertTrue(rateLimiter.admit(message("10.0.0.1")));
+        assertFalse(rateLimiter.admit(message("10.0.0.1")));
+        assertEquals(registry.meter("rateLimit.input.dropped").getCount(), 1L);
+    }
+
+    private static RawMessage message(String remoteAddress) {
+        return new RawMessage("test".getBytes(StandardCharsets.UTF_8), new InetSocketAddress(remoteAddress, 514));
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * The MIT License
+ * Copyright (c) 2012 TORCH GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.graylog2.plugin.inputs.transports;
+
+import org.graylog2.plugin.ThrottleState;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class AdaptiveThrottleControllerTest {
+    private AdaptiveThrottleController controller;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        controller = new AdaptiveThrottleController(0.8, 30);
+    }
+
+    @Test
+    public void testUnlimitedWhileTargetsAreMet() throws Exception {
+        assertEquals(controller.update(state(10, 1_000, 1_000)), ThrottleController.UNLIMITED);
+    }
+
+    @Test
+    public void testHalvesRateWhileLagIsTooHigh() throws Exception {
+        // 100k uncommitted entries at 1000 reads/sec means 100 seconds lag
+        assertEquals(controller.update(state(10, 100_000, 1_000)), 500.0);
+        assertEquals(controller.update(state(10, 100_000, 1_000)), 250.0);
+    }
+
+    @Test
+    public void testHalvesRateWhileJournalUtilizationIsTooHigh() throws Exception {
+        assertEquals(controller.update(state(85, 1_000, 1_000)), 500.0);
+    }
+
+    @Test
+    public void testIncreasesRateAdditivelyOnceTargetsAreMet() throws Exception {
+        assertEquals(controller.update(state(85, 1_000, 1_000)), 500.0);
+        // 60% utilization is below the target but above half of it
+        assertEquals(controller.update(state(60, 1_000, 1_000)), 600.0);
+        assertEquals(controller.update(state(60, 1_000, 1_000)), 700.0);
+    }
+
+    @Test
+    public void testLiftsLimitWellBelowTargets() throws Exception {
+        assertEquals(controller.update(state(85, 1_000, 1_000)), 500.0);
+        assertEquals(controller.update(state(10, 1_000, 1_000)), ThrottleController.UNLIMITED);
+    }
+
+    @Test
+    public void testStopsReadingIfJournalIsFull() throws Exception {
+        assertEquals(controller.update(state(100, 1_000, 1_000)), 0.0);
+    }
+
+    @Test
+    public void testNeverDropsBelowMinimumRate() throws Exception {
+        double rate = ThrottleController.UNLIMITED;
+        for (int i = 0; i < 20; i++) {
+            rate = controller.update(state(90, 1_000, 1_000));
+        }
+        assertTrue(rate >= 1.0);
+    }
+
+    private static ThrottleState state(long utilizationPercent, long uncommitted, long readEventsPerSec) {
+        final ThrottleState state = new ThrottleState();
+        state.journalSize = utilizationPercent;
+        state.journalSizeLimit = 100;
+        state.uncommittedJournalEntries = uncommitted;
+        state.readEventsPerSec = readEventsPerSec;
+        state.appendEventsPerSec = readEventsPerSec;
+        state.processBufferCapacity = 1024;
+        return state;
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * The MIT License
+ * Copyright (c) 2012 TORCH GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.graylog2.plugin.inputs.transports;
+
+import com.codahale.metrics.MetricSet;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.EventBus;
+import org.graylog2.plugin.ThrottleState;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.inputs.InputJournalQuota;
+import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.inputs.codecs.CodecAggregator;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class ThrottleableTransportTest {
+    private static final Configuration THROTTLING_ALLOWED = new Configuration(ImmutableMap.<String, Object>of(
+            ThrottleableTransport.CK_THROTTLING_ALLOWED, true));
+
+    @Test
+    public void testDeprecatedHookPausesTransport() throws Exception {
+        final LegacyTransport transport = new LegacyTransport();
+
+        transport.throttled = true;
+        transport.updateThrottleState(new ThrottleState());
+        assertEquals(transport.getThrottleRate(), 0.0);
+        assertTrue(transport.isThrottled());
+
+        transport.throttled = false;
+        transport.updateThrottleState(new ThrottleState());
+        assertEquals(transport.getThrottleRate(), ThrottleController.UNLIMITED);
+        assertFalse(transport.isThrottled());
+    }
+
+    @Test
+    public void testBatchesAreCountedInMessages() throws Exception {
+        final TestTransport transport = new TestTransport(new ThrottleController() {
+            @Override
+            public double update(ThrottleState state) {
+                return 20.0;
+            }
+        });
+        transport.updateThrottleState(new ThrottleState());
+
+        final long start = System.nanoTime();
+        transport.blockUntilUnthrottled(2);
+        transport.blockUntilUnthrottled(1);
+
+        // the second call has to wait for the two messages of the first one
+        assertTrue(System.nanoTime() - start >= 90_000_000L);
+    }
+
+    @Test
+    public void testNeverExceedsJournalQuota() throws Exception {
+        final QuotaTransport transport = new QuotaTransport(new Configuration(ImmutableMap.<String, Object>of(
+                ThrottleableTransport.CK_THROTTLING_ALLOWED, true,
+                InputJournalQuota.CK_MESSAGE_QUOTA, 50)));
+
+        transport.updateThrottleState(new ThrottleState());
+
+        assertEquals(transport.getThrottleRate(), 50.0);
+    }
+
+    private abstract static class NoopTransport extends ThrottleableTransport {
+        NoopTransport() {
+            this(THROTTLING_ALLOWED);
+        }
+
+        NoopTransport(Configuration configuration) {
+            super(new EventBus(), configuration);
+        }
+
+        @Override
+        protected void doLaunch(MessageInput input) {
+        }
+
+        @Override
+        protected void doStop() {
+        }
+
+        @Override
+        public void setMessageAggregator(CodecAggregator aggregator) {
+        }
+
+        @Override
+        public MetricSet getMetricSet() {
+            return null;
+        }
+    }
+
+    private static class TestTransport extends NoopTransport {
+        private final ThrottleController controller;
+
+        TestTransport(ThrottleController controller) {
+            this.controller = controller;
+        }
+
+        @Override
+        protected ThrottleController createThrottleController(Configuration configuration) {
+            // called from the super constructor, delegate lazily
+            return new ThrottleController() {
+                @Override
+                public double update(ThrottleState state) {
+                    return controller.update(state);
+                }
+            };
+        }
+    }
+
+    private static class QuotaTransport extends NoopTransport {
+        QuotaTransport(Configuration configuration) {
+            super(configuration);
+        }
+
+        @Override
+        protected ThrottleController createThrottleController(Configuration configuration) {
+            return new ThrottleController() {
+                @Override
+                public double update(ThrottleState state) {
+                    return UNLIMITED;
+                }
+            };
+        }
+    }
+
+    private static class LegacyTransport extends NoopTransport {
+        private volatile boolean throttled;
+
+        @Override
+        @SuppressWarnings("deprecation")
+        protected boolean determineIfThrottled(ThrottleState state) {
+            return throttled;
+        }
+    }
+}
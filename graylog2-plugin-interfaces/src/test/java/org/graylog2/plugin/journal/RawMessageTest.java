@@ -23,15 +23,25 @@
 package org.graylog2.plugin.journal;
 
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.common.net.InetAddresses;
+import com.google.protobuf.ByteString;
+import org.graylog2.plugin.ResolvableInetSocketAddress;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.system.NodeId;
 import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 
 public class RawMessageTest {
 
@@ -53,4 +63,85 @@ public class RawMessageTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void encodeReferencesCodecConfig() throws IOException {
+        final Configuration config = new Configuration(ImmutableMap.<String, Object>of("test", "value"));
+        final RawMessage rawMessage = new RawMessage("testmessage".getBytes(Charsets.UTF_8));
+        rawMessage.setCodecName("raw");
+        rawMessage.setCodecConfig(config);
+
+        final byte[] encoded = rawMessage.encode();
+        final JournalMessages.JournalMessage journalMessage = JournalMessages.JournalMessage.parseFrom(encoded);
+
+        assertEquals(journalMessage.getVersion(), RawMessage.CURRENT_VERSION);
+        assertFalse(journalMessage.getCodec().hasConfig());
+        assertEquals(journalMessage.getCodec().getConfigId(), config.getFingerprint());
+
+        final RawMessage decodedMsg = RawMessage.decode(encoded, 1);
+        assertNotNull(decodedMsg);
+        assertEquals(decodedMsg.getCodecConfig(), config);
+        assertEquals(decodedMsg.getCodecConfigId(), config.getFingerprint());
+    }
+
+    @Test
+    public void decodeVersion1WithCodecConfigJson() throws IOException {
+        final Configuration config = new Configuration(ImmutableMap.<String, Object>of("version1", true));
+        final JournalMessages.JournalMessage journalMessage = JournalMessages.JournalMessage.newBuilder()
+                .setVersion(1)
+                .setUuidTime(1L)
+                .setUuidClockseq(2L)
+                .setTimestamp(0L)
+                .setCodec(JournalMessages.CodecInfo.newBuilder().setName("raw").setConfig(config.serializeToJson()))
+                .setPayload(ByteString.copyFromUtf8("testmessage"))
+                .build();
+
+        final RawMessage decodedMsg = RawMessage.decode(journalMessage.toByteArray(), 1);
+
+        assertNotNull(decodedMsg);
+        assertEquals(decodedMsg.getVersion(), 1);
+        assertEquals(decodedMsg.getCodecName(), "raw");
+        assertTrue(decodedMsg.getCodecConfig().getBoolean("version1"));
+        assertEquals(decodedMsg.getCodecConfigId(), config.getFingerprint());
+    }
+
+    @Test
+    public void payloadViews() throws IOException {
+        final byte[] payload = "testmessage".getBytes(Charsets.UTF_8);
+        final RawMessage rawMessage = new RawMessage(payload);
+
+        final ByteBuffer buffer = rawMessage.getPayloadBuffer();
+        assertTrue(buffer.isReadOnly());
+        assertEquals(buffer, ByteBuffer.wrap(payload));
+        assertEquals(rawMessage.getPayloadSize(), payload.length);
+        assertEquals(rawMessage.getPayloadAsString(), "testmessage");
+        assertEquals(ByteStreams.toByteArray(rawMessage.getPayloadInputStream()), payload);
+    }
+
+    @Test
+    public void resolvedRemoteHostnameSurvivesEncoding() throws IOException {
+        final ResolvableInetSocketAddress address = ResolvableInetSocketAddress.wrap(
+                new InetSocketAddress(InetAddresses.forString("192.0.2.1"), 5140), "host.example.com");
+        final RawMessage rawMessage = new RawMessage("testmessage".getBytes(Charsets.UTF_8), address);
+        rawMessage.setCodecName("raw");
+
+        final ResolvableInetSocketAddress decoded = RawMessage.decode(rawMessage.encode(), 1).getRemoteAddress();
+
+        assertNotNull(decoded);
+        assertTrue(decoded.isReverseLookedUp());
+        assertEquals(decoded.getHostName(), "host.example.com");
+        assertEquals(decoded.getPort(), 5140);
+    }
+
+    @Test
+    public void unresolvedRemoteAddressStaysUnresolved() throws IOException {
+        final RawMessage rawMessage = new RawMessage("testmessage".getBytes(Charsets.UTF_8),
+                new InetSocketAddress(InetAddresses.forString("192.0.2.1"), 5140));
+        rawMessage.setCodecName("raw");
+
+        final ResolvableInetSocketAddress decoded = RawMessage.decode(rawMessage.encode(), 1).getRemoteAddress();
+
+        assertNotNull(decoded);
+        assertFalse(decoded.isReverseLookedUp());
+        assertNull(decoded.getHostName());
+    }
+}
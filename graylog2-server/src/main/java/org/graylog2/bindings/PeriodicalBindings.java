@@ -27,6 +27,7 @@ import org.graylog2.periodical.GarbageCollectionWarningThread;
 import org.graylog2.periodical.IndexRetentionThread;
 import org.graylog2.periodical.IndexRotationThread;
 import org.graylog2.periodical.IndexerClusterCheckerThread;
+import org.graylog2.periodical.JournalDiskSpaceWatchdog;
 import org.graylog2.periodical.NodePingThread;
 import org.graylog2.periodical.StreamThroughputCounterManagerThread;
 import org.graylog2.periodical.VersionCheckThread;
@@ -45,6 +46,7 @@ public class PeriodicalBindings extends AbstractModule {
         periodicalBinder.addBinding().to(IndexerClusterCheckerThread.class);
         periodicalBinder.addBinding().to(IndexRetentionThread.class);
         periodicalBinder.addBinding().to(IndexRotationThread.class);
+        periodicalBinder.addBinding().to(JournalDiskSpaceWatchdog.class);
         periodicalBinder.addBinding().to(NodePingThread.class);
         periodicalBinder.addBinding().to(StreamThroughputCounterManagerThread.class);
         periodicalBinder.addBinding().to(VersionCheckThread.class);
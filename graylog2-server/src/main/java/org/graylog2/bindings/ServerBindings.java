@@ -82,6 +82,7 @@ import org.graylog2.streams.StreamRouterEngine;
 import org.graylog2.system.activities.SystemMessageActivityWriter;
 import org.graylog2.system.jobs.SystemJobFactory;
 import org.graylog2.system.jobs.SystemJobManager;
+import org.graylog2.system.journal.JournalReplayJob;
 import org.graylog2.system.shutdown.GracefulShutdown;
 
 import javax.ws.rs.container.ContainerResponseFilter;
@@ -119,6 +120,7 @@ public class ServerBindings extends AbstractModule {
         install(new FactoryModuleBuilder().build(CreateNewSingleIndexRangeJob.Factory.class));
         install(new FactoryModuleBuilder().build(FixDeflectorByDeleteJob.Factory.class));
         install(new FactoryModuleBuilder().build(FixDeflectorByMoveJob.Factory.class));
+        install(new FactoryModuleBuilder().build(JournalReplayJob.Factory.class));
         install(new FactoryModuleBuilder().build(LdapSettingsImpl.Factory.class));
         install(new FactoryModuleBuilder().build(FieldValueAlertCondition.Factory.class));
         install(new FactoryModuleBuilder().build(MessageCountAlertCondition.Factory.class));
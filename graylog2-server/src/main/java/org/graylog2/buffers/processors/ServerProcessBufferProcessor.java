@@ -28,6 +28,7 @@ import org.graylog2.plugin.Message;
 import org.graylog2.plugin.ServerStatus;
 import org.graylog2.plugin.filters.MessageFilter;
 import org.graylog2.shared.buffers.processors.ProcessBufferProcessor;
+import org.graylog2.shared.journal.Journal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,6 +50,7 @@ public class ServerProcessBufferProcessor extends ProcessBufferProcessor {
     private final OutputBuffer outputBuffer;
     private final Meter filteredOutMessages;
     private final List<MessageFilter> filterRegistry;
+    private final Journal journal;
 
 
     @Inject
@@ -56,7 +58,8 @@ public class ServerProcessBufferProcessor extends ProcessBufferProcessor {
                                   Set<MessageFilter> filterRegistry,
                                   Configuration configuration,
                                   ServerStatus serverStatus,
-                                  OutputBuffer outputBuffer) {
+                                  OutputBuffer outputBuffer,
+                                  Journal journal) {
         super(metricRegistry);
         this.configuration = configuration;
         this.serverStatus = serverStatus;
@@ -73,6 +76,7 @@ public class ServerProcessBufferProcessor extends ProcessBufferProcessor {
         }).immutableSortedCopy(filterRegistry);
 
         this.outputBuffer = outputBuffer;
+        this.journal = journal;
         this.filteredOutMessages = metricRegistry.meter(name(ProcessBufferProcessor.class, "filteredOutMessages"));
     }
 
@@ -93,6 +97,7 @@ public class ServerProcessBufferProcessor extends ProcessBufferProcessor {
                 if (filter.filter(msg)) {
                     LOG.debug("Filter [{}] marked message <{}> to be discarded. Dropping message.", filter.getName(), msg.getId());
                     filteredOutMessages.mark();
+                    journal.markJournalOffsetCommitted(msg.getJournalOffset());
                     return;
                 }
             } catch (Exception e) {
@@ -0,0 +1,200 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.periodical;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.graylog2.plugin.periodical.Periodical;
+import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.journal.KafkaJournal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.File;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Watches the free space on the disks the journal is stored on, because the journal only limits its own size and
+ * might share the disks with other data.
+ * <p/>
+ * Below the minimum free space the committed journal segments are removed right away instead of waiting for the next
+ * retention run, and the journal size limit the inputs are throttled against is lowered to what still fits on the
+ * disk above the shedding threshold. Only inputs which can be throttled slow down and stop reading once that space is
+ * used up. With the {@code throttle} policy the messages of all other inputs are dropped from then on, with the
+ * {@code drop_oldest} policy the oldest journal segments are deleted instead, even if they have not been processed yet.
+ */
+public class JournalDiskSpaceWatchdog extends Periodical {
+    private static final Logger LOG = LoggerFactory.getLogger(JournalDiskSpaceWatchdog.class);
+
+    // weight of the latest measurement in the averaged rate the disk fills up at
+    private static final double FILL_RATE_WEIGHT = 0.2;
+
+    private final Journal journal;
+    private final long minFreeSpace;
+    private final long sheddingFreeSpace;
+    private final boolean dropOldest;
+    private final Meter droppedBytes;
+
+    private volatile long freeSpace;
+    private volatile long totalSpace;
+    // bytes per second, negative while space is freed
+    private volatile double fillRate;
+    private long lastCheck;
+    private boolean lowOnSpace = false;
+
+    @Inject
+    public JournalDiskSpaceWatchdog(Journal journal,
+                                    @Named("message_journal_min_free_space") long minFreeSpace,
+                                    @Named("message_journal_shedding_free_space") long sheddingFreeSpace,
+                                    @Named("message_journal_shedding") String shedding,
+                                    MetricRegistry metricRegistry) {
+        this.journal = journal;
+        this.minFreeSpace = minFreeSpace;
+        this.sheddingFreeSpace = sheddingFreeSpace;
+        switch (shedding) {
+            case "throttle":
+                this.dropOldest = false;
+                break;
+            case "drop_oldest":
+                this.dropOldest = true;
+                break;
+            default:
+                throw new IllegalArgumentException("message_journal_shedding has to be one of [throttle, drop_oldest], not " + shedding);
+        }
+        this.droppedBytes = metricRegistry.meter(name(JournalDiskSpaceWatchdog.class, "droppedBytes"));
+
+        metricRegistry.register(name(JournalDiskSpaceWatchdog.class, "freeSpace"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return freeSpace;
+            }
+        });
+        metricRegistry.register(name(JournalDiskSpaceWatchdog.class, "utilization"), new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                return totalSpace > 0 ? (totalSpace - freeSpace) / (double) totalSpace : 0.0;
+            }
+        });
+        metricRegistry.register(name(JournalDiskSpaceWatchdog.class, "secondsToFull"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                // -1 while the disk is not filling up
+                return fillRate > 0 ? (long) (freeSpace / fillRate) : -1L;
+            }
+        });
+    }
+
+    @Override
+    public void doRun() {
+        final KafkaJournal kafkaJournal = (KafkaJournal) journal;
+        final long now = System.nanoTime();
+        final long previousFreeSpace = freeSpace;
+        measure(kafkaJournal);
+        if (lastCheck != 0) {
+            final double rate = (previousFreeSpace - freeSpace) / ((now - lastCheck) / 1.0E09);
+            fillRate = FILL_RATE_WEIGHT * rate + (1 - FILL_RATE_WEIGHT) * fillRate;
+        }
+        lastCheck = now;
+
+        if (freeSpace >= minFreeSpace) {
+            if (lowOnSpace) {
+                LOG.info("Free space on the journal disk is back to {} bytes, no longer limiting the journal size.", freeSpace);
+                lowOnSpace = false;
+                kafkaJournal.setDiskSpaceLimit(Long.MAX_VALUE, false);
+            }
+            return;
+        }
+        if (!lowOnSpace) {
+            LOG.warn("Only {} bytes free on the journal disk, less than the minimum of {} bytes. Cleaning up the journal and throttling inputs.",
+                     freeSpace, minFreeSpace);
+            lowOnSpace = true;
+        }
+
+        if (kafkaJournal.cleanupLogs() > 0) {
+            measure(kafkaJournal);
+        }
+        if (freeSpace < sheddingFreeSpace && dropOldest) {
+            final long freed = kafkaJournal.deleteOldestSegments(sheddingFreeSpace - freeSpace);
+            droppedBytes.mark(freed);
+            measure(kafkaJournal);
+        }
+        // the journal may only grow into the space above the shedding threshold, throttled inputs stop reading once it's
+        // used up and, unless the oldest segments make room for them, the messages of the other inputs are dropped
+        kafkaJournal.setDiskSpaceLimit(kafkaJournal.size() + Math.max(0, freeSpace - sheddingFreeSpace), !dropOldest);
+    }
+
+    /**
+     * Remembers the free space of the journal directory on the disk with the least free space.
+     */
+    private void measure(KafkaJournal kafkaJournal) {
+        long free = Long.MAX_VALUE;
+        long total = 0;
+        for (final File directory : kafkaJournal.getJournalDirectories()) {
+            final long usable = directory.getUsableSpace();
+            if (usable < free) {
+                free = usable;
+                total = directory.getTotalSpace();
+            }
+        }
+        freeSpace = free;
+        totalSpace = total;
+    }
+
+    @Override
+    public boolean runsForever() {
+        return false;
+    }
+
+    @Override
+    public boolean stopOnGracefulShutdown() {
+        return true;
+    }
+
+    @Override
+    public boolean masterOnly() {
+        return false;
+    }
+
+    @Override
+    public boolean startOnThisNode() {
+        return journal instanceof KafkaJournal;
+    }
+
+    @Override
+    public boolean isDaemon() {
+        return true;
+    }
+
+    @Override
+    public int getInitialDelaySeconds() {
+        return 0;
+    }
+
+    @Override
+    public int getPeriodSeconds() {
+        return 1;
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return LOG;
+    }
+}
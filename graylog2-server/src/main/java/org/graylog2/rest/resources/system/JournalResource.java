@@ -0,0 +1,134 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.rest.resources.system;
+
+import com.codahale.metrics.annotation.Timed;
+import com.wordnik.swagger.annotations.Api;
+import com.wordnik.swagger.annotations.ApiOperation;
+import com.wordnik.swagger.annotations.ApiParam;
+import com.wordnik.swagger.annotations.ApiResponse;
+import com.wordnik.swagger.annotations.ApiResponses;
+import org.apache.shiro.authz.annotation.RequiresAuthentication;
+import org.apache.shiro.authz.annotation.RequiresPermissions;
+import org.graylog2.rest.resources.RestResource;
+import org.graylog2.rest.resources.system.requests.JournalReplayRequest;
+import org.graylog2.rest.resources.system.responses.JournalReplaySummary;
+import org.graylog2.security.RestPermissions;
+import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.journal.KafkaJournal;
+import org.graylog2.system.jobs.SystemJobConcurrencyException;
+import org.graylog2.system.jobs.SystemJobManager;
+import org.graylog2.system.journal.JournalReplayJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.ForbiddenException;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+@RequiresAuthentication
+@Api(value = "System/Journal", description = "Message journal")
+@Path("/system/journal")
+public class JournalResource extends RestResource {
+    private static final Logger LOG = LoggerFactory.getLogger(JournalResource.class);
+
+    private static final double DEFAULT_MESSAGES_PER_SECOND = 1000.0;
+
+    private final Journal journal;
+    private final JournalReplayJob.Factory journalReplayJobFactory;
+    private final SystemJobManager systemJobManager;
+
+    @Inject
+    public JournalResource(Journal journal,
+                           JournalReplayJob.Factory journalReplayJobFactory,
+                           SystemJobManager systemJobManager) {
+        this.journal = journal;
+        this.journalReplayJobFactory = journalReplayJobFactory;
+        this.systemJobManager = systemJobManager;
+    }
+
+    @POST
+    @Timed
+    @Path("/replay")
+    @RequiresPermissions(RestPermissions.JOURNAL_REPLAY)
+    @ApiOperation(value = "Replay a range of journal entries.",
+            notes = "This triggers a systemjob that feeds the journal entries of a partition through the processing " +
+                    "again, next to the live messages and at the given rate. The range is given either by offsets " +
+                    "or by the times the messages have been received, and is limited to the entries which have " +
+                    "been processed already.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 202, message = "Replay systemjob triggered."),
+            @ApiResponse(code = 400, message = "Journal disabled or invalid range.")
+    })
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response replay(@ApiParam(name = "JSON body", required = true) @Valid @NotNull JournalReplayRequest request) {
+        if (!(journal instanceof KafkaJournal)) {
+            throw new BadRequestException("The message journal is disabled.");
+        }
+        final KafkaJournal kafkaJournal = (KafkaJournal) journal;
+
+        final int partition = request.partition() == null ? 0 : request.partition();
+        if (partition < 0 || partition >= kafkaJournal.numberOfPartitions()) {
+            throw new BadRequestException("The journal has no partition " + partition + ".");
+        }
+        if (request.startOffset() != null && request.from() != null || request.endOffset() != null && request.to() != null) {
+            throw new BadRequestException("Give the range either by offsets or by timestamps.");
+        }
+        final double messagesPerSecond = request.messagesPerSecond() == null ? DEFAULT_MESSAGES_PER_SECOND : request.messagesPerSecond();
+        if (messagesPerSecond <= 0) {
+            throw new BadRequestException("messages_per_second must be positive.");
+        }
+
+        long startOffset = kafkaJournal.getLogStartOffset(partition);
+        if (request.startOffset() != null) {
+            startOffset = Math.max(startOffset, request.startOffset());
+        } else if (request.from() != null) {
+            startOffset = JournalReplayJob.findOffset(kafkaJournal, partition, request.from());
+        }
+        long endOffset = kafkaJournal.getLogEndOffset(partition);
+        if (request.endOffset() != null) {
+            endOffset = Math.min(endOffset, request.endOffset());
+        } else if (request.to() != null) {
+            endOffset = JournalReplayJob.findOffset(kafkaJournal, partition, request.to());
+        }
+        // the entries which have not been processed yet are still going to be read from the journal
+        endOffset = Math.min(endOffset, kafkaJournal.getCommittedReadOffset(partition) + 1);
+        if (startOffset >= endOffset) {
+            throw new BadRequestException("There are no processed journal entries in the given range.");
+        }
+
+        final JournalReplayJob replayJob = journalReplayJobFactory.create(kafkaJournal, partition, startOffset, endOffset, messagesPerSecond);
+        final String jobId;
+        try {
+            jobId = systemJobManager.submit(replayJob);
+        } catch (SystemJobConcurrencyException e) {
+            LOG.error("Concurrency level of this job reached: " + e.getMessage());
+            throw new ForbiddenException();
+        }
+
+        return Response.accepted(JournalReplaySummary.create(jobId, partition, startOffset, endOffset, messagesPerSecond)).build();
+    }
+}
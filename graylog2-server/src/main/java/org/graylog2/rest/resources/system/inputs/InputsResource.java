@@ -37,10 +37,13 @@ import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.configuration.ConfigurationException;
 import org.graylog2.plugin.inputs.Extractor;
 import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.inputs.transports.ThrottleController;
+import org.graylog2.plugin.inputs.transports.ThrottleableTransport;
 import org.graylog2.rest.resources.RestResource;
 import org.graylog2.rest.resources.system.inputs.responses.InputCreated;
 import org.graylog2.rest.resources.system.inputs.responses.InputStateSummary;
 import org.graylog2.rest.resources.system.inputs.responses.InputSummary;
+import org.graylog2.rest.resources.system.inputs.responses.InputThrottleSummary;
 import org.graylog2.rest.resources.system.inputs.responses.InputsList;
 import org.graylog2.security.RestPermissions;
 import org.graylog2.shared.inputs.InputLauncher;
@@ -133,6 +136,37 @@ public class InputsResource extends RestResource {
         );
     }
 
+    @GET
+    @Timed
+    @ApiOperation(value = "Get the throttling state of a single input on this node")
+    @Path("/{inputId}/throttle")
+    @ApiResponses(value = {
+            @ApiResponse(code = 404, message = "No such input on this node.")
+    })
+    public InputThrottleSummary throttle(@ApiParam(name = "inputId", required = true)
+                                         @PathParam("inputId") String inputId) {
+        checkPermission(RestPermissions.INPUTS_READ, inputId);
+
+        final MessageInput input = inputRegistry.getRunningInput(inputId);
+        if (input == null) {
+            LOG.info("Input [{}] not found. Returning HTTP 404.", inputId);
+            throw new NotFoundException();
+        }
+
+        if (!(input.getTransport() instanceof ThrottleableTransport)) {
+            return InputThrottleSummary.create(input.getId(), false, false, null, null);
+        }
+
+        final ThrottleableTransport transport = (ThrottleableTransport) input.getTransport();
+        final double rate = transport.getThrottleRate();
+        return InputThrottleSummary.create(input.getId(),
+                transport.isThrottlingAllowed(),
+                rate == 0.0,
+                rate == ThrottleController.UNLIMITED ? null : rate,
+                transport.getThrottleController().getClass().getCanonicalName()
+        );
+    }
+
     @GET
     @Timed
     @ApiOperation(value = "Get all inputs of this node")
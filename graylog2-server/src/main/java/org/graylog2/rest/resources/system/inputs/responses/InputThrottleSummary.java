@@ -0,0 +1,51 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.rest.resources.system.inputs.responses;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.auto.value.AutoValue;
+
+import javax.annotation.Nullable;
+
+@JsonAutoDetect
+@AutoValue
+public abstract class InputThrottleSummary {
+    @JsonProperty
+    public abstract String inputId();
+    @JsonProperty
+    public abstract boolean throttlingAllowed();
+    @JsonProperty
+    public abstract boolean paused();
+    /**
+     * @return the number of read operations per second or {@code null} if the input is not throttled
+     */
+    @JsonProperty
+    @Nullable
+    public abstract Double rate();
+    @JsonProperty
+    @Nullable
+    public abstract String controller();
+
+    public static InputThrottleSummary create(String inputId,
+                                              boolean throttlingAllowed,
+                                              boolean paused,
+                                              @Nullable Double rate,
+                                              @Nullable String controller) {
+        return new AutoValue_InputThrottleSummary(inputId, throttlingAllowed, paused, rate, controller);
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.rest.resources.system.requests;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.auto.value.AutoValue;
+import org.joda.time.DateTime;
+
+import javax.annotation.Nullable;
+
+@JsonAutoDetect
+@AutoValue
+public abstract class JournalReplayRequest {
+    @JsonProperty
+    @Nullable
+    public abstract Integer partition();
+
+    @JsonProperty("start_offset")
+    @Nullable
+    public abstract Long startOffset();
+
+    @JsonProperty("end_offset")
+    @Nullable
+    public abstract Long endOffset();
+
+    @JsonProperty
+    @Nullable
+    public abstract DateTime from();
+
+    @JsonProperty
+    @Nullable
+    public abstract DateTime to();
+
+    @JsonProperty("messages_per_second")
+    @Nullable
+    public abstract Double messagesPerSecond();
+
+    @JsonCreator
+    public static JournalReplayRequest create(@JsonProperty("partition") @Nullable Integer partition,
+                                              @JsonProperty("start_offset") @Nullable Long startOffset,
+                                              @JsonProperty("end_offset") @Nullable Long endOffset,
+                                              @JsonProperty("from") @Nullable DateTime from,
+                                              @JsonProperty("to") @Nullable DateTime to,
+                                              @JsonProperty("messages_per_second") @Nullable Double messagesPerSecond) {
+        return new AutoValue_JournalReplayRequest(partition, startOffset, endOffset, from, to, messagesPerSecond);
+    }
+}
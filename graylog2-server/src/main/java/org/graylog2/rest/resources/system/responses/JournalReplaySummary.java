@@ -0,0 +1,44 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.rest.resources.system.responses;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.auto.value.AutoValue;
+
+@JsonAutoDetect
+@AutoValue
+public abstract class JournalReplaySummary {
+    @JsonProperty("system_job_id")
+    public abstract String systemJobId();
+
+    @JsonProperty
+    public abstract int partition();
+
+    @JsonProperty("start_offset")
+    public abstract long startOffset();
+
+    @JsonProperty("end_offset")
+    public abstract long endOffset();
+
+    @JsonProperty("messages_per_second")
+    public abstract double messagesPerSecond();
+
+    public static JournalReplaySummary create(String systemJobId, int partition, long startOffset, long endOffset, double messagesPerSecond) {
+        return new AutoValue_JournalReplaySummary(systemJobId, partition, startOffset, endOffset, messagesPerSecond);
+    }
+}
@@ -82,6 +82,7 @@ public class RestPermissions {
     public static final String LOGGERS_READSUBSYSTEM = "loggers:readsubsystem";
     public static final String LOGGERS_EDITSUBSYSTEM = "loggers:editsubsystem";
     public static final String BUFFERS_READ = "buffers:read";
+    public static final String JOURNAL_REPLAY = "journal:replay";
     public static final String DEFLECTOR_READ = "deflector:read";
     public static final String DEFLECTOR_CYCLE = "deflector:cycle";
     public static final String INDEXRANGES_READ = "indexranges:read";
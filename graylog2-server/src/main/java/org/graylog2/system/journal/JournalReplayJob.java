@@ -0,0 +1,209 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.system.journal;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.inject.assistedinject.Assisted;
+import com.google.inject.assistedinject.AssistedInject;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.shared.buffers.ProcessBuffer;
+import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.journal.KafkaJournal;
+import org.graylog2.shared.system.activities.Activity;
+import org.graylog2.shared.system.activities.ActivityWriter;
+import org.graylog2.system.jobs.SystemJob;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds a range of entries of a journal partition through the process buffer again, at a limited rate, while the
+ * journal reader keeps processing the live messages.
+ * <p/>
+ * The replayed messages do not carry their journal offset, so their processing does not commit the offsets of the
+ * partition a second time. Only entries which have been committed already should be replayed, the others are still
+ * going to be read by the journal reader.
+ */
+public class JournalReplayJob extends SystemJob {
+    public interface Factory {
+        public JournalReplayJob create(KafkaJournal journal,
+                                       int partition,
+                                       @Assisted("startOffset") long startOffset,
+                                       @Assisted("endOffset") long endOffset,
+                                       double messagesPerSecond);
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(JournalReplayJob.class);
+
+    public static final int MAX_CONCURRENCY = 1;
+
+    // messages read from the journal at once, the rate limiter spreads them out
+    private static final int BATCH_SIZE = 100;
+
+    private final KafkaJournal journal;
+    private final int partition;
+    private final long startOffset;
+    private final long endOffset;
+    private final double messagesPerSecond;
+    private final ProcessBuffer processBuffer;
+    private final ActivityWriter activityWriter;
+
+    private volatile boolean cancelRequested = false;
+    private volatile long nextOffset;
+
+    @AssistedInject
+    public JournalReplayJob(@Assisted KafkaJournal journal,
+                            @Assisted int partition,
+                            @Assisted("startOffset") long startOffset,
+                            @Assisted("endOffset") long endOffset,
+                            @Assisted double messagesPerSecond,
+                            ServerStatus serverStatus,
+                            ProcessBuffer processBuffer,
+                            ActivityWriter activityWriter) {
+        super(serverStatus);
+        this.journal = journal;
+        this.partition = partition;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+        this.messagesPerSecond = messagesPerSecond;
+        this.processBuffer = processBuffer;
+        this.activityWriter = activityWriter;
+        this.nextOffset = startOffset;
+    }
+
+    /**
+     * Searches the given partition for the first entry whose message has been received at or after the given time.
+     * <p/>
+     * Messages are written to the journal right after they have been received, so their timestamps only get out of
+     * order by the little time concurrent inputs take to write them, which the search disregards.
+     *
+     * @return the offset of that entry within the partition, or the log end offset of the partition if there is none
+     */
+    public static long findOffset(KafkaJournal journal, int partition, DateTime timestamp) {
+        long low = journal.getLogStartOffset(partition);
+        long high = journal.getLogEndOffset(partition);
+        while (low < high) {
+            final long middle = low + (high - low) / 2;
+            final List<Journal.JournalReadEntry> entries = journal.readPartition(partition, middle, 1);
+            if (entries.isEmpty()) {
+                high = middle;
+                continue;
+            }
+            final Journal.JournalReadEntry entry = entries.get(0);
+            final RawMessage rawMessage = RawMessage.decode(entry.getPayloadBuffer(), Long.MIN_VALUE);
+            if (rawMessage == null || rawMessage.getTimestamp().isBefore(timestamp)) {
+                low = KafkaJournal.partitionOffset(entry.getOffset()) + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public void execute() {
+        info("Replaying journal partition " + partition + " from offset " + startOffset + " to offset " + endOffset
+                     + " at " + messagesPerSecond + " messages per second.");
+
+        final RateLimiter rateLimiter = RateLimiter.create(messagesPerSecond);
+        final Stopwatch sw = Stopwatch.createStarted();
+        long replayed = 0;
+        long undecodable = 0;
+        while (nextOffset < endOffset) {
+            if (cancelRequested) {
+                info("Stop requested. Stopped replaying journal partition " + partition + " at offset " + nextOffset
+                             + " after " + replayed + " messages.");
+                return;
+            }
+
+            final List<Journal.JournalReadEntry> entries =
+                    journal.readPartition(partition, nextOffset, Math.min(BATCH_SIZE, endOffset - nextOffset));
+            if (entries.isEmpty()) {
+                LOG.warn("No journal entries left to replay in partition {} at offset {}.", partition, nextOffset);
+                break;
+            }
+            for (Journal.JournalReadEntry entry : entries) {
+                final long offset = KafkaJournal.partitionOffset(entry.getOffset());
+                if (offset >= endOffset || cancelRequested) {
+                    break;
+                }
+                nextOffset = offset + 1;
+
+                // the replayed message has no journal offset, there is nothing to commit once it has been processed
+                final RawMessage rawMessage = RawMessage.decode(entry.getPayloadBuffer(), Long.MIN_VALUE);
+                if (rawMessage == null) {
+                    undecodable++;
+                    continue;
+                }
+                rateLimiter.acquire();
+                processBuffer.insertBlocking(rawMessage);
+                replayed++;
+            }
+        }
+
+        info("Done replaying " + replayed + " messages of journal partition " + partition + ", skipped " + undecodable
+                     + " undecodable entries. Took " + sw.stop().elapsed(TimeUnit.MILLISECONDS) + "ms.");
+    }
+
+    protected void info(String what) {
+        LOG.info(what);
+        activityWriter.write(new Activity(what, JournalReplayJob.class));
+    }
+
+    @Override
+    public void requestCancel() {
+        this.cancelRequested = true;
+    }
+
+    @Override
+    public int getProgress() {
+        if (endOffset <= startOffset) {
+            return 100;
+        }
+        return (int) Math.floor((nextOffset - startOffset) * 100.0 / (endOffset - startOffset));
+    }
+
+    @Override
+    public int maxConcurrency() {
+        return MAX_CONCURRENCY;
+    }
+
+    @Override
+    public boolean providesProgress() {
+        return true;
+    }
+
+    @Override
+    public boolean isCancelable() {
+        return true;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Replays the journal partition " + partition + " from offset " + startOffset + " to offset " + endOffset + ".";
+    }
+
+    @Override
+    public String getClassName() {
+        return this.getClass().getCanonicalName();
+    }
+}
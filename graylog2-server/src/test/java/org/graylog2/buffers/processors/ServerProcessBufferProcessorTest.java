@@ -24,6 +24,7 @@ import org.graylog2.plugin.Message;
 import org.graylog2.plugin.ServerStatus;
 import org.graylog2.plugin.Tools;
 import org.graylog2.plugin.filters.MessageFilter;
+import org.graylog2.shared.journal.Journal;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
@@ -54,7 +55,8 @@ public class ServerProcessBufferProcessorTest {
                 first,
                 second);
         final ServerProcessBufferProcessor processor = new ServerProcessBufferProcessor(mock(
-                MetricRegistry.class), filters, mock(Configuration.class), serverStatus, mock(OutputBuffer.class));
+                MetricRegistry.class), filters, mock(Configuration.class), serverStatus, mock(OutputBuffer.class),
+                mock(Journal.class));
         final List<MessageFilter> filterRegistry = processor.getFilterRegistry();
 
         assertEquals(filterRegistry.get(0), first);
@@ -74,7 +76,8 @@ public class ServerProcessBufferProcessorTest {
                                                  Sets.<MessageFilter>newHashSet(),
                                                  configuration,
                                                  mock(ServerStatus.class),
-                                                 outputBuffer);
+                                                 outputBuffer,
+                                                 mock(Journal.class));
         try {
             emptyFilters.handleMessage(new Message("test", "source", Tools.iso8601()));
             fail("A processor with empty filter set should throw an exception");
@@ -87,6 +90,7 @@ public class ServerProcessBufferProcessorTest {
         AtomicInteger processBufferWatermark = new AtomicInteger();
         OutputBuffer outputBuffer = mock(OutputBuffer.class);
         final Configuration configuration = mock(Configuration.class);
+        final Journal journal = mock(Journal.class);
 
         MessageFilter filterOnlyFirst = new MessageFilter() {
             private boolean filterOut = true;
@@ -117,7 +121,8 @@ public class ServerProcessBufferProcessorTest {
                                                  Sets.newHashSet(filterOnlyFirst),
                                                  configuration,
                                                  serverStatus,
-                                                 outputBuffer);
+                                                 outputBuffer,
+                                                 journal);
         try {
             Message filteredoutMessage = new Message("filtered out", "source", Tools.iso8601());
             Message unfilteredMessage = new Message("filtered out", "source", Tools.iso8601());
@@ -127,6 +132,7 @@ public class ServerProcessBufferProcessorTest {
 
             verify(outputBuffer, times(0)).insertBlocking(same(filteredoutMessage));
             verify(outputBuffer, times(1)).insertBlocking(same(unfilteredMessage));
+            verify(journal, times(1)).markJournalOffsetCommitted(filteredoutMessage.getJournalOffset());
             assertTrue(filteredoutMessage.getFilterOut());
             assertFalse(unfilteredMessage.getFilterOut());
 
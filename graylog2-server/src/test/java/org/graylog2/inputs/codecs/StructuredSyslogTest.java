@@ -19,6 +19,7 @@ package org.graylog2.inputs.codecs;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.google.common.collect.ImmutableMap;
+import org.graylog2.plugin.HostnameResolver;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.syslog4j.server.impl.event.structured.StructuredSyslogServerEvent;
 import org.mockito.Mock;
@@ -56,6 +57,7 @@ public class StructuredSyslogTest {
     private SyslogCodec syslogCodec;
     @Mock private MetricRegistry metricRegistry;
     @Mock private Timer mockedTimer;
+    @Mock private HostnameResolver hostnameResolver;
 
     @BeforeTest
     public void setUp() {
@@ -64,7 +66,7 @@ public class StructuredSyslogTest {
         when(metricRegistry.timer(any(String.class))).thenReturn(mockedTimer);
         when(mockedTimer.time()).thenReturn(mock(Timer.Context.class));
 
-        syslogCodec = new SyslogCodec(configuration, metricRegistry);
+        syslogCodec = new SyslogCodec(configuration, metricRegistry, hostnameResolver);
     }
 
     private StructuredSyslogServerEvent newEvent(String message) {
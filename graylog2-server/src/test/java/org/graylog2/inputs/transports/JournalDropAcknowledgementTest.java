@@ -0,0 +1,108 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.inputs.transports;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.EventBus;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.inputs.InputJournalQuota;
+import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.plugin.system.NodeId;
+import org.graylog2.shared.buffers.JournallingMessageHandler;
+import org.graylog2.shared.buffers.RawMessageEvent;
+import org.graylog2.shared.inputs.InputRegistry;
+import org.graylog2.shared.journal.Journal;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.Semaphore;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Messages dropped by the journal must not keep the sources which track acknowledgements from advancing.
+ */
+public class JournalDropAcknowledgementTest {
+    private static final String INPUT_ID = "input-id";
+
+    private Journal journal;
+    private InputRegistry inputRegistry;
+    private NodeId nodeId;
+    private JournallingMessageHandler handler;
+    private AcknowledgedOffsets offsets;
+
+    @BeforeMethod
+    public void setUp() {
+        journal = mock(Journal.class);
+        when(journal.createEntry(any(byte[].class), any(byte[].class), anyString(), any(Configuration.class)))
+                .thenReturn(mock(Journal.Entry.class));
+        inputRegistry = mock(InputRegistry.class);
+        nodeId = mock(NodeId.class);
+        when(nodeId.toString()).thenReturn("node-id");
+
+        handler = new JournallingMessageHandler(new MetricRegistry(), journal, new Semaphore(0), inputRegistry,
+                new EventBus());
+        offsets = new AcknowledgedOffsets();
+    }
+
+    @Test
+    public void sourceAdvancesPastMessagesDroppedByQuota() throws Exception {
+        final MessageInput input = mock(MessageInput.class);
+        when(input.getConfiguration()).thenReturn(new Configuration(
+                ImmutableMap.<String, Object>of(InputJournalQuota.CK_MESSAGE_QUOTA, 1)));
+        when(inputRegistry.getRunningInput(INPUT_ID)).thenReturn(input);
+
+        journal(10, 11, 12);
+
+        verify(journal).write(anyListOf(Journal.Entry.class));
+        assertEquals(offsets.advance(), 13L);
+        assertEquals(offsets.unacknowledgedCount(), 0);
+    }
+
+    @Test
+    public void sourceAdvancesPastMessagesDroppedWhileJournalIsFull() throws Exception {
+        when(journal.isFull()).thenReturn(true);
+
+        journal(10, 11, 12);
+
+        verify(journal, never()).write(anyListOf(Journal.Entry.class));
+        assertEquals(offsets.advance(), 13L);
+        assertEquals(offsets.unacknowledgedCount(), 0);
+    }
+
+    private void journal(long... sourceOffsets) throws Exception {
+        for (int i = 0; i < sourceOffsets.length; i++) {
+            final RawMessage rawMessage = new RawMessage(new byte[]{1});
+            rawMessage.addSourceNode(INPUT_ID, nodeId, true);
+            rawMessage.setAcknowledger(offsets.track(sourceOffsets[i]));
+
+            final RawMessageEvent event = new RawMessageEvent();
+            event.rawMessage = rawMessage;
+            event.encodedRawMessage = new byte[10];
+            handler.onEvent(event, i, i == sourceOffsets.length - 1);
+        }
+    }
+}
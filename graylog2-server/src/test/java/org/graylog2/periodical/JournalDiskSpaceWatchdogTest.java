@@ -0,0 +1,116 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.periodical;
+
+import com.codahale.metrics.MetricRegistry;
+import org.graylog2.shared.journal.KafkaJournal;
+import org.graylog2.shared.journal.NoopJournal;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.apache.commons.io.FileUtils.deleteDirectory;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class JournalDiskSpaceWatchdogTest {
+    private static final long JOURNAL_SIZE = 42;
+
+    private File journalDir;
+    private KafkaJournal journal;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        journalDir = Files.createTempDirectory("journal").toFile();
+        journal = mock(KafkaJournal.class);
+        when(journal.getJournalDirectories()).thenReturn(Collections.singletonList(journalDir));
+        when(journal.size()).thenReturn(JOURNAL_SIZE);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        deleteDirectory(journalDir);
+    }
+
+    @Test
+    public void leavesJournalAloneWithEnoughFreeSpace() {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final JournalDiskSpaceWatchdog watchdog = new JournalDiskSpaceWatchdog(journal, 1, 0, "drop_oldest", metricRegistry);
+
+        watchdog.doRun();
+
+        verify(journal, never()).cleanupLogs();
+        verify(journal, never()).deleteOldestSegments(anyLong());
+        verify(journal, never()).setDiskSpaceLimit(anyLong(), anyBoolean());
+        assertTrue((Long) metricRegistry.getGauges().get(MetricRegistry.name(JournalDiskSpaceWatchdog.class, "freeSpace")).getValue() > 0);
+        assertEquals(metricRegistry.getGauges().get(MetricRegistry.name(JournalDiskSpaceWatchdog.class, "secondsToFull")).getValue(), -1L);
+        assertTrue((Double) metricRegistry.getGauges().get(MetricRegistry.name(JournalDiskSpaceWatchdog.class, "utilization")).getValue() > 0.0);
+    }
+
+    @Test
+    public void throttlesInputsBelowMinimumFreeSpace() {
+        final JournalDiskSpaceWatchdog watchdog = new JournalDiskSpaceWatchdog(journal, Long.MAX_VALUE, 1, "throttle", new MetricRegistry());
+
+        watchdog.doRun();
+
+        verify(journal).cleanupLogs();
+        verify(journal, never()).deleteOldestSegments(anyLong());
+        // the journal may use the free space above the shedding threshold
+        final ArgumentCaptor<Long> limit = ArgumentCaptor.forClass(Long.class);
+        verify(journal).setDiskSpaceLimit(limit.capture(), eq(true));
+        assertTrue(limit.getValue() > JOURNAL_SIZE);
+    }
+
+    @Test
+    public void dropsOldestSegmentsBelowSheddingFreeSpace() {
+        final JournalDiskSpaceWatchdog watchdog = new JournalDiskSpaceWatchdog(journal, Long.MAX_VALUE, Long.MAX_VALUE - 1, "drop_oldest", new MetricRegistry());
+
+        watchdog.doRun();
+
+        verify(journal).cleanupLogs();
+        final ArgumentCaptor<Long> bytes = ArgumentCaptor.forClass(Long.class);
+        verify(journal).deleteOldestSegments(bytes.capture());
+        assertTrue(bytes.getValue() > 0);
+        // no space left for the journal to grow, throttled inputs stop reading while the others keep on writing
+        verify(journal).setDiskSpaceLimit(JOURNAL_SIZE, false);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void rejectsUnknownSheddingPolicy() {
+        new JournalDiskSpaceWatchdog(journal, 1, 0, "drop_newest", new MetricRegistry());
+    }
+
+    @Test
+    public void onlyStartsWithKafkaJournal() {
+        assertTrue(new JournalDiskSpaceWatchdog(journal, 1, 0, "throttle", new MetricRegistry()).startOnThisNode());
+        assertFalse(new JournalDiskSpaceWatchdog(new NoopJournal(), 1, 0, "throttle", new MetricRegistry()).startOnThisNode());
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.buffers;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Lists;
+import com.google.inject.Provider;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import org.graylog2.plugin.BaseConfiguration;
+import org.graylog2.plugin.journal.RawMessage;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+public class InputBufferImplTest {
+    private static final int RING_SIZE = 16;
+
+    private final BlockingQueue<RawMessage> processed = new LinkedBlockingQueue<>();
+    private InputBufferImpl inputBuffer;
+
+    @BeforeMethod
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        final BaseConfiguration configuration = mock(BaseConfiguration.class);
+        when(configuration.getInputBufferRingSize()).thenReturn(RING_SIZE);
+        when(configuration.getInputBufferWaitStrategy()).thenReturn(new BlockingWaitStrategy());
+        when(configuration.getInputbufferProcessors()).thenReturn(1);
+        when(configuration.isMessageJournalEnabled()).thenReturn(false);
+
+        processed.clear();
+        final ProcessBuffer processBuffer = mock(ProcessBuffer.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                processed.add((RawMessage) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(processBuffer).insertBlocking(any(RawMessage.class));
+        final Provider<DirectMessageHandler> handlerProvider = new Provider<DirectMessageHandler>() {
+            @Override
+            public DirectMessageHandler get() {
+                return new DirectMessageHandler(processBuffer);
+            }
+        };
+
+        inputBuffer = new InputBufferImpl(new MetricRegistry(), configuration, handlerProvider,
+                mock(Provider.class), mock(Provider.class));
+    }
+
+    @Test
+    public void insertBatchPublishesAllMessagesInOrder() throws Exception {
+        // larger than the ring buffer, so the batch has to be split up
+        final List<RawMessage> messages = Lists.newArrayList();
+        for (int i = 0; i < 3 * RING_SIZE + 5; i++) {
+            messages.add(new RawMessage(String.valueOf(i).getBytes(StandardCharsets.UTF_8)));
+        }
+
+        inputBuffer.insert(messages);
+
+        for (RawMessage message : messages) {
+            assertSame(processed.poll(5, TimeUnit.SECONDS), message);
+        }
+    }
+
+    @Test
+    public void insertEmptyBatch() throws Exception {
+        final RawMessage message = new RawMessage("single".getBytes(StandardCharsets.UTF_8));
+        inputBuffer.insert(Collections.<RawMessage>emptyList());
+        inputBuffer.insert(message);
+
+        assertSame(processed.poll(5, TimeUnit.SECONDS), message);
+        assertEquals(processed.size(), 0);
+    }
+
+    @Test
+    public void messagesAreAcknowledgedOnceHandedToTheProcessBuffer() throws Exception {
+        final BlockingQueue<RawMessage> acknowledged = new LinkedBlockingQueue<>();
+        final RawMessage message = new RawMessage("acked".getBytes(StandardCharsets.UTF_8));
+        message.setAcknowledger(new RawMessage.Acknowledger() {
+            @Override
+            public void acknowledge() {
+                acknowledged.add(message);
+            }
+        });
+
+        inputBuffer.insert(message);
+
+        assertSame(acknowledged.poll(5, TimeUnit.SECONDS), message);
+        assertSame(processed.poll(), message);
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.buffers;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+import org.graylog2.plugin.ThrottleState;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.inputs.InputJournalQuota;
+import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.inputs.transports.ThrottleableTransport;
+import org.graylog2.shared.inputs.InputRegistry;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class JournalQuotasTest {
+    private InputRegistry inputRegistry;
+    private MetricRegistry metricRegistry;
+    private JournalQuotas quotas;
+
+    @BeforeMethod
+    public void setUp() {
+        inputRegistry = mock(InputRegistry.class);
+        metricRegistry = new MetricRegistry();
+        quotas = new JournalQuotas(inputRegistry, metricRegistry);
+    }
+
+    @Test
+    public void admitsMessagesOfUnknownInputs() {
+        assertTrue(quotas.admit(null, 100));
+        assertTrue(quotas.admit("unknown", 100));
+        assertEquals(metricRegistry.meter(metricName("unknown", "writtenBytes")).getCount(), 100L);
+    }
+
+    @Test
+    public void dropsMessagesExceedingMessageQuota() {
+        input("input", ImmutableMap.<String, Object>of(InputJournalQuota.CK_MESSAGE_QUOTA, 1));
+
+        assertTrue(quotas.admit("input", 10));
+        assertFalse(quotas.admit("input", 10));
+        assertEquals(metricRegistry.meter(metricName("input", "writtenMessages")).getCount(), 1L);
+        assertEquals(metricRegistry.meter(metricName("input", "droppedByQuota")).getCount(), 1L);
+    }
+
+    @Test
+    public void dropsMessagesExceedingByteQuota() {
+        input("input", ImmutableMap.<String, Object>of(InputJournalQuota.CK_BYTE_QUOTA, 1000));
+
+        // the bucket pays for the first burst in advance
+        assertTrue(quotas.admit("input", 2000));
+        assertFalse(quotas.admit("input", 10));
+        assertEquals(metricRegistry.meter(metricName("input", "droppedByQuota")).getCount(), 1L);
+    }
+
+    @Test
+    public void dropsLowPriorityMessagesFirst() {
+        input("low", ImmutableMap.<String, Object>of(InputJournalQuota.CK_PRIORITY, "LOW"));
+        input("normal", ImmutableMap.<String, Object>of(InputJournalQuota.CK_PRIORITY, "NORMAL"));
+        input("high", ImmutableMap.<String, Object>of(InputJournalQuota.CK_PRIORITY, "HIGH"));
+
+        utilization(85);
+        assertFalse(quotas.admit("low", 10));
+        assertTrue(quotas.admit("normal", 10));
+        assertTrue(quotas.admit("high", 10));
+
+        utilization(100);
+        assertFalse(quotas.admit("low", 10));
+        assertFalse(quotas.admit("normal", 10));
+        assertTrue(quotas.admit("high", 10));
+
+        utilization(50);
+        assertTrue(quotas.admit("low", 10));
+        assertEquals(metricRegistry.meter(metricName("low", "droppedByPriority")).getCount(), 2L);
+        assertEquals(metricRegistry.meter(metricName("normal", "droppedByPriority")).getCount(), 1L);
+    }
+
+    @Test
+    public void leavesMessageQuotaAndPriorityToThrottledTransports() {
+        final MessageInput input = input("throttled", ImmutableMap.<String, Object>of(
+                InputJournalQuota.CK_PRIORITY, "LOW",
+                InputJournalQuota.CK_MESSAGE_QUOTA, 1));
+        final ThrottleableTransport transport = mock(ThrottleableTransport.class);
+        when(transport.isThrottlingAllowed()).thenReturn(true);
+        when(input.getTransport()).thenReturn(transport);
+
+        utilization(100);
+        assertTrue(quotas.admit("throttled", 10));
+        assertTrue(quotas.admit("throttled", 10));
+        assertEquals(metricRegistry.meter(metricName("throttled", "writtenMessages")).getCount(), 2L);
+        assertEquals(metricRegistry.meter(metricName("throttled", "droppedByPriority")).getCount(), 0L);
+        assertEquals(metricRegistry.meter(metricName("throttled", "droppedByQuota")).getCount(), 0L);
+    }
+
+    private MessageInput input(String inputId, Map<String, Object> configuration) {
+        final MessageInput input = mock(MessageInput.class);
+        when(input.getConfiguration()).thenReturn(new Configuration(configuration));
+        when(inputRegistry.getRunningInput(inputId)).thenReturn(input);
+        return input;
+    }
+
+    private void utilization(int percent) {
+        final ThrottleState throttleState = new ThrottleState();
+        throttleState.journalSize = percent;
+        throttleState.journalSizeLimit = 100;
+        quotas.updateThrottleState(throttleState);
+    }
+
+    private static String metricName(String inputId, String metric) {
+        return name(JournallingMessageHandler.class, "input", inputId, metric);
+    }
+}
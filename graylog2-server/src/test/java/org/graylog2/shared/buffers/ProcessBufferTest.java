@@ -61,7 +61,7 @@ public class ProcessBufferTest {
 
     public void testBasicInsert() throws Exception {
         ProcessBuffer processBuffer = new ProcessBuffer(metricRegistry, serverStatus, mock(DecodingProcessor.Factory.class),
-                                                        mock(Provider.class), 1, 1, "blocking");
+                                                        mock(Provider.class), 1, 1, 1, "blocking");
 
         RawMessage message = mock(RawMessage.class);
         MessageInput messageInput = mock(MessageInput.class);
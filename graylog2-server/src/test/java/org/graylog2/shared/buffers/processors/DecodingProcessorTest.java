@@ -0,0 +1,133 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.buffers.processors;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.EventBus;
+import org.graylog2.plugin.HostnameResolver;
+import org.graylog2.plugin.IOState;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.buffers.MessageEvent;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.inputs.codecs.Codec;
+import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.plugin.system.NodeId;
+import org.graylog2.shared.inputs.InputRegistry;
+import org.graylog2.shared.inputs.PersistedInputs;
+import org.graylog2.shared.journal.Journal;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DecodingProcessorTest {
+    private static final String CODEC_NAME = "test";
+    private static final String INPUT_ID = "input-id";
+
+    private Codec.Factory<Codec> codecFactory;
+    private EventBus eventBus;
+    private NodeId nodeId;
+    private DecodingProcessor processor;
+
+    @BeforeMethod
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        codecFactory = mock(Codec.Factory.class);
+        when(codecFactory.create(any(Configuration.class))).thenAnswer(new Answer<Codec>() {
+            @Override
+            public Codec answer(InvocationOnMock invocation) throws Throwable {
+                // a fresh codec for every configuration, like the real factories
+                return mock(Codec.class);
+            }
+        });
+        final Map<String, Codec.Factory<? extends Codec>> codecFactories =
+                ImmutableMap.<String, Codec.Factory<? extends Codec>>of(CODEC_NAME, codecFactory);
+
+        eventBus = new EventBus();
+        nodeId = mock(NodeId.class);
+        when(nodeId.toString()).thenReturn("node-id");
+        processor = new DecodingProcessor(codecFactories,
+                                          mock(InputRegistry.class),
+                                          mock(ServerStatus.class),
+                                          new MetricRegistry(),
+                                          mock(PersistedInputs.class),
+                                          eventBus,
+                                          mock(HostnameResolver.class),
+                                          mock(Journal.class),
+                                          false,
+                                          new Timer(),
+                                          new Timer(),
+                                          0,
+                                          1);
+    }
+
+    @Test
+    public void reusesCodecWhileConfigurationIsUnchanged() throws Exception {
+        decode(config("value"));
+        decode(config("value"));
+
+        verify(codecFactory, times(1)).create(any(Configuration.class));
+    }
+
+    @Test
+    public void createsNewCodecWhenConfigurationChanges() throws Exception {
+        decode(config("value"));
+        decode(config("other value"));
+        decode(config("other value"));
+
+        verify(codecFactory, times(2)).create(any(Configuration.class));
+    }
+
+    @Test
+    public void evictsCodecWhenInputStateChanges() throws Exception {
+        decode(config("value"));
+
+        final MessageInput input = mock(MessageInput.class);
+        when(input.getId()).thenReturn(INPUT_ID);
+        eventBus.post(new IOState<>(eventBus, input, IOState.Type.STOPPED));
+        decode(config("value"));
+
+        verify(codecFactory, times(2)).create(any(Configuration.class));
+    }
+
+    private void decode(Configuration codecConfig) throws Exception {
+        final RawMessage rawMessage = new RawMessage("payload".getBytes(StandardCharsets.UTF_8));
+        rawMessage.setCodecName(CODEC_NAME);
+        rawMessage.setCodecConfig(codecConfig);
+        rawMessage.addSourceNode(INPUT_ID, nodeId, true);
+
+        final MessageEvent event = new MessageEvent();
+        event.setRaw(rawMessage);
+        processor.onEvent(event, 0, true);
+    }
+
+    private static Configuration config(String value) {
+        return new Configuration(ImmutableMap.<String, Object>of("key", value));
+    }
+}
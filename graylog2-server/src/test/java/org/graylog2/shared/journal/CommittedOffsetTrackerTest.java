@@ -0,0 +1,147 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.journal;
+
+import com.google.common.collect.Lists;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.testng.Assert.assertEquals;
+
+public class CommittedOffsetTrackerTest {
+    @Test
+    public void advancesOverConsecutiveCommits() {
+        final CommittedOffsetTracker tracker = new CommittedOffsetTracker(10, 64);
+
+        tracker.commit(11);
+        tracker.commit(12);
+        assertEquals(tracker.getNextOffset(), 10);
+
+        tracker.commit(10);
+        assertEquals(tracker.getNextOffset(), 13);
+
+        // commits behind the watermark are ignored
+        tracker.commit(5);
+        tracker.commit(11);
+        assertEquals(tracker.getNextOffset(), 13);
+    }
+
+    @Test
+    public void advancesAcrossWords() {
+        final CommittedOffsetTracker tracker = new CommittedOffsetTracker(60, 256);
+
+        for (long offset = 200; offset > 60; offset--) {
+            tracker.commit(offset);
+        }
+        assertEquals(tracker.getNextOffset(), 60);
+
+        tracker.commit(60);
+        assertEquals(tracker.getNextOffset(), 201);
+    }
+
+    @Test
+    public void reusesTheRing() {
+        final CommittedOffsetTracker tracker = new CommittedOffsetTracker(0, 64);
+
+        for (long offset = 0; offset < 1000; offset += 2) {
+            tracker.commit(offset + 1);
+            tracker.commit(offset);
+        }
+        assertEquals(tracker.getNextOffset(), 1000);
+    }
+
+    @Test
+    public void givesUpOnOffsetsOutsideOfTheWindow() {
+        final CommittedOffsetTracker tracker = new CommittedOffsetTracker(0, 64);
+
+        // offset 0 is never committed
+        for (long offset = 1; offset < 64; offset++) {
+            tracker.commit(offset);
+        }
+        assertEquals(tracker.getNextOffset(), 0);
+
+        tracker.commit(64);
+        assertEquals(tracker.getNextOffset(), 65);
+    }
+
+    @Test
+    public void skipsToOffset() {
+        final CommittedOffsetTracker tracker = new CommittedOffsetTracker(0, 64);
+        tracker.commit(100);
+
+        tracker.skipTo(70);
+        assertEquals(tracker.getNextOffset(), 70);
+
+        tracker.skipTo(50);
+        assertEquals(tracker.getNextOffset(), 70);
+
+        for (long offset = 70; offset < 100; offset++) {
+            tracker.commit(offset);
+        }
+        assertEquals(tracker.getNextOffset(), 101);
+    }
+
+    @Test
+    public void concurrentCommitsInAnyOrder() throws Exception {
+        final int threads = 4;
+        final int offsetsPerThread = 100000;
+        final CommittedOffsetTracker tracker = new CommittedOffsetTracker(0, 1 << 16);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> committers = Lists.newArrayList();
+        for (int i = 0; i < threads; i++) {
+            final int thread = i;
+            final Thread committer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    // every thread commits its own offsets, shuffled in small blocks
+                    final List<Long> block = Lists.newArrayList();
+                    final Random random = new Random(thread);
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (long offset = thread; offset < threads * offsetsPerThread; offset += threads) {
+                        block.add(offset);
+                        if (block.size() == 16) {
+                            Collections.shuffle(block, random);
+                            for (Long blockOffset : block) {
+                                tracker.commit(blockOffset);
+                            }
+                            block.clear();
+                        }
+                    }
+                    for (Long blockOffset : block) {
+                        tracker.commit(blockOffset);
+                    }
+                }
+            });
+            committer.start();
+            committers.add(committer);
+        }
+        start.countDown();
+        for (Thread committer : committers) {
+            committer.join();
+        }
+
+        assertEquals(tracker.getNextOffset(), threads * offsetsPerThread);
+    }
+}
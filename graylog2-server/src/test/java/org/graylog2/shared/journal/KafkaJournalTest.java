@@ -17,12 +17,15 @@
 package org.graylog2.shared.journal;
 
 import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.eventbus.EventBus;
 import kafka.log.LogSegment;
 import org.graylog2.Graylog2BaseTest;
 import org.graylog2.plugin.InstantMillisProvider;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.journal.CodecConfigDictionary;
 import org.graylog2.shared.buffers.ProcessBuffer;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeUtils;
@@ -186,6 +189,37 @@ public class KafkaJournalTest extends Graylog2BaseTest {
         deleteDirectory(journalFile);
     }
 
+    @Test
+    public void deleteOldestSegmentsDropsUncommittedEntries() throws Exception {
+        final Path journalDir = Files.createTempDirectory("journal");
+        final File journalFile = journalDir.toFile();
+
+        final KafkaJournal journal = new KafkaJournal(journalFile.getAbsolutePath(),
+                                                      scheduler,
+                                                      1024,
+                                                      10 * 1024,
+                                                      Duration.standardDays(1),
+                                                      new EventBus(),
+                                                      new MetricRegistry(),
+                                                      mock(ProcessBuffer.class));
+        createBulkChunks(journal, 3);
+        journal.flushDirtyLogs();
+        final File messageJournalDir = new File(journalFile, "messagejournal-0");
+        assertEquals(countSegmentsInDir(messageJournalDir), 3);
+
+        // nothing has been committed, the oldest segment goes anyway
+        assertTrue(journal.deleteOldestSegments(1) > 0);
+        assertEquals(countSegmentsInDir(messageJournalDir), 2);
+        assertEquals(journal.getLogStartOffset(), BULK_SIZE);
+
+        // the active segment is kept
+        journal.deleteOldestSegments(Long.MAX_VALUE);
+        assertEquals(countSegmentsInDir(messageJournalDir), 1);
+        assertEquals(journal.read(1).get(0).getOffset(), 2 * BULK_SIZE);
+
+        deleteDirectory(journalFile);
+    }
+
     @Test
     public void segmentAgeCleanup() throws Exception {
         final Path journalDir = Files.createTempDirectory("journal");
@@ -274,19 +308,284 @@ public class KafkaJournalTest extends Graylog2BaseTest {
         final int numberOfSegments = countSegmentsInDir(messageJournalDir);
         assertEquals(numberOfSegments, 3);
 
+        // commits beyond a gap are not considered committed yet
+        journal.markJournalOffsetCommitted(BULK_SIZE + 1);
+        assertEquals(journal.cleanupLogs(), 0, "should not touch segments");
+
         // mark first half of first segment committed, should not clean anything
-        journal.markJournalOffsetCommitted(BULK_SIZE / 2);
+        commitOffsets(journal, 0, BULK_SIZE / 2);
+        assertEquals(journal.getCommittedReadOffset(), BULK_SIZE / 2);
         assertEquals(journal.cleanupLogs(), 0, "should not touch segments");
         assertEquals(countSegmentsInDir(messageJournalDir), 3);
 
-        journal.markJournalOffsetCommitted(BULK_SIZE + 1);
+        commitOffsets(journal, BULK_SIZE / 2 + 1, BULK_SIZE);
+        assertEquals(journal.getCommittedReadOffset(), BULK_SIZE + 1);
         assertEquals(journal.cleanupLogs(), 1, "first segment should've been purged");
         assertEquals(countSegmentsInDir(messageJournalDir), 2);
 
-        journal.markJournalOffsetCommitted(BULK_SIZE * 4);
+        commitOffsets(journal, BULK_SIZE + 2, BULK_SIZE * 3 - 1);
         assertEquals(journal.cleanupLogs(), 1, "only purge one segment, not the active one");
         assertEquals(countSegmentsInDir(messageJournalDir), 1);
 
         deleteDirectory(journalFile);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void flushesAfterConfiguredNumberOfMessages() throws Exception {
+        final Path journalDir = Files.createTempDirectory("journal");
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final KafkaJournal journal = new KafkaJournal(journalDir.toFile().getAbsolutePath(), scheduler, 100 * 1024 * 1024,
+                                                      5 * 1024 * 1024, Duration.standardHours(1),
+                                                      3, Long.MAX_VALUE, Duration.standardHours(1), false, "none", 5 * 1024 * 1024, 1, "round_robin",
+                                                      new EventBus(), metricRegistry, mock(ProcessBuffer.class));
+
+        journal.write("id1".getBytes(UTF_8), "message1".getBytes(UTF_8));
+        journal.write("id2".getBytes(UTF_8), "message2".getBytes(UTF_8));
+        assertEquals(metricRegistry.histogram("org.graylog2.shared.journal.KafkaJournal.bytesPerFlush").getCount(), 0);
+
+        journal.write("id3".getBytes(UTF_8), "message3".getBytes(UTF_8));
+        assertEquals(metricRegistry.histogram("org.graylog2.shared.journal.KafkaJournal.bytesPerFlush").getCount(), 1);
+        assertEquals(metricRegistry.timer("org.graylog2.shared.journal.KafkaJournal.flushTime").getCount(), 1);
+
+        deleteDirectory(journalDir.toFile());
+    }
+
+    @Test
+    public void peekingDoesNotCountAsRead() throws Exception {
+        final Path journalDir = Files.createTempDirectory("journal");
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final KafkaJournal journal = new KafkaJournal(journalDir.toFile().getAbsolutePath(), scheduler, 100 * 1024 * 1024,
+                                                      5 * 1024 * 1024, Duration.standardHours(1),
+                                                      Long.MAX_VALUE, Long.MAX_VALUE, Duration.standardHours(1), false, "none", 5 * 1024 * 1024, 1, "round_robin",
+                                                      new EventBus(), metricRegistry, mock(ProcessBuffer.class));
+
+        createBulkChunks(journal, 1);
+        assertEquals(journal.read(0, 10).size(), 10);
+        assertEquals(metricRegistry.meter("org.graylog2.shared.journal.KafkaJournal.messagesRead").getCount(), 0);
+        assertEquals(metricRegistry.histogram("org.graylog2.shared.journal.KafkaJournal.entriesPerRead").getCount(), 0);
+
+        assertEquals(journal.read(10).size(), 10);
+        assertEquals(metricRegistry.meter("org.graylog2.shared.journal.KafkaJournal.messagesRead").getCount(), 10);
+        assertEquals(metricRegistry.histogram("org.graylog2.shared.journal.KafkaJournal.entriesPerRead").getCount(), 1);
+
+        deleteDirectory(journalDir.toFile());
+    }
+
+    @Test
+    public void onlyFullIfDiskSpaceLimitIsEnforced() throws Exception {
+        final Path journalDir = Files.createTempDirectory("journal");
+        final KafkaJournal journal = new KafkaJournal(journalDir.toFile().getAbsolutePath(), scheduler, 100 * 1024 * 1024,
+                                                      5 * 1024 * 1024, Duration.standardHours(1),
+                                                      Long.MAX_VALUE, Long.MAX_VALUE, Duration.standardHours(1), false, "none", 5 * 1024 * 1024, 1, "round_robin",
+                                                      new EventBus(), new MetricRegistry(), mock(ProcessBuffer.class));
+        createBulkChunks(journal, 1);
+        assertFalse(journal.isFull());
+
+        journal.setDiskSpaceLimit(journal.size(), false);
+        assertFalse(journal.isFull());
+
+        journal.setDiskSpaceLimit(journal.size(), true);
+        assertTrue(journal.isFull());
+
+        journal.setDiskSpaceLimit(Long.MAX_VALUE, false);
+        assertFalse(journal.isFull());
+
+        deleteDirectory(journalDir.toFile());
+    }
+
+    @Test
+    public void groupCommitFlushesEveryWrite() throws Exception {
+        final Path journalDir = Files.createTempDirectory("journal");
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final KafkaJournal journal = new KafkaJournal(journalDir.toFile().getAbsolutePath(), scheduler, 100 * 1024 * 1024,
+                                                      5 * 1024 * 1024, Duration.standardHours(1),
+                                                      Long.MAX_VALUE, Long.MAX_VALUE, Duration.standardHours(1), true, "none", 5 * 1024 * 1024, 1, "round_robin",
+                                                      new EventBus(), metricRegistry, mock(ProcessBuffer.class));
+
+        createBulkChunks(journal, 2);
+
+        assertEquals(metricRegistry.histogram("org.graylog2.shared.journal.KafkaJournal.bytesPerFlush").getCount(), 2);
+        final long flushedBytes = (long) metricRegistry.histogram("org.graylog2.shared.journal.KafkaJournal.bytesPerFlush")
+                .getSnapshot().getMax();
+        assertTrue(flushedBytes > 0);
+        assertEquals(journal.size(), 2 * flushedBytes, 2 * flushedBytes / 10);
+
+        deleteDirectory(journalDir.toFile());
+    }
+
+    @Test
+    public void writeAndReadCompressedBatches() throws Exception {
+        final Path journalDir = Files.createTempDirectory("journal");
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final KafkaJournal journal = new KafkaJournal(journalDir.toFile().getAbsolutePath(), scheduler, 100 * 1024 * 1024,
+                                                      5 * 1024 * 1024, Duration.standardHours(1),
+                                                      Long.MAX_VALUE, Long.MAX_VALUE, Duration.standardHours(1), false, "gzip", 5 * 1024 * 1024, 1, "round_robin",
+                                                      new EventBus(), metricRegistry, mock(ProcessBuffer.class));
+
+        createBulkChunks(journal, 2);
+        assertEquals(journal.getLogEndOffset(), 2 * BULK_SIZE);
+        assertTrue((Double) metricRegistry.getGauges().get("org.graylog2.shared.journal.KafkaJournal.compressionRatio").getValue() > 1.0);
+
+        // start reading in the middle of the first compressed batch and end in the middle of the second one
+        final List<Journal.JournalReadEntry> messages = journal.read(BULK_SIZE / 2, BULK_SIZE);
+        assertEquals(messages.size(), BULK_SIZE);
+        for (int i = 0; i < messages.size(); i++) {
+            final long offset = BULK_SIZE / 2 + i;
+            assertEquals(messages.get(i).getOffset(), offset);
+            assertEquals(new String(messages.get(i).getPayload(), UTF_8), "message " + (offset % BULK_SIZE));
+        }
+
+        // reading at an offset does not move the position the journal is read from
+        assertEquals(journal.read(BULK_SIZE).get(0).getOffset(), 0);
+
+        deleteDirectory(journalDir.toFile());
+    }
+
+    @Test
+    public void readsEntriesLargerThanMaximumReadSize() throws Exception {
+        final Path journalDir = Files.createTempDirectory("journal");
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final KafkaJournal journal = new KafkaJournal(journalDir.toFile().getAbsolutePath(), scheduler, 100 * 1024 * 1024,
+                                                      5 * 1024 * 1024, Duration.standardHours(1),
+                                                      Long.MAX_VALUE, Long.MAX_VALUE, Duration.standardHours(1), false, "none", 1024, 1, "round_robin",
+                                                      new EventBus(), metricRegistry, mock(ProcessBuffer.class));
+
+        final byte[] largeMessage = new byte[256 * 1024];
+        journal.write("id1".getBytes(UTF_8), largeMessage);
+        journal.write("id2".getBytes(UTF_8), "message2".getBytes(UTF_8));
+
+        final List<Journal.JournalReadEntry> messages = journal.read(10);
+        assertEquals(messages.size(), 1);
+        assertEquals(messages.get(0).getPayloadBuffer().remaining(), largeMessage.length);
+
+        final Journal.JournalReadEntry secondMessage = Iterators.getOnlyElement(journal.read(10).iterator());
+        assertEquals(new String(secondMessage.getPayload(), UTF_8), "message2");
+        assertEquals(metricRegistry.histogram("org.graylog2.shared.journal.KafkaJournal.entriesPerRead").getCount(), 2);
+
+        deleteDirectory(journalDir.toFile());
+    }
+
+    @Test
+    public void writesBatchesToPartitionsRoundRobin() throws Exception {
+        final Path journalDir = Files.createTempDirectory("journal");
+        final KafkaJournal journal = new KafkaJournal(journalDir.toFile().getAbsolutePath(), scheduler, 100 * 1024 * 1024,
+                                                      5 * 1024 * 1024, Duration.standardHours(1),
+                                                      Long.MAX_VALUE, Long.MAX_VALUE, Duration.standardHours(1), false, "none", 5 * 1024 * 1024, 4, "round_robin",
+                                                      new EventBus(), new MetricRegistry(), mock(ProcessBuffer.class));
+        journal.startAsync().awaitRunning();
+        assertEquals(journal.numberOfPartitions(), 4);
+
+        for (int batch = 0; batch < 4; batch++) {
+            journal.write(Lists.newArrayList(journal.createEntry(("id" + batch).getBytes(UTF_8), ("a" + batch).getBytes(UTF_8)),
+                                             journal.createEntry(("id" + batch).getBytes(UTF_8), ("b" + batch).getBytes(UTF_8))));
+        }
+
+        for (int partition = 0; partition < 4; partition++) {
+            assertEquals(journal.getLogEndOffset(partition), 2);
+            final List<Journal.JournalReadEntry> messages = journal.readPartition(partition, 10);
+            assertEquals(messages.size(), 2);
+            assertEquals(KafkaJournal.partitionOf(messages.get(1).getOffset()), partition);
+            assertEquals(KafkaJournal.partitionOffset(messages.get(1).getOffset()), 1);
+
+            journal.markJournalOffsetCommitted(messages.get(1).getOffset());
+            assertEquals(journal.getCommittedReadOffset(partition), Long.MIN_VALUE);
+            journal.markJournalOffsetCommitted(messages.get(0).getOffset());
+            assertEquals(journal.getCommittedReadOffset(partition), 1);
+        }
+        journal.stopAsync().awaitTerminated();
+
+        // partitions beyond the configured number are still read
+        final KafkaJournal reopened = new KafkaJournal(journalDir.toFile().getAbsolutePath(), scheduler, 100 * 1024 * 1024,
+                                                       5 * 1024 * 1024, Duration.standardHours(1),
+                                                       Long.MAX_VALUE, Long.MAX_VALUE, Duration.standardHours(1), false, "none", 5 * 1024 * 1024, 2, "round_robin",
+                                                       new EventBus(), new MetricRegistry(), mock(ProcessBuffer.class));
+        assertEquals(reopened.numberOfPartitions(), 4);
+        assertEquals(reopened.getCommittedReadOffset(3), 1);
+        reopened.write("id".getBytes(UTF_8), "message".getBytes(UTF_8));
+        reopened.write("id".getBytes(UTF_8), "message".getBytes(UTF_8));
+        reopened.write("id".getBytes(UTF_8), "message".getBytes(UTF_8));
+        assertEquals(reopened.getLogEndOffset(2), 2);
+        assertEquals(reopened.getLogEndOffset(3), 2);
+
+        deleteDirectory(journalDir.toFile());
+    }
+
+    @Test
+    public void keepsMessagesOfAnInputInOnePartition() throws Exception {
+        final Path journalDir = Files.createTempDirectory("journal");
+        final KafkaJournal journal = new KafkaJournal(journalDir.toFile().getAbsolutePath(), scheduler, 100 * 1024 * 1024,
+                                                      5 * 1024 * 1024, Duration.standardHours(1),
+                                                      Long.MAX_VALUE, Long.MAX_VALUE, Duration.standardHours(1), false, "none", 5 * 1024 * 1024, 3, "input",
+                                                      new EventBus(), new MetricRegistry(), mock(ProcessBuffer.class));
+
+        for (int batch = 0; batch < 3; batch++) {
+            journal.write(Lists.newArrayList(journal.createEntry("id".getBytes(UTF_8), "message".getBytes(UTF_8), "input-1"),
+                                             journal.createEntry("id".getBytes(UTF_8), "message".getBytes(UTF_8), "input-1")));
+        }
+
+        int partitionsWithMessages = 0;
+        for (int partition = 0; partition < journal.numberOfPartitions(); partition++) {
+            if (journal.getLogEndOffset(partition) > 0) {
+                partitionsWithMessages++;
+                assertEquals(journal.getLogEndOffset(partition), 6);
+            }
+        }
+        assertEquals(partitionsWithMessages, 1);
+
+        deleteDirectory(journalDir.toFile());
+    }
+
+    @Test
+    public void persistsCodecConfigurationsAcrossRestarts() throws Exception {
+        final Path journalDir = Files.createTempDirectory("journal");
+        final File journalFile = journalDir.toFile();
+        final Configuration config = new Configuration(ImmutableMap.<String, Object>of("persisted", "before restart"));
+
+        final KafkaJournal journal = new KafkaJournal(journalFile.getAbsolutePath(), scheduler, 100 * 1024 * 1024,
+                                                      5 * 1024 * 1024, Duration.standardHours(1), new EventBus(),
+                                                      new MetricRegistry(), mock(ProcessBuffer.class));
+        journal.startAsync().awaitRunning();
+        journal.write(Lists.newArrayList(journal.createEntry("id".getBytes(UTF_8), "message".getBytes(UTF_8), null, config)));
+        journal.stopAsync().awaitTerminated();
+
+        // simulates a restart, nothing registers the configuration but the journal
+        CodecConfigDictionary.unregister(config.getFingerprint());
+        assertNull(CodecConfigDictionary.lookup(config.getFingerprint()));
+
+        new KafkaJournal(journalFile.getAbsolutePath(), scheduler, 100 * 1024 * 1024,
+                         5 * 1024 * 1024, Duration.standardHours(1), new EventBus(),
+                         new MetricRegistry(), mock(ProcessBuffer.class));
+        assertEquals(CodecConfigDictionary.lookup(config.getFingerprint()).getSource(), config.getSource());
+
+        deleteDirectory(journalFile);
+    }
+
+    @Test
+    public void dropsCodecConfigurationsWithTheirSegments() throws Exception {
+        final Path journalDir = Files.createTempDirectory("journal");
+        final File journalFile = journalDir.toFile();
+        final Configuration oldConfig = new Configuration(ImmutableMap.<String, Object>of("version", "old"));
+        final Configuration newConfig = new Configuration(ImmutableMap.<String, Object>of("version", "new"));
+
+        final KafkaJournal journal = new KafkaJournal(journalFile.getAbsolutePath(), scheduler, 1024,
+                                                      10 * 1024, Duration.standardDays(1), new EventBus(),
+                                                      new MetricRegistry(), mock(ProcessBuffer.class));
+        final byte[] messageBytes = new byte[1024];
+        journal.write(Lists.newArrayList(journal.createEntry("id".getBytes(UTF_8), messageBytes, null, oldConfig)));
+        journal.write(Lists.newArrayList(journal.createEntry("id".getBytes(UTF_8), messageBytes, null, newConfig)));
+        journal.write(Lists.newArrayList(journal.createEntry("id".getBytes(UTF_8), messageBytes, null, newConfig)));
+
+        // the segment with the only entry referencing the old configuration goes first
+        journal.deleteOldestSegments(1);
+        assertNull(CodecConfigDictionary.lookup(oldConfig.getFingerprint()));
+        assertEquals(CodecConfigDictionary.lookup(newConfig.getFingerprint()).getSource(), newConfig.getSource());
+
+        deleteDirectory(journalFile);
+    }
+
+    private static void commitOffsets(Journal journal, long from, long to) {
+        for (long offset = from; offset <= to; offset++) {
+            journal.markJournalOffsetCommitted(offset);
+        }
+    }
+}
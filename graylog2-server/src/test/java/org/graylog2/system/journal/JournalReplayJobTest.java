@@ -0,0 +1,122 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.system.journal;
+
+import com.codahale.metrics.MetricRegistry;
+import com.eaio.uuid.UUID;
+import com.google.common.eventbus.EventBus;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.shared.buffers.ProcessBuffer;
+import org.graylog2.shared.journal.KafkaJournal;
+import org.graylog2.shared.system.activities.ActivityWriter;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.apache.commons.io.FileUtils.deleteDirectory;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
+
+public class JournalReplayJobTest {
+    private static final DateTime START = new DateTime(2014, 11, 1, 12, 0, DateTimeZone.UTC);
+    private static final int MESSAGES = 10;
+
+    private ScheduledThreadPoolExecutor scheduler;
+    private File journalDir;
+    private KafkaJournal journal;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        scheduler = new ScheduledThreadPoolExecutor(1);
+        journalDir = Files.createTempDirectory("journal").toFile();
+        journal = new KafkaJournal(journalDir.getAbsolutePath(), scheduler, 100 * 1024 * 1024,
+                                   5 * 1024 * 1024, Duration.standardHours(1), new EventBus(), new MetricRegistry(),
+                                   mock(ProcessBuffer.class));
+
+        // one message per second, all of them processed already
+        for (int i = 0; i < MESSAGES; i++) {
+            final RawMessage rawMessage = new RawMessage(Long.MIN_VALUE, new UUID(), START.plusSeconds(i), null,
+                                                         ("message " + i).getBytes(UTF_8));
+            journal.write(rawMessage.getIdBytes(), rawMessage.encode());
+            journal.markJournalOffsetCommitted(i);
+        }
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        scheduler.shutdown();
+        deleteDirectory(journalDir);
+    }
+
+    @Test
+    public void findsOffsetOfTimestamp() {
+        assertEquals(JournalReplayJob.findOffset(journal, 0, START.minusHours(1)), 0);
+        assertEquals(JournalReplayJob.findOffset(journal, 0, START), 0);
+        assertEquals(JournalReplayJob.findOffset(journal, 0, START.plusSeconds(3)), 3);
+        assertEquals(JournalReplayJob.findOffset(journal, 0, START.plusMillis(3500)), 4);
+        assertEquals(JournalReplayJob.findOffset(journal, 0, START.plusHours(1)), MESSAGES);
+    }
+
+    @Test
+    public void replaysRangeWithoutJournalOffsets() {
+        final ProcessBuffer processBuffer = mock(ProcessBuffer.class);
+        final JournalReplayJob job = new JournalReplayJob(journal, 0, 2, 7, 1000.0, mock(ServerStatus.class),
+                                                          processBuffer, mock(ActivityWriter.class));
+        assertEquals(job.getProgress(), 0);
+
+        job.execute();
+
+        final ArgumentCaptor<RawMessage> captor = ArgumentCaptor.forClass(RawMessage.class);
+        verify(processBuffer, times(5)).insertBlocking(captor.capture());
+        final List<RawMessage> replayed = captor.getAllValues();
+        for (int i = 0; i < replayed.size(); i++) {
+            assertEquals(new String(replayed.get(i).getPayload(), UTF_8), "message " + (i + 2));
+            assertEquals(replayed.get(i).getJournalOffset(), Long.MIN_VALUE);
+        }
+        assertEquals(job.getProgress(), 100);
+        // replaying does not move the position the journal reader reads from
+        assertEquals(journal.read(1).get(0).getOffset(), 0);
+    }
+
+    @Test
+    public void stopsWhenCancelled() {
+        final ProcessBuffer processBuffer = mock(ProcessBuffer.class);
+        final JournalReplayJob job = new JournalReplayJob(journal, 0, 0, MESSAGES, 1000.0, mock(ServerStatus.class),
+                                                          processBuffer, mock(ActivityWriter.class));
+        job.requestCancel();
+
+        job.execute();
+
+        verify(processBuffer, times(0)).insertBlocking(any(RawMessage.class));
+        assertEquals(job.getProgress(), 0);
+    }
+}
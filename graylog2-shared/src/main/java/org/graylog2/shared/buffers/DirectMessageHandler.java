@@ -31,7 +31,8 @@ class DirectMessageHandler implements WorkHandler<RawMessageEvent> {
     @Override
     public void onEvent(RawMessageEvent event) throws Exception {
         processBuffer.insertBlocking(event.rawMessage);
+        // without a journal there is nothing more durable than the process buffer
+        event.rawMessage.acknowledge();
     }
 
-
 }
@@ -25,12 +25,13 @@ import com.lmax.disruptor.RingBuffer;
 import com.lmax.disruptor.dsl.Disruptor;
 import com.lmax.disruptor.dsl.ProducerType;
 import org.graylog2.plugin.BaseConfiguration;
-import org.graylog2.plugin.buffers.InputBuffer;
+import org.graylog2.plugin.buffers.BatchInputBuffer;
 import org.graylog2.plugin.journal.RawMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Singleton;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -39,7 +40,7 @@ import static com.codahale.metrics.MetricRegistry.name;
 
 
 @Singleton
-public class InputBufferImpl implements InputBuffer {
+public class InputBufferImpl implements BatchInputBuffer {
     private static final Logger LOG = LoggerFactory.getLogger(InputBufferImpl.class);
 
     private final RingBuffer<RawMessageEvent> ringBuffer;
@@ -90,6 +91,17 @@ public class InputBufferImpl implements InputBuffer {
         ringBuffer.publishEvent(RawMessageEvent.TRANSLATOR, message);
     }
 
+    @Override
+    public void insert(List<RawMessage> messages) {
+        final RawMessage[] batch = messages.toArray(new RawMessage[messages.size()]);
+
+        // a single claim cannot be larger than the ring buffer itself
+        final int maxBatchSize = ringBuffer.getBufferSize();
+        for (int offset = 0; offset < batch.length; offset += maxBatchSize) {
+            ringBuffer.publishEvents(RawMessageEvent.TRANSLATOR, offset, Math.min(maxBatchSize, batch.length - offset), batch);
+        }
+    }
+
     private ExecutorService executorService(final MetricRegistry metricRegistry) {
         final ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("inputbufferprocessor-%d").build();
         return new InstrumentedExecutorService(Executors.newCachedThreadPool(threadFactory), metricRegistry, name(this.getClass(), "executor-service"));
@@ -0,0 +1,177 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.buffers;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.RateLimiter;
+import org.graylog2.plugin.ThrottleState;
+import org.graylog2.plugin.inputs.InputJournalQuota;
+import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.inputs.transports.ThrottleableTransport;
+import org.graylog2.plugin.inputs.transports.Transport;
+import org.graylog2.shared.inputs.InputRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Decides which messages of an input may be written to the journal, according to the {@link InputJournalQuota} of
+ * the input and the journal utilization, and accounts for the messages written and dropped per input.
+ * <p/>
+ * Inputs which are allowed to be throttled are only subject to their byte quota here, their transports read no faster
+ * than the message quota and slow down as the journal fills up instead, so their messages do not have to be dropped.
+ * <p/>
+ * The quotas of an input are looked up again every minute, so changes of its configuration take effect without
+ * restarting it.
+ */
+class JournalQuotas {
+    private static final Logger log = LoggerFactory.getLogger(JournalQuotas.class);
+
+    private static final long QUOTA_EXPIRY_MINUTES = 1;
+
+    private final InputRegistry inputRegistry;
+    private final LoadingCache<String, InputQuota> inputQuotas;
+
+    private volatile double utilization = 0.0;
+
+    JournalQuotas(InputRegistry inputRegistry, final MetricRegistry metricRegistry) {
+        this.inputRegistry = inputRegistry;
+        this.inputQuotas = CacheBuilder.newBuilder()
+                .expireAfterWrite(QUOTA_EXPIRY_MINUTES, TimeUnit.MINUTES)
+                .removalListener(new RemovalListener<String, InputQuota>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<String, InputQuota> notification) {
+                        final String inputId = notification.getKey();
+                        if (lookupInput(inputId) == null) {
+                            // the input is gone, and so are its metrics
+                            for (String metric : InputQuota.METRICS) {
+                                metricRegistry.remove(metricName(inputId, metric));
+                            }
+                        }
+                    }
+                })
+                .build(new CacheLoader<String, InputQuota>() {
+                    @Override
+                    public InputQuota load(String inputId) {
+                        final MessageInput input = lookupInput(inputId);
+                        final InputJournalQuota quota = input == null
+                                ? InputJournalQuota.UNLIMITED : InputJournalQuota.fromConfiguration(input.getConfiguration());
+                        return new InputQuota(inputId, quota, input != null && isThrottled(input), metricRegistry);
+                    }
+                });
+    }
+
+    @Subscribe
+    public void updateThrottleState(ThrottleState throttleState) {
+        utilization = throttleState.journalSizeLimit > 0
+                ? throttleState.journalSize / (double) throttleState.journalSizeLimit : 0.0;
+    }
+
+    /**
+     * Takes the message of the given input and size from the quotas of the input.
+     *
+     * @param inputId the id of the input which received the message, {@code null} if unknown
+     * @return {@code false} if the message has to be dropped
+     */
+    boolean admit(@Nullable String inputId, int size) {
+        if (inputId == null) {
+            return true;
+        }
+        final InputQuota inputQuota = inputQuotas.getUnchecked(inputId);
+
+        if (!inputQuota.throttled && utilization >= inputQuota.priority.getSheddingUtilization()) {
+            inputQuota.droppedByPriority.mark();
+            return false;
+        }
+        if (!inputQuota.throttled && inputQuota.messageLimiter != null && !inputQuota.messageLimiter.tryAcquire()) {
+            inputQuota.droppedByQuota.mark();
+            return false;
+        }
+        if (inputQuota.byteLimiter != null && size > 0 && !inputQuota.byteLimiter.tryAcquire(size)) {
+            inputQuota.droppedByQuota.mark();
+            return false;
+        }
+
+        inputQuota.writtenMessages.mark();
+        inputQuota.writtenBytes.mark(size);
+        return true;
+    }
+
+    private static boolean isThrottled(MessageInput input) {
+        final Transport transport = input.getTransport();
+        return transport instanceof ThrottleableTransport && ((ThrottleableTransport) transport).isThrottlingAllowed();
+    }
+
+    @Nullable
+    private MessageInput lookupInput(String inputId) {
+        try {
+            return inputRegistry.getRunningInput(inputId);
+        } catch (RuntimeException e) {
+            // the registry is not synchronized, starting or stopping inputs at the same time might interfere
+            log.debug("Unable to look up input " + inputId, e);
+            return null;
+        }
+    }
+
+    private static String metricName(String inputId, String metric) {
+        return name(JournallingMessageHandler.class, "input", inputId, metric);
+    }
+
+    private static class InputQuota {
+        private static final String WRITTEN_MESSAGES = "writtenMessages";
+        private static final String WRITTEN_BYTES = "writtenBytes";
+        private static final String DROPPED_BY_QUOTA = "droppedByQuota";
+        private static final String DROPPED_BY_PRIORITY = "droppedByPriority";
+        private static final String[] METRICS = {WRITTEN_MESSAGES, WRITTEN_BYTES, DROPPED_BY_QUOTA, DROPPED_BY_PRIORITY};
+
+        private final InputJournalQuota.Priority priority;
+        // the transport enforces the priority and message quota by reading slower
+        private final boolean throttled;
+        @Nullable
+        private final RateLimiter messageLimiter;
+        @Nullable
+        private final RateLimiter byteLimiter;
+
+        private final Meter writtenMessages;
+        private final Meter writtenBytes;
+        private final Meter droppedByQuota;
+        private final Meter droppedByPriority;
+
+        private InputQuota(String inputId, InputJournalQuota quota, boolean throttled, MetricRegistry metricRegistry) {
+            this.priority = quota.getPriority();
+            this.throttled = throttled;
+            this.messageLimiter = quota.getMessagesPerSecond() > 0 ? RateLimiter.create(quota.getMessagesPerSecond()) : null;
+            this.byteLimiter = quota.getBytesPerSecond() > 0 ? RateLimiter.create(quota.getBytesPerSecond()) : null;
+            // the meters outlive the quota as long as the input is running
+            this.writtenMessages = metricRegistry.meter(metricName(inputId, WRITTEN_MESSAGES));
+            this.writtenBytes = metricRegistry.meter(metricName(inputId, WRITTEN_BYTES));
+            this.droppedByQuota = metricRegistry.meter(metricName(inputId, DROPPED_BY_QUOTA));
+            this.droppedByPriority = metricRegistry.meter(metricName(inputId, DROPPED_BY_PRIORITY));
+        }
+    }
+}
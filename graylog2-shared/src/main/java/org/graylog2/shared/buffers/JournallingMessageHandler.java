@@ -17,12 +17,16 @@
 package org.graylog2.shared.buffers;
 
 import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
+import com.google.common.eventbus.EventBus;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 import com.lmax.disruptor.EventHandler;
+import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.shared.inputs.InputRegistry;
 import org.graylog2.shared.journal.Journal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,21 +35,29 @@ import javax.annotation.Nullable;
 import java.util.List;
 import java.util.concurrent.Semaphore;
 
-import static com.google.common.collect.Lists.transform;
-
 public class JournallingMessageHandler implements EventHandler<RawMessageEvent> {
     private static final Logger log = LoggerFactory.getLogger(JournallingMessageHandler.class);
 
     private final List<RawMessageEvent> batch = Lists.newArrayList();
     private final Counter byteCounter;
+    private final Meter droppedJournalFull;
     private final Journal journal;
     private final Semaphore journalFilled;
+    private final JournalQuotas quotas;
 
     @Inject
-    public JournallingMessageHandler(MetricRegistry metrics, Journal journal, @Named("JournalSignal") Semaphore journalFilled) {
+    public JournallingMessageHandler(MetricRegistry metrics,
+                                     Journal journal,
+                                     @Named("JournalSignal") Semaphore journalFilled,
+                                     InputRegistry inputRegistry,
+                                     EventBus eventBus) {
         this.journal = journal;
         this.journalFilled = journalFilled;
         byteCounter = metrics.counter(MetricRegistry.name(JournallingMessageHandler.class, "written_bytes"));
+        droppedJournalFull = metrics.meter(MetricRegistry.name(JournallingMessageHandler.class, "dropped_journal_full"));
+        quotas = new JournalQuotas(inputRegistry, metrics);
+        // follow the journal utilization to drop the messages of low priority inputs first
+        eventBus.register(quotas);
     }
 
     @Override
@@ -53,19 +65,54 @@ public class JournallingMessageHandler implements EventHandler<RawMessageEvent>
         batch.add(event);
 
         if (endOfBatch) {
-            log.debug("End of batch, journalling {} messages", batch.size());
-            // write batch to journal
+            try {
+                journalBatch();
+            } finally {
+                batch.clear();
+            }
+        }
+    }
 
-            final Converter converter = new Converter();
-            // copy to avoid re-running this all the time
-            final List<Journal.Entry> entries = Lists.newArrayList(transform(batch, converter));
+    private void journalBatch() {
+        log.debug("End of batch, journalling {} messages", batch.size());
+        // write batch to journal
+
+        final Converter converter = new Converter();
+        final List<Journal.Entry> entries = Lists.newArrayListWithCapacity(batch.size());
+        if (journal.isFull()) {
+            // inputs which cannot be throttled keep on sending while the disk of the journal is running full
+            droppedJournalFull.mark(batch.size());
+            log.debug("Dropped {} messages because the journal is full", batch.size());
+        } else {
+            for (RawMessageEvent journalling : batch) {
+                if (quotas.admit(inputId(journalling.rawMessage), journalling.encodedRawMessage.length)) {
+                    entries.add(converter.apply(journalling));
+                }
+            }
+            if (entries.size() < batch.size()) {
+                log.debug("Dropped {} messages exceeding the journal quotas of their inputs", batch.size() - entries.size());
+            }
+        }
+        if (!entries.isEmpty()) {
             final long lastOffset = journal.write(entries);
             log.debug("Processed batch, wrote {} bytes, last journal offset: {}, signalling reader.",
                       converter.getBytesWritten(),
                       lastOffset);
             journalFilled.release();
+        }
 
-            batch.clear();
+        // the entries are in the journal now, their sources may forget about them. dropped messages are acknowledged
+        // as well: we decided to lose them, sources which kept them would stop advancing and deliver them again.
+        for (RawMessageEvent handled : batch) {
+            acknowledge(handled.rawMessage);
+        }
+    }
+
+    private void acknowledge(RawMessage rawMessage) {
+        try {
+            rawMessage.acknowledge();
+        } catch (RuntimeException e) {
+            log.error("Unable to acknowledge message " + rawMessage.getId(), e);
         }
     }
 
@@ -87,8 +134,18 @@ public class JournallingMessageHandler implements EventHandler<RawMessageEvent>
             bytesWritten += size;
             byteCounter.inc(size);
 
-            // convert to journal entry
-            return journal.createEntry(input.rawMessage.getIdBytes(), input.encodedRawMessage);
+            // convert to journal entry, partitioned by the input which received the message on this node
+            return journal.createEntry(input.rawMessage.getIdBytes(), input.encodedRawMessage, inputId(input.rawMessage),
+                                       input.rawMessage.getCodecConfig());
         }
     }
+
+    /**
+     * @return the id of the input which received the message on this node
+     */
+    @Nullable
+    private static String inputId(RawMessage rawMessage) {
+        final List<RawMessage.SourceNode> sourceNodes = rawMessage.getSourceNodes();
+        return sourceNodes.isEmpty() ? null : sourceNodes.get(sourceNodes.size() - 1).inputId;
+    }
 }
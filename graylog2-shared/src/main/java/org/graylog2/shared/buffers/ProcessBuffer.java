@@ -64,6 +64,7 @@ public class ProcessBuffer extends Buffer {
                          DecodingProcessor.Factory decodingProcessorFactory,
                          Provider<ProcessBufferProcessor> bufferProcessorFactory,
                          @Named("processbuffer_processors") int processorCount,
+                         @Named("processbuffer_decoders") int decoderCount,
                          @Named("ring_size") int ringSize,
                          @Named("processor_wait_strategy") String waitStrategyName) {
         this.serverStatus = serverStatus;
@@ -93,16 +94,22 @@ public class ProcessBuffer extends Buffer {
         );
         disruptor.handleExceptionsWith(new LoggingExceptionHandler(LOG));
 
-        LOG.info("Initialized ProcessBuffer with ring size <{}> "
-                         + "and wait strategy <{}>.", ringBufferSize,
+        LOG.info("Initialized ProcessBuffer with ring size <{}>, <{}> decoders "
+                         + "and wait strategy <{}>.", ringBufferSize, decoderCount,
                  waitStrategy.getClass().getSimpleName());
 
+        // the decoders run in parallel and shard the ring buffer by sequence, so every event is decoded exactly once
+        final DecodingProcessor[] decoders = new DecodingProcessor[decoderCount];
+        for (int i = 0; i < decoderCount; i++) {
+            decoders[i] = decodingProcessorFactory.create(decodeTime, parseTime, i, decoderCount);
+        }
+
         final ProcessBufferProcessor[] processors = new ProcessBufferProcessor[processorCount];
         for (int i = 0; i < processorCount; i++) {
             processors[i] = bufferProcessorFactory.get();
         }
         disruptor
-                .handleEventsWith(decodingProcessorFactory.create(decodeTime, parseTime))
+                .handleEventsWith(decoders)
                 .thenHandleEventsWithWorkerPool(processors);
 
         ringBuffer = disruptor.start();
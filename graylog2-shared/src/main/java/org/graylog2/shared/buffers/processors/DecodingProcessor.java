@@ -17,30 +17,40 @@
 
 package org.graylog2.shared.buffers.processors;
 
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
 import com.google.common.net.InetAddresses;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
 import com.lmax.disruptor.EventHandler;
+import org.graylog2.plugin.HostnameResolver;
+import org.graylog2.plugin.IOState;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.ResolvableInetSocketAddress;
 import org.graylog2.plugin.ServerStatus;
 import org.graylog2.plugin.buffers.MessageEvent;
 import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.inputs.codecs.Codec;
 import org.graylog2.plugin.journal.RawMessage;
 import org.graylog2.shared.inputs.InputRegistry;
 import org.graylog2.shared.inputs.PersistedInputs;
+import org.graylog2.shared.journal.Journal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.inject.Named;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
@@ -50,17 +60,28 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
     private static final Logger log = LoggerFactory.getLogger(DecodingProcessor.class);
 
     private final LoadingCache<String, MessageInput> inputCache;
+    // codecs and their metrics are long lived, keyed by input id. only this processor's thread decodes with them,
+    // but the map is concurrent because input state changes invalidate entries from the event bus.
+    private final ConcurrentMap<String, CachedCodec> codecCache = Maps.newConcurrentMap();
     private final Timer decodeTime;
 
     public interface Factory {
-        public DecodingProcessor create(@Assisted("decodeTime") Timer decodeTime, @Assisted("parseTime") Timer parseTime);
+        public DecodingProcessor create(@Assisted("decodeTime") Timer decodeTime,
+                                        @Assisted("parseTime") Timer parseTime,
+                                        @Assisted("ordinal") long ordinal,
+                                        @Assisted("numberOfConsumers") long numberOfConsumers);
     }
 
     private final Map<String, Codec.Factory<? extends Codec>> codecFactory;
     private final ServerStatus serverStatus;
     private final MetricRegistry metricRegistry;
     private final PersistedInputs persistedInputs;
+    private final HostnameResolver hostnameResolver;
+    private final Journal journal;
+    private final boolean resolveRemoteAddress;
     private final Timer parseTime;
+    private final long ordinal;
+    private final long numberOfConsumers;
 
     @AssistedInject
     public DecodingProcessor(Map<String, Codec.Factory<? extends Codec>> codecFactory,
@@ -68,17 +89,30 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
                              final ServerStatus serverStatus,
                              final MetricRegistry metricRegistry,
                              final PersistedInputs persistedInputs,
+                             final EventBus eventBus,
+                             final HostnameResolver hostnameResolver,
+                             final Journal journal,
+                             @Named("rdns_resolve_remote_address") boolean resolveRemoteAddress,
                              @Assisted("decodeTime") Timer decodeTime,
-                             @Assisted("parseTime") Timer parseTime) {
+                             @Assisted("parseTime") Timer parseTime,
+                             @Assisted("ordinal") long ordinal,
+                             @Assisted("numberOfConsumers") long numberOfConsumers) {
         this.codecFactory = codecFactory;
         this.serverStatus = serverStatus;
         this.metricRegistry = metricRegistry;
         this.persistedInputs = persistedInputs;
+        this.hostnameResolver = hostnameResolver;
+        this.journal = journal;
+        this.resolveRemoteAddress = resolveRemoteAddress;
 
         // these metrics are global to all processors, thus they are passed in directly to avoid relying on the class name
         this.parseTime = parseTime;
         this.decodeTime = decodeTime;
 
+        // all decoders see every event, but each one only handles the sequences of its own shard
+        this.ordinal = ordinal;
+        this.numberOfConsumers = numberOfConsumers;
+
         // Use cache here to avoid looking up the inputs in the InputRegistry for every message.
         // TODO Check if there is a better way to do this!
         this.inputCache = CacheBuilder.newBuilder()
@@ -90,18 +124,39 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
                         return persistedInputs.get(inputId);
                     }
                 });
+
+        eventBus.register(this);
+    }
+
+    @Subscribe
+    public void inputStateChanged(IOState<MessageInput> state) {
+        // the input might have been reconfigured or removed, the next message will create a fresh codec for it
+        final String inputId = state.getStoppable().getId();
+        if (inputId != null) {
+            codecCache.remove(inputId);
+        }
     }
 
     @Override
     public void onEvent(MessageEvent event, long sequence, boolean endOfBatch) throws Exception {
+        if ((sequence % numberOfConsumers) != ordinal) {
+            return;
+        }
+
         final Timer.Context context = decodeTime.time();
+        final RawMessage raw = event.getRaw();
+        // the event still holds the message of the last round, clear it before decoding which might throw
+        event.setMessage(null);
         try {
             // always set the result of processMessage, even if it is null, to avoid later stages to process old messages.
             // basically this will make sure old messages are cleared out early.
-            event.setMessage(processMessage(event.getRaw()));
+            event.setMessage(processMessage(raw));
         } finally {
             if (event.getMessage() != null) {
                 event.getMessage().recordTiming(serverStatus, "decode", context.stop());
+            } else if (raw != null) {
+                // the message is dropped, it must not hold back the committed journal offset
+                journal.markJournalOffsetCommitted(raw.getJournalOffset());
             }
             // aid garbage collection to collect the raw message early (to avoid promoting it to later generations).
             event.clearRaw();
@@ -114,8 +169,6 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
             return null;
         }
 
-        final Codec codec = codecFactory.get(raw.getCodecName()).create(raw.getCodecConfig());
-
         // for backwards compatibility: the last source node should contain the input we use.
         // this means that extractors etc defined on the prior inputs are silently ignored.
         // TODO fix the above
@@ -126,7 +179,9 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
         } catch (NoSuchElementException e) {
             inputIdOnCurrentNode = null;
         }
-        final String baseMetricName = name(codec.getClass(), inputIdOnCurrentNode);
+
+        final CachedCodec cachedCodec = getCodec(raw, inputIdOnCurrentNode);
+        final Codec codec = cachedCodec.codec;
 
         final Message message;
 
@@ -139,18 +194,18 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
                 message.setJournalOffset(raw.getJournalOffset());
             }
         } catch (RuntimeException e) {
-            metricRegistry.meter(name(baseMetricName, "failures")).mark();
+            cachedCodec.failures.mark();
             throw e;
         } finally {
             decodeTime = decodeTimeCtx.stop();
         }
 
         if (message == null) {
-            metricRegistry.meter(name(baseMetricName, "failures")).mark();
+            cachedCodec.failures.mark();
             return null;
         }
         if (!message.isComplete()) {
-            metricRegistry.meter(name(baseMetricName, "incomplete")).mark();
+            cachedCodec.incomplete.mark();
             if (log.isDebugEnabled()) {
                 log.debug("Dropping incomplete message. Parsed fields: [{}]", message.getFields());
             }
@@ -196,10 +251,71 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
             }
             if (remoteAddress.isReverseLookedUp()) { // avoid reverse lookup if the hostname is available
                 message.addField("gl2_remote_hostname", remoteAddress.getHostName());
+            } else if (resolveRemoteAddress) {
+                // only uses cached names, unknown addresses are resolved in the background for later messages
+                final String hostName = remoteAddress.reverseLookup(hostnameResolver);
+                if (hostName != null) {
+                    message.addField("gl2_remote_hostname", hostName);
+                }
             }
         }
 
-        metricRegistry.meter(name(baseMetricName, "processedMessages")).mark();
+        cachedCodec.processedMessages.mark();
         return message;
     }
+
+    private CachedCodec getCodec(RawMessage raw, String inputId) {
+        final String codecName = raw.getCodecName();
+        final long configFingerprint = raw.getCodecConfigId();
+        // messages without a source input share one codec per codec type and configuration
+        final String cacheKey = inputId == null ? codecName : inputId;
+
+        CachedCodec cachedCodec = codecCache.get(cacheKey);
+        if (cachedCodec == null || !cachedCodec.matches(codecName, configFingerprint)) {
+            final Codec codec = codecFactory.get(codecName).create(resolveCodecConfig(raw, inputId));
+            cachedCodec = new CachedCodec(codecName, configFingerprint, codec, name(codec.getClass(), inputId));
+            codecCache.put(cacheKey, cachedCodec);
+        }
+        return cachedCodec;
+    }
+
+    private Configuration resolveCodecConfig(RawMessage raw, String inputId) {
+        final Configuration codecConfig = raw.getCodecConfig();
+        if (codecConfig != null) {
+            return codecConfig;
+        }
+
+        // the journal persists the configurations of its entries, so this only happens if they have been lost.
+        // fall back to the current configuration of the input
+        if (inputId != null) {
+            try {
+                return inputCache.get(inputId).getCodecConfig();
+            } catch (ExecutionException | RuntimeException e) {
+                log.warn("Unable to resolve codec configuration of input " + inputId + ", using empty configuration.", e);
+            }
+        }
+        return Configuration.EMPTY_CONFIGURATION;
+    }
+
+    private class CachedCodec {
+        private final String codecName;
+        private final long configFingerprint;
+        private final Codec codec;
+        private final Meter failures;
+        private final Meter incomplete;
+        private final Meter processedMessages;
+
+        private CachedCodec(String codecName, long configFingerprint, Codec codec, String baseMetricName) {
+            this.codecName = codecName;
+            this.configFingerprint = configFingerprint;
+            this.codec = codec;
+            this.failures = metricRegistry.meter(name(baseMetricName, "failures"));
+            this.incomplete = metricRegistry.meter(name(baseMetricName, "incomplete"));
+            this.processedMessages = metricRegistry.meter(name(baseMetricName, "processedMessages"));
+        }
+
+        private boolean matches(String codecName, long configFingerprint) {
+            return this.codecName.equals(codecName) && this.configFingerprint == configFingerprint;
+        }
+    }
 }
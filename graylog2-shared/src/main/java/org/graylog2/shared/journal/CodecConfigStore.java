@@ -0,0 +1,194 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.journal;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.journal.CodecConfigDictionary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persists the codec configurations referenced by the entries of a journal partition.
+ * <p/>
+ * Journal entries only contain the fingerprint of their codec configuration, see
+ * {@link org.graylog2.plugin.journal.RawMessage}. A configuration is appended to the file before the first entry
+ * referencing it is written to the partition, and the file is loaded into the {@link CodecConfigDictionary} when the
+ * journal is opened, so entries can be decoded after a restart and keep the configuration they were written with.
+ * <p/>
+ * Every configuration remembers the last offset it has been written at. Once retention has deleted all segments up to
+ * that offset, the configuration is dropped from the file.
+ */
+class CodecConfigStore {
+    private static final Logger LOG = LoggerFactory.getLogger(CodecConfigStore.class);
+    // marks configurations which are referenced by an append in progress
+    private static final long IN_FLIGHT = Long.MAX_VALUE;
+
+    private final File file;
+    // fingerprint -> serialized configuration and the last offset referencing it
+    private final Map<Long, Record> records = Maps.newHashMap();
+
+    /**
+     * @param file          the file the configurations are kept in
+     * @param logEndOffset  the current end of the partition, loaded configurations are kept at least until everything
+     *                      before it has been deleted
+     */
+    CodecConfigStore(File file, long logEndOffset) throws IOException {
+        this.file = file;
+        if (!file.exists()) {
+            return;
+        }
+        final List<String> lines = Files.readLines(file, Charsets.UTF_8);
+        for (final String line : lines) {
+            final int separator = line.indexOf('\t');
+            if (separator < 0) {
+                continue;
+            }
+            final long fingerprint = Long.parseLong(line.substring(0, separator));
+            final String json = line.substring(separator + 1);
+            final Configuration configuration = Configuration.deserializeFromJson(json);
+            if (configuration.getFingerprint() != fingerprint) {
+                LOG.warn("Codec configuration {} in {} has changed its fingerprint to {} when read back.",
+                         fingerprint, file, configuration.getFingerprint());
+            }
+            CodecConfigDictionary.register(fingerprint, configuration);
+            records.put(fingerprint, new Record(json, logEndOffset - 1));
+        }
+        LOG.debug("Loaded {} codec configurations from {}", records.size(), file);
+    }
+
+    /**
+     * Writes the configurations which aren't persisted yet to disk and keeps all of them until {@link #written} is
+     * called. Must be called before entries referencing them are appended.
+     */
+    synchronized void prepare(Collection<Configuration> configurations) throws IOException {
+        Writer writer = null;
+        FileOutputStream out = null;
+        try {
+            for (final Configuration configuration : configurations) {
+                final Record record = records.get(configuration.getFingerprint());
+                if (record != null) {
+                    record.lastOffset = IN_FLIGHT;
+                    continue;
+                }
+                if (writer == null) {
+                    out = new FileOutputStream(file, true);
+                    writer = new OutputStreamWriter(out, Charsets.UTF_8);
+                }
+                final String json = configuration.serializeToJson();
+                writer.write(String.valueOf(configuration.getFingerprint()));
+                writer.write('\t');
+                writer.write(json);
+                writer.write('\n');
+                records.put(configuration.getFingerprint(), new Record(json, IN_FLIGHT));
+                // it might have been unregistered after the message referencing it was encoded
+                CodecConfigDictionary.register(configuration);
+            }
+            if (writer != null) {
+                writer.flush();
+                out.getFD().sync();
+            }
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+
+    /**
+     * Records the last offset the given configurations have been written at.
+     */
+    synchronized void written(Collection<Configuration> configurations, long lastOffset) {
+        for (final Configuration configuration : configurations) {
+            final Record record = records.get(configuration.getFingerprint());
+            if (record != null && record.lastOffset == IN_FLIGHT) {
+                record.lastOffset = lastOffset;
+            }
+        }
+    }
+
+    /**
+     * Drops the configurations which are not referenced by any entry at or after the given offset anymore.
+     *
+     * @return the fingerprints of the dropped configurations
+     */
+    synchronized Set<Long> evict(long logStartOffset) {
+        final Set<Long> evicted = Sets.newHashSet();
+        final Iterator<Map.Entry<Long, Record>> iterator = records.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Long, Record> entry = iterator.next();
+            if (entry.getValue().lastOffset < logStartOffset) {
+                evicted.add(entry.getKey());
+                iterator.remove();
+            }
+        }
+        if (!evicted.isEmpty()) {
+            LOG.debug("Dropping {} codec configurations no longer referenced by the journal from {}", evicted.size(), file);
+            rewrite();
+        }
+        return evicted;
+    }
+
+    synchronized boolean contains(long fingerprint) {
+        return records.containsKey(fingerprint);
+    }
+
+    private void rewrite() {
+        final File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile);
+             Writer writer = new OutputStreamWriter(out, Charsets.UTF_8)) {
+            for (final Map.Entry<Long, Record> entry : records.entrySet()) {
+                writer.write(String.valueOf(entry.getKey()));
+                writer.write('\t');
+                writer.write(entry.getValue().json);
+                writer.write('\n');
+            }
+            writer.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            LOG.error("Cannot write " + tempFile.getAbsolutePath() + " to disk, keeping the previous codec configurations.", e);
+            return;
+        }
+        if (!tempFile.renameTo(file)) {
+            LOG.error("Cannot replace {} with {}, keeping the previous codec configurations.", file, tempFile);
+        }
+    }
+
+    private static class Record {
+        private final String json;
+        private long lastOffset;
+
+        private Record(String json, long lastOffset) {
+            this.json = json;
+            this.lastOffset = lastOffset;
+        }
+    }
+}
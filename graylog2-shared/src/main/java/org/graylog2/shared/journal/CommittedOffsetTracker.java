@@ -0,0 +1,181 @@
+/**
+ * This file is part of Graylog2.
+ *
+ * Graylog2 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog2 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog2.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Tracks the committed offsets of a journal partition, which are committed in any order, and advances a low watermark
+ * over the offsets committed without a gap.
+ * <p/>
+ * Committed offsets ahead of the watermark are kept in a ring of bits, so committing does not take a lock. A thread
+ * that closes the gap at the watermark advances it over all consecutive committed offsets. The ring covers a fixed
+ * window of offsets: an offset which is not committed before an offset a whole window ahead of it, most likely
+ * because its message has been lost, is given up on and the watermark moves past it.
+ */
+class CommittedOffsetTracker {
+    private static final Logger LOG = LoggerFactory.getLogger(CommittedOffsetTracker.class);
+
+    private final AtomicLongArray words;
+    private final int capacity;
+    private final long mask;
+    private final AtomicBoolean advancing = new AtomicBoolean(false);
+
+    // the first offset which has not been committed yet
+    private volatile long nextOffset;
+
+    /**
+     * @param nextOffset the first offset which has not been committed yet
+     * @param capacity   the number of offsets ahead of the watermark which can be tracked, a power of two and at
+     *                   least 64
+     */
+    CommittedOffsetTracker(long nextOffset, int capacity) {
+        checkArgument(Integer.bitCount(capacity) == 1 && capacity >= 64, "capacity must be a power of two >= 64");
+        this.words = new AtomicLongArray(capacity / 64);
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.nextOffset = nextOffset;
+    }
+
+    /**
+     * @return the first offset which has not been committed yet, every offset before it has been committed
+     */
+    long getNextOffset() {
+        return nextOffset;
+    }
+
+    void commit(long offset) {
+        if (offset < nextOffset) {
+            // already behind the watermark
+            return;
+        }
+        if (offset >= nextOffset + capacity) {
+            skipTo(offset - capacity + 1);
+        }
+
+        setBit(offset);
+        if (offset < nextOffset) {
+            // the watermark passed the offset in the meantime, do not leave its bit behind for the next round
+            clearBits(offset, 1);
+        } else if (offset == nextOffset) {
+            advance();
+        }
+    }
+
+    /**
+     * Moves the watermark to the given offset, regardless of whether the offsets before it have been committed.
+     */
+    void skipTo(long offset) {
+        while (!advancing.compareAndSet(false, true)) {
+            Thread.yield();
+        }
+        try {
+            long next = nextOffset;
+            if (offset <= next) {
+                return;
+            }
+            LOG.warn("Giving up on {} uncommitted journal offsets starting at {}, they have not been committed before offset {}.",
+                     countUncommitted(next, offset), next, offset + capacity - 1);
+            while (next < offset) {
+                final int bits = (int) Math.min(offset - next, 64 - (next & 63));
+                clearBits(next, bits);
+                next += bits;
+                nextOffset = next;
+            }
+            scan();
+        } finally {
+            advancing.set(false);
+        }
+        advance();
+    }
+
+    private void advance() {
+        // a commit racing with the advancing thread leaves its offset for the loop to pick up
+        while (isSet(nextOffset) && advancing.compareAndSet(false, true)) {
+            try {
+                scan();
+            } finally {
+                advancing.set(false);
+            }
+        }
+    }
+
+    /**
+     * Moves the watermark over the consecutive committed offsets, clearing their bits before publishing the watermark,
+     * so the bits can be reused for the offsets one window ahead. Must only run in the advancing thread.
+     */
+    private void scan() {
+        long next = nextOffset;
+        while (true) {
+            final int shift = (int) (next & 63);
+            final long bits = words.get(word(next)) >>> shift;
+            // the consecutive set bits starting at the watermark, up to the end of the word
+            final int committed = Long.numberOfTrailingZeros(~bits);
+            if (committed == 0) {
+                break;
+            }
+            clearBits(next, committed);
+            next += committed;
+            nextOffset = next;
+        }
+    }
+
+    private long countUncommitted(long from, long to) {
+        long count = 0;
+        for (long offset = from; offset < to; offset++) {
+            if (!isSet(offset)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int word(long offset) {
+        return (int) ((offset & mask) >>> 6);
+    }
+
+    private boolean isSet(long offset) {
+        return (words.get(word(offset)) & (1L << (offset & 63))) != 0;
+    }
+
+    private void setBit(long offset) {
+        final int word = word(offset);
+        final long bit = 1L << (offset & 63);
+        long current;
+        do {
+            current = words.get(word);
+        } while ((current & bit) == 0 && !words.compareAndSet(word, current, current | bit));
+    }
+
+    /**
+     * Clears the given number of bits starting at the offset, which must all be in the same word.
+     */
+    private void clearBits(long offset, int count) {
+        final int word = word(offset);
+        final long bits = (count == 64 ? -1L : (1L << count) - 1) << (offset & 63);
+        long current;
+        do {
+            current = words.get(word);
+        } while ((current & bits) != 0 && !words.compareAndSet(word, current, current & ~bits));
+    }
+}
@@ -16,26 +16,68 @@
  */
 package org.graylog2.shared.journal;
 
+import org.graylog2.plugin.configuration.Configuration;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 public interface Journal {
     Entry createEntry(byte[] idBytes, byte[] messageBytes);
 
+    /**
+     * Creates an entry whose partition is picked by the given key, entries with the same key end up in the same
+     * partition if the journal partitions by key.
+     */
+    Entry createEntry(byte[] idBytes, byte[] messageBytes, @Nullable String partitionKey);
+
+    /**
+     * Creates an entry whose message references the given codec configuration by its fingerprint. The journal keeps
+     * the configuration for as long as the entry exists.
+     */
+    Entry createEntry(byte[] idBytes, byte[] messageBytes, @Nullable String partitionKey, @Nullable Configuration codecConfig);
+
     long write(List<Entry> entries);
 
     long write(byte[] idBytes, byte[] messageBytes);
 
     List<JournalReadEntry> read(long maximumCount);
 
+    /**
+     * Reads the next entries of a single partition. Every partition must only be read by one thread at a time.
+     */
+    List<JournalReadEntry> readPartition(int partition, long maximumCount);
+
+    int numberOfPartitions();
+
     void markJournalOffsetCommitted(long offset);
 
+    /**
+     * @return whether new entries have to be dropped because the disk the journal is stored on is running out of space
+     */
+    boolean isFull();
+
     public static class Entry {
         private final byte[] idBytes;
         private final byte[] messageBytes;
+        @Nullable
+        private final String partitionKey;
+        @Nullable
+        private final Configuration codecConfig;
 
         public Entry(byte[] idBytes, byte[] messageBytes) {
+            this(idBytes, messageBytes, null);
+        }
+
+        public Entry(byte[] idBytes, byte[] messageBytes, @Nullable String partitionKey) {
+            this(idBytes, messageBytes, partitionKey, null);
+        }
+
+        public Entry(byte[] idBytes, byte[] messageBytes, @Nullable String partitionKey, @Nullable Configuration codecConfig) {
             this.idBytes = idBytes;
             this.messageBytes = messageBytes;
+            this.partitionKey = partitionKey;
+            this.codecConfig = codecConfig;
         }
 
         public byte[] getIdBytes() {
@@ -45,14 +87,28 @@ public interface Journal {
         public byte[] getMessageBytes() {
             return messageBytes;
         }
+
+        @Nullable
+        public String getPartitionKey() {
+            return partitionKey;
+        }
+
+        @Nullable
+        public Configuration getCodecConfig() {
+            return codecConfig;
+        }
     }
 
     public static class JournalReadEntry {
 
-        private final byte[] payload;
+        private final ByteBuffer payload;
         private final long offset;
 
         public JournalReadEntry(byte[] payload, long offset) {
+            this(ByteBuffer.wrap(payload), offset);
+        }
+
+        public JournalReadEntry(ByteBuffer payload, long offset) {
             this.payload = payload;
             this.offset = offset;
         }
@@ -61,8 +117,20 @@ public interface Journal {
             return offset;
         }
 
+        /**
+         * Returns a copy of the payload, prefer {@link #getPayloadBuffer()} to avoid copying it.
+         */
         public byte[] getPayload() {
-            return payload;
+            final byte[] bytes = new byte[payload.remaining()];
+            payload.duplicate().get(bytes);
+            return bytes;
+        }
+
+        /**
+         * Returns the payload, which might be a slice of a larger buffer. The buffer must not be modified.
+         */
+        public ByteBuffer getPayloadBuffer() {
+            return payload.duplicate();
         }
     }
 }
@@ -20,9 +20,11 @@ import com.codahale.metrics.Counter;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Lists;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
@@ -34,13 +36,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
 
 import static com.codahale.metrics.MetricRegistry.name;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
+/**
+ * Reads the journal into the process buffer, with one thread per journal partition.
+ */
 public class JournalReader extends AbstractExecutionThreadService {
     private static final Logger log = LoggerFactory.getLogger(JournalReader.class);
+    // readers of several partitions share the write signal, so they poll in case another reader consumed it
+    private static final long PARTITION_POLL_INTERVAL = 100;
     private final Journal journal;
     private final ProcessBuffer processBuffer;
     private final Semaphore journalFilled;
@@ -51,6 +62,7 @@ public class JournalReader extends AbstractExecutionThreadService {
     private Histogram requestedReadCount;
     private final Counter readBlocked;
     private Thread executionThread;
+    private volatile ExecutorService partitionReaders;
 
     @Inject
     public JournalReader(Journal journal,
@@ -82,6 +94,10 @@ public class JournalReader extends AbstractExecutionThreadService {
     @Override
     protected void triggerShutdown() {
         executionThread.interrupt();
+        final ExecutorService readers = partitionReaders;
+        if (readers != null) {
+            readers.shutdownNow();
+        }
     }
 
     @Subscribe
@@ -123,6 +139,40 @@ public class JournalReader extends AbstractExecutionThreadService {
             throw e;
         }
 
+        final int partitions = journal.numberOfPartitions();
+        if (partitions == 1) {
+            readPartition(0, 1);
+        } else {
+            partitionReaders = Executors.newFixedThreadPool(partitions,
+                    new ThreadFactoryBuilder().setNameFormat("journal-reader-%d").build());
+            final List<Future<?>> futures = Lists.newArrayListWithCapacity(partitions);
+            for (int i = 0; i < partitions; i++) {
+                final int partition = i;
+                futures.add(partitionReaders.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        readPartition(partition, partitions);
+                    }
+                }));
+            }
+            try {
+                for (final Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException ignored) {
+                // shutting down, the readers have been interrupted as well
+            } catch (ExecutionException e) {
+                log.error("Journal partition reader failed, stopping all readers.", e.getCause());
+                partitionReaders.shutdownNow();
+                throw e;
+            } finally {
+                partitionReaders.shutdown();
+            }
+        }
+        log.info("Stopping.");
+    }
+
+    private void readPartition(int partition, int partitions) {
         while (isRunning()) {
             // TODO interfere with reading if we are not 100% certain we should be reading, see #listenForLifecycleChanges
             if (!shouldBeReading) {
@@ -130,16 +180,21 @@ public class JournalReader extends AbstractExecutionThreadService {
                 // don't read immediately, but check if we should be shutting down.
                 continue;
             }
-            // approximate count to read from the journal to backfill the processing chain
-            final long remainingCapacity = processBuffer.getRemainingCapacity();
+            // approximate count to read from the journal to backfill the processing chain, the partitions share it
+            final long remainingCapacity = Math.max(1, processBuffer.getRemainingCapacity() / partitions);
             requestedReadCount.update(remainingCapacity);
-            final List<Journal.JournalReadEntry> encodedRawMessages = journal.read(remainingCapacity);
+            final List<Journal.JournalReadEntry> encodedRawMessages = journal.readPartition(partition, remainingCapacity);
             if (encodedRawMessages.isEmpty()) {
-                log.debug("No messages to read from Journal, waiting until the writer adds more messages.");
+                log.debug("No messages to read from journal partition {}, waiting until the writer adds more messages.", partition);
                 // block until something is written to the journal again
                 try {
                     readBlocked.inc();
-                    journalFilled.acquire();
+                    if (partitions == 1) {
+                        journalFilled.acquire();
+                    } else if (!journalFilled.tryAcquire(PARTITION_POLL_INTERVAL, MILLISECONDS)) {
+                        // another partition's reader might have taken the signal for a write to this partition
+                        continue;
+                    }
                 } catch (InterruptedException ignored) {
                     // this can happen when we are blocked but the system wants to shut down. We don't have to do anything in that case.
                     continue;
@@ -149,9 +204,9 @@ public class JournalReader extends AbstractExecutionThreadService {
                 journalFilled.drainPermits();
             } else {
                 readMessages.mark(encodedRawMessages.size());
-                log.debug("Processing {} messages from journal.", encodedRawMessages.size());
+                log.debug("Processing {} messages from journal partition {}.", encodedRawMessages.size(), partition);
                 for (final Journal.JournalReadEntry encodedRawMessage : encodedRawMessages) {
-                    final RawMessage rawMessage = RawMessage.decode(encodedRawMessage.getPayload(),
+                    final RawMessage rawMessage = RawMessage.decode(encodedRawMessage.getPayloadBuffer(),
                                                                     encodedRawMessage.getOffset());
                     if (rawMessage == null) {
                         // never insert null objects into the ringbuffer, as that is useless
@@ -164,7 +219,6 @@ public class JournalReader extends AbstractExecutionThreadService {
                 }
             }
         }
-        log.info("Stopping.");
     }
 
 
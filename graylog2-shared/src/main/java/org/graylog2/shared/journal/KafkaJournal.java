@@ -17,13 +17,17 @@
 package org.graylog2.shared.journal;
 
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.eventbus.EventBus;
 import com.google.common.io.Files;
@@ -36,19 +40,27 @@ import kafka.common.KafkaException;
 import kafka.common.OffsetOutOfRangeException;
 import kafka.common.TopicAndPartition;
 import kafka.log.CleanerConfig;
+import kafka.log.FileMessageSet;
 import kafka.log.Log;
 import kafka.log.LogConfig;
 import kafka.log.LogManager;
 import kafka.log.LogSegment;
 import kafka.message.ByteBufferMessageSet;
+import kafka.message.ByteBufferMessageSet$;
+import kafka.message.CompressionCodec;
+import kafka.message.CompressionCodec$;
 import kafka.message.Message;
 import kafka.message.MessageAndOffset;
 import kafka.message.MessageSet;
+import kafka.message.NoCompressionCodec$;
 import kafka.utils.KafkaScheduler;
 import kafka.utils.Time;
 import kafka.utils.Utils;
 import org.graylog2.plugin.ThrottleState;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.journal.CodecConfigDictionary;
 import org.graylog2.shared.buffers.ProcessBuffer;
+import org.graylog2.shared.metrics.HdrHistogram;
 import org.graylog2.shared.metrics.HdrTimer;
 import org.joda.time.DateTimeUtils;
 import org.joda.time.Duration;
@@ -60,11 +72,16 @@ import scala.collection.JavaConversions;
 import scala.collection.Map$;
 import scala.runtime.AbstractFunction1;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.SyncFailedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ClosedByInterruptException;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -74,6 +91,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static com.codahale.metrics.MetricRegistry.name;
@@ -102,12 +120,26 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
     };
     private static final Logger log = LoggerFactory.getLogger(KafkaJournal.class);
     private static final long DEFAULT_COMMITTED_OFFSET = Long.MIN_VALUE;
+    private static final int MIN_READ_SIZE = 64 * 1024;
+    private static final String TOPIC = "messagejournal";
+    // the upper bits of a journal offset denote the partition, which leaves partition 0 offsets unchanged
+    private static final int PARTITION_SHIFT = 56;
+    private static final long PARTITION_OFFSET_MASK = (1L << PARTITION_SHIFT) - 1;
+    // the number of offsets the commit of a message may be ahead of the oldest uncommitted message, at most the
+    // messages in flight between the journal and the outputs
+    private static final int COMMIT_WINDOW = 1 << 20;
     private final LogManager logManager;
-    private final Log kafkaLog;
-    private final File committedReadOffsetFile;
-    private final AtomicLong committedOffset = new AtomicLong(DEFAULT_COMMITTED_OFFSET);
+    private final List<File> journalDirectories;
+    private final List<JournalPartition> partitions;
+    // the number of partitions new entries are written to, any partitions beyond that are only drained
+    private final int writePartitions;
+    private final boolean partitionByInput;
+    private final AtomicInteger nextWritePartition = new AtomicInteger();
     private final ScheduledExecutorService scheduler;
     private final long retentionSize;
+    // the size the journal may grow to before the disk it is on runs full, set by the disk space watchdog
+    private volatile long diskSpaceLimit = Long.MAX_VALUE;
+    private volatile boolean diskSpaceLimitEnforced = false;
     private final EventBus eventBus;
     private final MetricRegistry metricRegistry;
     private ProcessBuffer pb;
@@ -117,6 +149,20 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
     private final KafkaScheduler kafkaScheduler;
     private final Meter messagesWritten;
     private final Meter messagesRead;
+    private final Timer flushTime;
+    private final Histogram bytesPerFlush;
+    private final Timer compressTime;
+    private final Timer decompressTime;
+    private final AtomicLong uncompressedBytesWritten = new AtomicLong();
+    private final AtomicLong compressedBytesWritten = new AtomicLong();
+
+    private final long flushInterval;
+    private final long flushBytes;
+    private final boolean groupCommit;
+    private final CompressionCodec compressionCodec;
+    private final int maxReadSize;
+    private final Histogram readSize;
+    private final Histogram entriesPerRead;
 
     private final OffsetFileFlusher offsetFlusher;
     private final DirtyLogFlusher dirtyLogFlusher;
@@ -124,8 +170,7 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
     private final LogRetentionCleaner logRetentionCleaner;
     private final ThrottleStateUpdater throttleStateUpdater;
 
-    private long nextReadOffset = 0L;
-    private long lastWriteOffset = Long.MIN_VALUE;
+    private int nextReadPartition = 0;
     private ScheduledFuture<?> throttleUpdaterFuture;
     private ScheduledFuture<?> checkpointFlusherFuture;
     private ScheduledFuture<?> dirtyLogFlushFuture;
@@ -133,17 +178,63 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
     private ScheduledFuture<?> offsetFlusherFuture;
     private volatile boolean shuttingDown;
 
+    /**
+     * Creates a journal which leaves flushing to the operating system.
+     */
+    public KafkaJournal(String journalDirName,
+                        ScheduledExecutorService scheduler,
+                        int segmentSize,
+                        long retentionSize,
+                        Duration retentionAge,
+                        EventBus eventBus,
+                        MetricRegistry metricRegistry,
+                        ProcessBuffer pb) {
+        this(journalDirName, scheduler, segmentSize, retentionSize, retentionAge,
+             Long.MAX_VALUE, Long.MAX_VALUE, new Duration(Long.MAX_VALUE), false, "none", 5 * 1024 * 1024,
+             1, "round_robin", eventBus, metricRegistry, pb);
+    }
+
+    /**
+     * @param flushInterval the number of messages after which the journal is flushed to disk
+     * @param flushBytes    the number of bytes after which the journal is flushed to disk
+     * @param flushAge      the maximum time unflushed messages are kept in the page cache
+     * @param groupCommit   whether every write should return only once it has been flushed to disk, in that case
+     *                      concurrent writes share a single flush and the other flush settings are irrelevant
+     * @param compression   the compression codec for written batches, one of {@code none}, {@code gzip} or
+     *                      {@code snappy}. Reading always handles every codec.
+     * @param maxReadSize   the maximum number of bytes read from disk at once. Reads are sized by the number of
+     *                      requested messages and their average size, up to this limit.
+     * @param numberOfPartitions the number of partitions written to, each partition is an independent log with its
+     *                           own committed offset and an equal share of the retention size
+     * @param partitioner   how entries are assigned to partitions, {@code round_robin} writes each batch to the next
+     *                      partition, {@code input} keeps the messages of an input in the same partition
+     */
     @Inject
     public KafkaJournal(@Named("message_journal_dir") String journalDirName,
                         @Named("scheduler") ScheduledExecutorService scheduler,
                         @Named("message_journal_segment_size") int segmentSize,
                         @Named("message_journal_max_size") long retentionSize,
                         @Named("message_journal_max_age") Duration retentionAge,
+                        @Named("message_journal_flush_interval") long flushInterval,
+                        @Named("message_journal_flush_bytes") long flushBytes,
+                        @Named("message_journal_flush_age") Duration flushAge,
+                        @Named("message_journal_group_commit") boolean groupCommit,
+                        @Named("message_journal_compression") String compression,
+                        @Named("message_journal_max_read_size") int maxReadSize,
+                        @Named("message_journal_partitions") int numberOfPartitions,
+                        @Named("message_journal_partitioner") String partitioner,
                         EventBus eventBus,
                         MetricRegistry metricRegistry,
                         ProcessBuffer pb) {
         this.scheduler = scheduler;
         this.retentionSize = retentionSize;
+        this.flushInterval = flushInterval;
+        this.flushBytes = flushBytes;
+        this.groupCommit = groupCommit;
+        this.compressionCodec = CompressionCodec$.MODULE$.getCompressionCodec(compression);
+        this.maxReadSize = maxReadSize;
+        this.writePartitions = numberOfPartitions;
+        this.partitionByInput = "input".equals(partitioner);
         this.eventBus = eventBus;
         this.metricRegistry = metricRegistry;
         this.pb = pb;
@@ -153,6 +244,12 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
 
         writeTime = metricRegistry.register(name(this.getClass(), "writeTime"), new HdrTimer(1, TimeUnit.MINUTES, 1));
         readTime = metricRegistry.register(name(this.getClass(), "readTime"), new HdrTimer(1, TimeUnit.MINUTES, 1));
+        flushTime = metricRegistry.register(name(this.getClass(), "flushTime"), new HdrTimer(1, TimeUnit.MINUTES, 1));
+        bytesPerFlush = metricRegistry.register(name(this.getClass(), "bytesPerFlush"), new HdrHistogram(Integer.MAX_VALUE, 1));
+        compressTime = metricRegistry.register(name(this.getClass(), "compressTime"), new HdrTimer(1, TimeUnit.MINUTES, 1));
+        decompressTime = metricRegistry.register(name(this.getClass(), "decompressTime"), new HdrTimer(1, TimeUnit.MINUTES, 1));
+        readSize = metricRegistry.register(name(this.getClass(), "readSize"), new HdrHistogram(Integer.MAX_VALUE, 2));
+        entriesPerRead = metricRegistry.register(name(this.getClass(), "entriesPerRead"), new HdrHistogram(Integer.MAX_VALUE, 2));
 
         // these are the default values as per kafka 0.8.1.1
         final LogConfig defaultConfig =
@@ -162,11 +259,13 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
                         // segmentMs: The soft maximum on the amount of time before a new log segment is rolled
                         Long.MAX_VALUE,
                         // flushInterval: The number of messages that can be written to the log before a flush is forced
+                        // we flush in write() ourselves to support group commits and to measure the flushes
                         Long.MAX_VALUE,
                         // flushMs: The amount of time the log can have dirty data before a flush is forced
-                        Long.MAX_VALUE,
+                        flushAge.getMillis(),
                         // retentionSize: The approximate total number of bytes this log can use
-                        retentionSize,
+                        // every partition keeps its share of the journal size
+                        retentionSize / numberOfPartitions,
                         // retentionMs: The age approximate maximum age of the last segment that is retained
                         retentionAge.getMillis(),
                         // maxMessageSize: The maximum size of a message in the log
@@ -198,51 +297,65 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
                         SECONDS.toMillis(15),
                         false,
                         "MD5");
-        final File journalDirectory = new File(journalDirName);
-        if (!journalDirectory.exists() && !journalDirectory.mkdirs()) {
-            log.error("Cannot create journal directory at {}, please check the permissions",
-                      journalDirectory.getAbsolutePath());
-        }
-        // TODO add check for directory, etc
-        committedReadOffsetFile = new File(journalDirectory, "graylog2-committed-read-offset");
-        try {
-            if (!committedReadOffsetFile.createNewFile()) {
-                final String line = Files.readFirstLine(committedReadOffsetFile, Charsets.UTF_8);
-                // the file contains the last offset graylog2 has successfully processed.
-                // thus the nextReadOffset is one beyond that number
-                if (line != null) {
-                    committedOffset.set(Long.parseLong(line.trim()));
-                    nextReadOffset = committedOffset.get() + 1;
-                }
+        final List<String> journalDirNames = Splitter.on(',').trimResults().omitEmptyStrings().splitToList(journalDirName);
+        final File[] journalDirectories = new File[journalDirNames.size()];
+        for (int i = 0; i < journalDirectories.length; i++) {
+            journalDirectories[i] = new File(journalDirNames.get(i));
+            if (!journalDirectories[i].exists() && !journalDirectories[i].mkdirs()) {
+                log.error("Cannot create journal directory at {}, please check the permissions",
+                          journalDirectories[i].getAbsolutePath());
             }
-        } catch (IOException e) {
-            log.error("Cannot access offset file", e);
-            Throwables.propagate(e);
         }
+        // TODO add check for directory, etc
+        this.journalDirectories = Arrays.asList(journalDirectories);
+        // the committed offsets of all partitions are kept in the first directory, kafka spreads the partitions
+        final File journalDirectory = journalDirectories[0];
         try {
             kafkaScheduler = new KafkaScheduler(2,
                                                 "kafka-journal-scheduler-",
                                                 false); // TODO make thread count configurable
             kafkaScheduler.startup();
             logManager = new LogManager(
-                    new File[]{journalDirectory},
+                    journalDirectories,
                     Map$.MODULE$.<String, LogConfig>empty(),
                     defaultConfig,
                     cleanerConfig,
-                    SECONDS.toMillis(60),
+                    // flushCheckMs: check for dirty logs often enough to honor the flush age
+                    Math.max(1L, Math.min(flushAge.getMillis(), SECONDS.toMillis(60))),
                     SECONDS.toMillis(60),
                     SECONDS.toMillis(60),
                     kafkaScheduler,
                     JODA_TIME);
 
-            final TopicAndPartition topicAndPartition = new TopicAndPartition("messagejournal", 0);
-            final Option<Log> messageLog = logManager.getLog(topicAndPartition);
-            if (messageLog.isEmpty()) {
-                kafkaLog = logManager.createLog(topicAndPartition, logManager.defaultConfig());
-            } else {
-                kafkaLog = messageLog.get();
+            // keep reading partitions left over from a previous configuration with more partitions, until they are empty
+            int existingPartitions = 0;
+            for (final TopicAndPartition topicAndPartition : JavaConversions.mapAsJavaMap(logManager.logsByTopicPartition()).keySet()) {
+                if (TOPIC.equals(topicAndPartition.topic())) {
+                    existingPartitions = Math.max(existingPartitions, topicAndPartition.partition() + 1);
+                }
             }
-            log.info("Initialized Kafka based journal at {}", journalDirName);
+            final JournalPartition[] journalPartitions = new JournalPartition[Math.max(numberOfPartitions, existingPartitions)];
+            for (int i = 0; i < journalPartitions.length; i++) {
+                final TopicAndPartition topicAndPartition = new TopicAndPartition(TOPIC, i);
+                final Option<Log> messageLog = logManager.getLog(topicAndPartition);
+                final Log kafkaLog;
+                if (messageLog.isEmpty()) {
+                    kafkaLog = logManager.createLog(topicAndPartition, logManager.defaultConfig());
+                } else {
+                    kafkaLog = messageLog.get();
+                }
+                final String offsetFileName = i == 0 ? "graylog2-committed-read-offset" : "graylog2-committed-read-offset-" + i;
+                final String codecConfigFileName = "graylog2-codec-configs-" + i;
+                journalPartitions[i] = new JournalPartition(i, kafkaLog,
+                                                            new File(journalDirectory, offsetFileName),
+                                                            new File(journalDirectory, codecConfigFileName));
+            }
+            partitions = Arrays.asList(journalPartitions);
+            if (existingPartitions > numberOfPartitions) {
+                log.warn("Journal contains {} partitions, but only {} are configured. Reading the remaining partitions until they are empty.",
+                         existingPartitions, numberOfPartitions);
+            }
+            log.info("Initialized Kafka based journal with {} partition(s) at {}", partitions.size(), journalDirName);
             setupKafkaLogMetrics(metricRegistry);
 
             offsetFlusher = new OffsetFileFlusher();
@@ -262,41 +375,86 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
         metricRegistry.register(name(KafkaJournal.class, "size"), new Gauge<Long>() {
             @Override
             public Long getValue() {
-                return kafkaLog.size();
-            }
-        });
-        metricRegistry.register(name(KafkaJournal.class, "logEndOffset"), new Gauge<Long>() {
-            @Override
-            public Long getValue() {
-                return kafkaLog.logEndOffset();
+                return size();
             }
         });
         metricRegistry.register(name(KafkaJournal.class, "numberOfSegments"), new Gauge<Integer>() {
             @Override
             public Integer getValue() {
-                return kafkaLog.numberOfSegments();
+                return numberOfSegments();
             }
         });
         metricRegistry.register(name(KafkaJournal.class, "unflushedMessages"), new Gauge<Long>() {
             @Override
             public Long getValue() {
-                return kafkaLog.unflushedMessages();
+                long unflushedMessages = 0;
+                for (final JournalPartition partition : partitions) {
+                    unflushedMessages += partition.kafkaLog.unflushedMessages();
+                }
+                return unflushedMessages;
             }
         });
-        metricRegistry.register(name(KafkaJournal.class, "recoveryPoint"), new Gauge<Long>() {
+        metricRegistry.register(name(KafkaJournal.class, "lastFlushTime"), new Gauge<Long>() {
             @Override
             public Long getValue() {
-                return kafkaLog.recoveryPoint();
+                // the partition which has been flushed the longest time ago
+                long lastFlushTime = Long.MAX_VALUE;
+                for (final JournalPartition partition : partitions) {
+                    lastFlushTime = Math.min(lastFlushTime, partition.kafkaLog.lastFlushTime());
+                }
+                return lastFlushTime;
             }
         });
-        metricRegistry.register(name(KafkaJournal.class, "lastFlushTime"), new Gauge<Long>() {
+        metricRegistry.register(name(KafkaJournal.class, "compressionRatio"), new Gauge<Double>() {
             @Override
-            public Long getValue() {
-                return kafkaLog.lastFlushTime();
+            public Double getValue() {
+                final long compressed = compressedBytesWritten.get();
+                return compressed == 0 ? 1.0 : uncompressedBytesWritten.get() / (double) compressed;
             }
         });
+        for (final JournalPartition partition : partitions) {
+            final String prefix = "partition-" + partition.id;
+            metricRegistry.register(name(KafkaJournal.class, prefix, "logEndOffset"), new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return partition.kafkaLog.logEndOffset();
+                }
+            });
+            metricRegistry.register(name(KafkaJournal.class, prefix, "recoveryPoint"), new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return partition.kafkaLog.recoveryPoint();
+                }
+            });
+            metricRegistry.register(name(KafkaJournal.class, prefix, "committedOffset"), new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return partition.getCommittedOffset();
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the journal offset handed out for the given offset within a partition.
+     */
+    public static long journalOffset(int partition, long partitionOffset) {
+        return ((long) partition << PARTITION_SHIFT) | partitionOffset;
+    }
+
+    /**
+     * Returns the partition of the given journal offset.
+     */
+    public static int partitionOf(long journalOffset) {
+        return (int) (journalOffset >>> PARTITION_SHIFT);
     }
 
+    /**
+     * Returns the offset within its partition of the given journal offset.
+     */
+    public static long partitionOffset(long journalOffset) {
+        return journalOffset & PARTITION_OFFSET_MASK;
+    }
 
     /**
      * Creates an opaque object which can be passed to {@link #write(java.util.List)} for a bulk journal write.
@@ -310,8 +468,21 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
         return new Entry(idBytes, messageBytes);
     }
 
+    @Override
+    public Entry createEntry(byte[] idBytes, byte[] messageBytes, String partitionKey) {
+        return new Entry(idBytes, messageBytes, partitionKey);
+    }
+
+    @Override
+    public Entry createEntry(byte[] idBytes, byte[] messageBytes, String partitionKey, Configuration codecConfig) {
+        return new Entry(idBytes, messageBytes, partitionKey, codecConfig);
+    }
+
     /**
      * Writes the list of entries to the journal.
+     * <p>
+     * The entries are distributed across the partitions, every partition receives its entries in a single append.
+     * </p>
      *
      * @param entries journal entries to be written
      * @return the last position written to in the journal
@@ -321,30 +492,61 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
         try (Timer.Context ignored = writeTime.time()) {
             long payloadSize = 0L;
 
-            final List<Message> messages = Lists.newArrayList();
+            // unkeyed entries of a batch all go to the same partition, the next batch uses the next one
+            final int batchPartition = writePartitions == 1 ? 0 : (nextWritePartition.getAndIncrement() & Integer.MAX_VALUE) % writePartitions;
+            @SuppressWarnings("unchecked")
+            final List<Message>[] messagesByPartition = new List[writePartitions];
+            // the codec configurations referenced by the entries of each partition, usually just a few
+            @SuppressWarnings("unchecked")
+            final Map<Long, Configuration>[] codecConfigsByPartition = new Map[writePartitions];
             for (final Entry entry : entries) {
                 final byte[] messageBytes = entry.getMessageBytes();
                 final byte[] idBytes = entry.getIdBytes();
 
+                final int partition = partitionFor(entry, batchPartition);
+                if (messagesByPartition[partition] == null) {
+                    messagesByPartition[partition] = Lists.newArrayList();
+                }
                 payloadSize += messageBytes.length;
-                messages.add(new Message(messageBytes, idBytes));
+                messagesByPartition[partition].add(new Message(messageBytes, idBytes));
+
+                final Configuration codecConfig = entry.getCodecConfig();
+                if (codecConfig != null && codecConfig.getFingerprint() != 0L) {
+                    if (codecConfigsByPartition[partition] == null) {
+                        codecConfigsByPartition[partition] = Maps.newHashMap();
+                    }
+                    codecConfigsByPartition[partition].put(codecConfig.getFingerprint(), codecConfig);
+                }
 
                 if (log.isTraceEnabled()) {
                     log.trace("Message {} contains bytes {}", bytesToHex(idBytes), bytesToHex(messageBytes));
                 }
             }
 
-            final ByteBufferMessageSet messageSet = new ByteBufferMessageSet(JavaConversions.asScalaBuffer(messages));
-
-            final Log.LogAppendInfo appendInfo = kafkaLog.append(messageSet, true);
-            lastWriteOffset = appendInfo.lastOffset();
-            log.debug("Wrote {} messages to journal: {} bytes, log position {} to {}",
-                      entries.size(), payloadSize, appendInfo.firstOffset(), lastWriteOffset);
+            long lastWriteOffset = Long.MIN_VALUE;
+            for (int partition = 0; partition < writePartitions; partition++) {
+                if (messagesByPartition[partition] != null) {
+                    final Map<Long, Configuration> codecConfigs = codecConfigsByPartition[partition];
+                    lastWriteOffset = journalOffset(partition, partitions.get(partition).append(
+                            messagesByPartition[partition],
+                            codecConfigs == null ? Collections.<Configuration>emptyList() : codecConfigs.values()));
+                }
+            }
+            log.debug("Wrote {} messages to journal: {} bytes, last journal offset {}",
+                      entries.size(), payloadSize, lastWriteOffset);
             messagesWritten.mark(entries.size());
             return lastWriteOffset;
         }
     }
 
+    private int partitionFor(Entry entry, int batchPartition) {
+        final String partitionKey = entry.getPartitionKey();
+        if (!partitionByInput || partitionKey == null || writePartitions == 1) {
+            return batchPartition;
+        }
+        return (partitionKey.hashCode() & Integer.MAX_VALUE) % writePartitions;
+    }
+
     /**
      * Writes a single message to the journal and returns the new write position
      *
@@ -358,113 +560,69 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
         return write(Collections.singletonList(journalEntry));
     }
 
+    /**
+     * Reads the next entries of the first partition, starting with the one after the partition read last, that has
+     * entries to read.
+     */
     @Override
     public List<JournalReadEntry> read(long requestedMaximumCount) {
-        return read(nextReadOffset, requestedMaximumCount);
+        for (int i = 0; i < partitions.size(); i++) {
+            final int partition = nextReadPartition;
+            nextReadPartition = (nextReadPartition + 1) % partitions.size();
+            final List<JournalReadEntry> messages = readPartition(partition, requestedMaximumCount);
+            if (!messages.isEmpty()) {
+                return messages;
+            }
+        }
+        return Lists.newArrayList();
     }
 
-    public List<JournalReadEntry> read(long readOffset, long requestedMaximumCount) {
-        // Always read at least one!
-        final long maximumCount = Math.max(1, requestedMaximumCount);
-        long maxOffset = readOffset + maximumCount;
-        final List<JournalReadEntry> messages = Lists.newArrayListWithCapacity((int) (maximumCount));
+    @Override
+    public List<JournalReadEntry> readPartition(int partition, long requestedMaximumCount) {
+        final JournalPartition journalPartition = partitions.get(partition);
+        return journalPartition.read(journalPartition.nextReadOffset, requestedMaximumCount, true);
+    }
 
-        if (shuttingDown) {
-            return messages;
-        }
-        try (Timer.Context ignored = readTime.time()) {
-            final long logStartOffset = getLogStartOffset();
-
-            if (readOffset < logStartOffset) {
-                log.error(
-                        "Read offset {} before start of log at {}, starting to read from the beginning of the journal.",
-                        readOffset,
-                        logStartOffset);
-                readOffset = logStartOffset;
-                maxOffset = readOffset + maximumCount;
-            }
-            log.debug("Requesting to read a maximum of {} messages (or 5MB) from the journal, offset interval [{}, {})",
-                      maximumCount, readOffset, maxOffset);
-
-            // TODO benchmark and make read-ahead strategy configurable for performance tuning
-            final MessageSet messageSet = kafkaLog.read(readOffset,
-                                                        5 * 1024 * 1024,
-                                                        Option.<Object>apply(maxOffset));
-
-            final Iterator<MessageAndOffset> iterator = messageSet.iterator();
-            long firstOffset = Long.MIN_VALUE;
-            long lastOffset = Long.MIN_VALUE;
-            long totalBytes = 0;
-            while (iterator.hasNext()) {
-                final MessageAndOffset messageAndOffset = iterator.next();
-
-                if (firstOffset == Long.MIN_VALUE) firstOffset = messageAndOffset.offset();
-                // always remember the last seen offset for debug purposes below
-                lastOffset = messageAndOffset.offset();
-
-                final byte[] payloadBytes = Utils.readBytes(messageAndOffset.message().payload());
-                if (log.isTraceEnabled()) {
-                    final byte[] keyBytes = Utils.readBytes(messageAndOffset.message().key());
-                    log.trace("Read message {} contains {}", bytesToHex(keyBytes), bytesToHex(payloadBytes));
-                }
-                totalBytes += payloadBytes.length;
-                messages.add(new JournalReadEntry(payloadBytes, messageAndOffset.offset()));
-                // remember where to read from
-                nextReadOffset = messageAndOffset.nextOffset();
-            }
-            if (messages.isEmpty()) {
-                log.debug("No messages available to read for offset interval [{}, {}).", readOffset, maxOffset);
-            } else {
-                log.debug(
-                        "Read {} messages, total payload size {}, from journal, offset interval [{}, {}], requested read at {}",
-                        messages.size(),
-                        totalBytes,
-                        firstOffset,
-                        lastOffset,
-                        readOffset);
-            }
+    /**
+     * Reads entries of the first partition, starting at the given offset. Does not move the position the journal is
+     * read from by {@link #read(long)}.
+     */
+    public List<JournalReadEntry> read(long readOffset, long requestedMaximumCount) {
+        return readPartition(0, readOffset, requestedMaximumCount);
+    }
 
-        } catch (OffsetOutOfRangeException e) {
-            // TODO how do we recover from this? the exception doesn't contain the next valid offset :(
-            log.warn("Offset out of range, no messages available starting at offset {}", readOffset);
-        } catch (Exception e) {
-            // the scala code does not declare the IOException in kafkaLog.read() so we can't catch it here
-            // sigh.
-            if (shuttingDown) {
-                log.debug("Caught exception during shutdown, ignoring it because we might have been blocked on a read.");
-                return Lists.newArrayList();
-            }
-            //noinspection ConstantConditions
-            if (e instanceof ClosedByInterruptException) {
-                log.debug("Interrupted while reading from journal, during shutdown this is harmless and ignored.", e);
-            } else {
-                throw e;
-            }
+    /**
+     * Reads entries of the given partition, starting at the given offset within the partition. Does not move the
+     * position the partition is read from by {@link #readPartition(int, long)}.
+     */
+    public List<JournalReadEntry> readPartition(int partition, long readOffset, long requestedMaximumCount) {
+        return partitions.get(partition).read(readOffset, requestedMaximumCount, false);
+    }
 
-        }
-        messagesRead.mark(messages.size());
-        return messages;
+    @Override
+    public int numberOfPartitions() {
+        return partitions.size();
     }
 
     /**
-     * Upon fully processing, and persistently storing, a batch of messages, the system should mark the message with the
-     * highest offset as committed. A background job will write the last position to disk periodically.
+     * Upon fully processing, and persistently storing, a message, the system should mark its offset as committed.
+     * Messages are committed in any order, the journal only considers the offsets up to the first uncommitted message
+     * of a partition as committed. A background job will write that position to disk periodically.
      *
      * @param offset the offset of the latest committed message
      */
     @Override
     public void markJournalOffsetCommitted(long offset) {
-        long prev;
-        // the caller will not care about offsets going backwards, so we need to make sure we don't backtrack
-        int i = 0;
-        do {
-            prev = committedOffset.get();
-            // at least warn if this spins often, that would be a sign of very high contention, which should not happen
-            if (++i % 10 == 0) {
-                log.warn("Committing journal offset spins {} times now, this might be a bug. Continuing to try update.",
-                         i);
-            }
-        } while (!committedOffset.compareAndSet(prev, Math.max(offset, prev)));
+        if (offset < 0) {
+            // not read from this journal
+            return;
+        }
+        final int partition = partitionOf(offset);
+        if (partition >= partitions.size()) {
+            log.warn("Cannot commit offset {} of unknown journal partition {}", partitionOffset(offset), partition);
+            return;
+        }
+        partitions.get(partition).markCommitted(partitionOffset(offset));
     }
 
     /**
@@ -486,7 +644,12 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
                         kafkaLog.lastFlushTime(),
                         timeSinceLastFlush);
                 if (timeSinceLastFlush >= kafkaLog.config().flushMs()) {
-                    kafkaLog.flush();
+                    final JournalPartition partition = partitionFor(kafkaLog);
+                    if (partition != null) {
+                        partition.flush(kafkaLog.logEndOffset());
+                    } else {
+                        kafkaLog.flush();
+                    }
                 }
             } catch (Exception e) {
                 log.error("Error flushing topic " + topicAndPartition.topic(), e);
@@ -494,6 +657,16 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
         }
     }
 
+    @Nullable
+    private JournalPartition partitionFor(Log kafkaLog) {
+        for (final JournalPartition partition : partitions) {
+            if (partition.kafkaLog == kafkaLog) {
+                return partition;
+            }
+        }
+        return null;
+    }
+
     @Override
     protected void startUp() throws Exception {
         // do NOT let Kafka's LogManager create its management threads, we will run them ourselves.
@@ -503,7 +676,7 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
 
         // flush dirty logs regularly
         dirtyLogFlushFuture = scheduler.scheduleAtFixedRate(dirtyLogFlusher,
-                                                            SECONDS.toMillis(30),
+                                                            Math.min(SECONDS.toMillis(30), logManager.flushCheckMs()),
                                                             logManager.flushCheckMs(),
                                                             MILLISECONDS);
 
@@ -552,9 +725,98 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
         }
     }
 
+    /**
+     * Deletes the oldest segments of the largest partitions, whether their entries have been committed or not, until
+     * at least the given number of bytes has been freed. The active segment of a partition is never deleted.
+     *
+     * @return the number of bytes freed
+     */
+    public long deleteOldestSegments(long bytes) {
+        long freed = 0;
+        while (freed < bytes) {
+            JournalPartition largest = null;
+            for (final JournalPartition partition : partitions) {
+                if (partition.kafkaLog.numberOfSegments() > 1
+                        && (largest == null || partition.kafkaLog.size() > largest.kafkaLog.size())) {
+                    largest = partition;
+                }
+            }
+            if (largest == null) {
+                break;
+            }
+
+            final Log kafkaLog = largest.kafkaLog;
+            final LogSegment oldest = JavaConversions.asJavaIterable(kafkaLog.logSegments()).iterator().next();
+            final long size = oldest.size();
+            final long startOffset = largest.getLogStartOffset();
+            kafkaLog.deleteOldSegments(new AbstractFunction1<LogSegment, Object>() {
+                @Override
+                public Object apply(LogSegment segment) {
+                    return segment == oldest;
+                }
+            });
+            final long lost = largest.getLogStartOffset() - Math.max(startOffset, largest.getCommittedOffset() + 1);
+            log.warn("Deleted the oldest segment of journal partition {} to free {} bytes, {} uncommitted messages have been lost.",
+                     largest.id, size, Math.max(0, lost));
+            freed += size;
+        }
+        if (freed > 0) {
+            evictCodecConfigs();
+        }
+        return freed;
+    }
+
+    /**
+     * Forgets the codec configurations which are no longer referenced by any entry in the journal.
+     */
+    private void evictCodecConfigs() {
+        final Set<Long> evicted = Sets.newHashSet();
+        for (final JournalPartition partition : partitions) {
+            evicted.addAll(partition.codecConfigs.evict(partition.getLogStartOffset()));
+        }
+        for (final Long fingerprint : evicted) {
+            boolean referenced = false;
+            for (final JournalPartition partition : partitions) {
+                referenced |= partition.codecConfigs.contains(fingerprint);
+            }
+            if (!referenced) {
+                CodecConfigDictionary.unregister(fingerprint);
+            }
+        }
+    }
+
+    /**
+     * Limits the size the journal may grow to, below the configured maximum size, because the disk it is stored on is
+     * running out of space. Throttled inputs slow down as the journal approaches the limit.
+     *
+     * @param diskSpaceLimit the size limit in bytes, {@link Long#MAX_VALUE} to lift it
+     * @param enforced       whether new entries are dropped once the journal has reached the limit, inputs which cannot
+     *                       be throttled keep on writing otherwise
+     */
+    public void setDiskSpaceLimit(long diskSpaceLimit, boolean enforced) {
+        this.diskSpaceLimit = diskSpaceLimit;
+        this.diskSpaceLimitEnforced = enforced;
+    }
+
+    @Override
+    public boolean isFull() {
+        return diskSpaceLimitEnforced && size() >= diskSpaceLimit;
+    }
+
+    /**
+     * @return the directories the partitions of the journal are stored in
+     */
+    public List<File> getJournalDirectories() {
+        return journalDirectories;
+    }
+
     // default visibility for tests
     public Iterable<LogSegment> getSegments() {
-        return JavaConversions.asJavaIterable(kafkaLog.logSegments());
+        return getSegments(0);
+    }
+
+    public Iterable<LogSegment> getSegments(int partition) {
+        return JavaConversions.asJavaIterable(partitions.get(partition).kafkaLog.logSegments());
     }
 
     /**
@@ -562,7 +824,19 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
      * @return journal size in bytes
      */
     public long size() {
-        return kafkaLog.size();
+        long size = 0;
+        for (final JournalPartition partition : partitions) {
+            size += partition.kafkaLog.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the size of a partition in bytes, exluding index files.
+     * @return partition size in bytes
+     */
+    public long size(int partition) {
+        return partitions.get(partition).kafkaLog.size();
     }
 
     /**
@@ -570,11 +844,32 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
      * @return number of segments
      */
     public int numberOfSegments() {
-        return kafkaLog.numberOfSegments();
+        int numberOfSegments = 0;
+        for (final JournalPartition partition : partitions) {
+            numberOfSegments += partition.kafkaLog.numberOfSegments();
+        }
+        return numberOfSegments;
+    }
+
+    /**
+     * Returns the number of segments a partition consists of.
+     * @return number of segments
+     */
+    public int numberOfSegments(int partition) {
+        return partitions.get(partition).kafkaLog.numberOfSegments();
     }
 
     /**
-     * Returns the highest journal offset that has been writting to persistent storage by Graylog2.
+     * Returns the highest journal offset of the first partition that has been writting to persistent storage by Graylog2.
+     *
+     * @see #getCommittedReadOffset(int)
+     */
+    public long getCommittedReadOffset() {
+        return getCommittedReadOffset(0);
+    }
+
+    /**
+     * Returns the highest offset of the given partition that has been writting to persistent storage by Graylog2.
      *<p>
      *     Every message at an offset prior to this one can be considered as processed and does not need to be held in
      *     the journal any longer. By default Graylog2 will try to aggressively flush the journal to consume a smaller
@@ -582,37 +877,56 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
      *</p>
      * @return the offset of the last message which has been successfully processed.
      */
-    public long getCommittedReadOffset() {
-        return committedOffset.get();
+    public long getCommittedReadOffset(int partition) {
+        return partitions.get(partition).getCommittedOffset();
     }
 
     /**
-     * Discards all data in the journal prior to the given offset.
+     * Discards all data in the first partition prior to the given offset.
      * @param offset offset to truncate to, so that no offset in the journal is larger than this.
      */
     public void truncateTo(long offset) {
-        kafkaLog.truncateTo(offset);
+        truncateTo(0, offset);
     }
 
     /**
-     * Returns the first valid offset in the entire journal.
+     * Discards all data in the given partition prior to the given offset.
+     * @param offset offset to truncate to, so that no offset in the partition is larger than this.
+     */
+    public void truncateTo(int partition, long offset) {
+        partitions.get(partition).kafkaLog.truncateTo(offset);
+    }
+
+    /**
+     * Returns the first valid offset in the first partition.
      * @return first offset
      */
     public long getLogStartOffset() {
-        final Iterable<LogSegment> logSegments = JavaConversions.asJavaIterable(kafkaLog.logSegments());
-        final LogSegment segment = Iterables.getFirst(logSegments, null);
-        if (segment == null) {
-            return 0;
-        }
-        return segment.baseOffset();
+        return getLogStartOffset(0);
     }
 
     /**
-     * returns the offset for the next value to be inserted in the entire journal.
+     * Returns the first valid offset in the given partition.
+     * @return first offset
+     */
+    public long getLogStartOffset(int partition) {
+        return partitions.get(partition).getLogStartOffset();
+    }
+
+    /**
+     * returns the offset for the next value to be inserted in the first partition.
      * @return the next offset value (last valid offset is this number - 1)
      */
     public long getLogEndOffset() {
-        return kafkaLog.logEndOffset();
+        return getLogEndOffset(0);
+    }
+
+    /**
+     * returns the offset for the next value to be inserted in the given partition.
+     * @return the next offset value (last valid offset is this number - 1)
+     */
+    public long getLogEndOffset(int partition) {
+        return partitions.get(partition).kafkaLog.logEndOffset();
     }
 
     /**
@@ -631,7 +945,6 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
     public class ThrottleStateUpdater implements Runnable {
         private boolean firstRun = true;
 
-        private long logStartOffset;
         private long logEndOffset;
         private long previousLogEndOffset;
         private long previousReadOffset;
@@ -642,16 +955,21 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
         @Override
         public void run() {
             final ThrottleState throttleState = new ThrottleState();
-            final long committedOffset = KafkaJournal.this.committedOffset.get();
 
             prevTs = currentTs;
             currentTs = System.nanoTime();
 
             previousLogEndOffset = logEndOffset;
             previousReadOffset = currentReadOffset;
-            logStartOffset = getLogStartOffset();
-            logEndOffset = getLogEndOffset() - 1; // -1 because getLogEndOffset is the next offset that gets assigned
-            currentReadOffset = KafkaJournal.this.nextReadOffset - 1; // just to make it clear which field we read
+            // the rates are calculated over all partitions, so simply add up their offsets
+            logEndOffset = 0;
+            currentReadOffset = 0;
+            long uncommittedJournalEntries = 0;
+            for (final JournalPartition partition : partitions) {
+                logEndOffset += partition.kafkaLog.logEndOffset();
+                currentReadOffset += partition.nextReadOffset;
+                uncommittedJournalEntries += partition.uncommittedEntries();
+            }
 
             // for the first run, don't send an update, there's no previous data available to calc rates
             if (firstRun) {
@@ -663,16 +981,10 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
             throttleState.readEventsPerSec = (long) Math.floor((currentReadOffset - previousReadOffset) / ((currentTs - prevTs) / 1.0E09));
 
             throttleState.journalSize = size();
-            throttleState.journalSizeLimit = retentionSize;
+            throttleState.journalSizeLimit = Math.min(retentionSize, diskSpaceLimit);
 
             throttleState.processBufferCapacity = pb.getRemainingCapacity();
-
-            if (committedOffset == DEFAULT_COMMITTED_OFFSET) {
-                // nothing committed at all, the entire log is uncommitted, or completely empty.
-                throttleState.uncommittedJournalEntries = size() == 0 ? size() : logEndOffset - logStartOffset;
-            } else {
-                throttleState.uncommittedJournalEntries = logEndOffset - committedOffset;
-            }
+            throttleState.uncommittedJournalEntries = uncommittedJournalEntries;
             log.debug("ThrottleState: {}", throttleState);
             eventBus.post(throttleState);
         }
@@ -682,21 +994,8 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
     public class OffsetFileFlusher implements Runnable {
         @Override
         public void run() {
-            // Do not write the file if committedOffset has never been updated.
-            if (committedOffset.get() == DEFAULT_COMMITTED_OFFSET) {
-                return;
-            }
-            try (final FileOutputStream fos = new FileOutputStream(committedReadOffsetFile)) {
-                fos.write(String.valueOf(committedOffset.get()).getBytes(Charsets.UTF_8));
-                // flush stream
-                fos.flush();
-                // actually sync to disk
-                fos.getFD().sync();
-            } catch (SyncFailedException e) {
-                log.error("Cannot sync " + committedReadOffsetFile.getAbsolutePath() + " to disk. Continuing anyway," +
-                                  " but there is no guarantee that the file has been written.", e);
-            } catch (IOException e) {
-                log.error("Cannot write " + committedReadOffsetFile.getAbsolutePath() + " to disk.", e);
+            for (final JournalPartition partition : partitions) {
+                partition.writeCommittedOffset();
             }
         }
     }
@@ -722,13 +1021,15 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
             loggerForCleaner.debug("Beginning log cleanup");
             int total = 0;
             final Timer.Context ctx = new Timer().time();
-            for (final Log kafkaLog : JavaConversions.asJavaIterable(logManager.allLogs())) {
+            for (final JournalPartition partition : partitions) {
+                final Log kafkaLog = partition.kafkaLog;
                 if (kafkaLog.config().compact()) continue;
                 loggerForCleaner.debug("Garbage collecting {}", kafkaLog.name());
                 total += cleanupExpiredSegments(kafkaLog) +
                         cleanupSegmentsToMaintainSize(kafkaLog) +
-                        cleanupSegmentsToRemoveCommitted(kafkaLog);
+                        cleanupSegmentsToRemoveCommitted(kafkaLog, partition.getCommittedOffset());
             }
+            evictCodecConfigs();
 
             loggerForCleaner.debug("Log cleanup completed. {} files deleted in {} seconds",
                                    total,
@@ -782,7 +1083,7 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
             });
         }
 
-        private int cleanupSegmentsToRemoveCommitted(Log kafkaLog) {
+        private int cleanupSegmentsToRemoveCommitted(Log kafkaLog, final long committedOffset) {
             if (kafkaLog.numberOfSegments() <= 1) {
                 loggerForCleaner.debug(
                         "[cleanup-committed] The journal is already minimal at {} segment(s), not trying to remove more segments.",
@@ -792,7 +1093,6 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
             // we need to iterate through all segments to the find the cutoff point for the committed offset.
             // unfortunately finding the largest offset contained in a segment is expensive (it involves reading the entire file)
             // so we have to get a global view.
-            final long committedOffset = KafkaJournal.this.committedOffset.get();
             final HashSet<LogSegment> logSegments = Sets.newHashSet(
                     JavaConversions.asJavaIterable(kafkaLog.logSegments(committedOffset, Long.MAX_VALUE))
             );
@@ -834,4 +1134,339 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the messages contained in the given journal entry, which is either a single message or a compressed
+     * message set.
+     */
+    private java.util.Iterator<MessageAndOffset> decompress(MessageAndOffset messageAndOffset) {
+        if (messageAndOffset.message().compressionCodec() == NoCompressionCodec$.MODULE$) {
+            return Iterators.singletonIterator(messageAndOffset);
+        }
+        try (Timer.Context ignored = decompressTime.time()) {
+            final ByteBufferMessageSet messageSet = ByteBufferMessageSet$.MODULE$.decompress(messageAndOffset.message());
+            return JavaConversions.asJavaIterator(messageSet.iterator());
+        }
+    }
+
+    /**
+     * A single partition of the journal, with its own log, committed offset and read position.
+     * <p>
+     * Appends to different partitions do not contend with each other, and every partition is read by its own thread.
+     * </p>
+     */
+    private class JournalPartition {
+        private final int id;
+        private final Log kafkaLog;
+        private final File committedReadOffsetFile;
+        private final CodecConfigStore codecConfigs;
+        private final CommittedOffsetTracker committedOffsets;
+        private final long initialCommittedOffset;
+        private final long initialNextOffset;
+        private final AtomicLong unflushedBytes = new AtomicLong();
+        private final Object flushLock = new Object();
+        private final Object appendLock = new Object();
+
+        private volatile long nextReadOffset = 0L;
+        // bytes on disk per journal entry, used to size the next read
+        private double averageEntrySize = 1024.0;
+
+        private JournalPartition(int id, Log kafkaLog, File committedReadOffsetFile, File codecConfigFile) {
+            this.id = id;
+            this.kafkaLog = kafkaLog;
+            this.committedReadOffsetFile = committedReadOffsetFile;
+            try {
+                this.codecConfigs = new CodecConfigStore(codecConfigFile, kafkaLog.logEndOffset());
+            } catch (IOException e) {
+                log.error("Cannot read codec configuration file", e);
+                throw Throwables.propagate(e);
+            }
+            long committedOffset = DEFAULT_COMMITTED_OFFSET;
+            try {
+                if (!committedReadOffsetFile.createNewFile()) {
+                    final String line = Files.readFirstLine(committedReadOffsetFile, Charsets.UTF_8);
+                    // the file contains the last offset graylog2 has successfully processed.
+                    // thus the nextReadOffset is one beyond that number
+                    if (line != null) {
+                        committedOffset = Long.parseLong(line.trim());
+                        nextReadOffset = committedOffset + 1;
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Cannot access offset file", e);
+                Throwables.propagate(e);
+            }
+            this.initialCommittedOffset = committedOffset;
+            this.initialNextOffset = committedOffset == DEFAULT_COMMITTED_OFFSET ? getLogStartOffset() : committedOffset + 1;
+            this.committedOffsets = new CommittedOffsetTracker(initialNextOffset, COMMIT_WINDOW);
+        }
+
+        /**
+         * Appends the messages to this partition.
+         *
+         * @param codecConfigs the codec configurations the messages reference
+         * @return the offset of the last appended message within this partition
+         */
+        private long append(List<Message> messages, Collection<Configuration> codecConfigs) {
+            if (!codecConfigs.isEmpty()) {
+                try {
+                    this.codecConfigs.prepare(codecConfigs);
+                } catch (IOException e) {
+                    log.error("Cannot persist the codec configurations of journal partition " + id + ", its messages cannot " +
+                                      "be decoded after a restart.", e);
+                }
+            }
+            final ByteBufferMessageSet messageSet;
+            final Log.LogAppendInfo appendInfo;
+            if (compressionCodec == NoCompressionCodec$.MODULE$) {
+                messageSet = new ByteBufferMessageSet(JavaConversions.asScalaBuffer(messages));
+                appendInfo = kafkaLog.append(messageSet, true);
+            } else {
+                // Kafka would decompress and compress the batch again to assign offsets to the compressed messages,
+                // so we assign them while compressing and serialize the appends ourselves.
+                synchronized (appendLock) {
+                    final long firstOffset = kafkaLog.logEndOffset();
+                    try (Timer.Context ignored = compressTime.time()) {
+                        messageSet = new ByteBufferMessageSet(compressionCodec,
+                                                              new AtomicLong(firstOffset),
+                                                              JavaConversions.asScalaBuffer(messages));
+                    }
+                    appendInfo = kafkaLog.append(messageSet, false);
+                }
+                uncompressedBytesWritten.addAndGet(MessageSet.messageSetSize(messages));
+                compressedBytesWritten.addAndGet(messageSet.sizeInBytes());
+            }
+            log.debug("Wrote {} messages to journal partition {}: {} bytes on disk, log position {} to {}",
+                      messages.size(), id, messageSet.sizeInBytes(), appendInfo.firstOffset(), appendInfo.lastOffset());
+
+            this.codecConfigs.written(codecConfigs, appendInfo.lastOffset());
+
+            final long unflushed = unflushedBytes.addAndGet(messageSet.sizeInBytes());
+            if (groupCommit || kafkaLog.unflushedMessages() >= flushInterval || unflushed >= flushBytes) {
+                flush(appendInfo.lastOffset() + 1);
+            }
+            return appendInfo.lastOffset();
+        }
+
+        /**
+         * Flushes the partition to disk, at least up to the given offset.
+         * <p>
+         * Concurrent callers are coalesced into a single flush: a caller waiting for a running flush returns right away
+         * if that flush already covered its offset, otherwise its flush includes everything that has been appended
+         * meanwhile.
+         * </p>
+         *
+         * @param offset the offset up to which (exclusively) the partition must be on disk
+         */
+        private void flush(long offset) {
+            if (kafkaLog.recoveryPoint() >= offset) {
+                return;
+            }
+            synchronized (flushLock) {
+                if (kafkaLog.recoveryPoint() >= offset) {
+                    return;
+                }
+                final long logEndOffset = kafkaLog.logEndOffset();
+                final long bytes = unflushedBytes.getAndSet(0L);
+                try (Timer.Context ignored = flushTime.time()) {
+                    kafkaLog.flush(logEndOffset);
+                }
+                bytesPerFlush.update(bytes);
+                log.debug("Flushed {} bytes of journal partition {} up to offset {}", bytes, id, logEndOffset);
+            }
+        }
+
+        private List<JournalReadEntry> read(long readOffset, long requestedMaximumCount, boolean advance) {
+            // Always read at least one!
+            final long maximumCount = Math.max(1, requestedMaximumCount);
+            long maxOffset = readOffset + maximumCount;
+            final List<JournalReadEntry> messages = Lists.newArrayListWithCapacity((int) (maximumCount));
+
+            if (shuttingDown) {
+                return messages;
+            }
+            try (Timer.Context ignored = readTime.time()) {
+                final long logStartOffset = getLogStartOffset();
+
+                if (readOffset < logStartOffset) {
+                    log.error(
+                            "Read offset {} before start of journal partition {} at {}, starting to read from the beginning of the partition.",
+                            readOffset,
+                            id,
+                            logStartOffset);
+                    readOffset = logStartOffset;
+                    maxOffset = readOffset + maximumCount;
+                    if (advance) {
+                        // the messages before the start of the log are gone, there is no point in waiting for their commit
+                        committedOffsets.skipTo(logStartOffset);
+                    }
+                }
+                final int readAhead = (int) Math.max(MIN_READ_SIZE, Math.min(maxReadSize, maximumCount * averageEntrySize));
+                log.debug("Requesting to read a maximum of {} messages (or {} bytes) from journal partition {}, offset interval [{}, {})",
+                          maximumCount, readAhead, id, readOffset, maxOffset);
+
+                final ByteBufferMessageSet messageSet = readAhead(readOffset, readAhead);
+
+                final Iterator<MessageAndOffset> iterator = messageSet.shallowIterator();
+                long firstOffset = Long.MIN_VALUE;
+                long lastOffset = Long.MIN_VALUE;
+                long totalBytes = 0;
+                long bytesRead = 0;
+                readLoop:
+                while (iterator.hasNext()) {
+                    final MessageAndOffset journalEntry = iterator.next();
+                    bytesRead += MessageSet.entrySize(journalEntry.message());
+                    final java.util.Iterator<MessageAndOffset> entries = decompress(journalEntry);
+                    while (entries.hasNext()) {
+                        final MessageAndOffset messageAndOffset = entries.next();
+                        if (messageAndOffset.offset() < readOffset) {
+                            // the compressed message set containing the read offset starts before it
+                            continue;
+                        }
+                        if (messageAndOffset.offset() >= maxOffset) {
+                            break readLoop;
+                        }
+
+                        if (firstOffset == Long.MIN_VALUE) firstOffset = messageAndOffset.offset();
+                        // always remember the last seen offset for debug purposes below
+                        lastOffset = messageAndOffset.offset();
+
+                        // hand out the payload without copying it, it's a slice of the buffer read from disk
+                        final ByteBuffer payload = messageAndOffset.message().payload();
+                        if (log.isTraceEnabled()) {
+                            final byte[] keyBytes = Utils.readBytes(messageAndOffset.message().key());
+                            log.trace("Read message {} contains {}", bytesToHex(keyBytes), bytesToHex(Utils.readBytes(payload)));
+                        }
+                        totalBytes += payload.remaining();
+                        messages.add(new JournalReadEntry(payload, journalOffset(id, messageAndOffset.offset())));
+                        if (advance) {
+                            // remember where to read from
+                            nextReadOffset = messageAndOffset.nextOffset();
+                        }
+                    }
+                }
+                if (advance) {
+                    // peeking at the journal, e.g. for a replay, must not skew the read statistics of the consumer
+                    readSize.update(messageSet.sizeInBytes());
+                    entriesPerRead.update(messages.size());
+                    if (!messages.isEmpty()) {
+                        averageEntrySize = bytesRead / (double) messages.size();
+                    }
+                }
+                if (messages.isEmpty()) {
+                    log.debug("No messages available to read from journal partition {} for offset interval [{}, {}).",
+                              id, readOffset, maxOffset);
+                } else {
+                    log.debug(
+                            "Read {} messages, total payload size {}, from journal partition {}, offset interval [{}, {}], requested read at {}",
+                            messages.size(),
+                            totalBytes,
+                            id,
+                            firstOffset,
+                            lastOffset,
+                            readOffset);
+                }
+
+            } catch (OffsetOutOfRangeException e) {
+                // TODO how do we recover from this? the exception doesn't contain the next valid offset :(
+                log.warn("Offset out of range, no messages available starting at offset {}", readOffset);
+            } catch (Exception e) {
+                // the scala code does not declare the IOException in kafkaLog.read() so we can't catch it here
+                // sigh.
+                if (shuttingDown) {
+                    log.debug("Caught exception during shutdown, ignoring it because we might have been blocked on a read.");
+                    return Lists.newArrayList();
+                }
+                if (e instanceof ClosedByInterruptException) {
+                    log.debug("Interrupted while reading from journal, during shutdown this is harmless and ignored.", e);
+                } else {
+                    throw Throwables.propagate(e);
+                }
+
+            }
+            if (advance) {
+                messagesRead.mark(messages.size());
+            }
+            return messages;
+        }
+
+        /**
+         * Reads the journal entries starting at the given offset into memory with a single read. If the first entry is
+         * larger than the requested size, it is read completely nevertheless.
+         */
+        private ByteBufferMessageSet readAhead(long offset, int size) throws IOException {
+            // Do not let Kafka stop at a maximum offset, it would leave out the compressed message set containing it.
+            final MessageSet messageSet = kafkaLog.read(offset, size, Option.<Object>empty());
+            if (!(messageSet instanceof FileMessageSet)) {
+                return (ByteBufferMessageSet) messageSet;
+            }
+
+            final FileMessageSet fileMessageSet = (FileMessageSet) messageSet;
+            final FileChannel channel = fileMessageSet.channel();
+            final ByteBuffer buffer = ByteBuffer.allocate(fileMessageSet.sizeInBytes());
+            while (buffer.hasRemaining() && channel.read(buffer, fileMessageSet.start() + buffer.position()) >= 0) {
+                // keep reading until the buffer is full or the end of the segment file has been reached
+            }
+            buffer.flip();
+            if (buffer.remaining() >= MessageSet.LogOverhead()) {
+                final int entrySize = MessageSet.LogOverhead() + buffer.getInt(MessageSet.OffsetLength());
+                if (entrySize > buffer.remaining() && entrySize > size) {
+                    log.debug("Journal entry at offset {} is larger than {} bytes, reading {} bytes", offset, size, entrySize);
+                    return readAhead(offset, entrySize);
+                }
+            }
+            return new ByteBufferMessageSet(buffer);
+        }
+
+        private void markCommitted(long offset) {
+            committedOffsets.commit(offset);
+        }
+
+        /**
+         * Returns the offset up to which every message of this partition has been committed.
+         */
+        private long getCommittedOffset() {
+            final long nextOffset = committedOffsets.getNextOffset();
+            return nextOffset == initialNextOffset ? initialCommittedOffset : nextOffset - 1;
+        }
+
+        private long getLogStartOffset() {
+            final Iterable<LogSegment> logSegments = JavaConversions.asJavaIterable(kafkaLog.logSegments());
+            final LogSegment segment = Iterables.getFirst(logSegments, null);
+            if (segment == null) {
+                return 0;
+            }
+            return segment.baseOffset();
+        }
+
+        private long uncommittedEntries() {
+            final long committed = getCommittedOffset();
+            final long lastOffset = kafkaLog.logEndOffset() - 1;
+            if (committed == DEFAULT_COMMITTED_OFFSET) {
+                // nothing committed at all, the entire log is uncommitted, or completely empty.
+                return kafkaLog.size() == 0 ? 0 : lastOffset - getLogStartOffset();
+            }
+            return lastOffset - committed;
+        }
+
+        private void writeCommittedOffset() {
+            final long committedOffset = getCommittedOffset();
+            // Do not write the file if committedOffset has never been updated.
+            if (committedOffset == DEFAULT_COMMITTED_OFFSET) {
+                return;
+            }
+            try (final FileOutputStream fos = new FileOutputStream(committedReadOffsetFile)) {
+                fos.write(String.valueOf(committedOffset).getBytes(Charsets.UTF_8));
+                // flush stream
+                fos.flush();
+                // actually sync to disk
+                fos.getFD().sync();
+            } catch (SyncFailedException e) {
+                log.error("Cannot sync " + committedReadOffsetFile.getAbsolutePath() + " to disk. Continuing anyway," +
+                                  " but there is no guarantee that the file has been written.", e);
+            } catch (IOException e) {
+                log.error("Cannot write " + committedReadOffsetFile.getAbsolutePath() + " to disk.", e);
+            }
+        }
+    }
+}
@@ -18,6 +18,7 @@ package org.graylog2.shared.journal;
 
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.AbstractIdleService;
+import org.graylog2.plugin.configuration.Configuration;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -35,6 +36,16 @@ public class NoopJournal extends AbstractIdleService implements Journal {
         return new Entry(idBytes, messageBytes);
     }
 
+    @Override
+    public Entry createEntry(byte[] idBytes, byte[] messageBytes, String partitionKey) {
+        return new Entry(idBytes, messageBytes, partitionKey);
+    }
+
+    @Override
+    public Entry createEntry(byte[] idBytes, byte[] messageBytes, String partitionKey, Configuration codecConfig) {
+        return new Entry(idBytes, messageBytes, partitionKey, codecConfig);
+    }
+
     @Override
     public long write(List<Entry> entries) {
         return Long.MIN_VALUE;
@@ -50,11 +61,26 @@ public class NoopJournal extends AbstractIdleService implements Journal {
         return JOURNAL_READ_ENTRIES;
     }
 
+    @Override
+    public List<JournalReadEntry> readPartition(int partition, long maximumCount) {
+        return JOURNAL_READ_ENTRIES;
+    }
+
+    @Override
+    public int numberOfPartitions() {
+        return 1;
+    }
+
     @Override
     public void markJournalOffsetCommitted(long offset) {
         // nothing to do
     }
 
+    @Override
+    public boolean isFull() {
+        return false;
+    }
+
     @Override
     protected void startUp() throws Exception {
         // nothing to do